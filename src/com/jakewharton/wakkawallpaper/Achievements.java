@@ -0,0 +1,298 @@
+package com.jakewharton.wakkawallpaper;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.res.Resources;
+import android.util.Log;
+
+/**
+ * Holds the earned trophies as an in-memory bitmask which is loaded once and
+ * persisted asynchronously in batches so that earning a trophy never blocks a
+ * frame on a disk write.
+ * 
+ * @author Jake Wharton
+ */
+public final class Achievements {
+	/**
+	 * Andy trophy.
+	 */
+	/*package*/static final int ANDY = 0;
+	
+	/**
+	 * The Mandroid trophy.
+	 */
+	/*package*/static final int THEMANDROID = 1;
+	
+	/**
+	 * Logos trophy.
+	 */
+	/*package*/static final int LOGOS = 2;
+	
+	/**
+	 * CEOs trophy.
+	 */
+	/*package*/static final int CEOS = 3;
+	
+	/**
+	 * Desserts trophy.
+	 */
+	/*package*/static final int DESSERTS = 4;
+	
+	/**
+	 * Apple Dots trophy.
+	 */
+	/*package*/static final int APPLEDOTS = 5;
+	
+	/**
+	 * Eden trophy.
+	 */
+	/*package*/static final int EDEN = 6;
+	
+	/**
+	 * Googol trophy.
+	 */
+	/*package*/static final int GOOGOL = 7;
+	
+	/**
+	 * Legend trophy.
+	 */
+	/*package*/static final int LEGEND = 8;
+	
+	/**
+	 * Ego trophy (earned for earning all of the others).
+	 */
+	/*package*/static final int EGO = 9;
+	
+	/**
+	 * Number of trophies.
+	 */
+	private static final int COUNT = 10;
+	
+	/**
+	 * Mask of every trophy which counts towards the Ego trophy.
+	 */
+	private static final int ALL_BUT_EGO = (1 << Achievements.EGO) - 1;
+	
+	/**
+	 * Persisted preference key of each trophy.
+	 */
+	private static final int[] PERSIST_KEYS = new int[] {
+		R.string.trophy_andy_persist,
+		R.string.trophy_themandroid_persist,
+		R.string.trophy_logos_persist,
+		R.string.trophy_ceos_persist,
+		R.string.trophy_desserts_persist,
+		R.string.trophy_appledots_persist,
+		R.string.trophy_eden_persist,
+		R.string.trophy_googol_persist,
+		R.string.trophy_legend_persist,
+		R.string.trophy_ego_persist,
+	};
+	
+	/**
+	 * Default earned value of each trophy.
+	 */
+	private static final int[] DEFAULTS = new int[] {
+		R.bool.trophy_andy_default,
+		R.bool.trophy_themandroid_default,
+		R.bool.trophy_logos_default,
+		R.bool.trophy_ceos_default,
+		R.bool.trophy_desserts_default,
+		R.bool.trophy_appledots_default,
+		R.bool.trophy_eden_default,
+		R.bool.trophy_googol_default,
+		R.bool.trophy_legend_default,
+		R.bool.trophy_ego_default,
+	};
+	
+	/**
+	 * Title of each trophy.
+	 */
+	private static final int[] TITLES = new int[] {
+		R.string.trophy_andy,
+		R.string.trophy_themandroid,
+		R.string.trophy_logos,
+		R.string.trophy_ceos,
+		R.string.trophy_desserts,
+		R.string.trophy_appledots,
+		R.string.trophy_eden,
+		R.string.trophy_googol,
+		R.string.trophy_legend,
+		R.string.trophy_ego,
+	};
+	
+	/**
+	 * Tag used for logging.
+	 */
+	private static final String TAG = "WakkaWallpaper.Achievements";
+	
+	/**
+	 * Single instance.
+	 */
+	private static Achievements INSTANCE;
+	
+	
+	
+	/**
+	 * Preferences which the trophies are persisted in.
+	 */
+	private final SharedPreferences mPreferences;
+	
+	/**
+	 * Resolved persisted preference keys.
+	 */
+	private final String[] mKeys;
+	
+	/**
+	 * Bitmask of earned trophies.
+	 */
+	private volatile int mEarned;
+	
+	/**
+	 * Bitmask of earned trophies which have not yet been written.
+	 */
+	private int mUnwritten;
+	
+	/**
+	 * Whether or not a write has been queued and not yet run.
+	 */
+	private boolean mIsWriteQueued;
+	
+	/**
+	 * Background thread which performs the writes.
+	 */
+	private final ExecutorService mWriter;
+	
+	/**
+	 * A runnable which writes every unwritten trophy in a single commit.
+	 */
+	private final Runnable mWrite = new Runnable() {
+		public void run() {
+			Achievements.this.write();
+		}
+	};
+	
+	
+	
+	/**
+	 * Get the single instance, loading the earned trophies the first time.
+	 * 
+	 * @param context Context to load from.
+	 * @return Achievements.
+	 */
+	public static synchronized Achievements getInstance(final Context context) {
+		if (Achievements.INSTANCE == null) {
+			Achievements.INSTANCE = new Achievements(context.getApplicationContext());
+		}
+		return Achievements.INSTANCE;
+	}
+	
+	/**
+	 * Get the string resource of a trophy's title.
+	 * 
+	 * @param trophy Trophy.
+	 * @return String resource.
+	 */
+	public static int getTitle(final int trophy) {
+		return Achievements.TITLES[trophy];
+	}
+	
+	
+	
+	/**
+	 * Load the earned trophies.
+	 * 
+	 * @param context Context to load from.
+	 */
+	private Achievements(final Context context) {
+		final Resources resources = context.getResources();
+		
+		this.mPreferences = context.getSharedPreferences(Preferences.SHARED_NAME, Context.MODE_PRIVATE);
+		this.mKeys = new String[Achievements.COUNT];
+		this.mWriter = Executors.newSingleThreadExecutor();
+		
+		int earned = 0;
+		for (int trophy = 0; trophy < Achievements.COUNT; trophy++) {
+			this.mKeys[trophy] = resources.getString(Achievements.PERSIST_KEYS[trophy]);
+			if (this.mPreferences.getBoolean(this.mKeys[trophy], resources.getBoolean(Achievements.DEFAULTS[trophy]))) {
+				earned |= (1 << trophy);
+			}
+		}
+		this.mEarned = earned;
+	}
+	
+	
+	
+	/**
+	 * Test whether or not a trophy has been earned.
+	 * 
+	 * @param trophy Trophy.
+	 * @return Boolean.
+	 */
+	public boolean isEarned(final int trophy) {
+		return ((this.mEarned & (1 << trophy)) != 0);
+	}
+	
+	/**
+	 * Mark a trophy as earned. Earning every other trophy also earns the Ego trophy.
+	 * 
+	 * @param trophy Trophy.
+	 * @return Bitmask of the trophies which were newly earned by this call.
+	 */
+	public int earn(final int trophy) {
+		if (this.isEarned(trophy)) {
+			//Fast path for the game loop
+			return 0;
+		}
+		
+		synchronized (this) {
+			int earned = this.mEarned | (1 << trophy);
+			if ((earned & Achievements.ALL_BUT_EGO) == Achievements.ALL_BUT_EGO) {
+				earned |= (1 << Achievements.EGO);
+			}
+			
+			final int newlyEarned = earned & ~this.mEarned;
+			this.mEarned = earned;
+			this.mUnwritten |= newlyEarned;
+			
+			if ((newlyEarned != 0) && !this.mIsWriteQueued) {
+				this.mIsWriteQueued = true;
+				this.mWriter.execute(this.mWrite);
+			}
+			
+			return newlyEarned;
+		}
+	}
+	
+	/**
+	 * Write every unwritten trophy in a single commit. Runs on the writer thread.
+	 */
+	private void write() {
+		final int unwritten;
+		synchronized (this) {
+			unwritten = this.mUnwritten;
+			this.mUnwritten = 0;
+			this.mIsWriteQueued = false;
+		}
+		
+		final SharedPreferences.Editor editor = this.mPreferences.edit();
+		for (int trophy = 0; trophy < Achievements.COUNT; trophy++) {
+			if ((unwritten & (1 << trophy)) != 0) {
+				editor.putBoolean(this.mKeys[trophy], true);
+			}
+		}
+		
+		if (!editor.commit()) {
+			Log.w(Achievements.TAG, "Unable to persist earned trophies.");
+			
+			//Try again along with the next batch
+			synchronized (this) {
+				this.mUnwritten |= unwritten;
+			}
+		} else if (Wallpaper.LOG_DEBUG) {
+			Log.d(Achievements.TAG, "Persisted trophies: " + Integer.toBinaryString(unwritten));
+		}
+	}
+}
@@ -0,0 +1,358 @@
+package com.jakewharton.wakkawallpaper;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.Log;
+
+/**
+ * Keeper of every decoded sprite sheet. Each sheet is counted by the bytes it
+ * holds against a heap budget and the least recently drawn sheets are evicted
+ * when a new one would not fit. Sheets drawn in the current frame are never
+ * evicted to make room, so a frame which needs more than the budget holds its
+ * whole working set rather than decoding the same sheets over and over. The
+ * budget is only strictly enforced when the system is low on memory. Sheets are held
+ * through {@link LazyBitmap} handles so an evicted sheet is simply decoded
+ * again the next time it is drawn.
+ * 
+ * <p>Opaque images are decoded as RGB_565. Translucent sheets are decoded as
+ * ARGB_8888 unless one would not fit in the budget on its own, in which case
+ * ARGB_4444 is used instead. Bitmaps which cannot be evicted, such as the
+ * background, are pinned so that they count against the budget.</p>
+ * 
+ * @author Jake Wharton
+ */
+public final class BitmapManager implements Settings.Listener {
+	/**
+	 * Decoded sheet and the bytes it holds.
+	 * 
+	 * @author Jake Wharton
+	 */
+	private static final class Entry {
+		/**
+		 * Decoded bitmap.
+		 */
+		public final Bitmap bitmap;
+		
+		/**
+		 * Number of bytes held by the bitmap.
+		 */
+		public final long bytes;
+		
+		/**
+		 * Frame in which the bitmap was last drawn.
+		 */
+		public int frame;
+		
+		
+		
+		/**
+		 * Create a new entry.
+		 * 
+		 * @param bitmap Decoded bitmap.
+		 */
+		public Entry(final Bitmap bitmap) {
+			this.bitmap = bitmap;
+			this.bytes = BitmapManager.sizeOf(bitmap);
+		}
+	}
+	
+	
+	
+	/**
+	 * Tag used for logging.
+	 */
+	private static final String TAG = "WakkaWallpaper.BitmapManager";
+	
+	/**
+	 * Number of bytes in a megabyte.
+	 */
+	private static final long BYTES_IN_MEGABYTE = 1024 * 1024;
+	
+	/**
+	 * Fraction of the maximum heap used when no budget is set.
+	 */
+	private static final int AUTOMATIC_BUDGET_DIVISOR = 8;
+	
+	/**
+	 * Trim level at which the process is running and memory is getting low.
+	 * Mirrors ComponentCallbacks2 which is not available on every version we run on.
+	 */
+	private static final int TRIM_MEMORY_RUNNING_LOW = 10;
+	
+	/**
+	 * Trim level at which the process is in the middle of the background list.
+	 */
+	private static final int TRIM_MEMORY_MODERATE = 60;
+	
+	
+	
+	/**
+	 * Decoded sheets by resource ID, least recently used first.
+	 */
+	private final LinkedHashMap<Integer, BitmapManager.Entry> mEntries;
+	
+	/**
+	 * Resource IDs which could not be decoded with everything else evicted.
+	 */
+	private final HashSet<Integer> mFailed;
+	
+	/**
+	 * Number of bytes held by the decoded sheets.
+	 */
+	private long mBytes;
+	
+	/**
+	 * Number of bytes held by pinned bitmaps.
+	 */
+	private long mPinnedBytes;
+	
+	/**
+	 * Maximum number of bytes held by every bitmap.
+	 */
+	private long mBudget;
+	
+	/**
+	 * Number of the frame being drawn.
+	 */
+	private int mFrame;
+	
+	
+	
+	/**
+	 * Create a new manager with the automatic budget.
+	 */
+	public BitmapManager() {
+		this.mEntries = new LinkedHashMap<Integer, BitmapManager.Entry>(16, 0.75f, true);
+		this.mFailed = new HashSet<Integer>();
+		this.mBudget = BitmapManager.getAutomaticBudget();
+	}
+	
+	
+	
+    /**
+     * Handle the changing of one or more settings.
+     */
+	public synchronized void onSettingsChanged(final Settings settings, final Settings.Diff diff) {
+		if (diff.contains(Settings.DISPLAY_BITMAP_BUDGET)) {
+			final int megabytes = settings.getInt(Settings.DISPLAY_BITMAP_BUDGET);
+			this.mBudget = (megabytes > 0) ? (megabytes * BitmapManager.BYTES_IN_MEGABYTE) : BitmapManager.getAutomaticBudget();
+			this.mFailed.clear();
+			this.trim(this.getSheetBudget(), false);
+			
+			if (Wallpaper.LOG_DEBUG) {
+				Log.d(BitmapManager.TAG, "Budget: " + this.mBudget);
+			}
+		}
+	}
+	
+	/**
+	 * Start drawing a new frame. Sheets drawn in earlier frames may be evicted again.
+	 */
+	public synchronized void beginFrame() {
+		this.mFrame += 1;
+	}
+	
+	/**
+	 * Get a sheet, decoding it if it is not already held.
+	 * 
+	 * @param resourceId Resource ID.
+	 * @param isOpaque Whether or not every pixel of the sheet is opaque.
+	 * @return Bitmap or null if it could not be decoded.
+	 */
+	public synchronized Bitmap get(final int resourceId, final boolean isOpaque) {
+		final BitmapManager.Entry cached = this.mEntries.get(resourceId);
+		if (cached != null) {
+			cached.frame = this.mFrame;
+			return cached.bitmap;
+		}
+		if (this.mFailed.contains(resourceId)) {
+			//Do not retry on every frame
+			return null;
+		}
+		
+		final long start = System.nanoTime();
+		
+		//Read only the header to choose a config and make room for the sheet
+		final BitmapFactory.Options options = new BitmapFactory.Options();
+		options.inScaled = false;
+		options.inJustDecodeBounds = true;
+		BitmapFactory.decodeResource(Wallpaper.CONTEXT.getResources(), resourceId, options);
+		final long pixels = (long)options.outWidth * options.outHeight;
+		final long available = this.getSheetBudget();
+		if (isOpaque) {
+			options.inPreferredConfig = Bitmap.Config.RGB_565;
+		} else if ((pixels * 4) > available) {
+			options.inPreferredConfig = Bitmap.Config.ARGB_4444;
+		} else {
+			options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+		}
+		options.inJustDecodeBounds = false;
+		this.trim(available - (pixels * BitmapManager.bytesPerPixel(options.inPreferredConfig)), false);
+		
+		Bitmap bitmap = BitmapManager.decode(resourceId, options);
+		if ((bitmap == null) && !this.mEntries.isEmpty()) {
+			//Give up everything not needed by this frame and try once more
+			this.trim(0, false);
+			bitmap = BitmapManager.decode(resourceId, options);
+		}
+		if (bitmap == null) {
+			this.mFailed.add(resourceId);
+			return null;
+		}
+		
+		final BitmapManager.Entry entry = new BitmapManager.Entry(bitmap);
+		entry.frame = this.mFrame;
+		this.mEntries.put(resourceId, entry);
+		this.mBytes += entry.bytes;
+		Metrics.increment(Metrics.BITMAP_DECODES);
+		
+		if (Wallpaper.LOG_DEBUG) {
+			Log.d(BitmapManager.TAG, "Decoded " + resourceId + " as " + bitmap.getConfig() + " (" + entry.bytes + " bytes) in " + ((System.nanoTime() - start) / 1000) + "us. Holding " + this.mBytes + " of " + this.mBudget + " bytes.");
+		}
+		return bitmap;
+	}
+	
+	/**
+	 * Count a bitmap which cannot be evicted against the budget.
+	 * 
+	 * @param bitmap Bitmap.
+	 */
+	public synchronized void pin(final Bitmap bitmap) {
+		this.mPinnedBytes += BitmapManager.sizeOf(bitmap);
+		this.trim(this.getSheetBudget(), false);
+	}
+	
+	/**
+	 * Stop counting a pinned bitmap against the budget.
+	 * 
+	 * @param bitmap Bitmap previously passed to {@link #pin(Bitmap)}.
+	 */
+	public synchronized void unpin(final Bitmap bitmap) {
+		this.mPinnedBytes = Math.max(0, this.mPinnedBytes - BitmapManager.sizeOf(bitmap));
+	}
+	
+	/**
+	 * Evict every sheet, for when the system is low on memory.
+	 */
+	public synchronized void onLowMemory() {
+		this.trim(0, true);
+	}
+	
+	/**
+	 * Evict sheets in response to the system asking for memory back.
+	 * 
+	 * @param level Trim level from ComponentCallbacks2.
+	 */
+	public synchronized void onTrimMemory(final int level) {
+		if (level >= BitmapManager.TRIM_MEMORY_MODERATE) {
+			this.trim(0, true);
+		} else if (level >= BitmapManager.TRIM_MEMORY_RUNNING_LOW) {
+			this.trim(this.getSheetBudget() / 2, true);
+		}
+	}
+	
+	/**
+	 * Get the number of bytes held by every bitmap.
+	 * 
+	 * @return Bytes.
+	 */
+	public synchronized long getBytes() {
+		return this.mBytes + this.mPinnedBytes;
+	}
+	
+	/**
+	 * Number of bytes left in the budget for sheets once pinned bitmaps are counted.
+	 * 
+	 * @return Bytes.
+	 */
+	private long getSheetBudget() {
+		return Math.max(0, this.mBudget - this.mPinnedBytes);
+	}
+	
+	/**
+	 * Evict the least recently used sheets until no more than a number of bytes
+	 * are held. Evicted sheets are only dropped, never recycled, since another
+	 * engine drawing the shared game may still be part way through drawing one
+	 * it fetched earlier. The memory is reclaimed once nothing refers to it.
+	 * 
+	 * @param bytes Maximum number of bytes to hold.
+	 * @param isStrict Whether to also evict sheets drawn in the current frame to reach the limit.
+	 */
+	private void trim(final long bytes, final boolean isStrict) {
+		final Iterator<BitmapManager.Entry> entries = this.mEntries.values().iterator();
+		while ((this.mBytes > bytes) && entries.hasNext()) {
+			final BitmapManager.Entry entry = entries.next();
+			if (!isStrict && (entry.frame == this.mFrame)) {
+				//Everything after this was also drawn in this frame
+				break;
+			}
+			entries.remove();
+			this.mBytes -= entry.bytes;
+			Metrics.increment(Metrics.BITMAP_EVICTIONS);
+			
+			if (Wallpaper.LOG_DEBUG) {
+				Log.d(BitmapManager.TAG, "Evicted " + entry.bytes + " bytes. Holding " + this.mBytes + " bytes.");
+			}
+		}
+	}
+	
+	
+	
+	/**
+	 * Decode a resource.
+	 * 
+	 * @param resourceId Resource ID.
+	 * @param options Decoding options.
+	 * @return Bitmap or null if it could not be decoded.
+	 */
+	private static Bitmap decode(final int resourceId, final BitmapFactory.Options options) {
+		try {
+			return BitmapFactory.decodeResource(Wallpaper.CONTEXT.getResources(), resourceId, options);
+		} catch (final OutOfMemoryError e) {
+			Log.w(BitmapManager.TAG, "Incurred OutOfMemoryError when attempting to decode bitmap " + resourceId + ".");
+			return null;
+		}
+	}
+	
+	/**
+	 * Number of bytes held by a bitmap.
+	 * 
+	 * @param bitmap Bitmap.
+	 * @return Bytes.
+	 */
+	private static long sizeOf(final Bitmap bitmap) {
+		return (long)bitmap.getRowBytes() * bitmap.getHeight();
+	}
+	
+	/**
+	 * Number of bytes used by each pixel of a config.
+	 * 
+	 * @param config Config.
+	 * @return Bytes.
+	 */
+	private static int bytesPerPixel(final Bitmap.Config config) {
+		switch (config) {
+			case ALPHA_8:
+				return 1;
+				
+			case RGB_565:
+			case ARGB_4444:
+				return 2;
+				
+			default:
+				return 4;
+		}
+	}
+	
+	/**
+	 * Budget used when none is set.
+	 * 
+	 * @return Bytes.
+	 */
+	private static long getAutomaticBudget() {
+		return Runtime.getRuntime().maxMemory() / BitmapManager.AUTOMATIC_BUDGET_DIVISOR;
+	}
+}
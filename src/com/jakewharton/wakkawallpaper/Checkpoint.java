@@ -0,0 +1,237 @@
+package com.jakewharton.wakkawallpaper;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * A copy of everything which changes while the game is played, kept in
+ * primitive buffers so that it can be taken every tick and restored in place
+ * without allocating. Values are put and got back in the same order, with the
+ * game and each of its entities responsible for their own.
+ * 
+ * @author Jake Wharton
+ */
+public final class Checkpoint {
+	/**
+	 * Initial capacity of the buffers.
+	 */
+	private static final int INITIAL_CAPACITY = 256;
+	
+	/**
+	 * Most values of either kind a stream may hold, to reject corrupt ones early.
+	 */
+	private static final int MAX_VALUES = 1 << 20;
+	
+	
+	
+	/**
+	 * Integer values.
+	 */
+	private int[] mInts;
+	
+	/**
+	 * Number of integer values put.
+	 */
+	private int mIntCount;
+	
+	/**
+	 * Index of the next integer value to get.
+	 */
+	private int mIntCursor;
+	
+	/**
+	 * Long values.
+	 */
+	private long[] mLongs;
+	
+	/**
+	 * Number of long values put.
+	 */
+	private int mLongCount;
+	
+	/**
+	 * Index of the next long value to get.
+	 */
+	private int mLongCursor;
+	
+	/**
+	 * Whether or not a complete checkpoint has been taken.
+	 */
+	private boolean mIsValid;
+	
+	
+	
+	/**
+	 * Create an empty checkpoint.
+	 */
+	public Checkpoint() {
+		this.mInts = new int[Checkpoint.INITIAL_CAPACITY];
+		this.mLongs = new long[Checkpoint.INITIAL_CAPACITY];
+	}
+	
+	
+	
+	/**
+	 * Get the ordinal of a value which may be null.
+	 * 
+	 * @param value Value.
+	 * @return Ordinal or -1 if null.
+	 */
+	public static int ordinal(final Enum<?> value) {
+		return (value != null) ? value.ordinal() : -1;
+	}
+	
+	
+	
+	/**
+	 * Test whether or not a complete checkpoint has been taken.
+	 * 
+	 * @return Boolean.
+	 */
+	public boolean isValid() {
+		return this.mIsValid;
+	}
+	
+	/**
+	 * Start taking a new checkpoint, discarding the last.
+	 */
+	public void begin() {
+		this.mIsValid = false;
+		this.mIntCount = 0;
+		this.mLongCount = 0;
+	}
+	
+	/**
+	 * Mark the checkpoint being taken as complete.
+	 */
+	public void finish() {
+		this.mIsValid = true;
+	}
+	
+	/**
+	 * Start getting values back from the beginning.
+	 */
+	public void rewind() {
+		this.mIntCursor = 0;
+		this.mLongCursor = 0;
+	}
+	
+	/**
+	 * Write the checkpoint as zigzag variable length values, so that the small
+	 * values which make up most of it take a byte each.
+	 * 
+	 * @param out Stream to write to.
+	 * @throws IOException
+	 */
+	public void writeTo(final DataOutputStream out) throws IOException {
+		if (!this.mIsValid) {
+			throw new IOException("No checkpoint has been taken.");
+		}
+		
+		Recorder.writeVarLong(out, this.mIntCount);
+		for (int i = 0; i < this.mIntCount; i++) {
+			final int value = this.mInts[i];
+			Recorder.writeVarLong(out, ((value << 1) ^ (value >> 31)) & 0xFFFFFFFFL);
+		}
+		Recorder.writeVarLong(out, this.mLongCount);
+		for (int i = 0; i < this.mLongCount; i++) {
+			final long value = this.mLongs[i];
+			Recorder.writeVarLong(out, (value << 1) ^ (value >> 63));
+		}
+	}
+	
+	/**
+	 * Replace the checkpoint with one read from a stream.
+	 * 
+	 * @param in Stream written by {@link #writeTo(DataOutputStream)}.
+	 * @throws IOException
+	 */
+	public void readFrom(final DataInputStream in) throws IOException {
+		this.begin();
+		
+		final long intCount = Recorder.readVarLong(in);
+		if ((intCount < 0) || (intCount > Checkpoint.MAX_VALUES)) {
+			throw new IOException("Invalid checkpoint size: " + intCount);
+		}
+		for (int i = 0; i < intCount; i++) {
+			final int value = (int)Recorder.readVarLong(in);
+			this.putInt((value >>> 1) ^ -(value & 1));
+		}
+		
+		final long longCount = Recorder.readVarLong(in);
+		if ((longCount < 0) || (longCount > Checkpoint.MAX_VALUES)) {
+			throw new IOException("Invalid checkpoint size: " + longCount);
+		}
+		for (int i = 0; i < longCount; i++) {
+			final long value = Recorder.readVarLong(in);
+			this.putLong((value >>> 1) ^ -(value & 1));
+		}
+		
+		this.finish();
+	}
+	
+	/**
+	 * Put an integer value.
+	 * 
+	 * @param value Value.
+	 */
+	public void putInt(final int value) {
+		if (this.mIntCount == this.mInts.length) {
+			final int[] ints = new int[this.mInts.length * 2];
+			System.arraycopy(this.mInts, 0, ints, 0, this.mIntCount);
+			this.mInts = ints;
+		}
+		this.mInts[this.mIntCount++] = value;
+	}
+	
+	/**
+	 * Put a boolean value.
+	 * 
+	 * @param value Value.
+	 */
+	public void putBoolean(final boolean value) {
+		this.putInt(value ? 1 : 0);
+	}
+	
+	/**
+	 * Put a long value.
+	 * 
+	 * @param value Value.
+	 */
+	public void putLong(final long value) {
+		if (this.mLongCount == this.mLongs.length) {
+			final long[] longs = new long[this.mLongs.length * 2];
+			System.arraycopy(this.mLongs, 0, longs, 0, this.mLongCount);
+			this.mLongs = longs;
+		}
+		this.mLongs[this.mLongCount++] = value;
+	}
+	
+	/**
+	 * Get the next integer value.
+	 * 
+	 * @return Value.
+	 */
+	public int getInt() {
+		return this.mInts[this.mIntCursor++];
+	}
+	
+	/**
+	 * Get the next boolean value.
+	 * 
+	 * @return Value.
+	 */
+	public boolean getBoolean() {
+		return (this.getInt() != 0);
+	}
+	
+	/**
+	 * Get the next long value.
+	 * 
+	 * @return Value.
+	 */
+	public long getLong() {
+		return this.mLongs[this.mLongCursor++];
+	}
+}
@@ -151,6 +151,11 @@ public abstract class Entity {
 	 */
 	private static final String TAG = "WakkaWallpaper.Entity";
 	
+	/**
+	 * Every direction, cached since {@link Entity.Direction#values()} copies on each call.
+	 */
+	/*package*/static final Entity.Direction[] DIRECTIONS = Entity.Direction.values();
+	
 	/**
 	 * The Paint used to draw bitmap sprites to the screen.
 	 */
@@ -166,6 +171,55 @@ public abstract class Entity {
 	 */
 	/*package*/static final int SPRITE_HEIGHT = 100;
 	
+	/**
+	 * One whole cell in 16.16 fixed-point.
+	 */
+	/*package*/static final int FIXED_ONE = 1 << 16;
+	
+	/**
+	 * Speed kind of The Man.
+	 */
+	/*package*/static final int SPEED_THE_MAN = 0;
+	
+	/**
+	 * Speed kind of The Man while the ghosts are frightened.
+	 */
+	/*package*/static final int SPEED_THE_MAN_FRIGHTENED = 1;
+	
+	/**
+	 * Speed kind of a hunting ghost.
+	 */
+	/*package*/static final int SPEED_GHOST = 2;
+	
+	/**
+	 * Speed kind of a frightened ghost.
+	 */
+	/*package*/static final int SPEED_GHOST_FRIGHTENED = 3;
+	
+	/**
+	 * Speed kind of a ghost in a tunnel.
+	 */
+	/*package*/static final int SPEED_GHOST_TUNNEL = 4;
+	
+	/**
+	 * Speed of an eaten ghost heading home (in fixed-point cells per tick).
+	 */
+	/*package*/static final int SPEED_GHOST_EATEN = 2 * Entity.FIXED_ONE;
+	
+	/**
+	 * Speed of each kind on each level as a percentage of the original game's
+	 * full speed. Speeds are scaled so that The Man's level 1 speed is one
+	 * cell per tick, the pace every entity moved at before speeds varied, so
+	 * the faster levels move more than one cell in some ticks.
+	 */
+	private static final int[][] SPEED_PERCENTAGES = new int[][] {
+		/*                The Man, Frightened, Ghost, Frightened, Tunnel */
+		/* Level 1     */ {  80,  90,  75,  50,  40 },
+		/* Level 2-4   */ {  90,  95,  85,  55,  45 },
+		/* Level 5-20  */ { 100, 100,  95,  60,  50 },
+		/* Level 21+   */ {  90,  90,  95,  95,  50 },
+	};
+	
 	
 	
 	/**
@@ -178,6 +232,11 @@ public abstract class Entity {
 	 */
 	protected final PointF mLocation;
 	
+	/**
+	 * How far along the step towards the next cell we are, in 16.16 fixed-point cells.
+	 */
+	protected int mProgress;
+	
 	/**
 	 * Last direction travelled.
 	 */
@@ -252,8 +311,8 @@ public abstract class Entity {
 		this.mCellWidthOverTwo = this.mCellWidth / 2.0f;
 		this.mCellHeightOverTwo = this.mCellHeight / 2.0f;
 		
-		//Reset position to update location
-		this.setPosition(this.mPosition);
+		//Update location without losing our progress towards the next cell
+		this.updateLocation();
 
 		if (Wallpaper.LOG_VERBOSE) {
 			Log.v(Entity.TAG, "< performResize()");
@@ -295,9 +354,61 @@ public abstract class Entity {
 	 */
 	public void setPosition(final Point position) {
 		this.mPosition.set(position.x, position.y);
+		this.mProgress = 0;
 		this.mLocation.set((position.x * this.mCellWidth) + this.mCellWidthOverTwo, (position.y * this.mCellHeight) + this.mCellHeightOverTwo);
 	}
 	
+	/**
+	 * Get how far along the step towards the next cell we are.
+	 * 
+	 * @return Progress in 16.16 fixed-point cells.
+	 */
+	public int getProgress() {
+		return this.mProgress;
+	}
+	
+	/**
+	 * Put everything about our movement which changes during play in to a checkpoint.
+	 * 
+	 * @param checkpoint Checkpoint being taken.
+	 */
+	/*package*/void save(final Checkpoint checkpoint) {
+		checkpoint.putInt(this.mPosition.x);
+		checkpoint.putInt(this.mPosition.y);
+		checkpoint.putInt(this.mProgress);
+		checkpoint.putInt(Checkpoint.ordinal(this.mDirectionLast));
+		checkpoint.putInt(Checkpoint.ordinal(this.mDirectionCurrent));
+		checkpoint.putInt(Checkpoint.ordinal(this.mDirectionNext));
+		checkpoint.putInt(this.mTickCount);
+	}
+	
+	/**
+	 * Get back everything put by {@link #save(Checkpoint)}, in the same order.
+	 * 
+	 * @param checkpoint Checkpoint being restored.
+	 */
+	/*package*/void restore(final Checkpoint checkpoint) {
+		this.mPosition.x = checkpoint.getInt();
+		this.mPosition.y = checkpoint.getInt();
+		this.mProgress = checkpoint.getInt();
+		this.mDirectionLast = Entity.toDirection(checkpoint.getInt());
+		this.mDirectionCurrent = Entity.toDirection(checkpoint.getInt());
+		this.mDirectionNext = Entity.toDirection(checkpoint.getInt());
+		this.mTickCount = checkpoint.getInt();
+		
+		this.updateLocation();
+	}
+	
+	/**
+	 * Get how far we move each tick. Defaults to one cell.
+	 * 
+	 * @param game Game instance
+	 * @return Speed in 16.16 fixed-point cells per tick.
+	 */
+	protected int getSpeed(final Game game) {
+		return Entity.FIXED_ONE;
+	}
+	
 	/**
 	 * Test if this entity is occupying the same cell as another.
 	 * 
@@ -309,14 +420,34 @@ public abstract class Entity {
 	}
 
     /**
-     * Iterate the entity one step.
+     * Iterate the entity one step. We advance along the step towards the next
+     * cell by our speed and enter every cell which that carries us in to.
      * 
      * @param game Game instance
      * @throws SomethingIsCausingEntitiesToNullPointerException 
      */
 	public void tick(final Game game) throws SomethingIsCausingEntitiesToNullPointerException {
 		this.mTickCount += 1;
-
+		
+		this.mProgress += this.getSpeed(game);
+		while (this.mProgress >= Entity.FIXED_ONE) {
+			this.mProgress -= Entity.FIXED_ONE;
+			this.enter(game);
+		}
+		this.updateLocation();
+		
+		if (Wallpaper.LOG_VERBOSE) {
+			Log.v(Entity.TAG, "Position: (" + this.mPosition.x + "," + this.mPosition.y + ");  Location: (" + this.mLocation.x + "," + this.mLocation.y + ");  Direction: " + this.mDirectionCurrent + ";  Next: " + this.mDirectionNext);
+		}
+	}
+	
+	/**
+	 * Enter the next cell in our next direction.
+	 * 
+	 * @param game Game instance
+	 * @throws SomethingIsCausingEntitiesToNullPointerException 
+	 */
+	private void enter(final Game game) throws SomethingIsCausingEntitiesToNullPointerException {
 		if (this.mDirectionNext == null) {
 			Log.w(Entity.TAG, this.getClass().getSimpleName() + "'s next direction is null. This will result in a fatal error.");
 			Log.w(Entity.TAG, "Position: (" + this.mPosition.x + ", " + this.mPosition.y + ")");
@@ -339,7 +470,7 @@ public abstract class Entity {
 			params.append(this.mDirectionCurrent);
 			params.append("; DirectionNext = null}");
 			
-			//get this over with before the switch below throws it anyways
+			//get this over with before the step below throws it anyways
 			throw new SomethingIsCausingEntitiesToNullPointerException();
 		}
 		
@@ -350,61 +481,88 @@ public abstract class Entity {
 		//Next direction fallback. Will be set by implementing moved() method call.
 		this.mDirectionNext = null;
 		
-		//TODO: move this.mLocation based on this.mSpeed and this.mDirectionCurrent
-		switch (this.mDirectionCurrent) {
-			case NORTH:
-				this.mLocation.set((this.mPosition.x * this.mCellWidth) + this.mCellWidthOverTwo, ((this.mPosition.y - 1) * this.mCellHeight) + this.mCellHeightOverTwo);
-				break;
-			case SOUTH:
-				this.mLocation.set((this.mPosition.x * this.mCellWidth) + this.mCellWidthOverTwo, ((this.mPosition.y + 1) * this.mCellHeight) + this.mCellHeightOverTwo);
-				break;
-			case EAST:
-				this.mLocation.set(((this.mPosition.x + 1) * this.mCellWidth) + this.mCellWidthOverTwo, (this.mPosition.y * this.mCellHeight) + this.mCellHeightOverTwo);
-				break;
-			case WEST:
-				this.mLocation.set(((this.mPosition.x - 1) * this.mCellWidth) + this.mCellWidthOverTwo, (this.mPosition.y * this.mCellHeight) + this.mCellHeightOverTwo);
-				break;
+		this.stepPosition(game);
+		this.moved(game);
+	}
+	
+	/**
+	 * Move the position one cell in the current direction.
+	 * 
+	 * @param game Game instance
+	 */
+	private void stepPosition(final Game game) {
+		Entity.step(this.mPosition, this.mDirectionCurrent);
+		if (this.mIsWrapping) {
+    		//wrap past bounds positively and negatively
+    		if (this.mPosition.x < 0) {
+    			this.mPosition.x = game.getCellsWide() + this.mPosition.x;
+    		} else {
+    			this.mPosition.x %= game.getCellsWide();
+    		}
+    		if (this.mPosition.y < 0) {
+    			this.mPosition.y = game.getCellsTall() + this.mPosition.y;
+    		} else {
+    			this.mPosition.y %= game.getCellsTall();
+    		}
 		}
-		
-		//Move to next space if we are far enough
-		boolean moved = false;
-		if (this.mLocation.x >= ((this.mPosition.x + 1) * this.mCellWidth)) {
-			this.mPosition.x += 1;
-			moved = true;
-		} else if (this.mLocation.x < (this.mPosition.x * this.mCellWidth)) {
-			this.mPosition.x -= 1;
-			moved = true;
-		} else if (this.mLocation.y >= ((this.mPosition.y + 1) * this.mCellHeight)) {
-			this.mPosition.y += 1;
-			moved = true;
-		} else if (this.mLocation.y < (this.mPosition.y * this.mCellHeight)) {
-			this.mPosition.y -= 1;
-			moved = true;
+	}
+	
+	/**
+	 * Whether we are part of the way through a step towards the next cell.
+	 * 
+	 * @return Boolean.
+	 */
+	protected boolean isMidStep() {
+		return (this.mDirectionNext != null) && (this.mProgress > 0);
+	}
+	
+	/**
+	 * Turn back the way we came. Part of the way through a step we continue
+	 * from the cell being entered with the rest of the step ahead of us, so
+	 * that we do not jump on the screen. The cell is not eaten or otherwise
+	 * checked since we never reach its center.
+	 * 
+	 * @param game Game instance
+	 */
+	protected void reverse(final Game game) {
+		if (this.isMidStep()) {
+			this.mDirectionLast = this.mDirectionCurrent;
+			this.mDirectionCurrent = this.mDirectionNext;
+			this.stepPosition(game);
+			this.mProgress = Entity.FIXED_ONE - this.mProgress;
 		}
 		
-		if (moved) {
-			if (this.mIsWrapping) {
-	    		//wrap past bounds positively and negatively
-	    		if (this.mPosition.x < 0) {
-	    			this.mPosition.x = game.getCellsWide() + this.mPosition.x;
-	    		} else {
-	    			this.mPosition.x %= game.getCellsWide();
-	    		}
-	    		if (this.mPosition.y < 0) {
-	    			this.mPosition.y = game.getCellsTall() + this.mPosition.y;
-	    		} else {
-	    			this.mPosition.y %= game.getCellsTall();
-	    		}
-	    		//resets location coordinates
-	    		this.setPosition(this.mPosition);
+		this.mDirectionNext = this.mDirectionCurrent.getOpposite();
+		this.updateLocation();
+	}
+	
+	/**
+	 * Update the location from the position and how far along the step towards
+	 * the next cell we are.
+	 */
+	private void updateLocation() {
+		float x = (this.mPosition.x * this.mCellWidth) + this.mCellWidthOverTwo;
+		float y = (this.mPosition.y * this.mCellHeight) + this.mCellHeightOverTwo;
+		
+		if (this.isMidStep()) {
+			final float fraction = (float)this.mProgress / Entity.FIXED_ONE;
+			switch (this.mDirectionNext) {
+				case NORTH:
+					y -= fraction * this.mCellHeight;
+					break;
+				case SOUTH:
+					y += fraction * this.mCellHeight;
+					break;
+				case EAST:
+					x += fraction * this.mCellWidth;
+					break;
+				case WEST:
+					x -= fraction * this.mCellWidth;
+					break;
 			}
-			
-			this.moved(game);
 		}
 		
-		if (Wallpaper.LOG_VERBOSE) {
-			Log.v(Entity.TAG, "Position: (" + this.mPosition.x + "," + this.mPosition.y + ");  Location: (" + this.mLocation.x + "," + this.mLocation.y + ");  Direction: " + this.mDirectionCurrent + ";  Next: " + this.mDirectionNext);
-		}
+		this.mLocation.set(x, y);
 	}
 
     /**
@@ -438,6 +596,37 @@ public abstract class Entity {
 	
 	
 	
+	/**
+	 * Get a direction from its ordinal.
+	 * 
+	 * @param ordinal Ordinal or -1.
+	 * @return Direction or null if the ordinal is -1.
+	 */
+	/*package*/static Entity.Direction toDirection(final int ordinal) {
+		return (ordinal >= 0) ? Entity.DIRECTIONS[ordinal] : null;
+	}
+	
+	/**
+	 * Get the speed of a kind of movement on a level.
+	 * 
+	 * @param level Level number.
+	 * @param kind Speed kind.
+	 * @return Speed in 16.16 fixed-point cells per tick.
+	 */
+	/*package*/static int getLevelSpeed(final int level, final int kind) {
+		final int bracket;
+		if (level <= 1) {
+			bracket = 0;
+		} else if (level <= 4) {
+			bracket = 1;
+		} else if (level <= 20) {
+			bracket = 2;
+		} else {
+			bracket = 3;
+		}
+		return (Entity.SPEED_PERCENTAGES[bracket][kind] * Entity.FIXED_ONE) / Entity.SPEED_PERCENTAGES[0][Entity.SPEED_THE_MAN];
+	}
+	
 	/**
 	 * Update the point one step in the direction specified.
 	 * 
@@ -481,6 +670,32 @@ public abstract class Entity {
     	return newPoint;
     }
 	
+	/**
+	 * Move a point one step in a direction, in place.
+	 * 
+	 * @param point Point to move.
+	 * @param direction Direction in which to move the point.
+	 */
+	/*package*/static void step(final Point point, final Entity.Direction direction) {
+		switch (direction) {
+			case NORTH:
+				point.y -= 1;
+				break;
+				
+			case SOUTH:
+				point.y += 1;
+				break;
+				
+			case WEST:
+				point.x -= 1;
+				break;
+				
+			case EAST:
+				point.x += 1;
+				break;
+		}
+	}
+	
 	
 	
 	/**
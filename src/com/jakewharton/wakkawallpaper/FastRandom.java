@@ -0,0 +1,98 @@
+package com.jakewharton.wakkawallpaper;
+
+/**
+ * Small and fast pseudo-random number generator (xorshift64*) which is not
+ * thread-safe. Each game owns one so that a run can be reproduced from its seed.
+ * 
+ * @author Jake Wharton
+ */
+public final class FastRandom {
+	/**
+	 * Golden ratio increment used to scramble seeds.
+	 */
+	private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+	
+	/**
+	 * Multiplier applied to the output of each step.
+	 */
+	private static final long MULTIPLIER = 0x2545F4914F6CDD1DL;
+	
+	
+	
+	/**
+	 * Current generator state. Never zero.
+	 */
+	private long mState;
+	
+	
+	
+	/**
+	 * Create a new generator.
+	 * 
+	 * @param seed Seed.
+	 */
+	public FastRandom(final long seed) {
+		this.setSeed(seed);
+	}
+	
+	
+	
+	/**
+	 * Reset the generator to a seed. Seeds are scrambled (SplitMix64) so that
+	 * nearby seeds produce unrelated sequences.
+	 * 
+	 * @param seed Seed.
+	 */
+	public void setSeed(final long seed) {
+		long z = seed + FastRandom.GOLDEN_GAMMA;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		z = z ^ (z >>> 31);
+		
+		this.mState = (z != 0) ? z : FastRandom.GOLDEN_GAMMA;
+	}
+	
+	/**
+	 * Get the raw generator state. Two generators with the same state will
+	 * produce the same sequence.
+	 * 
+	 * @return State.
+	 */
+	public long getState() {
+		return this.mState;
+	}
+	
+	/**
+	 * Restore a raw generator state previously returned by {@link #getState()}.
+	 * 
+	 * @param state State.
+	 */
+	public void setState(final long state) {
+		this.mState = (state != 0) ? state : FastRandom.GOLDEN_GAMMA;
+	}
+	
+	/**
+	 * Get the next 64 random bits.
+	 * 
+	 * @return Long.
+	 */
+	public long nextLong() {
+		long x = this.mState;
+		x ^= x >>> 12;
+		x ^= x << 25;
+		x ^= x >>> 27;
+		this.mState = x;
+		return x * FastRandom.MULTIPLIER;
+	}
+	
+	/**
+	 * Get a uniformly distributed value between zero (inclusive) and a bound (exclusive).
+	 * 
+	 * @param bound Upper bound. Must be positive.
+	 * @return Integer.
+	 */
+	public int nextInt(final int bound) {
+		//Scale 31 random bits into range rather than using a biased and slow modulo
+		return (int)(((this.nextLong() >>> 33) * bound) >>> 31);
+	}
+}
@@ -2,11 +2,10 @@ package com.jakewharton.wakkawallpaper;
 
 import java.util.LinkedList;
 import java.util.List;
-import android.content.SharedPreferences;
-import android.content.res.Resources;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
 import android.graphics.Point;
 import android.graphics.Rect;
 import android.util.Log;
@@ -16,7 +15,7 @@ import android.util.Log;
  * 
  * @author Jake Wharton
  */
-public class Fruit extends Entity implements SharedPreferences.OnSharedPreferenceChangeListener {
+public class Fruit extends Entity implements Settings.Listener {
 	/**
 	 * The character that represents the fruit.
 	 * 
@@ -127,7 +126,12 @@ public class Fruit extends Entity implements SharedPreferences.OnSharedPreferenc
 	/**
 	 * Bitmap holding the fruit sprites.
 	 */
-	private Bitmap mFruits;
+	private LazyBitmap mFruits;
+	
+	/**
+	 * Paint used to draw the placeholder when the sprites are not available.
+	 */
+	private final Paint mPlaceholder;
 	
 	/**
 	 * List of possible board positions a fruit could appear in.
@@ -139,42 +143,46 @@ public class Fruit extends Entity implements SharedPreferences.OnSharedPreferenc
 	 */
     private boolean mIsTrophyEdenEnabled;
     
+    /**
+     * Game which owns the fruit. Provides the random numbers and clock.
+     */
+    private final Game mGame;
+    
     
 	
 	/**
 	 * Initialize a new fruit adhering to the parameters.
+	 * 
+	 * @param game Game which owns the fruit.
 	 */
-	public Fruit() {
+	public Fruit(final Game game) {
 		super();
 		
+		this.mGame = game;
+		
 		//We are fruit. We can't wrap.
 		this.mIsWrapping = false;
 		
 		this.mPositions = new LinkedList<Point>();
-
-        //Load all preferences or their defaults
-        Wallpaper.PREFERENCES.registerOnSharedPreferenceChangeListener(this);
-        this.onSharedPreferenceChanged(Wallpaper.PREFERENCES, null);
+		
+		this.mPlaceholder = new Paint(Paint.ANTI_ALIAS_FLAG);
+		this.mPlaceholder.setColor(Color.RED);
 	}
 
 	
 	
     /**
-     * Handle the changing of a preference.
+     * Handle the changing of one or more settings.
      */
-	public void onSharedPreferenceChanged(final SharedPreferences preferences, final String key) {
+	public void onSettingsChanged(final Settings settings, final Settings.Diff diff) {
 		if (Wallpaper.LOG_VERBOSE) {
-			Log.v(Fruit.TAG, "> onSharedPreferenceChanged()");
+			Log.v(Fruit.TAG, "> onSettingsChanged()");
 		}
 		
-		final boolean all = (key == null);
-		final Resources resources = Wallpaper.CONTEXT.getResources();
-		
 		boolean changed = false;
 		
-		final String thresholdFirst = Wallpaper.CONTEXT.getString(R.string.settings_game_fruitonethreshold_key);
-		if (all || key.equals(thresholdFirst)) {
-			this.mThresholdFirst = preferences.getInt(key, resources.getInteger(R.integer.game_fruitonethreshold_default));
+		if (diff.contains(Settings.GAME_FRUIT_ONE_THRESHOLD)) {
+			this.mThresholdFirst = settings.getInt(Settings.GAME_FRUIT_ONE_THRESHOLD);
 			changed = true;
 			
 			if (Wallpaper.LOG_DEBUG) {
@@ -182,9 +190,8 @@ public class Fruit extends Entity implements SharedPreferences.OnSharedPreferenc
 			}
 		}
 
-		final String thresholdSecond = Wallpaper.CONTEXT.getString(R.string.settings_game_fruittwothreshold_key);
-		if (all || key.equals(thresholdSecond)) {
-			this.mThresholdSecond = preferences.getInt(key, resources.getInteger(R.integer.game_fruittwothreshold_default));
+		if (diff.contains(Settings.GAME_FRUIT_TWO_THRESHOLD)) {
+			this.mThresholdSecond = settings.getInt(Settings.GAME_FRUIT_TWO_THRESHOLD);
 			changed = true;
 			
 			if (Wallpaper.LOG_DEBUG) {
@@ -192,9 +199,8 @@ public class Fruit extends Entity implements SharedPreferences.OnSharedPreferenc
 			}
 		}
 		
-		final String visibleLower = Wallpaper.CONTEXT.getString(R.string.settings_game_fruitvisiblelower_key);
-		if (all || key.equals(visibleLower)) {
-			this.mVisibleLower = preferences.getInt(key, resources.getInteger(R.integer.game_fruitvisiblelower_default));
+		if (diff.contains(Settings.GAME_FRUIT_VISIBLE_LOWER)) {
+			this.mVisibleLower = settings.getInt(Settings.GAME_FRUIT_VISIBLE_LOWER);
 			changed = true;
 			
 			if (Wallpaper.LOG_DEBUG) {
@@ -202,9 +208,8 @@ public class Fruit extends Entity implements SharedPreferences.OnSharedPreferenc
 			}
 		}
 		
-		final String visibleUpper = Wallpaper.CONTEXT.getString(R.string.settings_game_fruitvisibleupper_key);
-		if (all || key.equals(visibleUpper)) {
-			this.mVisibleUpper = preferences.getInt(key, resources.getInteger(R.integer.game_fruitvisibleupper_default));
+		if (diff.contains(Settings.GAME_FRUIT_VISIBLE_UPPER)) {
+			this.mVisibleUpper = settings.getInt(Settings.GAME_FRUIT_VISIBLE_UPPER);
 			changed = true;
 			
 			if (Wallpaper.LOG_DEBUG) {
@@ -212,30 +217,24 @@ public class Fruit extends Entity implements SharedPreferences.OnSharedPreferenc
 			}
 		}
 		
-		final String trophyGoogol = Wallpaper.CONTEXT.getString(R.string.trophy_googol_key);
-		if (all || key.equals(trophyGoogol)) {
-			final boolean enabled = preferences.getBoolean(trophyGoogol, resources.getBoolean(R.bool.trophy_googol_default));
+		if (diff.contains(Settings.TROPHY_GOOGOL)) {
+			final boolean enabled = settings.getBoolean(Settings.TROPHY_GOOGOL);
 			
 			if (enabled) {
 				this.mCharacter = Fruit.Character.GOOGOL;
 
-				//Load the fruit sprites
-				final BitmapFactory.Options options = new BitmapFactory.Options();
-				options.inScaled = false;
-				this.mFruits = BitmapFactory.decodeResource(Wallpaper.CONTEXT.getResources(), R.drawable.googol_fruit, options);
+				//Fruit sprites are decoded when first drawn
+				this.mFruits = new LazyBitmap(R.drawable.googol_fruit);
 			} else {
 				this.mCharacter = Fruit.Character.FRUIT;
 				
-				//Load the fruit sprites
-				final BitmapFactory.Options options = new BitmapFactory.Options();
-				options.inScaled = false;
-				this.mFruits = BitmapFactory.decodeResource(Wallpaper.CONTEXT.getResources(), R.drawable.fruits, options);
+				//Fruit sprites are decoded when first drawn
+				this.mFruits = new LazyBitmap(R.drawable.fruits);
 			}
 		}
 		
-		final String trophyEden = resources.getString(R.string.trophy_eden_key);
-		if (all || key.equals(trophyEden)) {
-			this.mIsTrophyEdenEnabled = preferences.getBoolean(trophyEden, resources.getBoolean(R.bool.trophy_eden_default));
+		if (diff.contains(Settings.TROPHY_EDEN)) {
+			this.mIsTrophyEdenEnabled = settings.getBoolean(Settings.TROPHY_EDEN);
 		}
 		
 		
@@ -244,7 +243,7 @@ public class Fruit extends Entity implements SharedPreferences.OnSharedPreferenc
 		}
         
 		if (Wallpaper.LOG_VERBOSE) {
-			Log.v(Fruit.TAG, "> onSharedPreferenceChanged()");
+			Log.v(Fruit.TAG, "< onSettingsChanged()");
 		}
 	}
 	
@@ -273,9 +272,9 @@ public class Fruit extends Entity implements SharedPreferences.OnSharedPreferenc
 	private void hide() {
 		if (this.mIsTrophyEdenEnabled) {
 			//Randomize next fruit
-			this.mType = Fruit.Type.values()[Game.RANDOM.nextInt(Fruit.Type.values().length)];
+			this.mType = Fruit.Type.values()[this.mGame.getRandom().nextInt(Fruit.Type.values().length)];
 			
-			if (this.mPositions != null) {
+			if (!this.mPositions.isEmpty()) {
 				//Show it!
 				this.show();
 			}
@@ -314,15 +313,36 @@ public class Fruit extends Entity implements SharedPreferences.OnSharedPreferenc
     		}
     	}
     	
-    	if (this.mIsTrophyEdenEnabled) {
+    	if (this.mIsTrophyEdenEnabled && !this.mPositions.isEmpty()) {
     		this.show();
     	}
     }
 	
+	@Override
+	/*package*/void save(final Checkpoint checkpoint) {
+		super.save(checkpoint);
+		checkpoint.putInt(Checkpoint.ordinal(this.mType));
+		checkpoint.putLong(this.mCreated);
+		checkpoint.putBoolean(this.mIsVisible);
+		checkpoint.putInt(this.mVisibleLength);
+		checkpoint.putInt(this.mNumberDisplayed);
+	}
+	
+	@Override
+	/*package*/void restore(final Checkpoint checkpoint) {
+		super.restore(checkpoint);
+		final int type = checkpoint.getInt();
+		this.mType = (type >= 0) ? Fruit.Type.values()[type] : null;
+		this.mCreated = checkpoint.getLong();
+		this.mIsVisible = checkpoint.getBoolean();
+		this.mVisibleLength = checkpoint.getInt();
+		this.mNumberDisplayed = checkpoint.getInt();
+	}
+	
 	@Override
 	public void tick(final Game game) {
 		if (this.mIsVisible) {
-			if ((System.currentTimeMillis() - this.mCreated) > this.mVisibleLength) {
+			if ((game.getTime() - this.mCreated) > this.mVisibleLength) {
 				this.hide();
 			}
 		} else {
@@ -339,9 +359,9 @@ public class Fruit extends Entity implements SharedPreferences.OnSharedPreferenc
 	private void show() {
 	    this.mIsVisible = true;
 	    this.mNumberDisplayed += 1;
-	    this.mVisibleLength = Game.RANDOM.nextInt(this.mVisibleUpper - this.mVisibleLower + 1) + this.mVisibleLower;
-	    this.setPosition(this.mPositions.get(Game.RANDOM.nextInt(this.mPositions.size())));
-	    this.mCreated = System.currentTimeMillis();
+	    this.mVisibleLength = this.mGame.getRandom().nextInt(this.mVisibleUpper - this.mVisibleLower + 1) + this.mVisibleLower;
+	    this.setPosition(this.mPositions.get(this.mGame.getRandom().nextInt(this.mPositions.size())));
+	    this.mCreated = this.mGame.getTime();
     }
 
 	@Override
@@ -350,17 +370,23 @@ public class Fruit extends Entity implements SharedPreferences.OnSharedPreferenc
 			c.save();
 			c.translate(this.mLocation.x - this.mCellWidthOverTwo, this.mLocation.y - this.mCellHeightOverTwo);
 			
-			switch (this.mCharacter) {
-				case FRUIT:
-					//two to four daily servings...
-					c.drawBitmap(this.mFruits, this.mType.sprite, game.getCellSize(), null);
-					break;
-					
-				case GOOGOL:
-			    	c.setDrawFilter(Game.FILTER_SET);
-					c.drawBitmap(this.mFruits, null, game.getCellSize(), Entity.SPRITE_PAINT);
-			    	c.setDrawFilter(Game.FILTER_REMOVE);
-					break;
+			final Bitmap fruits = this.mFruits.get();
+			if (fruits == null) {
+				//Placeholder for when the sprites could not be decoded
+				c.drawCircle(this.mCellWidthOverTwo, this.mCellHeightOverTwo, Math.min(this.mCellWidthOverTwo, this.mCellHeightOverTwo) / 2.0f, this.mPlaceholder);
+			} else {
+				switch (this.mCharacter) {
+					case FRUIT:
+						//two to four daily servings...
+						c.drawBitmap(fruits, this.mType.sprite, game.getCellSize(), null);
+						break;
+						
+					case GOOGOL:
+				    	c.setDrawFilter(Game.FILTER_SET);
+						c.drawBitmap(fruits, null, game.getCellSize(), Entity.SPRITE_PAINT);
+				    	c.setDrawFilter(Game.FILTER_REMOVE);
+						break;
+				}
 			}
 			
 			c.restore();
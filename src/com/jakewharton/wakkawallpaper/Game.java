@@ -1,19 +1,20 @@
 package com.jakewharton.wakkawallpaper;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.text.DecimalFormat;
 import java.text.NumberFormat;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Random;
-import com.jakewharton.utilities.WidgetLocationsPreference;
 import com.jakewharton.wakkawallpaper.Entity.SomethingIsCausingEntitiesToNullPointerException;
 import android.app.Notification;
 import android.app.NotificationManager;
 import android.app.PendingIntent;
 import android.content.Context;
 import android.content.Intent;
-import android.content.SharedPreferences;
 import android.content.res.Resources;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
@@ -33,7 +34,7 @@ import android.widget.Toast;
  * 
  * @author Jake Wharton
  */
-public class Game implements SharedPreferences.OnSharedPreferenceChangeListener {
+public class Game implements Settings.Listener {
 	/**
 	 * Represents a single cell on the game board.
 	 * 
@@ -177,11 +178,6 @@ public class Game implements SharedPreferences.OnSharedPreferenceChangeListener
 	
 	
 	
-	/**
-	 * Single random number generate for this wallpaper.
-	 */
-	/*package*/static final Random RANDOM = new Random();
-	
 	/**
 	 * Filters used to smooth the drawing of sprites.
 	 */
@@ -217,6 +213,42 @@ public class Game implements SharedPreferences.OnSharedPreferenceChangeListener
 	 */
 	private static final int POINTS_ALL_FLEEING_GHOSTS = 12000;
 	
+	/**
+	 * Times in a row recovery may be attempted without a tick completing.
+	 */
+	private static final int MAX_RECOVERIES = 3;
+	
+	/**
+	 * Magic number at the start of a saved game ("WKKS").
+	 */
+	private static final int STATE_MAGIC = 0x574B4B53;
+	
+	/**
+	 * Version of the saved game format. Version 2 moved the board out of the
+	 * checkpoint to follow it. Version 3 added the kill screen.
+	 */
+	private static final int STATE_VERSION = 3;
+	
+	/**
+	 * Bits used for each cell of the board in a saved game.
+	 */
+	private static final int CELL_BITS = 3;
+	
+	/**
+	 * Cells of the board packed in to each saved game value.
+	 */
+	private static final int CELLS_PER_VALUE = 10;
+	
+	/**
+	 * Every cell type, cached since {@link Game.Cell#values()} copies on each call.
+	 */
+	private static final Game.Cell[] CELLS = Game.Cell.values();
+	
+	/**
+	 * Every fruit type, cached since {@link Fruit.Type#values()} copies on each call.
+	 */
+	private static final Fruit.Type[] FRUIT_TYPES = Fruit.Type.values();
+	
 	/**
 	 * Padding (in pixels) from the screen edges for the HUD.
 	 */
@@ -237,6 +269,21 @@ public class Game implements SharedPreferences.OnSharedPreferenceChangeListener
 	 */
 	private static final int NUMBER_OF_JUGGERDOTS = 4;
 	
+	/**
+	 * Dirty bit for the background image crop.
+	 */
+	private static final int DIRTY_BACKGROUND = 1;
+	
+	/**
+	 * Dirty bit for the cell size and entity metrics.
+	 */
+	private static final int DIRTY_METRICS = 2;
+	
+	/**
+	 * Dirty bit for the wall geometry.
+	 */
+	private static final int DIRTY_WALLS = 4;
+	
 	/**
 	 * Level at which to display the kill screen.
 	 */
@@ -272,6 +319,11 @@ public class Game implements SharedPreferences.OnSharedPreferenceChangeListener
 	 */
 	private static final int KILL_SCREEN_TROPHY_PROBABILITY = 10;
 	
+	/**
+	 * Danger distance of a cell which no hunting ghost can reach.
+	 */
+	/*package*/static final int DANGER_NONE = Integer.MAX_VALUE;
+	
 	
 	
 	/**
@@ -305,10 +357,65 @@ public class Game implements SharedPreferences.OnSharedPreferenceChangeListener
 	private boolean mIsWrappingGhosts;
 	
 	/**
-	 * The system milliseconds at which the game state last changed.
+	 * The game time at which the game state last changed.
 	 */
 	private long mStateTimestamp;
 	
+	/**
+	 * Seed the random number generator was created with.
+	 */
+	private final long mSeed;
+	
+	/**
+	 * Random number generator for this game and its entities.
+	 */
+	private final FastRandom mRandom;
+	
+	/**
+	 * Milliseconds elapsed on the game clock as of the current tick.
+	 */
+	private long mTime;
+	
+	/**
+	 * System milliseconds which correspond to zero on the game clock.
+	 */
+	private long mEpoch;
+	
+	/**
+	 * Whether the game was given its settings directly rather than listening for them.
+	 */
+	private final boolean mIsHeadless;
+	
+	/**
+	 * Most recent settings snapshot delivered to the game.
+	 */
+	private Settings mSettings;
+	
+	/**
+	 * Recorder capturing the game for later playback, if any.
+	 */
+	private Recorder mRecorder;
+	
+	/**
+	 * Recorded AI decisions still to be played back or null if this game is not a playback.
+	 */
+	private LinkedList<Entity.Direction> mReplayedDecisions;
+	
+	/**
+	 * Performance overlay drawn over the game or null if disabled.
+	 */
+	private Overlay mOverlay;
+	
+	/**
+	 * State at the start of the current tick for recovering from entity failures.
+	 */
+	private final Checkpoint mCheckpoint;
+	
+	/**
+	 * Times recovery has been attempted since a tick last completed.
+	 */
+	private int mRecoveries;
+	
 	/**
 	 * Number of cells on the board horizontally.
 	 */
@@ -354,6 +461,11 @@ public class Game implements SharedPreferences.OnSharedPreferenceChangeListener
      */
     private boolean mIsLandscape;
     
+    /**
+     * Derived data which needs to be rebuilt.
+     */
+    private int mDirty;
+    
     /**
      * Number of icon rows on the launcher.
      */
@@ -379,6 +491,103 @@ public class Game implements SharedPreferences.OnSharedPreferenceChangeListener
      */
 	private Game.Cell[][] mBoard;
 	
+	/**
+	 * Indices (y * width + x) of every blank cell on the board, densely packed.
+	 */
+	private int[] mBlankCells;
+	
+	/**
+	 * Position of each cell within {@link #mBlankCells} or -1 if it is not blank.
+	 */
+	private int[] mBlankIndex;
+	
+	/**
+	 * Number of blank cells on the board.
+	 */
+	private int mBlankCount;
+	
+	/**
+	 * Copy of the board, indexed by cell, which the checkpoint's board changes are replayed on to.
+	 */
+	private Game.Cell[] mBaseBoard;
+	
+	/**
+	 * Copy of {@link #mBlankCells} taken along with {@link #mBaseBoard}.
+	 */
+	private int[] mBaseBlankCells;
+	
+	/**
+	 * Copy of {@link #mBlankCount} taken along with {@link #mBaseBoard}.
+	 */
+	private int mBaseBlankCount;
+	
+	/**
+	 * Whether the board was written directly (e.g., by a new level) or the change log filled up since the base was copied.
+	 */
+	private boolean mIsBaseStale;
+	
+	/**
+	 * Every cell set since the base was copied, in order, as its index times the
+	 * number of cell types plus the ordinal of its new value. Sized once to the
+	 * number of cells and never grown.
+	 */
+	private int[] mBoardChanges;
+	
+	/**
+	 * Number of entries in {@link #mBoardChanges}.
+	 */
+	private int mBoardChangeCount;
+	
+	/**
+	 * Number of times the routes have been rebuilt, identifying the walls and wrapping they match.
+	 */
+	private int mRoutesGeneration;
+	
+	/**
+	 * Distance (in cells) from each cell to the nearest hunting ghost, recalculated every tick.
+	 */
+	private int[] mDanger;
+	
+	/**
+	 * Queue used when calculating {@link #mDanger}.
+	 */
+	private int[] mDangerQueue;
+	
+	/**
+	 * Point reused when calculating {@link #mDanger}.
+	 */
+	private final Point mDangerPosition;
+	
+	/**
+	 * Shortest routes between every pair of cells for the ghosts.
+	 */
+	private final Routes mRoutes;
+	
+	/**
+	 * Whether or not ghosts follow the shortest path to their target.
+	 */
+	private boolean mIsGhostPathfinding;
+	
+	/**
+	 * Point reused when looking up routes.
+	 */
+	private final Point mRouteTarget;
+	
+	/**
+	 * Point reused when testing for tunnels.
+	 */
+	private final Point mTunnelPosition;
+	
+	/**
+	 * Junction graph of the board as The Man can travel it.
+	 */
+	private final Junctions mTheManJunctions;
+	
+	/**
+	 * Junction graph of the board as the ghosts can travel it.
+	 */
+	private final Junctions mGhostJunctions;
+	
 	/**
 	 * The Man instance.
 	 */
@@ -394,6 +603,11 @@ public class Game implements SharedPreferences.OnSharedPreferenceChangeListener
 	 */
 	private Ghost[] mGhosts;
 	
+	/**
+	 * Swarm ghosts (if any) in addition to the classic ones.
+	 */
+	private final Swarm mSwarm;
+	
 	/**
 	 * Whether or not running into a ghost is deadly.
 	 */
@@ -554,6 +768,11 @@ public class Game implements SharedPreferences.OnSharedPreferenceChangeListener
      */
     private long mTickCount;
     
+    /**
+     * Number of dots and juggerdots eaten this game across all levels.
+     */
+    private int mDotsEatenTotal;
+    
     /**
      * Number of frames to hold a juggerdot blink state before toggling it.
      */
@@ -597,12 +816,12 @@ public class Game implements SharedPreferences.OnSharedPreferenceChangeListener
     /**
      * Bitmap of Andy.
      */
-    private Bitmap mAndy;
+    private LazyBitmap mAndy;
     
     /**
      * Bitmap of the kill screen.
      */
-    private Bitmap mKillScreen;
+    private LazyBitmap mKillScreen;
     
     /**
      * Set of fruits eaten this game.
@@ -612,7 +831,7 @@ public class Game implements SharedPreferences.OnSharedPreferenceChangeListener
     /**
      * Bitmap sprites used for the dots.
      */
-    private Bitmap mDotSprite;
+    private LazyBitmap mDotSprite;
     
     /**
      * Whether or not the Legend trophy is enabled.
@@ -647,13 +866,29 @@ public class Game implements SharedPreferences.OnSharedPreferenceChangeListener
     
     
     /**
-     * Create a new game.
+     * Create a new game with a random seed.
      */
     public Game() {
+    	this(System.nanoTime(), null);
+    }
+    
+    /**
+     * Create a new game. Given the same seed, settings, inputs, and tick times
+     * a game will play out identically.
+     * 
+     * @param seed Random number generator seed.
+     * @param settings Fixed settings for a headless game or null to listen for the user's.
+     */
+    public Game(final long seed, final Settings settings) {
     	if (Wallpaper.LOG_VERBOSE) {
-    		Log.v(Game.TAG, "> Game()");
+    		Log.v(Game.TAG, "> Game(seed = " + seed + ", headless = " + (settings != null) + ")");
     	}
     	
+    	this.mSeed = seed;
+    	this.mIsHeadless = (settings != null);
+    	this.mRandom = new FastRandom(seed);
+    	this.mEpoch = System.currentTimeMillis();
+    	
     	final Resources resources = Wallpaper.CONTEXT.getResources();
     	
         //Create Paints
@@ -670,6 +905,13 @@ public class Game implements SharedPreferences.OnSharedPreferenceChangeListener
         this.mTextReady = resources.getString(R.string.ready);
         this.mTextGameOver = resources.getString(R.string.gameover);
         this.mTextLocation = new PointF();
+        this.mDangerPosition = new Point();
+        this.mRoutes = new Routes();
+        this.mRouteTarget = new Point();
+        this.mTunnelPosition = new Point();
+        this.mCheckpoint = new Checkpoint();
+        this.mTheManJunctions = new Junctions();
+        this.mGhostJunctions = new Junctions();
         
         this.mCellSize = new RectF(0, 0, 0, 0);
         
@@ -679,11 +921,15 @@ public class Game implements SharedPreferences.OnSharedPreferenceChangeListener
         
         //Create "The Man" and fruit
     	this.mTheMan = new TheMan();
-    	this.mFruit = new Fruit();
+    	this.mFruit = new Fruit(this);
+    	this.mSwarm = new Swarm();
         
-        //Load all preferences or their defaults
-        Wallpaper.PREFERENCES.registerOnSharedPreferenceChangeListener(this);
-        this.onSharedPreferenceChanged(Wallpaper.PREFERENCES, null);
+        if (this.mIsHeadless) {
+        	this.onSettingsChanged(settings, Settings.Diff.ALL);
+        } else {
+	        //Load all settings (delivered immediately upon registering)
+	        Wallpaper.SETTINGS.register(this);
+        }
 
     	if (Wallpaper.LOG_VERBOSE) {
     		Log.v(Game.TAG, "< Game()");
@@ -693,28 +939,40 @@ public class Game implements SharedPreferences.OnSharedPreferenceChangeListener
     
     
     /**
-     * Handle the changing of a preference.
+     * Handle the changing of one or more settings.
      */
-	public void onSharedPreferenceChanged(final SharedPreferences preferences, final String key) {
+	public void onSettingsChanged(final Settings settings, final Settings.Diff diff) {
     	if (Wallpaper.LOG_VERBOSE) {
-    		Log.v(Game.TAG, "> onSharedPreferenceChanged()");
+    		Log.v(Game.TAG, "> onSettingsChanged()");
+    	}
+    	
+    	this.mSettings = settings;
+    	if (this.mRecorder != null) {
+    		this.mRecorder.recordSettings(settings);
     	}
     	
-		final boolean all = (key == null);
-		final Resources resources = Wallpaper.CONTEXT.getResources();
+    	//Trickle down to the entities we own
+    	this.mTheMan.onSettingsChanged(settings, diff);
+    	this.mFruit.onSettingsChanged(settings, diff);
+    	this.mSwarm.onSettingsChanged(settings, diff);
+    	if ((this.mGhosts != null) && !diff.contains(Settings.GAME_GHOST_COUNT)) {
+    		for (final Ghost ghost : this.mGhosts) {
+    			ghost.onSettingsChanged(settings, diff);
+    		}
+    	}
 
 		boolean hasBonusChanged = false;
         boolean hasGhostCountChanged = false;
+        boolean hasSwarmChanged = false;
 		boolean hasLayoutChanged = false;
-		boolean hasGraphicsChanged = false;
 		boolean hasModeChanged = false;
+		boolean hasRoutesChanged = false;
 
 		
 		// GENERAL //
 		
-		final String mode = resources.getString(R.string.settings_game_mode_key);
-		if (all || key.equals(mode)) {
-			this.mMode = Game.Mode.parseInt(preferences.getInt(mode, resources.getInteger(R.integer.game_mode_default)));
+		if (diff.contains(Settings.GAME_MODE)) {
+			this.mMode = settings.getGameMode();
 			hasModeChanged = true;
 			
 			if (Wallpaper.LOG_DEBUG) {
@@ -722,54 +980,64 @@ public class Game implements SharedPreferences.OnSharedPreferenceChangeListener
 			}
 		}
 		
-		final String wrappingMode = resources.getString(R.string.settings_game_wrappingmode_key);
-		if (all || key.equals(wrappingMode)) {
-			this.mWrapping = Game.Wrapping.parseInt(preferences.getInt(wrappingMode, resources.getInteger(R.integer.game_wrappingmode_default)));
+		if (diff.contains(Settings.GAME_WRAPPING_MODE)) {
+			this.mWrapping = settings.getWrapping();
+			hasRoutesChanged = true;
 			
 			if (Wallpaper.LOG_DEBUG) {
 				Log.d(Game.TAG, "Wrapping: " + this.mWrapping);
 			}
 		}
 		
-		final String wrappingTheMan = resources.getString(R.string.settings_game_wrappingtheman_key);
-		if (all || key.equals(wrappingTheMan)) {
-			this.mIsWrappingTheMan = preferences.getBoolean(wrappingTheMan, resources.getBoolean(R.bool.game_wrappingtheman_default));
+		if (diff.contains(Settings.GAME_GHOST_PATHFINDING)) {
+			this.mIsGhostPathfinding = settings.getBoolean(Settings.GAME_GHOST_PATHFINDING);
+			if (this.mIsGhostPathfinding) {
+				hasRoutesChanged = true;
+			} else {
+				this.mRoutes.releaseNextHops();
+			}
+			
+			if (Wallpaper.LOG_DEBUG) {
+				Log.d(Game.TAG, "Is Ghost Pathfinding: " + this.mIsGhostPathfinding);
+			}
+		}
+		
+		if (diff.contains(Settings.GAME_WRAPPING_THEMAN)) {
+			this.mIsWrappingTheMan = settings.getBoolean(Settings.GAME_WRAPPING_THEMAN);
+			hasRoutesChanged = true;
 			
 			if (Wallpaper.LOG_DEBUG) {
 				Log.d(Game.TAG, "Is Wrapping The Man: " + this.mIsWrappingTheMan);
 			}
 		}
 		
-		final String wrappingGhosts = resources.getString(R.string.settings_game_wrappingghosts_key);
-		if (all || key.equals(wrappingGhosts)) {
-			this.mIsWrappingGhosts = preferences.getBoolean(wrappingGhosts, resources.getBoolean(R.bool.game_wrappingghosts_default));
+		if (diff.contains(Settings.GAME_WRAPPING_GHOSTS)) {
+			this.mIsWrappingGhosts = settings.getBoolean(Settings.GAME_WRAPPING_GHOSTS);
+			hasRoutesChanged = true;
 			
 			if (Wallpaper.LOG_DEBUG) {
 				Log.d(Game.TAG, "Is Wrapping Ghosts: " + this.mIsWrappingGhosts);
 			}
 		}
 		
-		final String endlessDotThreshold = resources.getString(R.string.settings_game_endlessdotregen_key);
-		if (all || key.equals(endlessDotThreshold)) {
-			this.mEndlessDotThresholdPercent = preferences.getInt(endlessDotThreshold, resources.getInteger(R.integer.game_endlessdotregen_default));
+		if (diff.contains(Settings.GAME_ENDLESS_DOT_REGEN)) {
+			this.mEndlessDotThresholdPercent = settings.getInt(Settings.GAME_ENDLESS_DOT_REGEN);
 			
 			if (Wallpaper.LOG_DEBUG) {
 				Log.d(Game.TAG, "Endless Dot Threshold (%): " + this.mEndlessDotThresholdPercent);
 			}
 		}
 		
-		final String endlessJuggerdotThreshold = resources.getString(R.string.settings_game_endlessjuggerdotregen_key);
-		if (all || key.equals(endlessJuggerdotThreshold)) {
-			this.mEndlessJuggerdotThreshold = preferences.getInt(endlessJuggerdotThreshold, resources.getInteger(R.integer.game_endlessjuggerdotregen_default));
+		if (diff.contains(Settings.GAME_ENDLESS_JUGGERDOT_REGEN)) {
+			this.mEndlessJuggerdotThreshold = settings.getInt(Settings.GAME_ENDLESS_JUGGERDOT_REGEN);
 			
 			if (Wallpaper.LOG_DEBUG) {
 				Log.d(Game.TAG, "Endless Juggerdot Threshold: " + this.mEndlessJuggerdotThreshold);
 			}
 		}
 		
-		final String juggerdotBlink = resources.getString(R.string.settings_display_juggerdotblink_key);
-		if (all || key.equals(juggerdotBlink)) {
-			this.mJuggerdotBlinkInterval = preferences.getInt(juggerdotBlink, resources.getInteger(R.integer.display_juggerdotblink_default));
+		if (diff.contains(Settings.DISPLAY_JUGGERDOT_BLINK)) {
+			this.mJuggerdotBlinkInterval = settings.getInt(Settings.DISPLAY_JUGGERDOT_BLINK);
 			this.mJuggerdotBlinkLength = this.mJuggerdotBlinkInterval * 2;
 			
 			if (Wallpaper.LOG_DEBUG) {
@@ -777,18 +1045,16 @@ public class Game implements SharedPreferences.OnSharedPreferenceChangeListener
 			}
 		}
 		
-		final String showWalls = resources.getString(R.string.settings_display_showwalls_key);
-		if (all || key.equals(showWalls)) {
-			this.mIsDisplayingWalls = preferences.getBoolean(showWalls, resources.getBoolean(R.bool.display_showwalls_default));
+		if (diff.contains(Settings.DISPLAY_SHOW_WALLS)) {
+			this.mIsDisplayingWalls = settings.getBoolean(Settings.DISPLAY_SHOW_WALLS);
 			
 			if (Wallpaper.LOG_DEBUG) {
 				Log.d(Game.TAG, "Is Displaying Walls: " + this.mIsDisplayingWalls);
 			}
 		}
 		
-		final String bonusAllowed = resources.getString(R.string.settings_game_bonuslife_key);
-		if (all || key.equals(bonusAllowed)) {
-			this.mIsBonusLifeAllowed = preferences.getBoolean(bonusAllowed, resources.getBoolean(R.bool.game_bonuslife_default));
+		if (diff.contains(Settings.GAME_BONUS_LIFE)) {
+			this.mIsBonusLifeAllowed = settings.getBoolean(Settings.GAME_BONUS_LIFE);
 			hasBonusChanged = true;
 			
 			if (Wallpaper.LOG_DEBUG) {
@@ -796,9 +1062,8 @@ public class Game implements SharedPreferences.OnSharedPreferenceChangeListener
 			}
 		}
         
-		final String bonusThreshold = resources.getString(R.string.settings_game_bonuslifethreshold_key);
-		if (all || key.equals(bonusThreshold)) {
-			this.mBonusLifeThreshold = preferences.getInt(bonusThreshold, resources.getInteger(R.integer.game_bonuslifethreshold_default));
+		if (diff.contains(Settings.GAME_BONUS_LIFE_THRESHOLD)) {
+			this.mBonusLifeThreshold = settings.getInt(Settings.GAME_BONUS_LIFE_THRESHOLD);
 			hasBonusChanged = true;
 			
 			if (Wallpaper.LOG_DEBUG) {
@@ -806,45 +1071,44 @@ public class Game implements SharedPreferences.OnSharedPreferenceChangeListener
 			}
 		}
 		
-		final String fruitEnabled = resources.getString(R.string.settings_game_fruitenabled_key);
-		if (all || key.equals(fruitEnabled)) {
-			this.mIsFruitEnabled = preferences.getBoolean(fruitEnabled, resources.getBoolean(R.bool.game_fruitenabled_default));
+		if (diff.contains(Settings.GAME_FRUIT_ENABLED)) {
+			this.mIsFruitEnabled = settings.getBoolean(Settings.GAME_FRUIT_ENABLED);
 			
 			if (Wallpaper.LOG_DEBUG) {
 				Log.d(Game.TAG, "Is Fruit Enabled: " + this.mIsFruitEnabled);
 			}
 		}
         
-        final String killScreen = resources.getString(R.string.settings_game_killscreen_key);
-        if (all || key.equals(killScreen)) {
-        	this.mIsKillScreenEnabled = preferences.getBoolean(killScreen, resources.getBoolean(R.bool.game_killscreen_default));
+        if (diff.contains(Settings.GAME_KILL_SCREEN)) {
+        	this.mIsKillScreenEnabled = settings.getBoolean(Settings.GAME_KILL_SCREEN);
         	
         	if (Wallpaper.LOG_DEBUG) {
         		Log.d(Game.TAG, "Is Kill Screen Enabled: " + this.mIsKillScreenEnabled);
         	}
         }
         
-        final String ghostsDeadly = resources.getString(R.string.settings_game_deadlyghosts_key);
-        if (all || key.equals(ghostsDeadly)) {
-        	this.mIsGhostDeadly = preferences.getBoolean(ghostsDeadly, resources.getBoolean(R.bool.game_deadlyghosts_default));
+        if (diff.contains(Settings.GAME_DEADLY_GHOSTS)) {
+        	this.mIsGhostDeadly = settings.getBoolean(Settings.GAME_DEADLY_GHOSTS);
         	
         	if (Wallpaper.LOG_DEBUG) {
         		Log.d(Game.TAG, "Is Ghost Deadly: " + this.mIsGhostDeadly);
         	}
         }
         
-        int ghosts = 0;
-        final String ghostCount = resources.getString(R.string.settings_game_ghostcount_key);
-        if (all || key.equals(ghostCount)) {
-        	ghosts = preferences.getInt(ghostCount, resources.getInteger(R.integer.game_ghostcount_default));
+        if (diff.contains(Settings.GAME_GHOST_COUNT)) {
         	hasGhostCountChanged = true;
         	
         	if (Wallpaper.LOG_DEBUG) {
-        		Log.d(Game.TAG, "Ghost Count: " + ghosts);
+        		Log.d(Game.TAG, "Ghost Count: " + settings.getInt(Settings.GAME_GHOST_COUNT));
         	}
         }
+        if (diff.contains(Settings.GAME_GHOST_SWARM)) {
+        	//The swarm resizes itself but needs a new game to be placed
+        	hasSwarmChanged = true;
+        }
 
     	if (hasGhostCountChanged) {
+    		final int ghosts = settings.getInt(Settings.GAME_GHOST_COUNT);
 	    	this.mGhosts = new Ghost[ghosts];
 	    	int i = 0;
 	    	if (ghosts > i) { this.mGhosts[i++] = new Ghost.Blinky(); } //Blink MUST be first for Inky to properly calculate moves
@@ -853,22 +1117,21 @@ public class Game implements SharedPreferences.OnSharedPreferenceChangeListener
 	    	if (ghosts > i) { this.mGhosts[i++] = new Ghost.Inky(); }
 	    	
 	    	for (final Ghost ghost : this.mGhosts) {
+	    		ghost.onSettingsChanged(settings, Settings.Diff.ALL);
 	    		ghost.performResize(this);
 	    	}
     	}
 		
-		final String displayHud = resources.getString(R.string.settings_display_showhud_key);
-		if (all || key.equals(displayHud)) {
-			this.mIsDisplayingHud = preferences.getBoolean(displayHud, resources.getBoolean(R.bool.display_showhud_default));
+		if (diff.contains(Settings.DISPLAY_SHOW_HUD)) {
+			this.mIsDisplayingHud = settings.getBoolean(Settings.DISPLAY_SHOW_HUD);
 			
 			if (Wallpaper.LOG_DEBUG) {
 				Log.d(Game.TAG, "Is Displaying HUD: " + this.mIsDisplayingHud);
 			}
 		}
 		
-		final String hudSize = resources.getString(R.string.settings_display_hudsize_key);
-		if (all || key.equals(hudSize)) {
-			this.mHudSize = preferences.getInt(hudSize, resources.getInteger(R.integer.display_hudsize_default));
+		if (diff.contains(Settings.DISPLAY_HUD_SIZE)) {
+			this.mHudSize = settings.getInt(Settings.DISPLAY_HUD_SIZE);
 			this.mHudForeground.setTextSize(this.mHudSize);
 			this.mReadyForeground.setTextSize(this.mHudSize);
 			this.mGameOverForeground.setTextSize(this.mHudSize);
@@ -878,18 +1141,17 @@ public class Game implements SharedPreferences.OnSharedPreferenceChangeListener
 			}
 		}
 		
-		final String hudOffset = resources.getString(R.string.settings_display_hudoffset_key);
-		if (all || key.equals(hudOffset)) {
-			this.mHudOffset = preferences.getInt(hudOffset, resources.getInteger(R.integer.display_hudoffset_default));
+		if (diff.contains(Settings.DISPLAY_HUD_OFFSET)) {
+			this.mHudOffset = settings.getInt(Settings.DISPLAY_HUD_OFFSET);
 			
 			if (Wallpaper.LOG_DEBUG) {
 				Log.d(Game.TAG, "HUD Offset: " + this.mHudOffset);
 			}
 		}
 		
-		final String widgetLocations = resources.getString(R.string.settings_display_widgetlocations_key);
-		if (all || key.equals(widgetLocations)) {
-			this.mWidgetLocations = WidgetLocationsPreference.convertStringToWidgetList(preferences.getString(widgetLocations, resources.getString(R.string.display_widgetlocations_default)));
+		if (diff.contains(Settings.DISPLAY_WIDGET_LOCATIONS)) {
+			this.mWidgetLocations = settings.getWidgetLocations();
+			this.mDirty |= Game.DIRTY_WALLS;
 			hasLayoutChanged = true;
 			
 			if (Wallpaper.LOG_DEBUG) {
@@ -900,9 +1162,8 @@ public class Game implements SharedPreferences.OnSharedPreferenceChangeListener
 		
 		// COLORS //
         
-		final String gameBackground = resources.getString(R.string.settings_color_game_background_key);
-		if (all || key.equals(gameBackground)) {
-			this.mGameBackground = preferences.getInt(gameBackground, resources.getInteger(R.integer.color_game_background_default));
+		if (diff.contains(Settings.COLOR_GAME_BACKGROUND)) {
+			this.mGameBackground = settings.getInt(Settings.COLOR_GAME_BACKGROUND);
 	        
 	        //Add background to text overlays after background is loaded
 	        this.mReadyForeground.setShadowLayer(2, 0, 0, this.mGameBackground);
@@ -913,70 +1174,58 @@ public class Game implements SharedPreferences.OnSharedPreferenceChangeListener
 			}
 		}
 		
-		final String wallsForeground = resources.getString(R.string.settings_color_game_walls_key);
-		if (all || key.equals(wallsForeground)) {
-			this.mWallsForeground.setColor(preferences.getInt(wallsForeground, resources.getInteger(R.integer.color_game_walls_default)));
+		if (diff.contains(Settings.COLOR_GAME_WALLS)) {
+			this.mWallsForeground.setColor(settings.getInt(Settings.COLOR_GAME_WALLS));
 			
 			if (Wallpaper.LOG_DEBUG) {
 				Log.d(Game.TAG, "Walls Foreground: #" + Integer.toHexString(this.mWallsForeground.getColor()));
 			}
 		}
 		
-		final String backgroundImage = resources.getString(R.string.settings_color_game_bgimage_key);
-		if (all || key.equals(backgroundImage)) {
-			this.mBackgroundPath = preferences.getString(backgroundImage, null);
+		if (diff.contains(Settings.COLOR_GAME_BACKGROUND_IMAGE)) {
+			this.mBackgroundPath = settings.getString(Settings.COLOR_GAME_BACKGROUND_IMAGE);
 			
-			if (this.mBackgroundPath != null) {			
-				if (Wallpaper.LOG_DEBUG) {
-					Log.d(Game.TAG, "Background Image: " + this.mBackgroundPath);
-				}
-				
-				//Trigger performResize
-				hasGraphicsChanged = true;
-			} else {
-				this.mBackground = null;
+			this.mDirty |= Game.DIRTY_BACKGROUND;
+			
+			if (Wallpaper.LOG_DEBUG) {
+				Log.d(Game.TAG, "Background Image: " + this.mBackgroundPath);
 			}
 		}
 		
-		final String backgroundOpacity = resources.getString(R.string.settings_color_game_bgopacity_key);
-		if (all || key.equals(backgroundOpacity)) {
-			this.mBackgroundPaint.setAlpha(preferences.getInt(backgroundOpacity, resources.getInteger(R.integer.color_game_bgopacity_default)));
+		if (diff.contains(Settings.COLOR_GAME_BACKGROUND_OPACITY)) {
+			this.mBackgroundPaint.setAlpha(settings.getInt(Settings.COLOR_GAME_BACKGROUND_OPACITY));
 			
 			if (Wallpaper.LOG_DEBUG) {
 				Log.d(Game.TAG, "Background Image Opacity: " + this.mBackgroundPaint.getAlpha());
 			}
 		}
         
-		final String dot = resources.getString(R.string.settings_color_game_dot_key);
-		if (all || key.equals(dot)) {
-			this.mDotForeground.setColor(preferences.getInt(dot, resources.getInteger(R.integer.color_game_dot_default)));
+		if (diff.contains(Settings.COLOR_GAME_DOT)) {
+			this.mDotForeground.setColor(settings.getInt(Settings.COLOR_GAME_DOT));
 			
 			if (Wallpaper.LOG_DEBUG) {
 				Log.d(Game.TAG, "Dot Foreground: #" + Integer.toHexString(this.mDotForeground.getColor()));
 			}
 		}
         
-		final String juggerdot = resources.getString(R.string.settings_color_game_juggerdot_key);
-		if (all || key.equals(juggerdot)) {
-			this.mJuggerdotForeground.setColor(preferences.getInt(juggerdot, resources.getInteger(R.integer.color_game_juggerdot_default)));
+		if (diff.contains(Settings.COLOR_GAME_JUGGERDOT)) {
+			this.mJuggerdotForeground.setColor(settings.getInt(Settings.COLOR_GAME_JUGGERDOT));
 			
 			if (Wallpaper.LOG_DEBUG) {
 				Log.d(Game.TAG, "Juggerdot Foreground: #" + Integer.toHexString(this.mJuggerdotForeground.getColor()));
 			}
 		}
 		
-		final String hudFg = resources.getString(R.string.settings_color_game_hudfg_key);
-		if (all || key.equals(hudFg)) {
-			this.mHudForeground.setColor(preferences.getInt(hudFg, resources.getInteger(R.integer.color_game_hudfg_default)));
+		if (diff.contains(Settings.COLOR_GAME_HUD_FOREGROUND)) {
+			this.mHudForeground.setColor(settings.getInt(Settings.COLOR_GAME_HUD_FOREGROUND));
 			
 			if (Wallpaper.LOG_DEBUG) {
 				Log.d(Game.TAG, "HUD Foreground: #" + Integer.toHexString(this.mHudForeground.getColor()));
 			}
 		}
         
-		final String hudBg = resources.getString(R.string.settings_color_game_hudbg_key);
-		if (all || key.equals(hudBg)) {
-			final int hudBgColor = preferences.getInt(hudBg, resources.getInteger(R.integer.color_game_hudbg_default));
+		if (diff.contains(Settings.COLOR_GAME_HUD_BACKGROUND)) {
+			final int hudBgColor = settings.getInt(Settings.COLOR_GAME_HUD_BACKGROUND);
 			this.mHudForeground.setShadowLayer(1, -1, 1, hudBgColor);
 			
 			if (Wallpaper.LOG_DEBUG) {
@@ -984,36 +1233,32 @@ public class Game implements SharedPreferences.OnSharedPreferenceChangeListener
 			}
 		}
 		
-		final String foregroundColor = resources.getString(R.string.settings_color_theman_key);
-		if (all || key.equals(foregroundColor)) {
-			this.mTheManForeground.setColor(preferences.getInt(foregroundColor, resources.getInteger(R.integer.color_theman_default)));
+		if (diff.contains(Settings.COLOR_THEMAN)) {
+			this.mTheManForeground.setColor(settings.getInt(Settings.COLOR_THEMAN));
 			
 			if (Wallpaper.LOG_DEBUG) {
 				Log.d(Game.TAG, "TheMan Color: #" + Integer.toHexString(this.mTheManForeground.getColor()));
 			}
 		}
 		
-		final String ready = resources.getString(R.string.settings_color_game_ready_key);
-		if (all || key.equals(ready)) {
-			this.mReadyForeground.setColor(preferences.getInt(ready, resources.getInteger(R.integer.color_game_ready_default)));
+		if (diff.contains(Settings.COLOR_GAME_READY)) {
+			this.mReadyForeground.setColor(settings.getInt(Settings.COLOR_GAME_READY));
 			
 			if (Wallpaper.LOG_DEBUG) {
 				Log.d(Game.TAG, "Ready Color: #" + Integer.toHexString(this.mReadyForeground.getColor()));
 			}
 		}
 		
-		final String gameOver = resources.getString(R.string.settings_color_game_gameover_key);
-		if (all || key.equals(gameOver)) {
-			this.mGameOverForeground.setColor(preferences.getInt(gameOver, resources.getInteger(R.integer.color_game_gameover_default)));
+		if (diff.contains(Settings.COLOR_GAME_GAME_OVER)) {
+			this.mGameOverForeground.setColor(settings.getInt(Settings.COLOR_GAME_GAME_OVER));
 			
 			if (Wallpaper.LOG_DEBUG) {
 				Log.d(Game.TAG, "Ready Color: #" + Integer.toHexString(this.mGameOverForeground.getColor()));
 			}
 		}
 		
-		final String color_style = Wallpaper.CONTEXT.getString(R.string.settings_color_dotstyle_key);
-		if (all || key.equals(color_style)) {
-			final Entity.Style style = Entity.Style.parseInt(preferences.getInt(color_style, resources.getInteger(R.integer.color_dotstyle_default)));
+		if (diff.contains(Settings.COLOR_DOT_STYLE)) {
+			final Entity.Style style = settings.getDotStyle();
 			this.mDotForeground.setStyle(style.style);
 			this.mJuggerdotForeground.setStyle(style.style);
 			
@@ -1021,9 +1266,8 @@ public class Game implements SharedPreferences.OnSharedPreferenceChangeListener
 				Log.d(Game.TAG, "Drawing Style: " + style);
 			}
 		}
-		final String entityStyle = Wallpaper.CONTEXT.getString(R.string.settings_color_entitystyle_key);
-		if (all || key.equals(entityStyle)) {
-			final Entity.Style style = Entity.Style.parseInt(preferences.getInt(entityStyle, resources.getInteger(R.integer.color_entitystyle_default)));
+		if (diff.contains(Settings.COLOR_ENTITY_STYLE)) {
+			final Entity.Style style = settings.getEntityStyle();
 			
 			this.mTheManForeground.setStyle(style.style);
 			
@@ -1035,15 +1279,12 @@ public class Game implements SharedPreferences.OnSharedPreferenceChangeListener
 		
 		// TROPHY //
 		
-		final String trophyAppleDots = resources.getString(R.string.trophy_appledots_key);
-		if (all || key.equals(trophyAppleDots)) {
-			if (preferences.getBoolean(trophyAppleDots, resources.getBoolean(R.bool.trophy_appledots_default))) {
+		if (diff.contains(Settings.TROPHY_APPLEDOTS)) {
+			if (settings.getBoolean(Settings.TROPHY_APPLEDOTS)) {
 				this.mDots = Game.Dots.APPLES;
 				
 				//Load the apple sprite
-				final BitmapFactory.Options options = new BitmapFactory.Options();
-				options.inScaled = false;
-				this.mDotSprite = BitmapFactory.decodeResource(Wallpaper.CONTEXT.getResources(), R.drawable.apple, options);
+				this.mDotSprite = new LazyBitmap(R.drawable.apple);
 			} else {
 				this.mDots = Game.Dots.CIRCLES;
 				this.mDotSprite = null;
@@ -1054,74 +1295,64 @@ public class Game implements SharedPreferences.OnSharedPreferenceChangeListener
 			}
 		}
 		
-		final String trophyAndy = resources.getString(R.string.trophy_andy_key);
-		if (all || key.equals(trophyAndy)) {
-			if (preferences.getBoolean(trophyAndy, resources.getBoolean(R.bool.trophy_andy_default))) {
+		if (diff.contains(Settings.TROPHY_ANDY)) {
+			if (settings.getBoolean(Settings.TROPHY_ANDY)) {
 				//Load the Andy sprite
-				final BitmapFactory.Options options = new BitmapFactory.Options();
-				options.inScaled = false;
-				this.mAndy = BitmapFactory.decodeResource(Wallpaper.CONTEXT.getResources(), R.drawable.andy, options);
+				this.mAndy = new LazyBitmap(R.drawable.andy);
 			} else {
 				this.mAndy = null;
 			}
 		}
 		
-		final String trophyTheMandroid = resources.getString(R.string.trophy_themandroid_key);
-		if (all || key.equals(trophyTheMandroid)) {
-			if (preferences.getBoolean(trophyTheMandroid, resources.getBoolean(R.bool.trophy_themandroid_default))) {
+		if (diff.contains(Settings.TROPHY_THEMANDROID)) {
+			if (settings.getBoolean(Settings.TROPHY_THEMANDROID)) {
 				this.mTheManForeground.setColor(TheMan.THE_MANDROID_FOREGROUND);
 			} else {
-				this.mTheManForeground.setColor(preferences.getInt(resources.getString(R.string.settings_color_theman_key), resources.getInteger(R.integer.color_theman_default)));
+				this.mTheManForeground.setColor(settings.getInt(Settings.COLOR_THEMAN));
 			}
 		}
 		
-		final String trophyLegend = resources.getString(R.string.trophy_legend_key);
-		if (all || key.equals(trophyLegend)) {
-			this.mIsTrophyLegendEnabled = preferences.getBoolean(trophyLegend, resources.getBoolean(R.bool.trophy_legend_default));
+		if (diff.contains(Settings.TROPHY_LEGEND)) {
+			this.mIsTrophyLegendEnabled = settings.getBoolean(Settings.TROPHY_LEGEND);
 		}
 		
-		final String trophyDesserts = resources.getString(R.string.trophy_desserts_key);
-		if (all || key.equals(trophyDesserts)) {
-			this.mIsTrophyDessertsEnabled = preferences.getBoolean(trophyDesserts, resources.getBoolean(R.bool.trophy_desserts_default));
+		if (diff.contains(Settings.TROPHY_DESSERTS)) {
+			this.mIsTrophyDessertsEnabled = settings.getBoolean(Settings.TROPHY_DESSERTS);
 		}
     	
         
 		// GRID //
 		
-		final String dotGridPaddingLeft = resources.getString(R.string.settings_display_padding_left_key);
-		if (all || key.equals(dotGridPaddingLeft)) {
-			this.mDotGridPaddingLeft = preferences.getInt(dotGridPaddingLeft, resources.getInteger(R.integer.display_padding_left_default));
-			hasGraphicsChanged = true;
+		if (diff.contains(Settings.DISPLAY_PADDING_LEFT)) {
+			this.mDotGridPaddingLeft = settings.getInt(Settings.DISPLAY_PADDING_LEFT);
+			this.mDirty |= Game.DIRTY_METRICS;
 			
 			if (Wallpaper.LOG_DEBUG) {
 				Log.d(Game.TAG, "Dot Grid Padding Left: " + this.mDotGridPaddingLeft);
 			}
 		}
 
-		final String dotGridPaddingRight = resources.getString(R.string.settings_display_padding_right_key);
-		if (all || key.equals(dotGridPaddingRight)) {
-			this.mDotGridPaddingRight = preferences.getInt(dotGridPaddingRight, resources.getInteger(R.integer.display_padding_right_default));
-			hasGraphicsChanged = true;
+		if (diff.contains(Settings.DISPLAY_PADDING_RIGHT)) {
+			this.mDotGridPaddingRight = settings.getInt(Settings.DISPLAY_PADDING_RIGHT);
+			this.mDirty |= Game.DIRTY_METRICS;
 			
 			if (Wallpaper.LOG_DEBUG) {
 				Log.d(Game.TAG, "Dot Grid Padding Right: " + this.mDotGridPaddingRight);
 			}
 		}
 
-		final String dotGridPaddingTop = resources.getString(R.string.settings_display_padding_top_key);
-		if (all || key.equals(dotGridPaddingTop)) {
-			this.mDotGridPaddingTop = preferences.getInt(dotGridPaddingTop, resources.getInteger(R.integer.display_padding_top_default));
-			hasGraphicsChanged = true;
+		if (diff.contains(Settings.DISPLAY_PADDING_TOP)) {
+			this.mDotGridPaddingTop = settings.getInt(Settings.DISPLAY_PADDING_TOP);
+			this.mDirty |= Game.DIRTY_METRICS;
 			
 			if (Wallpaper.LOG_DEBUG) {
 				Log.d(Game.TAG, "Dot Grid Padding Top: " + this.mDotGridPaddingTop);
 			}
 		}
 
-		final String dotGridPaddingBottom = resources.getString(R.string.settings_display_padding_bottom_key);
-		if (all || key.equals(dotGridPaddingBottom)) {
-			this.mDotGridPaddingBottom = preferences.getInt(dotGridPaddingBottom, resources.getInteger(R.integer.display_padding_bottom_default));
-			hasGraphicsChanged = true;
+		if (diff.contains(Settings.DISPLAY_PADDING_BOTTOM)) {
+			this.mDotGridPaddingBottom = settings.getInt(Settings.DISPLAY_PADDING_BOTTOM);
+			this.mDirty |= Game.DIRTY_METRICS;
 			
 			if (Wallpaper.LOG_DEBUG) {
 				Log.d(Game.TAG, "Dot Grid Padding Bottom: " + this.mDotGridPaddingBottom);
@@ -1131,9 +1362,9 @@ public class Game implements SharedPreferences.OnSharedPreferenceChangeListener
 		
 		// CELLS //
 		
-		final String iconRows = resources.getString(R.string.settings_display_iconrows_key);
-		if (all || key.equals(iconRows)) {
-			this.mIconRows = preferences.getInt(iconRows, resources.getInteger(R.integer.display_iconrows_default));
+		if (diff.contains(Settings.DISPLAY_ICON_ROWS)) {
+			this.mIconRows = settings.getInt(Settings.DISPLAY_ICON_ROWS);
+			this.mDirty |= Game.DIRTY_METRICS;
 			hasLayoutChanged = true;
 			
 			if (Wallpaper.LOG_DEBUG) {
@@ -1141,9 +1372,9 @@ public class Game implements SharedPreferences.OnSharedPreferenceChangeListener
 			}
 		}
 		
-		final String iconCols = resources.getString(R.string.settings_display_iconcols_key);
-		if (all || key.equals(iconCols)) {
-			this.mIconCols = preferences.getInt(iconCols, resources.getInteger(R.integer.display_iconcols_default));
+		if (diff.contains(Settings.DISPLAY_ICON_COLS)) {
+			this.mIconCols = settings.getInt(Settings.DISPLAY_ICON_COLS);
+			this.mDirty |= Game.DIRTY_METRICS;
 			hasLayoutChanged = true;
 			
 			if (Wallpaper.LOG_DEBUG) {
@@ -1151,9 +1382,9 @@ public class Game implements SharedPreferences.OnSharedPreferenceChangeListener
 			}
 		}
 		
-		final String cellSpacingRow = resources.getString(R.string.settings_display_rowspacing_key);
-		if (all || key.equals(cellSpacingRow)) {
-			this.mCellRowSpacing = preferences.getInt(cellSpacingRow, resources.getInteger(R.integer.display_rowspacing_default));
+		if (diff.contains(Settings.DISPLAY_ROW_SPACING)) {
+			this.mCellRowSpacing = settings.getInt(Settings.DISPLAY_ROW_SPACING);
+			this.mDirty |= Game.DIRTY_METRICS;
 			hasLayoutChanged = true;
 			
 			if (Wallpaper.LOG_DEBUG) {
@@ -1161,9 +1392,9 @@ public class Game implements SharedPreferences.OnSharedPreferenceChangeListener
 			}
 		}
 		
-		final String cellSpacingCol = resources.getString(R.string.settings_display_colspacing_key);
-		if (all || key.equals(cellSpacingCol)) {
-			this.mCellColumnSpacing = preferences.getInt(cellSpacingCol, resources.getInteger(R.integer.display_colspacing_default));
+		if (diff.contains(Settings.DISPLAY_COL_SPACING)) {
+			this.mCellColumnSpacing = settings.getInt(Settings.DISPLAY_COL_SPACING);
+			this.mDirty |= Game.DIRTY_METRICS;
 			hasLayoutChanged = true;
 			
 			if (Wallpaper.LOG_DEBUG) {
@@ -1180,22 +1411,35 @@ public class Game implements SharedPreferences.OnSharedPreferenceChangeListener
 	    		Log.d(Game.TAG, "Cells Tall: " + this.mCellsTall);
 	    	}
 	    	
-	    	//Create playing board
-	        this.mBoard = new Cell[this.mCellsTall][this.mCellsWide];
+	    	//Create playing board (the cells are all reset by newGame so reuse when possible)
+	    	if ((this.mBoard == null) || (this.mBoard.length != this.mCellsTall) || (this.mBoard[0].length != this.mCellsWide)) {
+	    		this.mBoard = new Cell[this.mCellsTall][this.mCellsWide];
+	    		this.mBlankCells = new int[this.mCellsTall * this.mCellsWide];
+	    		this.mBlankIndex = new int[this.mCellsTall * this.mCellsWide];
+	    		this.mDanger = new int[this.mCellsTall * this.mCellsWide];
+	    		this.mDangerQueue = new int[this.mCellsTall * this.mCellsWide];
+	    		this.mBoardChanges = new int[this.mCellsTall * this.mCellsWide];
+	    		this.mBoardChangeCount = 0;
+	    		this.mIsBaseStale = true;
+	    		Arrays.fill(this.mDanger, Game.DANGER_NONE);
+	    	}
 		}
-		if ((hasLayoutChanged || hasGraphicsChanged) && (this.mScreenWidth > 0) && (this.mScreenHeight > 0)) {
-	        //Resize everything to fit
-	        this.performResize(this.mScreenWidth, this.mScreenHeight);
+		if ((this.mDirty != 0) && (this.mScreenWidth > 0) && (this.mScreenHeight > 0)) {
+	        //Rebuild only what is affected
+	        this.performRebuild();
 		}
 		
 		
 		//Check to see if we need a new game
-		if (hasBonusChanged || hasGhostCountChanged || hasLayoutChanged || hasModeChanged) {
+		if (hasBonusChanged || hasGhostCountChanged || hasSwarmChanged || hasLayoutChanged || hasModeChanged) {
 	    	this.newGame();
+		} else if (hasRoutesChanged && (this.mBoard != null)) {
+			//Same walls but they are traveled differently
+			this.rebuildRoutes();
 		}
 
     	if (Wallpaper.LOG_VERBOSE) {
-    		Log.v(Game.TAG, "< onSharedPreferenceChanged()");
+    		Log.v(Game.TAG, "< onSettingsChanged()");
     	}
 	}
     
@@ -1216,162 +1460,426 @@ public class Game implements SharedPreferences.OnSharedPreferenceChangeListener
      * @param newCell New cell value.
      */
     public void setCell(final Point position, final Game.Cell newCell) {
-    	this.mBoard[position.y][position.x] = newCell; 
+    	this.setCell((position.y * this.mCellsWide) + position.x, newCell);
     }
     
     /**
-     * Get the game's instance of The Man.
+     * Sets the cell value for a specific cell index.
      * 
-     * @return The Man instance.
+     * @param cell Cell index.
+     * @param newCell New cell value.
      */
-    public TheMan getTheMan() {
-    	return this.mTheMan;
+    private void setCell(final int cell, final Game.Cell newCell) {
+    	if (this.mBoardChangeCount < this.mBoardChanges.length) {
+    		this.mBoardChanges[this.mBoardChangeCount] = (cell * Game.CELLS.length) + newCell.ordinal();
+    		this.mBoardChangeCount += 1;
+    	} else {
+    		//Changes still logged reach the last checkpoint, the next one copies the board again
+    		this.mIsBaseStale = true;
+    	}
+    	
+    	this.applyCell(cell, newCell);
     }
     
     /**
-     * Get the ghost at specified index.
+     * Sets the cell value for a specific cell index without recording the change.
      * 
-     * @param index Index of ghost.
-     * @return Ghost instance.
+     * @param cell Cell index.
+     * @param newCell New cell value.
      */
-    public Ghost getGhost(final int index) {
-    	//WARNING: unchecked
-    	return this.mGhosts[index];
+    private void applyCell(final int cell, final Game.Cell newCell) {
+    	final Game.Cell[] row = this.mBoard[cell / this.mCellsWide];
+    	final int x = cell % this.mCellsWide;
+    	final Game.Cell oldCell = row[x];
+    	row[x] = newCell;
+    	
+    	//Keep the blank cell set in sync
+    	if ((oldCell == Game.Cell.BLANK) && (newCell != Game.Cell.BLANK)) {
+    		this.removeBlankCell(cell);
+    	} else if ((oldCell != Game.Cell.BLANK) && (newCell == Game.Cell.BLANK)) {
+    		this.addBlankCell(cell);
+    	}
     }
     
     /**
-     * Get the number of dots eaten this level.
+     * Add a cell to the blank cell set.
      * 
-     * @return Number of dots eaten.
+     * @param cell Cell index.
      */
-    public int getDotsEaten() {
-    	return this.mDotsTotal - this.mDotsRemaining;
+    private void addBlankCell(final int cell) {
+    	this.mBlankIndex[cell] = this.mBlankCount;
+    	this.mBlankCells[this.mBlankCount] = cell;
+    	this.mBlankCount += 1;
     }
     
     /**
-     * Get the current level number.
+     * Remove a cell from the blank cell set by swapping the last entry into its slot.
      * 
-     * @return Level number.
+     * @param cell Cell index.
      */
-    public int getLevel() {
-    	return this.mLevel;
+    private void removeBlankCell(final int cell) {
+    	final int index = this.mBlankIndex[cell];
+    	this.mBlankCount -= 1;
+    	
+    	final int last = this.mBlankCells[this.mBlankCount];
+    	this.mBlankCells[index] = last;
+    	this.mBlankIndex[last] = index;
+    	this.mBlankIndex[cell] = -1;
     }
     
     /**
-     * Get the width of a cell in pixels.
+     * Steer The Man towards a direction (e.g., from user input).
      * 
-     * @return Cell width.
+     * @param direction Desired direction.
      */
-    public float getCellWidth() {
-    	return this.mCellWidth;
+    public void setWantsToGo(final Entity.Direction direction) {
+    	if (this.mRecorder != null) {
+    		this.mRecorder.recordInput(direction);
+    	}
+    	this.mTheMan.setWantsToGo(this, direction);
     }
     
     /**
-     * Get the height of a cell in pixels.
+     * Whether the game was given fixed settings and is never drawn (e.g., a simulation or playback).
      * 
-     * @return Cell height.
+     * @return Boolean.
      */
-    public float getCellHeight() {
-    	return this.mCellHeight;
+    public boolean isHeadless() {
+    	return this.mIsHeadless;
     }
     
     /**
-     * Get the board's number of cells horizontally.
+     * Get the most recent settings snapshot delivered to the game.
      * 
-     * @return Number of cells.
+     * @return Settings.
      */
-    public int getCellsWide() {
-    	return this.mCellsWide;
+    public Settings getSettings() {
+    	return this.mSettings;
     }
     
     /**
-     * Get the board's number of cells vertically.
+     * Get the recorder capturing this game.
      * 
-     * @return Number of cells.
+     * @return Recorder or null.
      */
-    public int getCellsTall() {
-    	return this.mCellsTall;
+    public Recorder getRecorder() {
+    	return this.mRecorder;
     }
     
     /**
-     * Get the board's number of cells between two columns.
+     * Capture all further settings, input, resizes, and ticks of this game.
      * 
-     * @return Number of cells.
+     * @param recorder Recorder or null to stop recording.
      */
-    public int getCellColumnSpacing() {
-    	return this.mCellColumnSpacing;
+    public void setRecorder(final Recorder recorder) {
+    	this.mRecorder = recorder;
     }
     
     /**
-     * Get the board's number of cells between two rows.
+     * Get the recorded AI decisions to play back in place of searching.
      * 
-     * @return Number of cells.
+     * @return Queue of decisions or null if this game is not a playback.
      */
-    public int getCellRowSpacing() {
-    	return this.mCellRowSpacing;
+    /*package*/LinkedList<Entity.Direction> getReplayedDecisions() {
+    	return this.mReplayedDecisions;
     }
     
     /**
-     * Get the number of icon rows on the home screen.
+     * Play back recorded AI decisions in place of searching.
      * 
-     * @return Number of icons.
+     * @param decisions Queue of decisions which the playback fills as it reads them.
      */
-    public int getIconRows() {
-    	return this.mIconRows;
+    /*package*/void setReplayedDecisions(final LinkedList<Entity.Direction> decisions) {
+    	this.mReplayedDecisions = decisions;
     }
     
     /**
-     * Get the number of icon columns on the home screen.
+     * Get the game's random number generator.
      * 
-     * @return Number of icons.
+     * @return FastRandom instance.
      */
-    public int getIconCols() {
-    	return this.mIconCols;
+    public FastRandom getRandom() {
+    	return this.mRandom;
     }
     
     /**
-     * Get whether or not the device is in landscape mode.
-     * @return Boolean
+     * Get the seed of the game's random number generator.
+     * 
+     * @return Seed.
      */
-    public boolean getIsLandscape() {
-    	return this.mIsLandscape;
+    public long getSeed() {
+    	return this.mSeed;
     }
     
     /**
-     * Get a RectF which represents the current cell size of the board.
-     * @return RectF of cell size.
+     * Get the current time on the game clock.
+     * 
+     * @return Milliseconds.
      */
-    public RectF getCellSize() {
-    	return this.mCellSize;
+    public long getTime() {
+    	return this.mTime;
     }
     
     /**
-     * Test if a Point is a valid coordinate on the game board for an entity.
+     * Get the number of ticks played since the game started.
      * 
-     * @param entity Entity for whom to check.
-     * @param position Point representing coordinate.
-     * @return Boolean indicating whether or not the position is valid.
+     * @return Ticks.
      */
-    public boolean isValidPosition(final Entity entity, final Point position) {
-    	if (((entity instanceof TheMan) && this.mIsWrappingTheMan) || ((entity instanceof Ghost) && this.mIsWrappingGhosts)) {
-    		//wrap past bounds positively and negatively
-    		if ((this.mWrapping == Game.Wrapping.ALL) || (position.y == ((this.mIconRows / 2) * (this.mCellRowSpacing + 1)))) {
-	    		if (position.x < 0) {
-	    			position.x = this.mCellsWide + position.x;
-	    		} else {
-	    			position.x %= this.mCellsWide;
-	    		}
-    		}
-    		if (this.mWrapping == Game.Wrapping.ALL) {
-	    		if (position.y < 0) {
-	    			position.y = this.mCellsTall + position.y;
-	    		} else {
-	    			position.y %= this.mCellsTall;
-	    		}
-    		}
-    	}
-    	
-    	return this.isValidBoardPosition(position);
+    public long getTickCount() {
+    	return this.mTickCount;
+    }
+    
+    /**
+     * Get the game's instance of The Man.
+     * 
+     * @return The Man instance.
+     */
+    public TheMan getTheMan() {
+    	return this.mTheMan;
+    }
+    
+    /**
+     * Get the ghost at specified index.
+     * 
+     * @param index Index of ghost.
+     * @return Ghost instance.
+     */
+    public Ghost getGhost(final int index) {
+    	//WARNING: unchecked
+    	return this.mGhosts[index];
+    }
+    
+    /**
+     * Get the number of classic ghosts.
+     * 
+     * @return Number of ghosts.
+     */
+    public int getGhostCount() {
+    	return this.mGhosts.length;
+    }
+    
+    /**
+     * Show or hide the performance overlay.
+     * 
+     * @param isEnabled Whether or not to show the overlay.
+     */
+    public void setOverlayEnabled(final boolean isEnabled) {
+    	if (isEnabled && (this.mOverlay == null)) {
+    		this.mOverlay = new Overlay();
+    	} else if (!isEnabled && (this.mOverlay != null)) {
+    		this.mOverlay.release();
+    		this.mOverlay = null;
+    	}
+    }
+    
+    /**
+     * Get the swarm ghosts.
+     * 
+     * @return Swarm.
+     */
+    public Swarm getSwarm() {
+    	return this.mSwarm;
+    }
+    
+    /**
+     * Get the number of dots eaten this level.
+     * 
+     * @return Number of dots eaten.
+     */
+    public int getDotsEaten() {
+    	return this.mDotsTotal - this.mDotsRemaining;
+    }
+    
+    /**
+     * Get the current level number.
+     * 
+     * @return Level number.
+     */
+    public int getLevel() {
+    	return this.mLevel;
+    }
+    
+    /**
+     * Get the number of dots and juggerdots eaten this game across all levels.
+     * 
+     * @return Integer.
+     */
+    public int getDotsEatenTotal() {
+    	return this.mDotsEatenTotal;
+    }
+    
+    /**
+     * Get the current score.
+     * 
+     * @return Integer.
+     */
+    public int getScore() {
+    	return this.mScore;
+    }
+    
+    /**
+     * Get the number of remaining lives.
+     * 
+     * @return Integer.
+     */
+    public int getLives() {
+    	return this.mLives;
+    }
+    
+    /**
+     * Get the current game state.
+     * 
+     * @return Game.State
+     */
+    public Game.State getState() {
+    	return this.mState;
+    }
+    
+    /**
+     * Get the width of a cell in pixels.
+     * 
+     * @return Cell width.
+     */
+    public float getCellWidth() {
+    	return this.mCellWidth;
+    }
+    
+    /**
+     * Get the height of a cell in pixels.
+     * 
+     * @return Cell height.
+     */
+    public float getCellHeight() {
+    	return this.mCellHeight;
+    }
+    
+    /**
+     * Get the board's number of cells horizontally.
+     * 
+     * @return Number of cells.
+     */
+    public int getCellsWide() {
+    	return this.mCellsWide;
+    }
+    
+    /**
+     * Get the board's number of cells vertically.
+     * 
+     * @return Number of cells.
+     */
+    public int getCellsTall() {
+    	return this.mCellsTall;
+    }
+    
+    /**
+     * Get the board's number of cells between two columns.
+     * 
+     * @return Number of cells.
+     */
+    public int getCellColumnSpacing() {
+    	return this.mCellColumnSpacing;
+    }
+    
+    /**
+     * Get the board's number of cells between two rows.
+     * 
+     * @return Number of cells.
+     */
+    public int getCellRowSpacing() {
+    	return this.mCellRowSpacing;
+    }
+    
+    /**
+     * Get the number of icon rows on the home screen.
+     * 
+     * @return Number of icons.
+     */
+    public int getIconRows() {
+    	return this.mIconRows;
+    }
+    
+    /**
+     * Get the number of icon columns on the home screen.
+     * 
+     * @return Number of icons.
+     */
+    public int getIconCols() {
+    	return this.mIconCols;
+    }
+    
+    /**
+     * Get the width of the screen the game is currently sized to.
+     * 
+     * @return Width in pixels.
+     */
+    public int getScreenWidth() {
+    	return this.mScreenWidth;
+    }
+    
+    /**
+     * Get the height of the screen the game is currently sized to.
+     * 
+     * @return Height in pixels.
+     */
+    public int getScreenHeight() {
+    	return this.mScreenHeight;
+    }
+    
+    /**
+     * Get whether or not the device is in landscape mode.
+     * @return Boolean
+     */
+    public boolean getIsLandscape() {
+    	return this.mIsLandscape;
+    }
+    
+    /**
+     * Get a RectF which represents the current cell size of the board.
+     * @return RectF of cell size.
+     */
+    public RectF getCellSize() {
+    	return this.mCellSize;
+    }
+    
+    /**
+     * Test if a Point is a valid coordinate on the game board for an entity.
+     * 
+     * @param entity Entity for whom to check.
+     * @param position Point representing coordinate.
+     * @return Boolean indicating whether or not the position is valid.
+     */
+    public boolean isValidPosition(final Entity entity, final Point position) {
+    	return this.isValidPosition(((entity instanceof TheMan) && this.mIsWrappingTheMan) || ((entity instanceof Ghost) && this.mIsWrappingGhosts), position);
+    }
+    
+    /**
+     * Test if a position is valid for an entity which may or may not wrap. Wrapped
+     * positions are updated in place.
+     * 
+     * @param isWrapping Whether the entity wraps around the edges.
+     * @param position Position to test.
+     * @return Whether or not the position is valid.
+     */
+    /*package*/boolean isValidPosition(final boolean isWrapping, final Point position) {
+    	if (isWrapping) {
+    		//wrap past bounds positively and negatively
+    		if ((this.mWrapping == Game.Wrapping.ALL) || (position.y == ((this.mIconRows / 2) * (this.mCellRowSpacing + 1)))) {
+	    		if (position.x < 0) {
+	    			position.x = this.mCellsWide + position.x;
+	    		} else {
+	    			position.x %= this.mCellsWide;
+	    		}
+    		}
+    		if (this.mWrapping == Game.Wrapping.ALL) {
+	    		if (position.y < 0) {
+	    			position.y = this.mCellsTall + position.y;
+	    		} else {
+	    			position.y %= this.mCellsTall;
+	    		}
+    		}
+    	}
+    	
+    	return this.isValidBoardPosition(position);
     }
     
     /**
@@ -1400,8 +1908,179 @@ public class Game implements SharedPreferences.OnSharedPreferenceChangeListener
     		}
     	}
     	
-    	//TODO: this is wrong. should be >2 but then the nextRandomDirection methods fail on a corner
-    	return (directions > 1);
+    	//TODO: this is wrong. should be >2 but then the nextRandomDirection methods fail on a corner
+    	return (directions > 1);
+    }
+    
+    /**
+     * Test if a Point is in a tunnel, an edge of the board which can be wrapped across.
+     * 
+     * @param isWrapping Whether the entity wraps around the edges.
+     * @param position Point representing coordinate.
+     * @return Boolean indicating whether or not the position is in a tunnel.
+     */
+    public boolean isTunnel(final boolean isWrapping, final Point position) {
+    	if (!isWrapping) {
+    		return false;
+    	}
+    	
+    	final Point next = this.mTunnelPosition;
+    	for (final Entity.Direction direction : Entity.DIRECTIONS) {
+    		next.set(position.x, position.y);
+    		Entity.step(next, direction);
+    		
+    		final boolean isOffBoard = (next.x < 0) || (next.x >= this.mCellsWide) || (next.y < 0) || (next.y >= this.mCellsTall);
+    		if (isOffBoard && this.isValidPosition(true, next)) {
+    			return true;
+    		}
+    	}
+    	return false;
+    }
+    
+    /**
+     * Test whether any ghost is currently frightened.
+     * 
+     * @return Boolean.
+     */
+    public boolean hasFrightenedGhosts() {
+    	for (final Ghost ghost : this.mGhosts) {
+    		if (ghost.getState() == Ghost.State.FRIGHTENED) {
+    			return true;
+    		}
+    	}
+    	return this.mSwarm.hasFrightened();
+    }
+    
+    /**
+     * Get the distance (in cells) a hunting ghost would have to travel to reach a position.
+     * 
+     * @param position Position.
+     * @return Distance or {@link #DANGER_NONE} if no hunting ghost can reach it.
+     */
+    public int getDanger(final Point position) {
+    	if ((this.mDanger == null) || !this.isValidBoardPosition(position)) {
+    		return Game.DANGER_NONE;
+    	}
+    	return this.mDanger[this.hashPosition(position)];
+    }
+    
+    /**
+     * Recompile the routes and junction graphs after the walls or wrapping have
+     * changed. Homes and, when shortest path routing is on, the next hops are
+     * all rebuilt here so that no ghost decision ever has to.
+     */
+    private void rebuildRoutes() {
+    	this.mRoutesGeneration += 1;
+    	this.mTheManJunctions.compile(this, this.mIsWrappingTheMan);
+    	this.mGhostJunctions.compile(this, this.mIsWrappingGhosts);
+    	this.mRoutes.compile(this, this.mIsWrappingGhosts);
+    	if (this.mIsGhostPathfinding) {
+    		this.mRoutes.buildNextHops();
+    	}
+    	
+    	if (this.mGhosts != null) {
+    		for (final Ghost ghost : this.mGhosts) {
+    			ghost.calculateHomeRoute(this, this.mRoutes);
+    		}
+    	}
+    }
+    
+    /**
+     * Get the shortest routes for the ghosts.
+     * 
+     * @return Routes.
+     */
+    /*package*/Routes getRoutes() {
+    	return this.mRoutes;
+    }
+    
+    /**
+     * Get the junction graph of the board as The Man can travel it.
+     * 
+     * @return Junctions.
+     */
+    public Junctions getTheManJunctions() {
+    	return this.mTheManJunctions;
+    }
+    
+    /**
+     * Get the junction graph of the board as the ghosts can travel it.
+     * 
+     * @return Junctions.
+     */
+    public Junctions getGhostJunctions() {
+    	return this.mGhostJunctions;
+    }
+    
+    /**
+     * Get the direction of the first step along the shortest path a ghost can take
+     * between two positions. Targets off of the board are clamped to its edges.
+     * 
+     * @param from Position to start from.
+     * @param target Position to reach.
+     * @return Direction or null if shortest path routing is disabled or there is no route.
+     */
+    public Entity.Direction getNextHop(final Point from, final Point target) {
+    	if (!this.mIsGhostPathfinding || (this.mBoard == null)) {
+    		return null;
+    	}
+    	
+    	final Point clamped = this.mRouteTarget;
+    	clamped.set(Math.max(0, Math.min(this.mCellsWide - 1, target.x)), Math.max(0, Math.min(this.mCellsTall - 1, target.y)));
+    	if (!this.isValidBoardPosition(clamped)) {
+    		return null;
+    	}
+    	
+    	return this.mRoutes.getNextHop(this.hashPosition(from), this.hashPosition(clamped));
+    }
+    
+    /**
+     * Calculate the distance of every cell to the nearest hunting ghost with a
+     * breadth-first search from all of them at once.
+     */
+    private void calculateDanger() {
+    	final int[] danger = this.mDanger;
+    	final int[] queue = this.mDangerQueue;
+    	final Point position = this.mDangerPosition;
+    	final Entity.Direction[] directions = Entity.DIRECTIONS;
+    	int head = 0;
+    	int tail = 0;
+    	
+    	Arrays.fill(danger, Game.DANGER_NONE);
+    	for (final Ghost ghost : this.mGhosts) {
+    		if ((ghost.getState() == Ghost.State.HUNTING) && this.isValidBoardPosition(ghost.getPosition())) {
+    			final int cell = this.hashPosition(ghost.getPosition());
+    			if (danger[cell] != 0) {
+    				danger[cell] = 0;
+    				queue[tail++] = cell;
+    			}
+    		}
+    	}
+    	for (int i = 0; i < this.mSwarm.getCount(); i++) {
+    		final int cell = this.mSwarm.getCell(i);
+    		if (this.mSwarm.isHunting(i) && (danger[cell] != 0)) {
+    			danger[cell] = 0;
+    			queue[tail++] = cell;
+    		}
+    	}
+    	
+    	while (head < tail) {
+    		final int cell = queue[head++];
+    		final int distance = danger[cell] + 1;
+    		
+    		for (final Entity.Direction direction : directions) {
+    			position.set(cell % this.mCellsWide, cell / this.mCellsWide);
+    			Entity.step(position, direction);
+    			if (this.isValidPosition(this.mIsWrappingGhosts, position)) {
+    				final int next = this.hashPosition(position);
+    				if (danger[next] == Game.DANGER_NONE) {
+    					danger[next] = distance;
+    					queue[tail++] = next;
+    				}
+    			}
+    		}
+    	}
+    	Metrics.add(Metrics.NODES_EXPANDED, head);
     }
     
     /**
@@ -1419,6 +2098,15 @@ public class Game implements SharedPreferences.OnSharedPreferenceChangeListener
     	return null;
     }
     
+    /**
+     * Get the fruit.
+     * 
+     * @return Fruit instance.
+     */
+    public Fruit getFruit() {
+    	return this.mFruit;
+    }
+    
     /**
      * Return a fruit at the specified position or null.
      * 
@@ -1490,34 +2178,26 @@ public class Game implements SharedPreferences.OnSharedPreferenceChangeListener
     }
     
     /**
-     * Check if a trophy has been earned
+     * Mark a trophy as earned and notify for it (and Ego, if it completed the set).
+     * The persistence happens off of the game loop.
      * 
-     * @param persistString Resource for the preference key that persists the boolean of whether or not the trophy has been earned
-     * @param defaultBool Resource for the default boolean for the trophy
-     * @param titleString Resource for the title of the trophy
+     * @param trophy Trophy from {@link Achievements}.
      */
-    private void earnTrophy(final int persistString, final int defaultBool, final int titleString) {
-    	final Resources resources = Wallpaper.CONTEXT.getResources();
-    	final String key = resources.getString(persistString);
+    private void earnTrophy(final int trophy) {
+    	if (this.mIsHeadless) {
+    		//Played back games do not count
+    		return;
+    	}
     	
-    	if (!Wallpaper.PREFERENCES.getBoolean(key, resources.getBoolean(defaultBool))) {
-    		//If we haven't earned this yet, store it
-    		Wallpaper.PREFERENCES.edit().putBoolean(key, true).commit();
-    		this.showNotification(resources.getString(titleString));
+    	final int earned = Achievements.getInstance(Wallpaper.CONTEXT).earn(trophy);
+    	if (earned != 0) {
+    		final Resources resources = Wallpaper.CONTEXT.getResources();
     		
-    		//Check if all trophies have been earned
-    		final boolean trophyAndy = Wallpaper.PREFERENCES.getBoolean(resources.getString(R.string.trophy_andy_persist), resources.getBoolean(R.bool.trophy_andy_default));
-    		final boolean trophyTheMandroid = Wallpaper.PREFERENCES.getBoolean(resources.getString(R.string.trophy_themandroid_persist), resources.getBoolean(R.bool.trophy_themandroid_default));
-    		final boolean trophyLogos = Wallpaper.PREFERENCES.getBoolean(resources.getString(R.string.trophy_logos_persist), resources.getBoolean(R.bool.trophy_logos_default));
-    		final boolean trophyCeos = Wallpaper.PREFERENCES.getBoolean(resources.getString(R.string.trophy_ceos_persist), resources.getBoolean(R.bool.trophy_ceos_default));
-    		final boolean trophyDesserts = Wallpaper.PREFERENCES.getBoolean(resources.getString(R.string.trophy_desserts_persist), resources.getBoolean(R.bool.trophy_desserts_default));
-    		final boolean trophyAppleDots = Wallpaper.PREFERENCES.getBoolean(resources.getString(R.string.trophy_appledots_persist), resources.getBoolean(R.bool.trophy_appledots_default));
-    		final boolean trophyEden = Wallpaper.PREFERENCES.getBoolean(resources.getString(R.string.trophy_eden_persist), resources.getBoolean(R.bool.trophy_eden_default));
-    		final boolean trophyGoogol = Wallpaper.PREFERENCES.getBoolean(resources.getString(R.string.trophy_googol_persist), resources.getBoolean(R.bool.trophy_googol_default));
-    		final boolean trophyLegend = Wallpaper.PREFERENCES.getBoolean(resources.getString(R.string.trophy_legend_persist), resources.getBoolean(R.bool.trophy_legend_default));
-    		if (trophyAndy && trophyTheMandroid && trophyLogos && trophyCeos && trophyDesserts && trophyAppleDots && trophyEden && trophyGoogol && trophyLegend) {
-    			Wallpaper.PREFERENCES.edit().putBoolean(resources.getString(R.string.trophy_ego_persist), true).commit();
-    			this.showNotification(resources.getString(R.string.trophy_ego));
+    		//Notify for the trophy itself before the Ego trophy
+    		for (int i = 0; (earned >> i) != 0; i++) {
+    			if ((earned & (1 << i)) != 0) {
+    				this.showNotification(resources.getString(Achievements.getTitle(i)));
+    			}
     		}
     	}
     }
@@ -1526,63 +2206,63 @@ public class Game implements SharedPreferences.OnSharedPreferenceChangeListener
      * Mark the Andy trophy as earned
      */
     private void earnTrophyAndy() {
-    	this.earnTrophy(R.string.trophy_andy_persist, R.bool.trophy_andy_default, R.string.trophy_andy);
+    	this.earnTrophy(Achievements.ANDY);
     }
     
     /**
      * Mark the The Mandroid trophy as earned
      */
     private void earnTrophyTheMandroid() {
-    	this.earnTrophy(R.string.trophy_themandroid_persist, R.bool.trophy_themandroid_default, R.string.trophy_themandroid);
+    	this.earnTrophy(Achievements.THEMANDROID);
     }
     
     /**
      * Mark the Logos trophy as earned
      */
     private void earnTrophyLogos() {
-    	this.earnTrophy(R.string.trophy_logos_persist, R.bool.trophy_logos_default, R.string.trophy_logos);
+    	this.earnTrophy(Achievements.LOGOS);
     }
     
     /**
      * Mark the CEOs trophy as earned
      */
     private void earnTrophyCeos() {
-    	this.earnTrophy(R.string.trophy_ceos_persist, R.bool.trophy_ceos_default, R.string.trophy_ceos);
+    	this.earnTrophy(Achievements.CEOS);
     }
     
     /**
      * Mark the Desserts trophy as earned
      */
     private void earnTrophyDesserts() {
-    	this.earnTrophy(R.string.trophy_desserts_persist, R.bool.trophy_desserts_default, R.string.trophy_desserts);
+    	this.earnTrophy(Achievements.DESSERTS);
     }
     
     /**
      * Mark the Apple Dots trophy as earned
      */
     private void earnTrophyAppleDots() {
-    	this.earnTrophy(R.string.trophy_appledots_persist, R.bool.trophy_appledots_default, R.string.trophy_appledots);
+    	this.earnTrophy(Achievements.APPLEDOTS);
     }
     
     /**
      * Mark the Eden trophy as earned
      */
     private void earnTrophyEden() {
-    	this.earnTrophy(R.string.trophy_eden_persist, R.bool.trophy_eden_default, R.string.trophy_eden);
+    	this.earnTrophy(Achievements.EDEN);
     }
     
     /**
      * Mark the Googol trophy as earned
      */
     private void earnTrophyGoogol() {
-    	this.earnTrophy(R.string.trophy_googol_persist, R.bool.trophy_googol_default, R.string.trophy_googol);
+    	this.earnTrophy(Achievements.GOOGOL);
     }
     
     /**
      * Mark the Legend trophy as earned
      */
     private void earnTrophyLegend() {
-    	this.earnTrophy(R.string.trophy_legend_persist, R.bool.trophy_legend_default, R.string.trophy_legend);
+    	this.earnTrophy(Achievements.LEGEND);
     }
     
     /**
@@ -1601,6 +2281,7 @@ public class Game implements SharedPreferences.OnSharedPreferenceChangeListener
     	final Game.Cell cell = this.getCell(this.mTheMan.getPosition());
     	if (cell == Cell.DOT) {
     		this.mDotsRemaining -= 1;
+    		this.mDotsEatenTotal += 1;
     		this.addToScore(cell.value);
     		
     		//Blank cell since we've eaten the dot
@@ -1613,6 +2294,7 @@ public class Game implements SharedPreferences.OnSharedPreferenceChangeListener
         	}
     	} else if (cell == Cell.JUGGERDOT) {
     		this.mJuggerdotsRemaining -= 1;
+    		this.mDotsEatenTotal += 1;
     		this.addToScore(cell.value);
     		this.switchGhostsState(Ghost.State.FRIGHTENED);
     		
@@ -1628,17 +2310,13 @@ public class Game implements SharedPreferences.OnSharedPreferenceChangeListener
     }
     
     /**
-     * Find a random blank and valid cell position on the board
+     * Find a random blank and valid cell on the board
      * 
-     * @return Blank cell position
+     * @return Blank cell index
      */
-    private Point getRandomBlankCell() {
-    	while (true) {
-    		final Point cell = new Point(Game.RANDOM.nextInt(this.mCellsWide), Game.RANDOM.nextInt(this.mCellsTall));
-    		if (this.isValidBoardPosition(cell) && (this.getCell(cell) == Game.Cell.BLANK)) {
-				return cell;
-			}
-    	}
+    private int getRandomBlankCell() {
+    	//There is always at least one since the cell just eaten was blanked
+    	return this.mBlankCells[this.mRandom.nextInt(this.mBlankCount)];
     }
     
     /**
@@ -1723,6 +2401,32 @@ public class Game implements SharedPreferences.OnSharedPreferenceChangeListener
 				}
     		}
     	}
+    	
+    	this.checkSwarm();
+    }
+    
+    /**
+     * Check to see if The Man shares a cell with any swarm ghosts.
+     */
+    private void checkSwarm() {
+    	if (this.mSwarm.getCount() == 0) {
+    		return;
+    	}
+    	
+    	final int cell = this.hashPosition(this.mTheMan.getPosition());
+    	
+    	//Eat any frightened ones first
+    	final int eaten = this.mSwarm.eat(this, cell);
+    	if ((eaten > 0) && !this.mIsTrophyDessertsEnabled) {
+    		this.addToScore(Game.POINTS_FLEEING_GHOSTS[0] * eaten);
+    	}
+    	
+    	if ((this.mSwarm.getHuntingAt(cell) > 0) && this.mIsGhostDeadly && (this.mTheMan.getState() == TheMan.State.ALIVE)) {
+    		//Kill "The Man"
+    		this.mLives -= 1;
+    		this.mTheMan.setState(TheMan.State.DEAD);
+    		this.setState(Game.State.DYING);
+    	}
     }
     
     /**
@@ -1736,6 +2440,7 @@ public class Game implements SharedPreferences.OnSharedPreferenceChangeListener
     	}
     	if (state == Ghost.State.FRIGHTENED) {
     		this.mFleeingGhostsEaten = 0;
+    		this.mSwarm.frighten(this);
     	}
     }
     
@@ -1746,7 +2451,7 @@ public class Game implements SharedPreferences.OnSharedPreferenceChangeListener
      */
     private void setState(final Game.State state) {
     	this.mState = state;
-    	this.mStateTimestamp = System.currentTimeMillis();
+    	this.mStateTimestamp = this.mTime;
     	
     	if (Wallpaper.LOG_DEBUG) {
     		Log.d(Game.TAG, "Changing game state to " + state);
@@ -1768,6 +2473,7 @@ public class Game implements SharedPreferences.OnSharedPreferenceChangeListener
 		this.mIsBonusLifeGiven = false;
         this.mIsOnKillScreen = false;
         this.mTickCount = 0;
+        this.mDotsEatenTotal = 0;
         this.mFruitsEaten.clear();
     	
     	//Reset board
@@ -1790,13 +2496,11 @@ public class Game implements SharedPreferences.OnSharedPreferenceChangeListener
     	this.setState(Game.State.READY);
     	
     	//Kill screen on level 256
-    	if ((this.mIsKillScreenEnabled && (this.mLevel == Game.KILL_SCREEN_LEVEL)) || (this.mIsTrophyLegendEnabled && (Game.RANDOM.nextInt(Game.KILL_SCREEN_TROPHY_PROBABILITY) == 0))) {
+    	if ((this.mIsKillScreenEnabled && (this.mLevel == Game.KILL_SCREEN_LEVEL)) || (this.mIsTrophyLegendEnabled && (this.mRandom.nextInt(Game.KILL_SCREEN_TROPHY_PROBABILITY) == 0))) {
     		this.mIsOnKillScreen = true;
     		
 			//Load the kill screen sprite
-			final BitmapFactory.Options options = new BitmapFactory.Options();
-			options.inScaled = false;
-			this.mKillScreen = BitmapFactory.decodeResource(Wallpaper.CONTEXT.getResources(), R.drawable.killscreen, options);
+			this.mKillScreen = new LazyBitmap(R.drawable.killscreen);
     		
     		if (Wallpaper.LOG_DEBUG) {
     			Log.d(Game.TAG, "Kill screen enabled for this level");
@@ -1816,6 +2520,11 @@ public class Game implements SharedPreferences.OnSharedPreferenceChangeListener
     		this.earnTrophyCeos();
     	}
     	
+    	//No blank cells until dots are eaten
+    	Arrays.fill(this.mBlankIndex, -1);
+    	this.mBlankCount = 0;
+    	this.mIsBaseStale = true;
+    	
     	//Initialize dot grid
     	final int cellWidth = this.mCellColumnSpacing + 1;
     	final int cellHeight = this.mCellRowSpacing + 1;
@@ -1852,6 +2561,9 @@ public class Game implements SharedPreferences.OnSharedPreferenceChangeListener
     		}
     	}
     	
+    	//Walls are final for this level
+    	this.rebuildRoutes();
+    	
     	//Initialize juggerdots
     	this.mBoard[this.mCellRowSpacing + 1][0] = Cell.JUGGERDOT;
     	this.mBoard[0][this.mCellsWide - this.mCellColumnSpacing - 2] = Cell.JUGGERDOT;
@@ -1879,6 +2591,7 @@ public class Game implements SharedPreferences.OnSharedPreferenceChangeListener
     	for (final Ghost ghost : this.mGhosts) {
     		ghost.newLevel(this);
     	}
+    	this.mSwarm.newLevel(this);
     	
     	if (Wallpaper.LOG_VERBOSE) {
     		Log.v(Game.TAG, "< newLevel()");
@@ -1893,14 +2606,56 @@ public class Game implements SharedPreferences.OnSharedPreferenceChangeListener
     	for (final Ghost ghost : this.mGhosts) {
     		ghost.newLife(this);
     	}
+    	this.mSwarm.newLife(this);
     }
     
     /**
-     * Iterate all entities one step.
+     * Iterate all entities one step using the system clock.
      * 
      * @throws SomethingIsCausingEntitiesToNullPointerException 
      */
     public void tick() throws SomethingIsCausingEntitiesToNullPointerException {
+    	this.tick(System.currentTimeMillis() - this.mEpoch);
+    }
+    
+    /**
+     * Iterate all entities one step.
+     * 
+     * @param time Milliseconds elapsed on the game clock.
+     * @throws SomethingIsCausingEntitiesToNullPointerException 
+     */
+    public void tick(final long time) throws SomethingIsCausingEntitiesToNullPointerException {
+    	if (Wallpaper.TRACE_DEBUG) {
+    		Trace.begin(Trace.TICK);
+    	}
+    	final long start = System.nanoTime();
+    	boolean isTicked = false;
+    	try {
+    		this.performTick(time);
+    		isTicked = true;
+    	} finally {
+    		//Failed ticks are recorded too so that the crash can be played back
+    		if (this.mRecorder != null) {
+    			this.mRecorder.recordTick(this, time, isTicked);
+    		}
+    		if (this.mOverlay != null) {
+    			this.mOverlay.recordTick(System.nanoTime() - start);
+    		}
+    		if (Wallpaper.TRACE_DEBUG) {
+    			Trace.end();
+    		}
+    	}
+    }
+    
+    /**
+     * Iterate all entities one step.
+     * 
+     * @param time Milliseconds elapsed on the game clock.
+     * @throws SomethingIsCausingEntitiesToNullPointerException 
+     */
+    private void performTick(final long time) throws SomethingIsCausingEntitiesToNullPointerException {
+    	this.saveCheckpoint();
+    	this.mTime = time;
     	this.mTickCount += 1;
     	
     	//Check for level complete
@@ -1925,7 +2680,7 @@ public class Game implements SharedPreferences.OnSharedPreferenceChangeListener
     		}
     		
     		//check if current state has expired
-    		if ((System.currentTimeMillis() - this.mStateTimestamp) > this.mState.length) {
+    		if ((this.mTime - this.mStateTimestamp) > this.mState.length) {
 	    		switch (this.mState) {
 	    			case GAME_OVER:
 	    				this.newGame();
@@ -1950,6 +2705,9 @@ public class Game implements SharedPreferences.OnSharedPreferenceChangeListener
 	    		}
     		}
     	} else {
+    		//Where the ghosts can get to is shared by all of The Man's decisions this tick
+    		this.calculateDanger();
+    		
 	    	//The Man is ticked when playing
 	    	this.mTheMan.tick(this);
 	    	
@@ -1957,6 +2715,401 @@ public class Game implements SharedPreferences.OnSharedPreferenceChangeListener
 	    	for (final Ghost ghost : this.mGhosts) {
 	    		ghost.tick(this);
 	    	}
+	    	this.mSwarm.tick(this);
+	    	this.checkSwarm();
+    	}
+    	
+    	this.mRecoveries = 0;
+    }
+    
+    /**
+     * Recover from an entity failure in place by rolling back to the state at the
+     * start of the failed tick. If that state fails again the entities are also
+     * sent back to their starting positions so the failure is not just repeated.
+     * 
+     * @return Whether or not the game recovered. If not it needs to be replaced.
+     */
+    public boolean recover() {
+    	if (!this.mCheckpoint.isValid() || (this.mRecoveries >= Game.MAX_RECOVERIES)) {
+    		return false;
+    	}
+    	
+    	this.mRecoveries += 1;
+    	if (!this.restoreCheckpoint(false)) {
+    		return false;
+    	}
+    	if (this.mRecorder != null) {
+    		this.mRecorder.discardDecisions();
+    	}
+    	if (this.mRecoveries > 1) {
+    		this.newLife();
+    	}
+    	
+    	Log.w(Game.TAG, "Recovered from entity failure (attempt " + this.mRecoveries + ").");
+    	Metrics.increment(Metrics.RECOVERIES);
+    	return true;
+    }
+    
+    /**
+     * Write the full state of the game as a small versioned binary blob.
+     * 
+     * @param out Stream to write to.
+     * @throws IOException
+     */
+    public void writeState(final DataOutputStream out) throws IOException {
+    	//Start the board changes over so the checkpoint is complete with the board which follows it
+    	this.mIsBaseStale = true;
+    	this.saveCheckpoint();
+    	
+    	out.writeInt(Game.STATE_MAGIC);
+    	out.writeByte(Game.STATE_VERSION);
+    	this.mCheckpoint.writeTo(out);
+    	
+    	//Pack the board, storing each cell as its ordinal plus one so that zero is an unset cell
+    	final int cells = this.mCellsWide * this.mCellsTall;
+    	int packed = 0;
+    	for (int cell = 0; cell < cells; cell++) {
+    		final int slot = cell % Game.CELLS_PER_VALUE;
+    		packed |= (Checkpoint.ordinal(this.mBaseBoard[cell]) + 1) << (slot * Game.CELL_BITS);
+    		if ((slot == (Game.CELLS_PER_VALUE - 1)) || (cell == (cells - 1))) {
+    			Recorder.writeVarLong(out, packed & 0xFFFFFFFFL);
+    			packed = 0;
+    		}
+    	}
+    	Recorder.writeVarLong(out, this.mBaseBlankCount);
+    	for (int i = 0; i < this.mBaseBlankCount; i++) {
+    		Recorder.writeVarLong(out, this.mBaseBlankCells[i]);
+    	}
+    }
+    
+    /**
+     * Replace the state of the game with one written by {@link #writeState(DataOutputStream)}.
+     * The game clock continues from the saved time.
+     * 
+     * @param in Stream to read from.
+     * @return Whether or not the state fit the current board and ghosts and was restored.
+     * @throws IOException
+     */
+    public boolean readState(final DataInputStream in) throws IOException {
+    	if (in.readInt() != Game.STATE_MAGIC) {
+    		throw new IOException("Not a saved game.");
+    	}
+    	final int version = in.readUnsignedByte();
+    	if (version != Game.STATE_VERSION) {
+    		throw new IOException("Unsupported saved game version " + version + ".");
+    	}
+    	
+    	this.mCheckpoint.readFrom(in);
+    	if ((this.mBoard == null) || !this.fitsCheckpoint()) {
+    		//Saved with different settings, keep what we have
+    		this.saveCheckpoint();
+    		return false;
+    	}
+    	//Routes are always rebuilt below since the saved generation was counted by another instance
+    	this.mCheckpoint.getInt();
+    	if (this.mCheckpoint.getInt() != 0) {
+    		throw new IOException("Saved game has board changes without a board.");
+    	}
+    	
+    	//The saved board becomes the base which the checkpoint's (zero) board changes apply to
+    	this.mIsBaseStale = true;
+    	this.prepareBase();
+    	final int cells = this.mCellsWide * this.mCellsTall;
+    	final int mask = (1 << Game.CELL_BITS) - 1;
+    	int packed = 0;
+    	for (int cell = 0; cell < cells; cell++) {
+    		final int slot = cell % Game.CELLS_PER_VALUE;
+    		if (slot == 0) {
+    			packed = (int)Recorder.readVarLong(in);
+    		}
+    		final int value = (packed >>> (slot * Game.CELL_BITS)) & mask;
+    		if (value > Game.CELLS.length) {
+    			throw new IOException("Invalid cell " + value + " at " + cell + ".");
+    		}
+    		this.mBaseBoard[cell] = (value > 0) ? Game.CELLS[value - 1] : null;
+    		
+    		//Routes and wall drawing are laid out for the current board (e.g., around widgets)
+    		if ((this.mBaseBoard[cell] == Game.Cell.WALL) != (this.mBoard[cell / this.mCellsWide][cell % this.mCellsWide] == Game.Cell.WALL)) {
+    			throw new IOException("Saved walls do not match the board at " + cell + ".");
+    		}
+    	}
+    	final long blanks = Recorder.readVarLong(in);
+    	if ((blanks < 0) || (blanks > cells)) {
+    		throw new IOException("Invalid blank cell count " + blanks + ".");
+    	}
+    	this.mBaseBlankCount = (int)blanks;
+    	for (int i = 0; i < this.mBaseBlankCount; i++) {
+    		final long cell = Recorder.readVarLong(in);
+    		if ((cell < 0) || (cell >= cells) || (this.mBaseBoard[(int)cell] != Game.Cell.BLANK)) {
+    			throw new IOException("Invalid blank cell " + cell + ".");
+    		}
+    		this.mBaseBlankCells[i] = (int)cell;
+    	}
+    	this.mIsBaseStale = false;
+    	
+    	this.restoreCheckpoint(true);
+    	this.mEpoch = System.currentTimeMillis() - this.mTime;
+    	return true;
+    }
+    
+    /**
+     * Copy everything which changes during play in to the checkpoint. The board
+     * itself is only copied at the start of each level (or when the change log
+     * fills up) and otherwise just the number of cells set since then is kept.
+     */
+    private void saveCheckpoint() {
+    	final Checkpoint checkpoint = this.mCheckpoint;
+    	checkpoint.begin();
+    	if (this.mBoard == null) {
+    		return;
+    	}
+    	
+    	final int cells = this.mCellsWide * this.mCellsTall;
+    	if (this.mIsBaseStale) {
+    		this.prepareBase();
+    		for (int cell = 0; cell < cells; cell++) {
+    			this.mBaseBoard[cell] = this.mBoard[cell / this.mCellsWide][cell % this.mCellsWide];
+    		}
+    		System.arraycopy(this.mBlankCells, 0, this.mBaseBlankCells, 0, this.mBlankCount);
+    		this.mBaseBlankCount = this.mBlankCount;
+    		this.mBoardChangeCount = 0;
+    		this.mIsBaseStale = false;
+    	}
+    	
+    	checkpoint.putInt(this.mCellsWide);
+    	checkpoint.putInt(this.mCellsTall);
+    	checkpoint.putInt(this.mGhosts.length);
+    	checkpoint.putInt(this.mSwarm.getCount());
+    	checkpoint.putInt(this.mRoutesGeneration);
+    	checkpoint.putInt(this.mBoardChangeCount);
+    	
+    	checkpoint.putInt(this.mState.ordinal());
+    	checkpoint.putLong(this.mStateTimestamp);
+    	checkpoint.putLong(this.mTime);
+    	checkpoint.putLong(this.mTickCount);
+    	checkpoint.putLong(this.mRandom.getState());
+    	checkpoint.putInt(this.mScore);
+    	checkpoint.putInt(this.mLives);
+    	checkpoint.putInt(this.mLevel);
+    	checkpoint.putInt(this.mDotsRemaining);
+    	checkpoint.putInt(this.mDotsTotal);
+    	checkpoint.putInt(this.mJuggerdotsRemaining);
+    	checkpoint.putInt(this.mDotsEatenTotal);
+    	checkpoint.putInt(this.mFleeingGhostsEaten);
+    	checkpoint.putInt(this.mAllFleeingGhostsEaten);
+    	checkpoint.putInt(this.mGhostEatenThisLevel);
+    	checkpoint.putBoolean(this.mIsBonusLifeGiven);
+    	checkpoint.putBoolean(this.mIsOnKillScreen);
+    	
+    	int fruitsEaten = 0;
+    	for (final Fruit.Type type : Game.FRUIT_TYPES) {
+    		if (this.mFruitsEaten.contains(type)) {
+    			fruitsEaten |= 1 << type.ordinal();
+    		}
+    	}
+    	checkpoint.putInt(fruitsEaten);
+    	
+    	this.mTheMan.save(checkpoint);
+    	this.mFruit.save(checkpoint);
+    	for (final Ghost ghost : this.mGhosts) {
+    		ghost.save(checkpoint);
+    	}
+    	this.mSwarm.save(checkpoint);
+    	
+    	checkpoint.finish();
+    }
+    
+    /**
+     * Size the copy of the board to the current board.
+     */
+    private void prepareBase() {
+    	final int cells = this.mCellsWide * this.mCellsTall;
+    	if ((this.mBaseBoard == null) || (this.mBaseBoard.length != cells)) {
+    		this.mBaseBoard = new Game.Cell[cells];
+    		this.mBaseBlankCells = new int[cells];
+    	}
+    }
+    
+    /**
+     * Test whether the checkpoint was taken of a board and ghosts the same size as ours.
+     * 
+     * @return Boolean.
+     */
+    private boolean fitsCheckpoint() {
+    	final Checkpoint checkpoint = this.mCheckpoint;
+    	checkpoint.rewind();
+    	return (checkpoint.getInt() == this.mCellsWide) && (checkpoint.getInt() == this.mCellsTall)
+    			&& (checkpoint.getInt() == this.mGhosts.length) && (checkpoint.getInt() == this.mSwarm.getCount());
+    }
+    
+    /**
+     * Restore everything from the checkpoint. The board is copied back from its
+     * base and the changes made up to the checkpoint are replayed on to it.
+     * 
+     * @param isRoutesStale Whether the routes must be rebuilt even if their generation matches.
+     * @return Whether or not the checkpoint still fits the board and ghosts.
+     */
+    private boolean restoreCheckpoint(final boolean isRoutesStale) {
+    	if (!this.fitsCheckpoint() || (this.mBaseBoard == null)) {
+    		return false;
+    	}
+    	
+    	final Checkpoint checkpoint = this.mCheckpoint;
+    	final int routesGeneration = checkpoint.getInt();
+    	final int boardChanges = checkpoint.getInt();
+    	
+    	this.mState = Game.State.values()[checkpoint.getInt()];
+    	this.mStateTimestamp = checkpoint.getLong();
+    	this.mTime = checkpoint.getLong();
+    	this.mTickCount = checkpoint.getLong();
+    	this.mRandom.setState(checkpoint.getLong());
+    	this.mScore = checkpoint.getInt();
+    	this.mLives = checkpoint.getInt();
+    	this.mLevel = checkpoint.getInt();
+    	this.mDotsRemaining = checkpoint.getInt();
+    	this.mDotsTotal = checkpoint.getInt();
+    	this.mJuggerdotsRemaining = checkpoint.getInt();
+    	this.mDotsEatenTotal = checkpoint.getInt();
+    	this.mFleeingGhostsEaten = checkpoint.getInt();
+    	this.mAllFleeingGhostsEaten = checkpoint.getInt();
+    	this.mGhostEatenThisLevel = checkpoint.getInt();
+    	this.mIsBonusLifeGiven = checkpoint.getBoolean();
+    	this.mIsOnKillScreen = checkpoint.getBoolean();
+    	if (!this.mIsOnKillScreen) {
+    		this.mKillScreen = null;
+    	} else if (this.mKillScreen == null) {
+    		this.mKillScreen = new LazyBitmap(R.drawable.killscreen);
+    	}
+    	
+    	final int fruitsEaten = checkpoint.getInt();
+    	this.mFruitsEaten.clear();
+    	for (final Fruit.Type type : Game.FRUIT_TYPES) {
+    		if ((fruitsEaten & (1 << type.ordinal())) != 0) {
+    			this.mFruitsEaten.add(type);
+    		}
+    	}
+    	
+    	final int cells = this.mCellsWide * this.mCellsTall;
+    	for (int cell = 0; cell < cells; cell++) {
+    		this.mBoard[cell / this.mCellsWide][cell % this.mCellsWide] = this.mBaseBoard[cell];
+    	}
+    	Arrays.fill(this.mBlankIndex, -1);
+    	this.mBlankCount = this.mBaseBlankCount;
+    	for (int i = 0; i < this.mBlankCount; i++) {
+    		final int cell = this.mBaseBlankCells[i];
+    		this.mBlankCells[i] = cell;
+    		this.mBlankIndex[cell] = i;
+    	}
+    	for (int i = 0; i < boardChanges; i++) {
+    		final int change = this.mBoardChanges[i];
+    		this.applyCell(change / Game.CELLS.length, Game.CELLS[change % Game.CELLS.length]);
+    	}
+    	this.mBoardChangeCount = boardChanges;
+    	this.mIsBaseStale = false;
+    	
+    	this.mTheMan.restore(checkpoint);
+    	this.mFruit.restore(checkpoint);
+    	for (final Ghost ghost : this.mGhosts) {
+    		ghost.restore(checkpoint);
+    	}
+    	this.mSwarm.restore(checkpoint);
+    	
+    	//Walls or wrapping may have changed if the failure was in starting a new level
+    	if (isRoutesStale || (routesGeneration != this.mRoutesGeneration)) {
+    		this.rebuildRoutes();
+    	}
+    	return true;
+    }
+    
+    /**
+     * Hash everything which determines how the game will play out from here. Two
+     * games which have followed the same seed, settings, inputs, and tick times
+     * will always hash identically.
+     * 
+     * @return Hash.
+     */
+    public int stateHash() {
+    	int hash = 17;
+    	hash = 31 * hash + (int)(this.mTime ^ (this.mTime >>> 32));
+    	hash = 31 * hash + ((this.mState != null) ? this.mState.ordinal() : -1);
+    	hash = 31 * hash + this.mScore;
+    	hash = 31 * hash + this.mLives;
+    	hash = 31 * hash + this.mLevel;
+    	hash = 31 * hash + this.mDotsRemaining;
+    	hash = 31 * hash + this.mJuggerdotsRemaining;
+    	
+    	final long random = this.mRandom.getState();
+    	hash = 31 * hash + (int)(random ^ (random >>> 32));
+    	
+    	if (this.mBoard != null) {
+	    	for (final Game.Cell[] row : this.mBoard) {
+	    		for (final Game.Cell cell : row) {
+	    			hash = 31 * hash + ((cell != null) ? cell.ordinal() : -1);
+	    		}
+	    	}
+    	}
+    	
+    	hash = Game.hashEntity(hash, this.mTheMan);
+    	if (this.mGhosts != null) {
+    		for (final Ghost ghost : this.mGhosts) {
+    			hash = Game.hashEntity(hash, ghost);
+    			hash = 31 * hash + ghost.getState().ordinal();
+    		}
+    	}
+    	hash = this.mSwarm.hash(hash);
+    	if (this.mFruit.isVisible()) {
+    		hash = Game.hashEntity(hash, this.mFruit);
+    	}
+    	
+    	return hash;
+    }
+    
+    /**
+     * Fold the position and direction of an entity into a hash.
+     * 
+     * @param hash Running hash.
+     * @param entity Entity.
+     * @return Hash.
+     */
+    private static int hashEntity(int hash, final Entity entity) {
+    	final Point position = entity.getPosition();
+    	final Entity.Direction direction = entity.getDirection();
+    	hash = 31 * hash + position.x;
+    	hash = 31 * hash + position.y;
+    	hash = 31 * hash + ((direction != null) ? direction.ordinal() : -1);
+    	hash = 31 * hash + entity.getProgress();
+    	return hash;
+    }
+
+    /**
+     * Stop listening for preference changes on the game and all of its entities.
+     */
+    public void destroy() {
+    	if (Wallpaper.LOG_VERBOSE) {
+    		Log.v(Game.TAG, "> destroy()");
+    	}
+    	
+    	if (!this.mIsHeadless) {
+	    	//Entities receive their settings through us so this is all that is needed
+	    	Wallpaper.SETTINGS.unregister(this);
+    	}
+    	
+    	if (this.mRecorder != null) {
+    		this.mRecorder.close();
+    		this.mRecorder = null;
+    	}
+    	
+    	this.setOverlayEnabled(false);
+    	
+    	if (this.mBackground != null) {
+    		//Sized to this game's screen so it is of no use to the next one
+    		Wallpaper.BITMAPS.unpin(this.mBackground);
+    		this.mBackground.recycle();
+    		this.mBackground = null;
+    	}
+    	
+    	if (Wallpaper.LOG_VERBOSE) {
+    		Log.v(Game.TAG, "< destroy()");
     	}
     }
 
@@ -1971,12 +3124,78 @@ public class Game implements SharedPreferences.OnSharedPreferenceChangeListener
     		Log.v(Game.TAG, "> performResize(width = " + screenWidth + ", height = " + screenHeight + ")");
     	}
     	
-    	//Background image
-    	if (this.mBackgroundPath != null) {
+    	if (this.mRecorder != null) {
+    		this.mRecorder.recordResize(screenWidth, screenHeight);
+    	}
+    	
+    	if ((screenWidth != this.mScreenWidth) || (screenHeight != this.mScreenHeight)) {
+    		//Everything derived from the screen size is now stale
+    		this.mDirty |= Game.DIRTY_BACKGROUND | Game.DIRTY_METRICS;
+    	}
+    	
+    	this.mIsLandscape = (screenWidth > screenHeight);
+    	this.mScreenWidth = screenWidth;
+    	this.mScreenHeight = screenHeight;
+    	
+    	if (Wallpaper.LOG_DEBUG) {
+    		Log.d(Game.TAG, "Is Landscape: " + this.mIsLandscape);
+    		Log.d(Game.TAG, "Screen Width: " + screenWidth);
+    		Log.d(Game.TAG, "Screen Height: " + screenHeight);
+    	}
+    	
+    	this.performRebuild();
+
+    	if (Wallpaper.LOG_VERBOSE) {
+    		Log.v(Game.TAG, "< performResize()");
+    	}
+    }
+    
+    /**
+     * Rebuild only the derived data which has been invalidated since the last rebuild.
+     * Cell metrics depend on the screen size, padding, and board dimensions. Walls
+     * depend on the cell metrics and widget locations. The background only depends
+     * on the screen size and image.
+     */
+    private void performRebuild() {
+    	if (Wallpaper.LOG_DEBUG) {
+    		Log.d(Game.TAG, "Rebuilding: " + Integer.toBinaryString(this.mDirty));
+    	}
+    	
+    	if (((this.mDirty & Game.DIRTY_BACKGROUND) != 0) && !this.mIsHeadless) {
+    		//Headless games are never drawn (and may not be on a thread which can show errors)
+    		this.loadBackground();
+    	}
+    	if ((this.mDirty & Game.DIRTY_METRICS) != 0) {
+    		this.calculateCellMetrics();
+    		this.mDirty |= Game.DIRTY_WALLS;
+    	}
+    	if ((this.mDirty & Game.DIRTY_WALLS) != 0) {
+    		this.calculateWalls();
+    	}
+    	
+    	this.mDirty = 0;
+    }
+    
+    /**
+     * Decode the background image and crop it to the screen.
+     */
+    private void loadBackground() {
+    	if (this.mBackground != null) {
+    		Wallpaper.BITMAPS.unpin(this.mBackground);
+    		this.mBackground.recycle();
+    		this.mBackground = null;
+    	}
+    	
+    	if (this.mBackgroundPath == null) {
+    		this.mBackground = null;
+    	} else {
 			try {
-				final Bitmap temp = BitmapFactory.decodeStream(Wallpaper.CONTEXT.getContentResolver().openInputStream(Uri.parse(this.mBackgroundPath)));
+				//Photos are opaque (opacity is applied when drawn) so use half the memory
+				final BitmapFactory.Options options = new BitmapFactory.Options();
+				options.inPreferredConfig = Bitmap.Config.RGB_565;
+				final Bitmap temp = BitmapFactory.decodeStream(Wallpaper.CONTEXT.getContentResolver().openInputStream(Uri.parse(this.mBackgroundPath)), null, options);
 				final float pictureAR = temp.getWidth() / (temp.getHeight() * 1.0f);
-				final float screenAR = screenWidth / (screenHeight * 1.0f);
+				final float screenAR = this.mScreenWidth / (this.mScreenHeight * 1.0f);
 				int newWidth;
 				int newHeight;
 				int x;
@@ -1984,20 +3203,27 @@ public class Game implements SharedPreferences.OnSharedPreferenceChangeListener
 				
 				if (pictureAR > screenAR) {
 					//wider than tall related to the screen AR
-					newHeight = screenHeight;
-					newWidth = (int)(temp.getWidth() * (screenHeight / (temp.getHeight() * 1.0f)));
-					x = (newWidth - screenWidth) / 2;
+					newHeight = this.mScreenHeight;
+					newWidth = (int)(temp.getWidth() * (this.mScreenHeight / (temp.getHeight() * 1.0f)));
+					x = (newWidth - this.mScreenWidth) / 2;
 					y = 0;
 				} else {
 					//taller than wide related to the screen AR
-					newWidth = screenWidth;
-					newHeight = (int)(temp.getHeight() * (screenWidth / (temp.getWidth() * 1.0f)));
+					newWidth = this.mScreenWidth;
+					newHeight = (int)(temp.getHeight() * (this.mScreenWidth / (temp.getWidth() * 1.0f)));
 					x = 0;
-					y = (newHeight - screenHeight) / 2;
+					y = (newHeight - this.mScreenHeight) / 2;
 				}
 				
 	    		final Bitmap scaled = Bitmap.createScaledBitmap(temp, newWidth, newHeight, false);
-	    		this.mBackground = Bitmap.createBitmap(scaled, x, y, screenWidth, screenHeight);
+	    		this.mBackground = Bitmap.createBitmap(scaled, x, y, this.mScreenWidth, this.mScreenHeight);
+	    		if (scaled != this.mBackground) {
+	    			scaled.recycle();
+	    		}
+	    		if ((temp != scaled) && (temp != this.mBackground)) {
+	    			temp.recycle();
+	    		}
+	    		Wallpaper.BITMAPS.pin(this.mBackground);
 			} catch (final Exception e) {
 				e.printStackTrace();
 				Log.w(Game.TAG, "Unable to load background bitmap.");
@@ -2010,17 +3236,18 @@ public class Game implements SharedPreferences.OnSharedPreferenceChangeListener
 				this.mBackground = null;
 			}
     	}
-    	
-    	this.mIsLandscape = (screenWidth > screenHeight);
-    	this.mScreenWidth = screenWidth;
-    	this.mScreenHeight = screenHeight;
-    	
+    }
+    
+    /**
+     * Calculate the size of a cell and resize all of the entities to match.
+     */
+    private void calculateCellMetrics() {
     	if (this.mIsLandscape) {
-    		this.mCellWidth = (screenWidth - this.mDotGridPaddingBottom) / (this.mCellsWide * 1.0f);
-    		this.mCellHeight = (screenHeight - (this.mDotGridPaddingTop + this.mDotGridPaddingLeft + this.mDotGridPaddingRight)) / (this.mCellsTall * 1.0f);
+    		this.mCellWidth = (this.mScreenWidth - this.mDotGridPaddingBottom) / (this.mCellsWide * 1.0f);
+    		this.mCellHeight = (this.mScreenHeight - (this.mDotGridPaddingTop + this.mDotGridPaddingLeft + this.mDotGridPaddingRight)) / (this.mCellsTall * 1.0f);
     	} else {
-    		this.mCellWidth = (screenWidth - (this.mDotGridPaddingLeft + this.mDotGridPaddingRight)) / (this.mCellsWide * 1.0f);
-    		this.mCellHeight = (screenHeight - (this.mDotGridPaddingTop + this.mDotGridPaddingBottom)) / (this.mCellsTall * 1.0f);
+    		this.mCellWidth = (this.mScreenWidth - (this.mDotGridPaddingLeft + this.mDotGridPaddingRight)) / (this.mCellsWide * 1.0f);
+    		this.mCellHeight = (this.mScreenHeight - (this.mDotGridPaddingTop + this.mDotGridPaddingBottom)) / (this.mCellsTall * 1.0f);
     	}
     	
     	//Update cell size
@@ -2028,9 +3255,6 @@ public class Game implements SharedPreferences.OnSharedPreferenceChangeListener
     	this.mCellSize.bottom = this.mCellHeight;
     	
     	if (Wallpaper.LOG_DEBUG) {
-    		Log.d(Game.TAG, "Is Landscape: " + this.mIsLandscape);
-    		Log.d(Game.TAG, "Screen Width: " + screenWidth);
-    		Log.d(Game.TAG, "Screen Height: " + screenHeight);
     		Log.d(Game.TAG, "Cell Width: " + this.mCellWidth);
     		Log.d(Game.TAG, "Cell Height: " + this.mCellHeight);
     	}
@@ -2041,13 +3265,18 @@ public class Game implements SharedPreferences.OnSharedPreferenceChangeListener
     	for (final Ghost ghost : this.mGhosts) {
     		ghost.performResize(this);
     	}
+    	this.mSwarm.performResize(this);
     	
     	//For on-board HUD text
     	final Point theManInitial = this.mTheMan.getInitialPosition(this);
     	this.mTextLocation.x = (theManInitial.x + 0.5f) * this.mCellWidth;
     	this.mTextLocation.y = (theManInitial.y - 0.1f) * this.mCellHeight;
-    	
-    	//Calculate walls
+    }
+    
+    /**
+     * Calculate the wall geometry around the icons and widgets.
+     */
+    private void calculateWalls() {
     	this.mWalls.clear();
     	final float cellOverEight = ((this.mCellWidth < this.mCellHeight) ? this.mCellHeight : this.mCellWidth) / 8.0f;
 		
@@ -2097,10 +3326,6 @@ public class Game implements SharedPreferences.OnSharedPreferenceChangeListener
     			this.mWalls.add(new RectF(left, top, right, bottom));
     		}
     	}
-
-    	if (Wallpaper.LOG_VERBOSE) {
-    		Log.v(Game.TAG, "< performResize()");
-    	}
     }
     
     /**
@@ -2109,6 +3334,11 @@ public class Game implements SharedPreferences.OnSharedPreferenceChangeListener
      * @param c Canvas to draw on.
      */
     public void draw(final Canvas c) {
+    	if (Wallpaper.TRACE_DEBUG) {
+    		Trace.begin(Trace.DRAW);
+    	}
+    	final long start = System.nanoTime();
+    	Wallpaper.BITMAPS.beginFrame();
     	c.save();
     	
     	//Clear the screen in case of transparency in the image
@@ -2119,18 +3349,34 @@ public class Game implements SharedPreferences.OnSharedPreferenceChangeListener
     	}
         
     	//Draw HUD before translation
+    	if (Wallpaper.TRACE_DEBUG) {
+    		Trace.begin(Trace.DRAW_HUD);
+    	}
     	this.drawHud(c);
+    	if (Wallpaper.TRACE_DEBUG) {
+    		Trace.end();
+    	}
     	
     	c.translate(this.mDotGridPaddingLeft, this.mDotGridPaddingTop);
         
         //Draw dots and walls
+    	if (Wallpaper.TRACE_DEBUG) {
+    		Trace.begin(Trace.DRAW_BOARD);
+    	}
         this.drawGameBoard(c);
+    	if (Wallpaper.TRACE_DEBUG) {
+    		Trace.end();
+    	}
         
-        if (this.mIsOnKillScreen) {
+        if (this.mIsOnKillScreen && (this.mKillScreen.get() != null)) {
         	final RectF screenSize = new RectF(0, 0, this.mCellsWide * this.mCellWidth, this.mCellsTall * this.mCellHeight);
-        	c.drawBitmap(this.mKillScreen, null, screenSize, null);
+        	c.drawBitmap(this.mKillScreen.get(), null, screenSize, null);
         }
         
+    	if (Wallpaper.TRACE_DEBUG) {
+    		Trace.begin(Trace.DRAW_ENTITIES);
+    	}
+    	
         //Draw the fruit only if it is enabled and the game isn't over or level completed
     	if (this.mIsFruitEnabled && (this.mState != Game.State.GAME_OVER) && (this.mState != Game.State.LEVEL_COMPLETE)) {
         	this.mFruit.draw(this, c);
@@ -2144,6 +3390,11 @@ public class Game implements SharedPreferences.OnSharedPreferenceChangeListener
 	    	for (final Ghost ghost : this.mGhosts) {
 	    		ghost.draw(this, c);
 	    	}
+	    	this.mSwarm.draw(this, c);
+    	}
+    	
+    	if (Wallpaper.TRACE_DEBUG) {
+    		Trace.end();
     	}
         
     	switch (this.mState) {
@@ -2156,6 +3407,13 @@ public class Game implements SharedPreferences.OnSharedPreferenceChangeListener
     	}
         
         c.restore();
+        
+        if (this.mOverlay != null) {
+        	this.mOverlay.draw(this, c, start);
+        }
+    	if (Wallpaper.TRACE_DEBUG) {
+    		Trace.end();
+    	}
     }
 
     /**
@@ -2164,7 +3422,11 @@ public class Game implements SharedPreferences.OnSharedPreferenceChangeListener
      * @param c Canvas to draw on.
      */
     private void drawGameBoard(final Canvas c) {
-    	if (this.mDots != Game.Dots.CIRCLES) {
+    	//Apples fall back to circles until their sprite is available
+    	final Bitmap dotSprite = (this.mDots == Game.Dots.CIRCLES) ? null : this.mDotSprite.get();
+    	final boolean isCircles = (dotSprite == null);
+    	
+    	if (!isCircles) {
     		//Set filter in case of Bitmaps
     		c.setDrawFilter(Game.FILTER_SET);
     	}
@@ -2174,7 +3436,7 @@ public class Game implements SharedPreferences.OnSharedPreferenceChangeListener
         	for (int x = 0; x < this.mCellsWide; x++) {
         		final Game.Cell cell = this.mBoard[y][x];
         		if (cell == Cell.DOT) {
-            		if (this.mDots == Game.Dots.CIRCLES) {
+            		if (isCircles) {
             			final float left = (x * this.mCellWidth) + ((this.mCellWidth * 0.75f) / 2);
             			final float top = (y * this.mCellHeight) + ((this.mCellHeight * 0.75f) / 2);
             			final float right = left + (this.mCellWidth * 0.25f);
@@ -2187,10 +3449,10 @@ public class Game implements SharedPreferences.OnSharedPreferenceChangeListener
             			final float right = left + (this.mCellWidth / 2.0f);
             			final float bottom = top + (this.mCellHeight / 2.0f);
             			
-            			c.drawBitmap(this.mDotSprite, null, new RectF(left, top, right, bottom), Entity.SPRITE_PAINT);
+            			c.drawBitmap(dotSprite, null, new RectF(left, top, right, bottom), Entity.SPRITE_PAINT);
             		}
         		} else if ((cell == Cell.JUGGERDOT) && (this.mTickCount % this.mJuggerdotBlinkLength < this.mJuggerdotBlinkInterval)) {
-            		if (this.mDots == Game.Dots.CIRCLES) {
+            		if (isCircles) {
             			final float left = (x * this.mCellWidth) + ((this.mCellWidth * 0.25f) / 2);
             			final float top = (y * this.mCellHeight) + ((this.mCellHeight * 0.25f) / 2);
             			final float right = left + (this.mCellWidth * 0.75f);
@@ -2203,13 +3465,13 @@ public class Game implements SharedPreferences.OnSharedPreferenceChangeListener
             			final float right = left + this.mCellWidth;
             			final float bottom = top + this.mCellHeight;
             			
-            			c.drawBitmap(this.mDotSprite, null, new RectF(left, top, right, bottom), Entity.SPRITE_PAINT);
+            			c.drawBitmap(dotSprite, null, new RectF(left, top, right, bottom), Entity.SPRITE_PAINT);
             		}
         		}
         	}
         }
         
-        if (this.mDots != Game.Dots.CIRCLES) {
+        if (!isCircles) {
         	//Remove filter
         	c.setDrawFilter(Game.FILTER_REMOVE);
         }
@@ -2244,7 +3506,12 @@ public class Game implements SharedPreferences.OnSharedPreferenceChangeListener
 		        			break;
 		        			
 		        		case ANDY:
-		        			c.drawBitmap(this.mAndy, null, dest, Entity.SPRITE_PAINT);
+		        			final Bitmap andy = this.mAndy.get();
+		        			if (andy != null) {
+		        				c.drawBitmap(andy, null, dest, Entity.SPRITE_PAINT);
+		        			} else {
+		        				c.drawArc(dest, Game.HUD_THEMAN_ANGLE, Game.HUD_THEMAN_ARC, true, this.mTheManForeground);
+		        			}
 		        			break;
 		        	}
 		        }
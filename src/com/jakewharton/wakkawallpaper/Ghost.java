@@ -1,9 +1,5 @@
 package com.jakewharton.wakkawallpaper;
 
-import android.content.SharedPreferences;
-import android.content.res.Resources;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.graphics.Canvas;
 import android.graphics.Paint;
 import android.graphics.Path;
@@ -17,7 +13,7 @@ import android.util.Log;
  * 
  * @author Jake Wharton
  */
-public abstract class Ghost extends Entity implements SharedPreferences.OnSharedPreferenceChangeListener {
+public abstract class Ghost extends Entity implements Settings.Listener {
 	/**
 	 * Ghost movement state.
 	 * 
@@ -301,13 +297,39 @@ public abstract class Ghost extends Entity implements SharedPreferences.OnShared
 	/**
 	 * Bitmap holding the ghost sprites (if any).
 	 */
-	private Bitmap mSprites;
+	private LazyBitmap mSprites;
 	
 	/**
 	 * Index of which sprite to use for this ghost.
 	 */
 	private final int mSpriteIndex;
 	
+	/**
+	 * Home position to which we return when eaten.
+	 */
+	private final Point mHome;
+	
+	/**
+	 * Flow field towards our home position.
+	 */
+	private byte[] mHomeRoute;
+	
+	
+	
+	/**
+	 * Get how long ghosts stay frightened on a level.
+	 * 
+	 * @param level Level number.
+	 * @return Milliseconds.
+	 */
+	/*package*/static int getFrightenedLength(final int level) {
+		int levelPointer = level - 1;
+		if (levelPointer >= Ghost.FRIGHTENED_LENGTH.length) {
+			levelPointer = Ghost.FRIGHTENED_LENGTH.length - 1;
+		}
+		return Ghost.FRIGHTENED_LENGTH[levelPointer];
+	}
+	
 	
 	
     /**
@@ -319,6 +341,7 @@ public abstract class Ghost extends Entity implements SharedPreferences.OnShared
 		super();
 		
 		this.mSpriteIndex = spriteIndex;
+		this.mHome = new Point();
 		
 		this.mBodyBackground = new Paint(Paint.ANTI_ALIAS_FLAG);
 		this.mEyeBackground = new Paint(Paint.ANTI_ALIAS_FLAG);
@@ -337,55 +360,44 @@ public abstract class Ghost extends Entity implements SharedPreferences.OnShared
 		this.mScaredBlinkEyeForeground.setStyle(Paint.Style.FILL_AND_STROKE);
 		
 		this.mBody = new Path[2];
-
-        //Load all preferences or their defaults
-        Wallpaper.PREFERENCES.registerOnSharedPreferenceChangeListener(this);
-        this.onSharedPreferenceChanged(Wallpaper.PREFERENCES, null);
 	}
 
 	
 	
     /**
-     * Handle the changing of a preference.
+     * Handle the changing of one or more settings.
      */
-	public void onSharedPreferenceChanged(final SharedPreferences preferences, final String key) {
+	public void onSettingsChanged(final Settings settings, final Settings.Diff diff) {
     	if (Wallpaper.LOG_VERBOSE) {
-    		Log.v(Ghost.TAG, "> onSharedPreferenceChanged()");
+    		Log.v(Ghost.TAG, "> onSettingsChanged()");
     	}
     	
-		final boolean all = (key == null);
-		final Resources resources = Wallpaper.CONTEXT.getResources();
-		
-		final String eyeBg = Wallpaper.CONTEXT.getString(R.string.settings_color_ghost_eyebg_key);
-		if (all || key.equals(eyeBg)) {
-			this.mEyeBackground.setColor(preferences.getInt(eyeBg, resources.getInteger(R.integer.color_ghost_eyebg_default)));
+		if (diff.contains(Settings.COLOR_GHOST_EYE_BACKGROUND)) {
+			this.mEyeBackground.setColor(settings.getInt(Settings.COLOR_GHOST_EYE_BACKGROUND));
 			
 			if (Wallpaper.LOG_DEBUG) {
 				Log.d(Ghost.TAG, "Eye Background: #" + Integer.toHexString(this.mEyeBackground.getColor()));
 			}
 		}
 		
-		final String eyeFg = Wallpaper.CONTEXT.getString(R.string.settings_color_ghost_eyefg_key);
-		if (all || key.equals(eyeFg)) {
-			this.mEyeForeground.setColor(preferences.getInt(eyeFg, resources.getInteger(R.integer.color_ghost_eyefg_default)));
+		if (diff.contains(Settings.COLOR_GHOST_EYE_FOREGROUND)) {
+			this.mEyeForeground.setColor(settings.getInt(Settings.COLOR_GHOST_EYE_FOREGROUND));
 			
 			if (Wallpaper.LOG_DEBUG) {
 				Log.d(Ghost.TAG, "Eye Foreground: #" + Integer.toHexString(this.mEyeForeground.getColor()));
 			}
 		}
 		
-		final String scaredBg = Wallpaper.CONTEXT.getString(R.string.settings_color_ghost_scaredbg_key);
-		if (all || key.equals(scaredBg)) {
-			this.mScaredBackground.setColor(preferences.getInt(scaredBg, resources.getInteger(R.integer.color_ghost_scaredbg_default)));
+		if (diff.contains(Settings.COLOR_GHOST_SCARED_BACKGROUND)) {
+			this.mScaredBackground.setColor(settings.getInt(Settings.COLOR_GHOST_SCARED_BACKGROUND));
 			
 			if (Wallpaper.LOG_DEBUG) {
 				Log.d(Ghost.TAG, "Scared Background: #" + Integer.toHexString(this.mScaredBackground.getColor()));
 			}
 		}
 		
-		final String scaredFg = Wallpaper.CONTEXT.getString(R.string.settings_color_ghost_scaredfg_key);
-		if (all || key.equals(scaredFg)) {
-			final int color = preferences.getInt(scaredFg, resources.getInteger(R.integer.color_ghost_scaredfg_default));
+		if (diff.contains(Settings.COLOR_GHOST_SCARED_FOREGROUND)) {
+			final int color = settings.getInt(Settings.COLOR_GHOST_SCARED_FOREGROUND);
 			this.mScaredMouthForeground.setColor(color);
 			this.mScaredEyeForeground.setColor(color);
 			
@@ -394,18 +406,16 @@ public abstract class Ghost extends Entity implements SharedPreferences.OnShared
 			}
 		}
 		
-		final String scaredBlinkBg = Wallpaper.CONTEXT.getString(R.string.settings_color_ghost_scaredblinkbg_key);
-		if (all || key.equals(scaredBlinkBg)) {
-			this.mScaredBlinkBackground.setColor(preferences.getInt(scaredBlinkBg, resources.getInteger(R.integer.color_ghost_scaredblinkbg_default)));
+		if (diff.contains(Settings.COLOR_GHOST_SCARED_BLINK_BACKGROUND)) {
+			this.mScaredBlinkBackground.setColor(settings.getInt(Settings.COLOR_GHOST_SCARED_BLINK_BACKGROUND));
 			
 			if (Wallpaper.LOG_DEBUG) {
 				Log.d(Ghost.TAG, "Scared Blink Background: #" + Integer.toHexString(this.mScaredBlinkBackground.getColor()));
 			}
 		}
 		
-		final String scaredBlinkFg = Wallpaper.CONTEXT.getString(R.string.settings_color_ghost_scaredblinkfg_key);
-		if (all || key.equals(scaredBlinkFg)) {
-			final int color = preferences.getInt(scaredBlinkFg, resources.getInteger(R.integer.color_ghost_scaredblinkfg_default));
+		if (diff.contains(Settings.COLOR_GHOST_SCARED_BLINK_FOREGROUND)) {
+			final int color = settings.getInt(Settings.COLOR_GHOST_SCARED_BLINK_FOREGROUND);
 			this.mScaredBlinkMouthForeground.setColor(color);
 			this.mScaredBlinkEyeForeground.setColor(color);
 			
@@ -414,18 +424,16 @@ public abstract class Ghost extends Entity implements SharedPreferences.OnShared
 			}
 		}
 		
-		final String ghostMode = Wallpaper.CONTEXT.getString(R.string.settings_game_ghostmode_key);
-		if (all || key.equals(ghostMode)) {
-			this.mMode = Ghost.Mode.parseInt(preferences.getInt(ghostMode, resources.getInteger(R.integer.game_ghostmode_default)));
+		if (diff.contains(Settings.GAME_GHOST_MODE)) {
+			this.mMode = settings.getGhostMode();
 			
 			if (Wallpaper.LOG_DEBUG) {
 				Log.d(Ghost.TAG, "Mode: " + this.mMode);
 			}
 		}
 		
-		final String color_style = Wallpaper.CONTEXT.getString(R.string.settings_color_entitystyle_key);
-		if (all || key.equals(color_style)) {
-			final Entity.Style style = Entity.Style.parseInt(preferences.getInt(color_style, resources.getInteger(R.integer.color_entitystyle_default)));
+		if (diff.contains(Settings.COLOR_ENTITY_STYLE)) {
+			final Entity.Style style = settings.getEntityStyle();
 			//The eyes and mouth are always fill_and_stroke and stroke, respectively. We only change the body background rendering.
 			this.mBodyBackground.setStyle(style.style);
 			this.mScaredBackground.setStyle(style.style);
@@ -436,26 +444,22 @@ public abstract class Ghost extends Entity implements SharedPreferences.OnShared
 			}
 		}
 		
-		final String wrapping = resources.getString(R.string.settings_game_wrappingghosts_key);
-		if (all || key.equals(wrapping)) {
-			this.mIsWrapping = preferences.getBoolean(wrapping, resources.getBoolean(R.bool.game_wrappingghosts_default));
+		if (diff.contains(Settings.GAME_WRAPPING_GHOSTS)) {
+			this.mIsWrapping = settings.getBoolean(Settings.GAME_WRAPPING_GHOSTS);
 			
 			if (Wallpaper.LOG_DEBUG) {
 				Log.d(Ghost.TAG, "Is Wrapping: " + this.mIsWrapping);
 			}
 		}
 		
-		final String trophyLogos = resources.getString(R.string.trophy_logos_key);
-		if (all || key.equals(trophyLogos)) {
-			this.mIsTrophyLogosEnabled = preferences.getBoolean(trophyLogos, resources.getBoolean(R.bool.trophy_logos_default));
+		if (diff.contains(Settings.TROPHY_LOGOS)) {
+			this.mIsTrophyLogosEnabled = settings.getBoolean(Settings.TROPHY_LOGOS);
 			
 			if (this.mIsTrophyLogosEnabled) {
 				this.mCharacter = Ghost.Character.SPRITES;
 
 				//Load the Logos sprites
-				final BitmapFactory.Options options = new BitmapFactory.Options();
-				options.inScaled = false;
-				this.mSprites = BitmapFactory.decodeResource(Wallpaper.CONTEXT.getResources(), R.drawable.logos, options);
+				this.mSprites = new LazyBitmap(R.drawable.logos);
 			} else if (!this.mIsTrophyCeosEnabled && !this.mIsTrophyGoogolEnabled && !this.mIsTrophyDessertsEnabled) {
 				this.mCharacter = Ghost.Character.GHOST;
 				this.mSprites = null;
@@ -466,17 +470,14 @@ public abstract class Ghost extends Entity implements SharedPreferences.OnShared
 			}
 		}
 		
-		final String trophyCeos = resources.getString(R.string.trophy_ceos_key);
-		if (all || key.equals(trophyCeos)) {
-			this.mIsTrophyCeosEnabled = preferences.getBoolean(trophyCeos, resources.getBoolean(R.bool.trophy_ceos_default));
+		if (diff.contains(Settings.TROPHY_CEOS)) {
+			this.mIsTrophyCeosEnabled = settings.getBoolean(Settings.TROPHY_CEOS);
 			
 			if (this.mIsTrophyCeosEnabled) {
 				this.mCharacter = Ghost.Character.SPRITES;
 
 				//Load the Logos sprites
-				final BitmapFactory.Options options = new BitmapFactory.Options();
-				options.inScaled = false;
-				this.mSprites = BitmapFactory.decodeResource(Wallpaper.CONTEXT.getResources(), R.drawable.ceos, options);
+				this.mSprites = new LazyBitmap(R.drawable.ceos);
 			} else if (!this.mIsTrophyLogosEnabled && !this.mIsTrophyGoogolEnabled && !this.mIsTrophyDessertsEnabled) {
 				this.mCharacter = Ghost.Character.GHOST;
 				this.mSprites = null;
@@ -487,17 +488,14 @@ public abstract class Ghost extends Entity implements SharedPreferences.OnShared
 			}
 		}
 		
-		final String trophyGoogol = resources.getString(R.string.trophy_googol_key);
-		if (all || key.equals(trophyGoogol)) {
-			this.mIsTrophyGoogolEnabled = preferences.getBoolean(trophyGoogol, resources.getBoolean(R.bool.trophy_googol_default));
+		if (diff.contains(Settings.TROPHY_GOOGOL)) {
+			this.mIsTrophyGoogolEnabled = settings.getBoolean(Settings.TROPHY_GOOGOL);
 			
 			if (this.mIsTrophyGoogolEnabled) {
 				this.mCharacter = Ghost.Character.SPRITES;
 
 				//Load the Logos sprites
-				final BitmapFactory.Options options = new BitmapFactory.Options();
-				options.inScaled = false;
-				this.mSprites = BitmapFactory.decodeResource(Wallpaper.CONTEXT.getResources(), R.drawable.googol, options);
+				this.mSprites = new LazyBitmap(R.drawable.googol);
 			} else if (!this.mIsTrophyLogosEnabled && !this.mIsTrophyCeosEnabled && !this.mIsTrophyDessertsEnabled) {
 				this.mCharacter = Ghost.Character.GHOST;
 				this.mSprites = null;
@@ -508,17 +506,14 @@ public abstract class Ghost extends Entity implements SharedPreferences.OnShared
 			}
 		}
 		
-		final String trophyDesserts = resources.getString(R.string.trophy_desserts_key);
-		if (all || key.equals(trophyDesserts)) {
-			this.mIsTrophyDessertsEnabled = preferences.getBoolean(trophyDesserts, resources.getBoolean(R.bool.trophy_desserts_default));
+		if (diff.contains(Settings.TROPHY_DESSERTS)) {
+			this.mIsTrophyDessertsEnabled = settings.getBoolean(Settings.TROPHY_DESSERTS);
 			
 			if (this.mIsTrophyDessertsEnabled) {
 				this.mCharacter = Ghost.Character.SPRITES;
 
 				//Load the Dessers sprites
-				final BitmapFactory.Options options = new BitmapFactory.Options();
-				options.inScaled = false;
-				this.mSprites = BitmapFactory.decodeResource(Wallpaper.CONTEXT.getResources(), R.drawable.desserts, options);
+				this.mSprites = new LazyBitmap(R.drawable.desserts);
 			} else if (!this.mIsTrophyCeosEnabled && !this.mIsTrophyGoogolEnabled && !this.mIsTrophyLogosEnabled) {
 				this.mCharacter = Ghost.Character.GHOST;
 				this.mSprites = null;
@@ -526,7 +521,7 @@ public abstract class Ghost extends Entity implements SharedPreferences.OnShared
 		}
 		
     	if (Wallpaper.LOG_VERBOSE) {
-    		Log.v(Ghost.TAG, "< onSharedPreferenceChanged()");
+    		Log.v(Ghost.TAG, "< onSettingsChanged()");
     	}
 	}
 
@@ -586,7 +581,7 @@ public abstract class Ghost extends Entity implements SharedPreferences.OnShared
     		if (this.mStateTimer <= 0) {
     			this.setState(game, Ghost.State.HUNTING);
     		} else {
-    			final long time = System.currentTimeMillis();
+    			final long time = game.getTime();
     			this.mStateTimer -= time - this.mStateLastTime;
     			this.mStateLastTime = time;
     		}
@@ -617,19 +612,58 @@ public abstract class Ghost extends Entity implements SharedPreferences.OnShared
         		}
     		} else {
     			//tick mode timer
-    			final long time = System.currentTimeMillis();
+    			final long time = game.getTime();
     			this.mModeTimer -= time - this.mModeLastTime;
     			this.mModeLastTime = time;
     		}
     	}
     	
-    	final Ghost.State stateBefore = this.mState;
-
 		super.tick(game);
-		
-		if ((stateBefore == Ghost.State.EATEN) && (this.mState == Ghost.State.EATEN)) {
-			//tick twice!
-			super.tick(game);
+	}
+	
+	@Override
+	/*package*/void save(final Checkpoint checkpoint) {
+		super.save(checkpoint);
+		checkpoint.putInt(this.mState.ordinal());
+		checkpoint.putInt(Checkpoint.ordinal(this.mStrategyCurrent));
+		checkpoint.putInt(Checkpoint.ordinal(this.mStrategyLast));
+		checkpoint.putInt(this.mStateTimer);
+		checkpoint.putLong(this.mStateLastTime);
+		checkpoint.putInt(this.mModePointer);
+		checkpoint.putInt(this.mModeTimer);
+		checkpoint.putLong(this.mModeLastTime);
+	}
+	
+	@Override
+	/*package*/void restore(final Checkpoint checkpoint) {
+		super.restore(checkpoint);
+		final Ghost.Strategy[] strategies = Ghost.Strategy.values();
+		this.mState = Ghost.State.values()[checkpoint.getInt()];
+		final int strategyCurrent = checkpoint.getInt();
+		this.mStrategyCurrent = (strategyCurrent >= 0) ? strategies[strategyCurrent] : null;
+		final int strategyLast = checkpoint.getInt();
+		this.mStrategyLast = (strategyLast >= 0) ? strategies[strategyLast] : null;
+		this.mStateTimer = checkpoint.getInt();
+		this.mStateLastTime = checkpoint.getLong();
+		this.mModePointer = checkpoint.getInt();
+		this.mModeTimer = checkpoint.getInt();
+		this.mModeLastTime = checkpoint.getLong();
+	}
+	
+	@Override
+	protected int getSpeed(final Game game) {
+		switch (this.mState) {
+			case EATEN:
+				return Entity.SPEED_GHOST_EATEN;
+				
+			case FRIGHTENED:
+				return Entity.getLevelSpeed(game.getLevel(), Entity.SPEED_GHOST_FRIGHTENED);
+				
+			default:
+				if (game.isTunnel(this.mIsWrapping, this.mPosition)) {
+					return Entity.getLevelSpeed(game.getLevel(), Entity.SPEED_GHOST_TUNNEL);
+				}
+				return Entity.getLevelSpeed(game.getLevel(), Entity.SPEED_GHOST);
 		}
 	}
 
@@ -649,6 +683,12 @@ public abstract class Ghost extends Entity implements SharedPreferences.OnShared
 				break;
 				
 			case SPRITES:
+				if (this.mSprites.get() == null) {
+					//Sprites could not be decoded, fall back to the vector ghost
+					this.drawGhost(game, c);
+					break;
+				}
+				
 		        c.setDrawFilter(Game.FILTER_SET);
 				this.drawSprites(game, c);
 		    	c.setDrawFilter(Game.FILTER_REMOVE);
@@ -727,7 +767,7 @@ public abstract class Ghost extends Entity implements SharedPreferences.OnShared
 		}
 		
 		src.bottom = src.top + Entity.SPRITE_HEIGHT;
-		c.drawBitmap(this.mSprites, src, game.getCellSize(), Entity.SPRITE_PAINT);
+		c.drawBitmap(this.mSprites.get(), src, game.getCellSize(), Entity.SPRITE_PAINT);
 	}
 
 	/**
@@ -760,10 +800,10 @@ public abstract class Ghost extends Entity implements SharedPreferences.OnShared
 		if (this.mMode == Ghost.Mode.CHASE_AND_SCATTER) {
 			if (state == Ghost.State.FRIGHTENED) {
 				//Going in to frightened mode so remove the time spend from the last tick until the state change
-				this.mModeTimer -= System.currentTimeMillis() - this.mModeLastTime;
+				this.mModeTimer -= game.getTime() - this.mModeLastTime;
 			} else if (state == Ghost.State.HUNTING) {
 				//Going in to hunting mode so reset the last timer to right now
-				this.mModeLastTime = System.currentTimeMillis();
+				this.mModeLastTime = game.getTime();
 			}
 		}
 		
@@ -775,17 +815,13 @@ public abstract class Ghost extends Entity implements SharedPreferences.OnShared
 		
 		if (state == Ghost.State.FRIGHTENED) {
 			//reverse direction immediately if frightened
-			this.mDirectionNext = this.mDirectionCurrent.getOpposite();
+			this.reverse(game);
 			
-			int levelPointer = game.getLevel() - 1;
-			if (levelPointer >= Ghost.FRIGHTENED_LENGTH.length) {
-				levelPointer = Ghost.FRIGHTENED_LENGTH.length - 1;
-			}
-			this.mStateTimer = Ghost.FRIGHTENED_LENGTH[levelPointer];
-			this.mStateLastTime = System.currentTimeMillis();
-		} else {
-			//otherwise get new next direction
-			this.determineNextDirection(game);
+			this.mStateTimer = Ghost.getFrightenedLength(game.getLevel());
+			this.mStateLastTime = game.getTime();
+		} else if (!this.isMidStep()) {
+			//otherwise get new next direction, or finish the step and decide in the next cell
+			this.traceNextDirection(game);
 		}
 	}
 	
@@ -838,7 +874,31 @@ public abstract class Ghost extends Entity implements SharedPreferences.OnShared
 		if (this.mStrategyCurrent != this.mStrategyLast) {
 			this.mDirectionNext = this.mDirectionCurrent.getOpposite();
 		} else {
+			//Only junctions need a decision, except when heading home which may turn back anywhere
+			final Entity.Direction corridor = (this.mState != Ghost.State.EATEN) ? game.getGhostJunctions().getCorridorExit(game.hashPosition(this.mPosition), this.mDirectionCurrent) : null;
+			if (corridor != null) {
+				this.mDirectionNext = corridor;
+			} else {
+				this.traceNextDirection(game);
+			}
+		}
+	}
+	
+	/**
+	 * Determine the next direction to travel in within a trace section.
+	 * 
+	 * @param game Game instance
+	 */
+	private void traceNextDirection(final Game game) {
+		if (Wallpaper.TRACE_DEBUG) {
+			Trace.begin(Trace.GHOST_DECIDE);
+		}
+		try {
 			this.determineNextDirection(game);
+		} finally {
+			if (Wallpaper.TRACE_DEBUG) {
+				Trace.end();
+			}
 		}
 	}
 	
@@ -852,11 +912,11 @@ public abstract class Ghost extends Entity implements SharedPreferences.OnShared
 			case HUNTING:
 				switch (this.mStrategyCurrent) {
 					case CHASE:
-						this.determineNextDirectionByLineOfSight(game, this.getChasingTarget(game));
+						this.determineNextDirectionToward(game, this.getChasingTarget(game));
 						break;
 						
 					case SCATTER:
-						this.determineNextDirectionByLineOfSight(game, this.getScatterTarget(game));
+						this.determineNextDirectionToward(game, this.getScatterTarget(game));
 						break;
 						
 					case RANDOM:
@@ -869,15 +929,19 @@ public abstract class Ghost extends Entity implements SharedPreferences.OnShared
 				break;
 				
 			case EATEN:
-				final Point initialPosition = this.getInitialPosition(game);
-				if ((this.mPosition.x == initialPosition.x) && (this.mPosition.y == initialPosition.y)) {
+				if ((this.mPosition.x == this.mHome.x) && (this.mPosition.y == this.mHome.y)) {
 					if (Wallpaper.LOG_DEBUG) {
 						Log.d(Ghost.TAG, this.getClass().getSimpleName() + " has reached initial position. Going on the hunt.");
 					}
 					
 					this.setState(game, Ghost.State.HUNTING);
 				} else {
-					this.determineNextDirectionByLineOfSight(game, initialPosition);
+					final Entity.Direction home = (this.mHomeRoute != null) ? Routes.getFlow(this.mHomeRoute, game.hashPosition(this.mPosition)) : null;
+					if (home != null) {
+						this.mDirectionNext = home;
+					} else {
+						this.determineNextDirectionToward(game, this.mHome);
+					}
 				}
 				break;
 				
@@ -895,7 +959,7 @@ public abstract class Ghost extends Entity implements SharedPreferences.OnShared
 	protected void determineNextFrightenedDirection(final Game game) {
 		if (game.isIntersection(this.mPosition)) {
 			//Try a random direction
-			this.mDirectionNext = Direction.values()[Game.RANDOM.nextInt(Direction.values().length)];
+			this.mDirectionNext = Direction.values()[game.getRandom().nextInt(Direction.values().length)];
 			
 			if (!game.isValidPosition(this, Entity.move(this.mPosition, this.mDirectionNext)) || (this.mDirectionNext == this.mDirectionCurrent.getOpposite())) {
 				//If the random direction was not valid, iterate over all possible directions looking for a valid one
@@ -914,6 +978,33 @@ public abstract class Ghost extends Entity implements SharedPreferences.OnShared
 		}
 	}
 	
+	/**
+	 * Calculate our home position and the flow field towards it for the current board.
+	 * 
+	 * @param game Game instance
+	 * @param routes Compiled routes of the board
+	 */
+	/*package*/void calculateHomeRoute(final Game game, final Routes routes) {
+		final Point home = this.getInitialPosition(game);
+		this.mHome.set(home.x, home.y);
+		this.mHomeRoute = routes.buildFlowField(game.hashPosition(this.mHome), this.mHomeRoute);
+	}
+	
+	/**
+	 * Head towards a target point along the shortest path when enabled, otherwise by line of sight.
+	 * 
+	 * @param game Game instance
+	 * @param target Target Point
+	 */
+	protected void determineNextDirectionToward(final Game game, final Point target) {
+		final Entity.Direction hop = game.getNextHop(this.mPosition, target);
+		if (hop != null) {
+			this.mDirectionNext = hop;
+		} else {
+			this.determineNextDirectionByLineOfSight(game, target);
+		}
+	}
+	
 	/**
 	 * Use line-of-sight distance to a target point to determine the next direction.
 	 * 
@@ -956,7 +1047,7 @@ public abstract class Ghost extends Entity implements SharedPreferences.OnShared
 	protected void determineNextDirectionByRandomness(final Game game) {
 		if (game.isIntersection(this.mPosition)) {
 			while (true) {
-				this.mDirectionNext = Entity.Direction.values()[Game.RANDOM.nextInt(Entity.Direction.values().length)];
+				this.mDirectionNext = Entity.Direction.values()[game.getRandom().nextInt(Entity.Direction.values().length)];
 				
 				if (game.isValidPosition(this, Entity.move(this.mPosition, this.mDirectionNext)) && ((this.mDirectionCurrent == null) || (this.mDirectionNext != this.mDirectionCurrent.getOpposite()))) {
 					break;
@@ -999,7 +1090,7 @@ public abstract class Ghost extends Entity implements SharedPreferences.OnShared
 	 * 
 	 * @author Jake Wharton
 	 */
-	public static class Blinky extends Ghost implements SharedPreferences.OnSharedPreferenceChangeListener {
+	public static class Blinky extends Ghost {
 		private static final String TAG = Ghost.TAG + ".Blinky";
 		private static final int INDEX = 0;
 		
@@ -1008,22 +1099,18 @@ public abstract class Ghost extends Entity implements SharedPreferences.OnShared
 		}
 		
 	    /**
-	     * Handle the changing of a preference.
+	     * Handle the changing of one or more settings.
 	     */
-		public void onSharedPreferenceChanged(final SharedPreferences preferences, final String key) {
-			final boolean all = (key == null);
-			final Resources resources = Wallpaper.CONTEXT.getResources();
-			
-			final String color = Wallpaper.CONTEXT.getString(R.string.settings_color_ghost_blinky_key);
-			if (all || key.equals(color)) {
-				this.mBodyBackground.setColor(preferences.getInt(color, resources.getInteger(R.integer.color_ghost_blinky_default)));
+		public void onSettingsChanged(final Settings settings, final Settings.Diff diff) {
+			if (diff.contains(Settings.COLOR_GHOST_BLINKY)) {
+				this.mBodyBackground.setColor(settings.getInt(Settings.COLOR_GHOST_BLINKY));
 				
 				if (Wallpaper.LOG_DEBUG) {
 					Log.d(Blinky.TAG, "Color: #" + Integer.toHexString(this.mBodyBackground.getColor()));
 				}
 			}
 			
-			super.onSharedPreferenceChanged(preferences, key);
+			super.onSettingsChanged(settings, diff);
 		}
 		
 		@Override
@@ -1050,7 +1137,7 @@ public abstract class Ghost extends Entity implements SharedPreferences.OnShared
 	 * 
 	 * @author Jake Wharton
 	 */
-	public static class Pinky extends Ghost implements SharedPreferences.OnSharedPreferenceChangeListener {
+	public static class Pinky extends Ghost {
 		private static final String TAG = Ghost.TAG + ".Pinky";
 		private static final int INDEX = 1;
 		private static final int LEADING_FACTOR = 4;
@@ -1060,22 +1147,18 @@ public abstract class Ghost extends Entity implements SharedPreferences.OnShared
 		}
 
 	    /**
-	     * Handle the changing of a preference.
+	     * Handle the changing of one or more settings.
 	     */
-		public void onSharedPreferenceChanged(final SharedPreferences preferences, final String key) {
-			final boolean all = (key == null);
-			final Resources resources = Wallpaper.CONTEXT.getResources();
-			
-			final String color = Wallpaper.CONTEXT.getString(R.string.settings_color_ghost_pinky_key);
-			if (all || key.equals(color)) {
-				this.mBodyBackground.setColor(preferences.getInt(color, resources.getInteger(R.integer.color_ghost_pinky_default)));
+		public void onSettingsChanged(final Settings settings, final Settings.Diff diff) {
+			if (diff.contains(Settings.COLOR_GHOST_PINKY)) {
+				this.mBodyBackground.setColor(settings.getInt(Settings.COLOR_GHOST_PINKY));
 				
 				if (Wallpaper.LOG_DEBUG) {
 					Log.d(Pinky.TAG, "Color: #" + Integer.toHexString(this.mBodyBackground.getColor()));
 				}
 			}
 			
-			super.onSharedPreferenceChanged(preferences, key);
+			super.onSettingsChanged(settings, diff);
 		}
 
 		@Override
@@ -1106,7 +1189,7 @@ public abstract class Ghost extends Entity implements SharedPreferences.OnShared
 	 * 
 	 * @author Jake Wharton
 	 */
-	public static class Inky extends Ghost implements SharedPreferences.OnSharedPreferenceChangeListener {
+	public static class Inky extends Ghost {
 		private static final String TAG = Ghost.TAG + ".Inky";
 		private static final int INDEX = 2;
 		private static final int LEADING_FACTOR = 2;
@@ -1117,22 +1200,18 @@ public abstract class Ghost extends Entity implements SharedPreferences.OnShared
 		}
 
 	    /**
-	     * Handle the changing of a preference.
+	     * Handle the changing of one or more settings.
 	     */
-		public void onSharedPreferenceChanged(final SharedPreferences preferences, final String key) {
-			final boolean all = (key == null);
-			final Resources resources = Wallpaper.CONTEXT.getResources();
-			
-			final String color = Wallpaper.CONTEXT.getString(R.string.settings_color_ghost_inky_key);
-			if (all || key.equals(color)) {
-				this.mBodyBackground.setColor(preferences.getInt(color, resources.getInteger(R.integer.color_ghost_inky_default)));
+		public void onSettingsChanged(final Settings settings, final Settings.Diff diff) {
+			if (diff.contains(Settings.COLOR_GHOST_INKY)) {
+				this.mBodyBackground.setColor(settings.getInt(Settings.COLOR_GHOST_INKY));
 				
 				if (Wallpaper.LOG_DEBUG) {
 					Log.d(Inky.TAG, "Color: #" + Integer.toHexString(this.mBodyBackground.getColor()));
 				}
 			}
 			
-			super.onSharedPreferenceChanged(preferences, key);
+			super.onSettingsChanged(settings, diff);
 		}
 
 		@Override
@@ -1166,7 +1245,7 @@ public abstract class Ghost extends Entity implements SharedPreferences.OnShared
 	 * 
 	 * @author Jake Wharton
 	 */
-	public static class Clyde extends Ghost implements SharedPreferences.OnSharedPreferenceChangeListener {
+	public static class Clyde extends Ghost {
 		private static final String TAG = Ghost.TAG + ".Clyde";
 		private static final int INDEX = 3;
 		private static final int PROXIMITY_THRESHOLD = 8;
@@ -1176,22 +1255,18 @@ public abstract class Ghost extends Entity implements SharedPreferences.OnShared
 		}
 
 	    /**
-	     * Handle the changing of a preference.
+	     * Handle the changing of one or more settings.
 	     */
-		public void onSharedPreferenceChanged(final SharedPreferences preferences, final String key) {
-			final boolean all = (key == null);
-			final Resources resources = Wallpaper.CONTEXT.getResources();
-			
-			final String color = Wallpaper.CONTEXT.getString(R.string.settings_color_ghost_clyde_key);
-			if (all || key.equals(color)) {
-				this.mBodyBackground.setColor(preferences.getInt(color, resources.getInteger(R.integer.color_ghost_clyde_default)));
+		public void onSettingsChanged(final Settings settings, final Settings.Diff diff) {
+			if (diff.contains(Settings.COLOR_GHOST_CLYDE)) {
+				this.mBodyBackground.setColor(settings.getInt(Settings.COLOR_GHOST_CLYDE));
 				
 				if (Wallpaper.LOG_DEBUG) {
 					Log.d(Clyde.TAG, "Color: #" + Integer.toHexString(this.mBodyBackground.getColor()));
 				}
 			}
 			
-			super.onSharedPreferenceChanged(preferences, key);
+			super.onSettingsChanged(settings, diff);
 		}
 
 		@Override
@@ -0,0 +1,517 @@
+package com.jakewharton.wakkawallpaper;
+
+import java.util.Arrays;
+import android.graphics.Point;
+
+/**
+ * The board compressed into a graph of junctions joined by corridors. Cells
+ * with other than two exits become nodes while the cells between them are only
+ * recorded as the path of the corridor edge which passes through them. Since
+ * the icons leave long corridors between their rows and columns, searching the
+ * graph visits far fewer entries than searching every cell and entities inside
+ * of a corridor can follow it without making any decision at all.
+ * 
+ * @author Jake Wharton
+ */
+public final class Junctions {
+	/**
+	 * Node index of a cell which is not a junction.
+	 */
+	private static final int NONE = -1;
+	
+	/**
+	 * Number of cells in a corridor path per cell on the board. Every corridor
+	 * cell is walked once in each direction and every edge also ends in a node.
+	 */
+	private static final int PATH_PER_CELL = 6;
+	
+	
+	
+	/**
+	 * Number of cells wide the board is.
+	 */
+	private int mWide;
+	
+	/**
+	 * Number of cells on the board.
+	 */
+	private int mCells;
+	
+	/**
+	 * Neighboring cell index in each direction or -1 if it cannot be entered.
+	 */
+	private int[] mNeighbors;
+	
+	/**
+	 * Node index of each cell or {@link #NONE} if it is not a junction.
+	 */
+	private int[] mNodeOf;
+	
+	/**
+	 * Whether each cell lies on a corridor which has been walked.
+	 */
+	private boolean[] mIsWalked;
+	
+	/**
+	 * Number of nodes.
+	 */
+	private int mNodes;
+	
+	/**
+	 * Cell index of each node.
+	 */
+	private int[] mNodeCells;
+	
+	/**
+	 * Node at the far end of the corridor leaving each node in each direction or {@link #NONE}.
+	 */
+	private int[] mEdgeEnds;
+	
+	/**
+	 * Number of cells along each corridor, including the node at its far end.
+	 */
+	private int[] mEdgeLengths;
+	
+	/**
+	 * Offset of each corridor's cells in the paths.
+	 */
+	private int[] mEdgeStarts;
+	
+	/**
+	 * Cells of every corridor in the order they are walked.
+	 */
+	private int[] mPaths;
+	
+	/**
+	 * Distance of each node from the start of a search.
+	 */
+	private int[] mDistances;
+	
+	/**
+	 * Ordinal of the first direction taken to reach each node in a search.
+	 */
+	private byte[] mFirst;
+	
+	/**
+	 * Heap of nodes still to expand, each packed as its distance above its index.
+	 */
+	private long[] mHeap;
+	
+	/**
+	 * Distance of the nearest dot found by the current search.
+	 */
+	private int mBestDistance;
+	
+	/**
+	 * First direction towards the nearest dot found by the current search.
+	 */
+	private Entity.Direction mBestDirection;
+	
+	/**
+	 * Point reused for board queries.
+	 */
+	private final Point mScratch;
+	
+	/**
+	 * Number of times the graph has been compiled.
+	 */
+	private int mGeneration;
+	
+	
+	
+	/**
+	 * Create an empty graph.
+	 */
+	public Junctions() {
+		this.mNeighbors = new int[0];
+		this.mNodeOf = new int[0];
+		this.mScratch = new Point();
+	}
+	
+	
+	
+	/**
+	 * Compile the current board into a graph.
+	 * 
+	 * @param game Game instance.
+	 * @param isWrapping Whether the entities using the graph wrap around the edges.
+	 */
+	public void compile(final Game game, final boolean isWrapping) {
+		final Entity.Direction[] directions = Entity.DIRECTIONS;
+		final int wide = game.getCellsWide();
+		final int cells = wide * game.getCellsTall();
+		final Point scratch = this.mScratch;
+		
+		if (this.mCells != cells) {
+			this.mNeighbors = new int[cells * directions.length];
+			this.mNodeOf = new int[cells];
+			this.mIsWalked = new boolean[cells];
+			this.mNodeCells = new int[cells];
+			this.mEdgeEnds = new int[cells * directions.length];
+			this.mEdgeLengths = new int[cells * directions.length];
+			this.mEdgeStarts = new int[cells * directions.length];
+			this.mPaths = new int[cells * Junctions.PATH_PER_CELL];
+			this.mDistances = new int[cells];
+			this.mFirst = new byte[cells];
+			this.mHeap = new long[(cells * directions.length) + directions.length];
+			this.mCells = cells;
+		}
+		this.mWide = wide;
+		this.mNodes = 0;
+		this.mGeneration += 1;
+		
+		//Cells with other than two exits are junctions
+		for (int cell = 0; cell < cells; cell++) {
+			scratch.set(cell % wide, cell / wide);
+			final boolean isOpen = game.isValidBoardPosition(scratch);
+			
+			int exits = 0;
+			for (int d = 0; d < directions.length; d++) {
+				int neighbor = -1;
+				if (isOpen) {
+					scratch.set(cell % wide, cell / wide);
+					Entity.step(scratch, directions[d]);
+					if (game.isValidPosition(isWrapping, scratch)) {
+						neighbor = game.hashPosition(scratch);
+						exits += 1;
+					}
+				}
+				this.mNeighbors[(cell * directions.length) + d] = neighbor;
+			}
+			
+			this.mIsWalked[cell] = !isOpen;
+			this.mNodeOf[cell] = Junctions.NONE;
+			if (isOpen && (exits != 2)) {
+				this.addNode(cell);
+			}
+		}
+		
+		//Walk the corridors out of every node. A closed loop of corridor has no
+		//junctions so the first cell of it which is found becomes one.
+		int walked = 0;
+		int pathEnd = 0;
+		int cell = 0;
+		while (true) {
+			for (; walked < this.mNodes; walked++) {
+				for (int d = 0; d < directions.length; d++) {
+					pathEnd = this.walk(walked, d, pathEnd);
+				}
+			}
+			
+			while ((cell < cells) && this.mIsWalked[cell]) {
+				cell += 1;
+			}
+			if (cell == cells) {
+				break;
+			}
+			this.addNode(cell);
+		}
+	}
+	
+	/**
+	 * Test if a cell is a junction.
+	 * 
+	 * @param cell Cell index.
+	 * @return Boolean.
+	 */
+	public boolean isJunction(final int cell) {
+		return (cell >= 0) && (cell < this.mCells) && (this.mNodeOf[cell] != Junctions.NONE);
+	}
+	
+	/**
+	 * Get the number of times the graph has been compiled. Changes whenever the
+	 * neighbors of any cell may have changed.
+	 * 
+	 * @return Generation.
+	 */
+	public int getGeneration() {
+		return this.mGeneration;
+	}
+	
+	/**
+	 * Copy the neighbor of every cell in each direction.
+	 * 
+	 * @param neighbors Array of at least cells times directions entries.
+	 */
+	public void copyNeighbors(final int[] neighbors) {
+		System.arraycopy(this.mNeighbors, 0, neighbors, 0, this.mCells * Entity.DIRECTIONS.length);
+	}
+	
+	/**
+	 * Get the cell neighboring another.
+	 * 
+	 * @param cell Cell index.
+	 * @param direction Direction ordinal.
+	 * @return Cell index or -1 if it cannot be entered.
+	 */
+	public int getNeighbor(final int cell, final int direction) {
+		return this.mNeighbors[(cell * Entity.DIRECTIONS.length) + direction];
+	}
+	
+	/**
+	 * Get the direction which continues along the corridor a cell lies on.
+	 * 
+	 * @param cell Cell index.
+	 * @param direction Direction the cell was entered in.
+	 * @return Direction or null if the cell is a junction or was not entered along the corridor.
+	 */
+	public Entity.Direction getCorridorExit(final int cell, final Entity.Direction direction) {
+		if ((direction == null) || (cell < 0) || (cell >= this.mCells) || (this.mNodeOf[cell] != Junctions.NONE)) {
+			return null;
+		}
+		
+		final Entity.Direction[] directions = Entity.DIRECTIONS;
+		final int back = direction.getOpposite().ordinal();
+		if (this.mNeighbors[(cell * directions.length) + back] < 0) {
+			return null;
+		}
+		for (int d = 0; d < directions.length; d++) {
+			if ((d != back) && (this.mNeighbors[(cell * directions.length) + d] >= 0)) {
+				return directions[d];
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * Find the first direction towards the nearest cell holding a dot or fruit.
+	 * Cells which a hunting ghost can reach at least as soon as The Man are not
+	 * passed through. Must be called on the game thread.
+	 * 
+	 * @param game Game instance.
+	 * @param start Position to search from.
+	 * @param direction Direction currently being traveled in, which is favored on ties.
+	 * @return Direction or null if there is no reachable dot.
+	 */
+	public Entity.Direction findNearestDot(final Game game, final Point start, final Entity.Direction direction) {
+		final Entity.Direction[] directions = Entity.DIRECTIONS;
+		final int origin = game.hashPosition(start);
+		if ((origin < 0) || (origin >= this.mCells)) {
+			return null;
+		}
+		
+		Arrays.fill(this.mDistances, 0, this.mNodes, Integer.MAX_VALUE);
+		this.mBestDistance = Integer.MAX_VALUE;
+		this.mBestDirection = null;
+		int heapSize = 0;
+		
+		//Leave the start cell in each direction, current direction first
+		final int current = (direction != null) ? direction.ordinal() : 0;
+		final int originNode = this.mNodeOf[origin];
+		if (originNode != Junctions.NONE) {
+			this.mDistances[originNode] = 0;
+		}
+		for (int i = 0; i < directions.length; i++) {
+			final int d = (current + i) % directions.length;
+			int cell = origin;
+			int heading = d;
+			int distance = 0;
+			
+			//Follow the corridor until it ends in a node
+			while (true) {
+				cell = this.mNeighbors[(cell * directions.length) + heading];
+				distance += 1;
+				if ((cell < 0) || (cell == origin) || (distance > this.mCells) || !this.visit(game, cell, distance, d)) {
+					break;
+				}
+				
+				final int node = this.mNodeOf[cell];
+				if (node != Junctions.NONE) {
+					heapSize = this.relax(node, distance, d, heapSize);
+					break;
+				}
+				
+				final Entity.Direction exit = this.getCorridorExit(cell, directions[heading]);
+				if (exit == null) {
+					break;
+				}
+				heading = exit.ordinal();
+			}
+		}
+		
+		//Expand the nearest node until nothing left can beat the nearest dot
+		int expanded = 0;
+		while (heapSize > 0) {
+			final long top = this.mHeap[0];
+			heapSize = this.pop(heapSize);
+			expanded += 1;
+			
+			final int node = (int)top;
+			final int distance = (int)(top >>> 32);
+			if (distance >= this.mBestDistance) {
+				break;
+			}
+			if (distance > this.mDistances[node]) {
+				continue;
+			}
+			
+			final byte first = this.mFirst[node];
+			for (int d = 0; d < directions.length; d++) {
+				final int edge = (node * directions.length) + d;
+				final int end = this.mEdgeEnds[edge];
+				if (end == Junctions.NONE) {
+					continue;
+				}
+				
+				final int length = this.mEdgeLengths[edge];
+				final int offset = this.mEdgeStarts[edge];
+				boolean isOpen = true;
+				for (int k = 0; k < length; k++) {
+					if (!this.visit(game, this.mPaths[offset + k], distance + k + 1, first)) {
+						isOpen = false;
+						break;
+					}
+				}
+				if (isOpen) {
+					heapSize = this.relax(end, distance + length, first, heapSize);
+				}
+			}
+		}
+		
+		Metrics.add(Metrics.NODES_EXPANDED, expanded);
+		return this.mBestDirection;
+	}
+	
+	/**
+	 * Make a cell into a node.
+	 * 
+	 * @param cell Cell index.
+	 */
+	private void addNode(final int cell) {
+		final int node = this.mNodes;
+		this.mNodeOf[cell] = node;
+		this.mNodeCells[node] = cell;
+		this.mIsWalked[cell] = true;
+		this.mNodes += 1;
+	}
+	
+	/**
+	 * Walk the corridor leaving a node in a direction and record it as an edge.
+	 * 
+	 * @param node Node index.
+	 * @param direction Direction ordinal.
+	 * @param pathEnd Offset of the first unused entry of the paths.
+	 * @return New offset of the first unused entry of the paths.
+	 */
+	private int walk(final int node, final int direction, int pathEnd) {
+		final Entity.Direction[] directions = Entity.DIRECTIONS;
+		final int edge = (node * directions.length) + direction;
+		final int start = pathEnd;
+		
+		int cell = this.mNodeCells[node];
+		int heading = direction;
+		this.mEdgeEnds[edge] = Junctions.NONE;
+		
+		while (true) {
+			cell = this.mNeighbors[(cell * directions.length) + heading];
+			if ((cell < 0) || ((pathEnd - start) >= this.mCells)) {
+				//Dead end (cannot happen since those are nodes) or a runaway walk
+				return start;
+			}
+			
+			this.mPaths[pathEnd++] = cell;
+			this.mIsWalked[cell] = true;
+			
+			if (this.mNodeOf[cell] != Junctions.NONE) {
+				this.mEdgeEnds[edge] = this.mNodeOf[cell];
+				this.mEdgeLengths[edge] = pathEnd - start;
+				this.mEdgeStarts[edge] = start;
+				return pathEnd;
+			}
+			
+			final Entity.Direction exit = this.getCorridorExit(cell, directions[heading]);
+			if (exit == null) {
+				return start;
+			}
+			heading = exit.ordinal();
+		}
+	}
+	
+	/**
+	 * Visit a cell during a search.
+	 * 
+	 * @param game Game instance.
+	 * @param cell Cell index.
+	 * @param distance Distance of the cell from the start.
+	 * @param first Ordinal of the first direction taken to reach the cell.
+	 * @return Whether the search may continue past the cell.
+	 */
+	private boolean visit(final Game game, final int cell, final int distance, final int first) {
+		final Point scratch = this.mScratch;
+		scratch.set(cell % this.mWide, cell / this.mWide);
+		
+		if (game.getDanger(scratch) <= distance) {
+			//A hunting ghost can get there as soon as we can
+			return false;
+		}
+		if ((game.getCell(scratch) != Game.Cell.BLANK) || (game.getFruitAtPosition(scratch) != null)) {
+			if (distance < this.mBestDistance) {
+				this.mBestDistance = distance;
+				this.mBestDirection = Entity.DIRECTIONS[first];
+			}
+			return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * Record a shorter distance to a node and queue it for expansion.
+	 * 
+	 * @param node Node index.
+	 * @param distance Distance from the start.
+	 * @param first Ordinal of the first direction taken to reach the node.
+	 * @param heapSize Number of queued nodes.
+	 * @return New number of queued nodes.
+	 */
+	private int relax(final int node, final int distance, final int first, int heapSize) {
+		if ((distance >= this.mDistances[node]) || (heapSize == this.mHeap.length)) {
+			return heapSize;
+		}
+		
+		this.mDistances[node] = distance;
+		this.mFirst[node] = (byte)first;
+		
+		//Sift up
+		final long entry = ((long)distance << 32) | node;
+		int i = heapSize++;
+		while (i > 0) {
+			final int parent = (i - 1) / 2;
+			if (this.mHeap[parent] <= entry) {
+				break;
+			}
+			this.mHeap[i] = this.mHeap[parent];
+			i = parent;
+		}
+		this.mHeap[i] = entry;
+		return heapSize;
+	}
+	
+	/**
+	 * Remove the nearest node from the heap.
+	 * 
+	 * @param heapSize Number of queued nodes.
+	 * @return New number of queued nodes.
+	 */
+	private int pop(int heapSize) {
+		final long last = this.mHeap[--heapSize];
+		
+		//Sift down
+		int i = 0;
+		while (true) {
+			int child = (i * 2) + 1;
+			if (child >= heapSize) {
+				break;
+			}
+			if (((child + 1) < heapSize) && (this.mHeap[child + 1] < this.mHeap[child])) {
+				child += 1;
+			}
+			if (this.mHeap[child] >= last) {
+				break;
+			}
+			this.mHeap[i] = this.mHeap[child];
+			i = child;
+		}
+		this.mHeap[i] = last;
+		return heapSize;
+	}
+}
@@ -0,0 +1,58 @@
+package com.jakewharton.wakkawallpaper;
+
+import android.graphics.Bitmap;
+
+/**
+ * Handle to a bitmap resource which is not decoded until the first time it is
+ * drawn. Choosing a style which uses a sprite sheet only costs the creation of
+ * the handle, so sheets for styles which are never seen are never decoded. The
+ * decoded sheet is owned by {@link BitmapManager}, which may evict it under
+ * memory pressure and decode it again on the next draw. If decoding fails the
+ * handle gives back null and the caller draws its vector placeholder instead.
+ * 
+ * @author Jake Wharton
+ */
+public final class LazyBitmap {
+	/**
+	 * Resource ID of the bitmap.
+	 */
+	private final int mResourceId;
+	
+	/**
+	 * Whether or not every pixel of the bitmap is opaque.
+	 */
+	private final boolean mIsOpaque;
+	
+	
+	
+	/**
+	 * Create a handle to a translucent bitmap resource without decoding it.
+	 * 
+	 * @param resourceId Resource ID.
+	 */
+	public LazyBitmap(final int resourceId) {
+		this(resourceId, false);
+	}
+	
+	/**
+	 * Create a handle to a bitmap resource without decoding it.
+	 * 
+	 * @param resourceId Resource ID.
+	 * @param isOpaque Whether or not every pixel of the bitmap is opaque.
+	 */
+	public LazyBitmap(final int resourceId, final boolean isOpaque) {
+		this.mResourceId = resourceId;
+		this.mIsOpaque = isOpaque;
+	}
+	
+	
+	
+	/**
+	 * Get the bitmap, decoding it if it is not held.
+	 * 
+	 * @return Bitmap or null if it could not be decoded.
+	 */
+	public Bitmap get() {
+		return Wallpaper.BITMAPS.get(this.mResourceId, this.mIsOpaque);
+	}
+}
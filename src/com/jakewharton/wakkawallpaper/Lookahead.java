@@ -0,0 +1,423 @@
+package com.jakewharton.wakkawallpaper;
+
+import java.util.Arrays;
+import android.graphics.Point;
+
+/**
+ * Weighted breadth-first lookahead used by The Man's intelligent AI. Every cell
+ * reachable within the search depth contributes its value (dots, fruit, and
+ * frightened ghosts are good, hunting ghosts are very bad) to the first
+ * direction which leads to it, discounted by its distance.
+ * 
+ * <p>The board is first captured into a {@link Lookahead.Snapshot} on the game
+ * thread. The search itself only reads the snapshot so it can run on any
+ * thread. Neither allocates anything once its buffers are sized to the board.
+ * The capture only copies the neighbors when the junction graph is recompiled
+ * and otherwise visits each cell once plus each entity once.
+ * The search expands one depth at a time and stops at the first depth which
+ * does not fit within its budget, using the weights of the last depth which
+ * did. Live play measures the budget against the clock. Headless games turn it
+ * into a fixed number of cell expansions instead so that their decisions do not
+ * depend on the speed or load of the machine.</p>
+ * 
+ * @author Jake Wharton
+ */
+public final class Lookahead {
+	/**
+	 * Copy of everything the search needs to know about the board.
+	 * 
+	 * @author Jake Wharton
+	 */
+	public static final class Snapshot {
+		/**
+		 * Number of cells on the board.
+		 */
+		private int mCells;
+		
+		/**
+		 * Neighboring cell index in each direction or -1 if it cannot be entered.
+		 */
+		private int[] mNeighbors;
+		
+		/**
+		 * Value of each cell to The Man.
+		 */
+		private int[] mScores;
+		
+		/**
+		 * Cell index to search from.
+		 */
+		private int mStart;
+		
+		/**
+		 * Ordinal of The Man's direction when entering the start cell or -1.
+		 */
+		private int mDirection;
+		
+		/**
+		 * Graph the neighbors were copied from.
+		 */
+		private Junctions mJunctions;
+		
+		/**
+		 * Generation of the graph when the neighbors were copied.
+		 */
+		private int mGeneration;
+		
+		/**
+		 * Point reused for board queries.
+		 */
+		private final Point mScratch;
+		
+		
+		
+		/**
+		 * Create an empty snapshot.
+		 */
+		public Snapshot() {
+			this.mNeighbors = new int[0];
+			this.mScores = new int[0];
+			this.mScratch = new Point();
+		}
+		
+		
+		
+		/**
+		 * Capture the board. Must be called on the game thread.
+		 * 
+		 * @param game Game instance.
+		 * @param theMan The Man.
+		 * @param start Cell to search from.
+		 * @param direction Direction The Man will be traveling in at the start cell.
+		 */
+		public void capture(final Game game, final TheMan theMan, final Point start, final Entity.Direction direction) {
+			final int wide = game.getCellsWide();
+			final int tall = game.getCellsTall();
+			final int cells = wide * tall;
+			final Point scratch = this.mScratch;
+			
+			if (this.mScores.length != cells) {
+				this.mNeighbors = new int[cells * Entity.DIRECTIONS.length];
+				this.mScores = new int[cells];
+				this.mJunctions = null;
+			}
+			this.mCells = cells;
+			this.mStart = game.hashPosition(start);
+			this.mDirection = (direction != null) ? direction.ordinal() : -1;
+			final int[] scores = this.mScores;
+			
+			//Neighbors only change when the walls or wrapping do
+			final Junctions junctions = game.getTheManJunctions();
+			if ((this.mJunctions != junctions) || (this.mGeneration != junctions.getGeneration())) {
+				junctions.copyNeighbors(this.mNeighbors);
+				this.mJunctions = junctions;
+				this.mGeneration = junctions.getGeneration();
+			}
+			
+			for (int y = 0; y < tall; y++) {
+				for (int x = 0; x < wide; x++) {
+					scratch.set(x, y);
+					final Game.Cell cell = game.getCell(scratch);
+					scores[(y * wide) + x] = (cell == Game.Cell.WALL) ? 0 : cell.value;
+				}
+			}
+			
+			for (int i = 0; i < game.getGhostCount(); i++) {
+				final Ghost ghost = game.getGhost(i);
+				if (!game.isValidBoardPosition(ghost.getPosition())) {
+					continue;
+				}
+				
+				switch (ghost.getState()) {
+					case HUNTING:
+						scores[game.hashPosition(ghost.getPosition())] += Lookahead.WEIGHT_GHOST_HUNTING;
+						break;
+						
+					case FRIGHTENED:
+						scores[game.hashPosition(ghost.getPosition())] += Lookahead.WEIGHT_GHOST_FRIGHTENED;
+						break;
+				}
+			}
+			
+			final Swarm swarm = game.getSwarm();
+			for (int i = 0; i < swarm.getCount(); i++) {
+				final int cell = swarm.getCell(i);
+				if ((cell < 0) || (cell >= cells)) {
+					continue;
+				}
+				
+				if (swarm.isHunting(i)) {
+					scores[cell] += Lookahead.WEIGHT_GHOST_HUNTING;
+				} else if (swarm.isFrightened(i)) {
+					scores[cell] += Lookahead.WEIGHT_GHOST_FRIGHTENED;
+				}
+			}
+			
+			final Fruit fruit = game.getFruit();
+			if (fruit.isVisible() && game.isValidBoardPosition(fruit.getPosition())) {
+				scores[game.hashPosition(fruit.getPosition())] += fruit.getType().points;
+			}
+		}
+		
+		/**
+		 * Get the cell index which was searched from.
+		 * 
+		 * @return Cell index.
+		 */
+		public int getStart() {
+			return this.mStart;
+		}
+	}
+	
+	
+	
+	/**
+	 * Deepest level to search.
+	 */
+	private static final int DEPTH_MAX = 16;
+	
+	/**
+	 * Value of a cell containing a hunting ghost.
+	 */
+	private static final int WEIGHT_GHOST_HUNTING = -500;
+	
+	/**
+	 * Value of a cell containing a frightened ghost.
+	 */
+	private static final int WEIGHT_GHOST_FRIGHTENED = 200;
+	
+	/**
+	 * Number of cells to expand between checks of the clock.
+	 */
+	private static final int CLOCK_INTERVAL = 32;
+	
+	/**
+	 * Number of nanoseconds in a microsecond.
+	 */
+	private static final long NANOSECONDS_IN_MICROSECOND = 1000;
+	
+	/**
+	 * Cells expanded per microsecond of budget when the search is not timed.
+	 */
+	private static final long EXPANSIONS_PER_MICROSECOND = 4;
+	
+	
+	
+	/**
+	 * Queue of board cell indices.
+	 */
+	private int[] mQueue;
+	
+	/**
+	 * Ordinal of the first direction taken to reach each queued cell.
+	 */
+	private byte[] mFirst;
+	
+	/**
+	 * Search stamp at which each board cell was last seen.
+	 */
+	private int[] mSeen;
+	
+	/**
+	 * Current search stamp.
+	 */
+	private int mStamp;
+	
+	/**
+	 * Committed weight of each initial direction.
+	 */
+	private final long[] mWeights;
+	
+	/**
+	 * Weight of each initial direction found at the depth being expanded.
+	 */
+	private final long[] mLevelWeights;
+	
+	/**
+	 * Whether each initial direction can be taken.
+	 */
+	private final boolean[] mIsReachable;
+	
+	/**
+	 * Snapshot used by synchronous decisions.
+	 */
+	private final Lookahead.Snapshot mSnapshot;
+	
+	/**
+	 * Depth completed by the most recent decision.
+	 */
+	private int mDepth;
+	
+	
+	
+	/**
+	 * Create a new lookahead.
+	 */
+	public Lookahead() {
+		final int directions = Entity.DIRECTIONS.length;
+		this.mWeights = new long[directions];
+		this.mLevelWeights = new long[directions];
+		this.mIsReachable = new boolean[directions];
+		this.mSnapshot = new Lookahead.Snapshot();
+		this.mQueue = new int[0];
+		this.mFirst = new byte[0];
+		this.mSeen = new int[0];
+	}
+	
+	
+	
+	/**
+	 * Get the depth completed by the most recent decision.
+	 * 
+	 * @return Depth.
+	 */
+	public int getDepth() {
+		return this.mDepth;
+	}
+	
+	/**
+	 * Choose the best direction for The Man to take from his current position.
+	 * Must be called on the game thread.
+	 * 
+	 * @param game Game instance.
+	 * @param theMan The Man.
+	 * @param budget Microseconds allowed for the decision.
+	 * @param isTimed Whether to stop at a clock deadline rather than a fixed number of expansions.
+	 * @return Best direction or null if nothing of value is within reach.
+	 */
+	public Entity.Direction decide(final Game game, final TheMan theMan, final long budget, final boolean isTimed) {
+		this.mSnapshot.capture(game, theMan, theMan.getPosition(), theMan.getDirection());
+		return this.decide(this.mSnapshot, budget, isTimed);
+	}
+	
+	/**
+	 * Choose the best direction to take from the start cell of a snapshot. May be
+	 * called on any thread which owns both this lookahead and the snapshot.
+	 * 
+	 * @param snapshot Captured board.
+	 * @param budget Microseconds allowed for the decision.
+	 * @param isTimed Whether to stop at a clock deadline rather than a fixed number of expansions.
+	 * @return Best direction or null if nothing of value is within reach.
+	 */
+	public Entity.Direction decide(final Lookahead.Snapshot snapshot, final long budget, final boolean isTimed) {
+		final long deadline = isTimed ? System.nanoTime() + (budget * Lookahead.NANOSECONDS_IN_MICROSECOND) : 0;
+		final long limit = isTimed ? Long.MAX_VALUE : budget * Lookahead.EXPANSIONS_PER_MICROSECOND;
+		final Entity.Direction[] directions = Entity.DIRECTIONS;
+		final int[] neighbors = snapshot.mNeighbors;
+		final int[] scores = snapshot.mScores;
+		final int start = snapshot.mStart;
+		
+		this.prepare(snapshot.mCells);
+		this.mSeen[start] = this.mStamp;
+		
+		//Depth one: the cells immediately around us
+		int head = 0;
+		int tail = 0;
+		for (int d = 0; d < directions.length; d++) {
+			final int cell = neighbors[(start * directions.length) + d];
+			this.mIsReachable[d] = (cell >= 0);
+			this.mWeights[d] = 0;
+			
+			if ((cell >= 0) && (this.mSeen[cell] != this.mStamp)) {
+				this.mSeen[cell] = this.mStamp;
+				this.mWeights[d] = scores[cell];
+				this.mQueue[tail] = cell;
+				this.mFirst[tail] = (byte)d;
+				tail += 1;
+			}
+		}
+		this.mDepth = 1;
+		
+		//Deeper levels, committed only once fully expanded within the budget
+		int expanded = 0;
+		search:
+		while ((head < tail) && (this.mDepth < Lookahead.DEPTH_MAX)) {
+			final int depth = this.mDepth + 1;
+			final int levelEnd = tail;
+			for (int d = 0; d < directions.length; d++) {
+				this.mLevelWeights[d] = 0;
+			}
+			
+			while (head < levelEnd) {
+				expanded += 1;
+				if (expanded > limit) {
+					break search;
+				}
+				if (isTimed && ((expanded % Lookahead.CLOCK_INTERVAL) == 0) && (System.nanoTime() > deadline)) {
+					break search;
+				}
+				
+				final int cell = this.mQueue[head];
+				final byte first = this.mFirst[head];
+				head += 1;
+				
+				for (int d = 0; d < directions.length; d++) {
+					final int next = neighbors[(cell * directions.length) + d];
+					if ((next < 0) || (this.mSeen[next] == this.mStamp)) {
+						continue;
+					}
+					
+					this.mSeen[next] = this.mStamp;
+					this.mQueue[tail] = next;
+					this.mFirst[tail] = first;
+					tail += 1;
+					
+					this.mLevelWeights[first] += scores[next] / depth;
+				}
+			}
+			
+			for (int d = 0; d < directions.length; d++) {
+				this.mWeights[d] += this.mLevelWeights[d];
+			}
+			this.mDepth = depth;
+			
+			if (isTimed && (System.nanoTime() > deadline)) {
+				break;
+			}
+		}
+		
+		Metrics.add(Metrics.NODES_EXPANDED, head);
+		
+		//Pick the heaviest direction, favoring the current one on ties to avoid dithering
+		Entity.Direction best = null;
+		long bestWeight = 0;
+		boolean hasValue = false;
+		for (int d = 0; d < directions.length; d++) {
+			if (!this.mIsReachable[d]) {
+				continue;
+			}
+			
+			final long weight = this.mWeights[d];
+			if (weight != 0) {
+				hasValue = true;
+			}
+			if ((best == null) || (weight > bestWeight) || ((weight == bestWeight) && (d == snapshot.mDirection))) {
+				best = directions[d];
+				bestWeight = weight;
+			}
+		}
+		
+		return hasValue ? best : null;
+	}
+	
+	/**
+	 * Size the buffers to the board and start a new search stamp.
+	 * 
+	 * @param cells Number of cells on the board.
+	 */
+	private void prepare(final int cells) {
+		if (this.mSeen.length != cells) {
+			this.mQueue = new int[cells];
+			this.mFirst = new byte[cells];
+			this.mSeen = new int[cells];
+			this.mStamp = 0;
+		}
+		
+		this.mStamp += 1;
+		if (this.mStamp == Integer.MAX_VALUE) {
+			//Wrapped around, start over so that stale stamps cannot match
+			Arrays.fill(this.mSeen, 0);
+			this.mStamp = 1;
+		}
+	}
+}
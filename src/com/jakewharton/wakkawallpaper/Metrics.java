@@ -0,0 +1,387 @@
+package com.jakewharton.wakkawallpaper;
+
+import java.io.PrintWriter;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import android.os.SystemClock;
+
+/**
+ * Process wide registry of runtime counters and timing histograms. Every value
+ * is an atomic so that the game thread, the planner worker and whoever is
+ * dumping can all touch them without taking a lock, and nothing is allocated
+ * when a value is recorded. Unlike the logging flags this is always compiled
+ * in and is read through {@code adb shell dumpsys activity service} on the
+ * wallpaper service.
+ * 
+ * @author Jake Wharton
+ */
+public final class Metrics {
+	/**
+	 * Fixed-size histogram with log-linear buckets: every power of two is split
+	 * into four equal buckets, so a percentile is never more than a quarter
+	 * above the true value.
+	 * 
+	 * @author Jake Wharton
+	 */
+	public static final class Histogram {
+		/**
+		 * Bits of each value kept below its highest set bit.
+		 */
+		private static final int SUB_BITS = 2;
+		
+		/**
+		 * Number of buckets each power of two is split into.
+		 */
+		private static final int SUB_BUCKETS = 1 << Histogram.SUB_BITS;
+		
+		/**
+		 * Number of buckets. The last holds everything too large for the others.
+		 */
+		private static final int BUCKETS = 128;
+		
+		
+		
+		/**
+		 * Name shown when dumped.
+		 */
+		private final String mName;
+		
+		/**
+		 * Number of values recorded in each bucket.
+		 */
+		private final AtomicLongArray mBuckets;
+		
+		/**
+		 * Number of values recorded.
+		 */
+		private final AtomicLong mCount;
+		
+		/**
+		 * Sum of the values recorded.
+		 */
+		private final AtomicLong mSum;
+		
+		/**
+		 * Largest value recorded.
+		 */
+		private final AtomicLong mMax;
+		
+		
+		
+		/**
+		 * Create a new empty histogram.
+		 * 
+		 * @param name Name shown when dumped.
+		 */
+		public Histogram(final String name) {
+			this.mName = name;
+			this.mBuckets = new AtomicLongArray(Histogram.BUCKETS);
+			this.mCount = new AtomicLong();
+			this.mSum = new AtomicLong();
+			this.mMax = new AtomicLong();
+		}
+		
+		
+		
+		/**
+		 * Record a value.
+		 * 
+		 * @param value Non-negative value.
+		 */
+		public void record(final long value) {
+			this.mBuckets.incrementAndGet(Histogram.bucketOf(Math.max(0, value)));
+			this.mCount.incrementAndGet();
+			this.mSum.addAndGet(value);
+			
+			long max = this.mMax.get();
+			while ((value > max) && !this.mMax.compareAndSet(max, value)) {
+				max = this.mMax.get();
+			}
+		}
+		
+		/**
+		 * Get the number of values recorded.
+		 * 
+		 * @return Count.
+		 */
+		public long getCount() {
+			return this.mCount.get();
+		}
+		
+		/**
+		 * Get the largest value recorded.
+		 * 
+		 * @return Value.
+		 */
+		public long getMax() {
+			return this.mMax.get();
+		}
+		
+		/**
+		 * Get the mean of the values recorded.
+		 * 
+		 * @return Mean or zero if nothing has been recorded.
+		 */
+		public long getMean() {
+			final long count = this.mCount.get();
+			return (count > 0) ? (this.mSum.get() / count) : 0;
+		}
+		
+		/**
+		 * Get an upper bound of a percentile of the values recorded.
+		 * 
+		 * @param percent Percentile (0-100).
+		 * @return Upper bound of the bucket holding the percentile, never more than the maximum.
+		 */
+		public long getPercentile(final int percent) {
+			long total = 0;
+			for (int i = 0; i < Histogram.BUCKETS; i++) {
+				total += this.mBuckets.get(i);
+			}
+			if (total == 0) {
+				return 0;
+			}
+			
+			final long rank = Math.max(1, ((total * percent) + 99) / 100);
+			long seen = 0;
+			for (int i = 0; i < Histogram.BUCKETS; i++) {
+				seen += this.mBuckets.get(i);
+				if (seen >= rank) {
+					return Math.min(Histogram.upperBoundOf(i), this.mMax.get());
+				}
+			}
+			return this.mMax.get();
+		}
+		
+		/**
+		 * Forget every value recorded.
+		 */
+		public void reset() {
+			for (int i = 0; i < Histogram.BUCKETS; i++) {
+				this.mBuckets.set(i, 0);
+			}
+			this.mCount.set(0);
+			this.mSum.set(0);
+			this.mMax.set(0);
+		}
+		
+		/**
+		 * Get the bucket which holds a value.
+		 * 
+		 * @param value Non-negative value.
+		 * @return Bucket index.
+		 */
+		private static int bucketOf(final long value) {
+			if (value < Histogram.SUB_BUCKETS) {
+				return (int)value;
+			}
+			
+			final int shift = (63 - Long.numberOfLeadingZeros(value)) - Histogram.SUB_BITS;
+			final int bucket = ((shift + 1) * Histogram.SUB_BUCKETS) + (int)((value >>> shift) - Histogram.SUB_BUCKETS);
+			return Math.min(Histogram.BUCKETS - 1, bucket);
+		}
+		
+		/**
+		 * Get the largest value a bucket holds.
+		 * 
+		 * @param bucket Bucket index.
+		 * @return Value.
+		 */
+		private static long upperBoundOf(final int bucket) {
+			if (bucket < Histogram.SUB_BUCKETS) {
+				return bucket;
+			}
+			if (bucket == (Histogram.BUCKETS - 1)) {
+				return Long.MAX_VALUE;
+			}
+			
+			final int shift = (bucket / Histogram.SUB_BUCKETS) - 1;
+			final long sub = (bucket % Histogram.SUB_BUCKETS) + Histogram.SUB_BUCKETS;
+			return ((sub + 1) << shift) - 1;
+		}
+		
+		/**
+		 * Write a one line summary.
+		 * 
+		 * @param out Writer.
+		 */
+		public void dump(final PrintWriter out) {
+			out.print(this.mName);
+			out.print(": count=");
+			out.print(this.getCount());
+			out.print(" mean=");
+			out.print(this.getMean());
+			out.print(" p50<=");
+			out.print(this.getPercentile(50));
+			out.print(" p90<=");
+			out.print(this.getPercentile(90));
+			out.print(" p99<=");
+			out.print(this.getPercentile(99));
+			out.print(" max=");
+			out.println(this.getMax());
+		}
+	}
+	
+	
+	
+	/**
+	 * Game ticks performed by the wallpaper.
+	 */
+	/*package*/static final int TICKS = 0;
+	
+	/**
+	 * Frames drawn to a surface.
+	 */
+	/*package*/static final int FRAMES_DRAWN = 1;
+	
+	/**
+	 * Frames not drawn because the surface was not available.
+	 */
+	/*package*/static final int FRAMES_SKIPPED = 2;
+	
+	/**
+	 * Cells and nodes expanded by every breadth-first and shortest path search.
+	 */
+	/*package*/static final int NODES_EXPANDED = 3;
+	
+	/**
+	 * Settings snapshots rebuilt after a preference change.
+	 */
+	/*package*/static final int SETTINGS_REBUILDS = 4;
+	
+	/**
+	 * Sprite sheets decoded.
+	 */
+	/*package*/static final int BITMAP_DECODES = 5;
+	
+	/**
+	 * Sprite sheets evicted.
+	 */
+	/*package*/static final int BITMAP_EVICTIONS = 6;
+	
+	/**
+	 * Games recovered from a checkpoint after an entity failure.
+	 */
+	/*package*/static final int RECOVERIES = 7;
+	
+	/**
+	 * Frames which came more than one period later than the target frame rate.
+	 */
+	/*package*/static final int FRAMES_JANKED = 8;
+	
+	/**
+	 * Number of counters.
+	 */
+	/*package*/static final int COUNT = 9;
+	
+	/**
+	 * Name of each counter when dumped.
+	 */
+	private static final String[] NAMES = new String[] {
+		/* TICKS */ "ticks",
+		/* FRAMES_DRAWN */ "frames_drawn",
+		/* FRAMES_SKIPPED */ "frames_skipped",
+		/* NODES_EXPANDED */ "nodes_expanded",
+		/* SETTINGS_REBUILDS */ "settings_rebuilds",
+		/* BITMAP_DECODES */ "bitmap_decodes",
+		/* BITMAP_EVICTIONS */ "bitmap_evictions",
+		/* RECOVERIES */ "recoveries",
+		/* FRAMES_JANKED */ "frames_janked",
+	};
+	
+	/**
+	 * Microseconds spent advancing the game each tick.
+	 */
+	/*package*/static final Metrics.Histogram TICK_TIME = new Metrics.Histogram("tick_us");
+	
+	/**
+	 * Microseconds spent drawing each frame, including waiting on the surface.
+	 */
+	/*package*/static final Metrics.Histogram DRAW_TIME = new Metrics.Histogram("draw_us");
+	
+	/**
+	 * Microseconds between the starts of consecutive frames.
+	 */
+	/*package*/static final Metrics.Histogram FRAME_INTERVAL = new Metrics.Histogram("frame_interval_us");
+	
+	/**
+	 * Value of each counter.
+	 */
+	private static final AtomicLongArray COUNTERS = new AtomicLongArray(Metrics.COUNT);
+	
+	/**
+	 * Uptime (in milliseconds) at which the counters were last reset.
+	 */
+	private static final AtomicLong SINCE = new AtomicLong(SystemClock.uptimeMillis());
+	
+	
+	
+	/**
+	 * Non-instantiable.
+	 */
+	private Metrics() {}
+	
+	
+	
+	/**
+	 * Add one to a counter.
+	 * 
+	 * @param counter Counter.
+	 */
+	public static void increment(final int counter) {
+		Metrics.COUNTERS.incrementAndGet(counter);
+	}
+	
+	/**
+	 * Add to a counter.
+	 * 
+	 * @param counter Counter.
+	 * @param delta Amount to add.
+	 */
+	public static void add(final int counter, final long delta) {
+		Metrics.COUNTERS.addAndGet(counter, delta);
+	}
+	
+	/**
+	 * Get the value of a counter.
+	 * 
+	 * @param counter Counter.
+	 * @return Value.
+	 */
+	public static long get(final int counter) {
+		return Metrics.COUNTERS.get(counter);
+	}
+	
+	/**
+	 * Reset every counter and histogram.
+	 */
+	public static void reset() {
+		for (int i = 0; i < Metrics.COUNT; i++) {
+			Metrics.COUNTERS.set(i, 0);
+		}
+		Metrics.TICK_TIME.reset();
+		Metrics.DRAW_TIME.reset();
+		Metrics.FRAME_INTERVAL.reset();
+		Metrics.SINCE.set(SystemClock.uptimeMillis());
+	}
+	
+	/**
+	 * Write every counter and histogram.
+	 * 
+	 * @param out Writer.
+	 */
+	public static void dump(final PrintWriter out) {
+		out.print("uptime_ms: ");
+		out.println(SystemClock.uptimeMillis() - Metrics.SINCE.get());
+		for (int i = 0; i < Metrics.COUNT; i++) {
+			out.print(Metrics.NAMES[i]);
+			out.print(": ");
+			out.println(Metrics.COUNTERS.get(i));
+		}
+		out.print("bitmap_bytes: ");
+		out.println(Wallpaper.BITMAPS.getBytes());
+		Metrics.TICK_TIME.dump(out);
+		Metrics.DRAW_TIME.dump(out);
+		Metrics.FRAME_INTERVAL.dump(out);
+	}
+}
@@ -0,0 +1,279 @@
+package com.jakewharton.wakkawallpaper;
+
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.os.Debug;
+
+/**
+ * Performance overlay drawn over the game in the Picker's debug mode. Shows
+ * the frame rate, tick and draw time, collections and heap growth since the
+ * last frame, nodes expanded by the searches, and the number of ghosts.
+ * 
+ * <p>The text is built in a preallocated character buffer and drawn straight
+ * from it so that the overlay does not allocate and distort what it shows.</p>
+ * 
+ * @author Jake Wharton
+ */
+public final class Overlay {
+	/**
+	 * Number of lines of text.
+	 */
+	private static final int LINES = 3;
+	
+	/**
+	 * Capacity of the text buffer.
+	 */
+	private static final int TEXT_CAPACITY = 192;
+	
+	/**
+	 * Text size (in DIP).
+	 */
+	private static final float TEXT_SIZE = 12;
+	
+	/**
+	 * Padding (in DIP) around the text.
+	 */
+	private static final float PADDING = 4;
+	
+	/**
+	 * Number of nanoseconds in a microsecond.
+	 */
+	private static final long NANOSECONDS_IN_MICROSECOND = 1000;
+	
+	/**
+	 * Number of bytes in a kilobyte.
+	 */
+	private static final long BYTES_IN_KILOBYTE = 1024;
+	
+	
+	
+	/**
+	 * Text of every line, back to back.
+	 */
+	private final char[] mText;
+	
+	/**
+	 * Offset in the text where each line starts, plus the end of the last.
+	 */
+	private final int[] mLineStarts;
+	
+	/**
+	 * Number of characters of text.
+	 */
+	private int mLength;
+	
+	/**
+	 * Paint for the text.
+	 */
+	private final Paint mForeground;
+	
+	/**
+	 * Paint for the box behind the text.
+	 */
+	private final Paint mBackground;
+	
+	/**
+	 * Height (in pixels) of a line.
+	 */
+	private final float mLineHeight;
+	
+	/**
+	 * Padding (in pixels) around the text.
+	 */
+	private final float mPadding;
+	
+	/**
+	 * System nanoseconds at which the last frame started drawing or zero if none.
+	 */
+	private long mLastFrame;
+	
+	/**
+	 * Nanoseconds spent on the last tick.
+	 */
+	private long mTickTime;
+	
+	/**
+	 * Collection count at the last frame.
+	 */
+	private int mLastGcCount;
+	
+	/**
+	 * Bytes of heap in use at the last frame.
+	 */
+	private long mLastHeap;
+	
+	/**
+	 * Nodes expanded at the last frame.
+	 */
+	private long mLastNodes;
+	
+	
+	
+	/**
+	 * Create a new overlay. Starts the platform's allocation counting so that
+	 * collections can be counted.
+	 */
+	public Overlay() {
+		final float density = Wallpaper.CONTEXT.getResources().getDisplayMetrics().density;
+		
+		this.mText = new char[Overlay.TEXT_CAPACITY];
+		this.mLineStarts = new int[Overlay.LINES + 1];
+		
+		this.mForeground = new Paint(Paint.ANTI_ALIAS_FLAG);
+		this.mForeground.setColor(Color.GREEN);
+		this.mForeground.setTextSize(Overlay.TEXT_SIZE * density);
+		this.mBackground = new Paint();
+		this.mBackground.setColor(Color.argb(0xA0, 0, 0, 0));
+		
+		this.mLineHeight = this.mForeground.getFontSpacing();
+		this.mPadding = Overlay.PADDING * density;
+		
+		Debug.startAllocCounting();
+		this.mLastGcCount = Debug.getGlobalGcInvocationCount();
+		this.mLastHeap = Overlay.getHeapUsed();
+		this.mLastNodes = Metrics.get(Metrics.NODES_EXPANDED);
+	}
+	
+	
+	
+	/**
+	 * Stop the platform's allocation counting.
+	 */
+	public void release() {
+		Debug.stopAllocCounting();
+	}
+	
+	/**
+	 * Record how long a tick took.
+	 * 
+	 * @param nanoseconds Duration.
+	 */
+	public void recordTick(final long nanoseconds) {
+		this.mTickTime = nanoseconds;
+	}
+	
+	/**
+	 * Draw the overlay. Called once the game has finished drawing its frame.
+	 * 
+	 * @param game Game instance.
+	 * @param c Canvas to draw on.
+	 * @param frameStart System nanoseconds at which the game started drawing the frame.
+	 */
+	public void draw(final Game game, final Canvas c, final long frameStart) {
+		final long drawTime = System.nanoTime() - frameStart;
+		final long interval = (this.mLastFrame != 0) ? (frameStart - this.mLastFrame) : 0;
+		this.mLastFrame = frameStart;
+		
+		final int gcCount = Debug.getGlobalGcInvocationCount();
+		final long heap = Overlay.getHeapUsed();
+		final long nodes = Metrics.get(Metrics.NODES_EXPANDED);
+		
+		this.mLength = 0;
+		this.mLineStarts[0] = 0;
+		this.append("FPS ");
+		//Tenths of a frame per second
+		this.appendTenths((interval > 0) ? ((10L * Wallpaper.MICROSECONDS_IN_SECOND * Overlay.NANOSECONDS_IN_MICROSECOND) / interval) : 0);
+		this.append("  tick ");
+		this.appendTenths(this.mTickTime / (100 * Overlay.NANOSECONDS_IN_MICROSECOND));
+		this.append("ms  draw ");
+		this.appendTenths(drawTime / (100 * Overlay.NANOSECONDS_IN_MICROSECOND));
+		this.append("ms");
+		this.mLineStarts[1] = this.mLength;
+		this.append("GC +");
+		this.appendNumber(gcCount - this.mLastGcCount);
+		this.append("  heap ");
+		this.appendNumber(heap / Overlay.BYTES_IN_KILOBYTE);
+		this.append("KB (");
+		if (heap >= this.mLastHeap) {
+			this.append("+");
+		}
+		this.appendNumber((heap - this.mLastHeap) / Overlay.BYTES_IN_KILOBYTE);
+		this.append("KB)");
+		this.mLineStarts[2] = this.mLength;
+		this.append("nodes ");
+		this.appendNumber(nodes - this.mLastNodes);
+		this.append("  ghosts ");
+		this.appendNumber(game.getGhostCount());
+		this.append("+");
+		this.appendNumber(game.getSwarm().getCount());
+		this.mLineStarts[3] = this.mLength;
+		
+		this.mLastGcCount = gcCount;
+		this.mLastHeap = heap;
+		this.mLastNodes = nodes;
+		
+		//Size the box to the widest line
+		float width = 0;
+		for (int i = 0; i < Overlay.LINES; i++) {
+			width = Math.max(width, this.mForeground.measureText(this.mText, this.mLineStarts[i], this.mLineStarts[i + 1] - this.mLineStarts[i]));
+		}
+		c.drawRect(0, 0, width + (2 * this.mPadding), (Overlay.LINES * this.mLineHeight) + (2 * this.mPadding), this.mBackground);
+		
+		for (int i = 0; i < Overlay.LINES; i++) {
+			final float y = this.mPadding + ((i + 1) * this.mLineHeight) - this.mForeground.descent();
+			c.drawText(this.mText, this.mLineStarts[i], this.mLineStarts[i + 1] - this.mLineStarts[i], this.mPadding, y, this.mForeground);
+		}
+	}
+	
+	/**
+	 * Append a constant to the text.
+	 * 
+	 * @param text Text.
+	 */
+	private void append(final String text) {
+		final int length = Math.min(text.length(), Overlay.TEXT_CAPACITY - this.mLength);
+		text.getChars(0, length, this.mText, this.mLength);
+		this.mLength += length;
+	}
+	
+	/**
+	 * Append an integer to the text.
+	 * 
+	 * @param value Value.
+	 */
+	private void appendNumber(long value) {
+		if (value < 0) {
+			this.append("-");
+			value = -value;
+		}
+		
+		//Write the digits backwards then reverse them in place
+		final int start = this.mLength;
+		do {
+			if (this.mLength == Overlay.TEXT_CAPACITY) {
+				break;
+			}
+			this.mText[this.mLength++] = (char)('0' + (value % 10));
+			value /= 10;
+		} while (value > 0);
+		for (int i = start, j = this.mLength - 1; i < j; i++, j--) {
+			final char swap = this.mText[i];
+			this.mText[i] = this.mText[j];
+			this.mText[j] = swap;
+		}
+	}
+	
+	/**
+	 * Append a number of tenths to the text with one decimal place.
+	 * 
+	 * @param tenths Value in tenths.
+	 */
+	private void appendTenths(final long tenths) {
+		this.appendNumber(tenths / 10);
+		this.append(".");
+		this.appendNumber(Math.abs(tenths % 10));
+	}
+	
+	
+	
+	/**
+	 * Bytes of the heap currently in use.
+	 * 
+	 * @return Bytes.
+	 */
+	private static long getHeapUsed() {
+		final Runtime runtime = Runtime.getRuntime();
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+}
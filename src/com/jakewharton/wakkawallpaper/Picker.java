@@ -1,14 +1,15 @@
 package com.jakewharton.wakkawallpaper;
 
+import java.io.File;
+import java.io.IOException;
 import com.jakewharton.wakkawallpaper.Entity.SomethingIsCausingEntitiesToNullPointerException;
 import android.app.Activity;
 import android.content.Context;
 import android.content.Intent;
-import android.content.SharedPreferences;
-import android.content.res.Resources;
 import android.graphics.Canvas;
 import android.os.Bundle;
 import android.os.Handler;
+import android.util.DisplayMetrics;
 import android.util.Log;
 import android.view.View;
 import android.widget.Toast;
@@ -24,6 +25,36 @@ public class Picker extends Activity {
 	 * Intent for live wallpaper picker activity.
 	 */
 	private static final String LIVE_WALLPAPER_CHOOSER = "android.service.wallpaper.LIVE_WALLPAPER_CHOOSER";
+	
+	/**
+	 * Seed of the first game simulated by the benchmark.
+	 */
+	private static final long BENCHMARK_SEED = 1;
+	
+	/**
+	 * Number of games simulated by the benchmark.
+	 */
+	private static final int BENCHMARK_GAMES = 100;
+	
+	/**
+	 * Maximum number of ticks of each game simulated by the benchmark.
+	 */
+	private static final long BENCHMARK_MAX_TICKS = 20000;
+	
+	/**
+	 * Number of cold and of warm game starts measured by the benchmark.
+	 */
+	private static final int BENCHMARK_STARTS = 20;
+	
+	/**
+	 * Maximum number of trace events captured by the benchmark.
+	 */
+	private static final int BENCHMARK_TRACE_CAPACITY = 100000;
+	
+	/**
+	 * Tag used for logging.
+	 */
+	private static final String TAG = "WakkaWallpaper.Picker";
     
 	
 	
@@ -31,6 +62,11 @@ public class Picker extends Activity {
      * The timed callback handler.
      */
     private final Handler mHandler = new Handler();
+    
+    /**
+     * View playing the game, if any.
+     */
+    private Bootstrapper mBootstrapper;
 	
     
     
@@ -42,9 +78,18 @@ public class Picker extends Activity {
 			//Used across the package for gameplay
 	    	Wallpaper.PREFERENCES = this.getSharedPreferences(Preferences.SHARED_NAME, Context.MODE_PRIVATE);
 	    	Wallpaper.CONTEXT = this;
+	    	if (Wallpaper.SETTINGS == null) {
+	    		Wallpaper.SETTINGS = new Settings.Manager(Wallpaper.PREFERENCES);
+	    		Wallpaper.SETTINGS.register(Wallpaper.BITMAPS);
+	    	}
 	    	
-	    	//Game it up!
-	    	this.setContentView(new Bootstrapper(this));
+	    	if (Wallpaper.BENCHMARK_DEBUG) {
+	    		this.runBenchmark();
+	    	} else {
+		    	//Game it up!
+		    	this.mBootstrapper = new Bootstrapper(this);
+		    	this.setContentView(this.mBootstrapper);
+	    	}
 		} else {
 			//Prompt to choose our wallpaper
 			Toast.makeText(this, this.getResources().getString(R.string.welcome_picker_toast), Toast.LENGTH_LONG).show();
@@ -57,10 +102,86 @@ public class Picker extends Activity {
 		}
 	}
 	
+	@Override
+	protected void onDestroy() {
+		if (this.mBootstrapper != null) {
+			this.mBootstrapper.destroy();
+			this.mBootstrapper = null;
+		}
+		
+		super.onDestroy();
+	}
+	
+	/**
+	 * Simulate a batch of games with the user's settings and write the CSV
+	 * and JSON reports (and a Chrome trace of one game, if
+	 * {@link Wallpaper#TRACE_DEBUG} is enabled) to the files directory. Every
+	 * kept crash recording is then played back and, back on this thread, cold
+	 * and warm game starts are measured. Results are logged.
+	 */
+	private void runBenchmark() {
+		final DisplayMetrics metrics = this.getResources().getDisplayMetrics();
+		final Simulator simulator = new Simulator(Wallpaper.SETTINGS.getSettings(), metrics.widthPixels, metrics.heightPixels, Picker.BENCHMARK_MAX_TICKS);
+		final File directory = this.getFilesDir();
+		
+		new Thread(new Runnable() {
+			public void run() {
+				try {
+					final Simulator.Report report = simulator.run(Picker.BENCHMARK_SEED, Picker.BENCHMARK_GAMES);
+					report.writeCsv(new File(directory, "simulation.csv"));
+					report.writeJson(new File(directory, "simulation.json"));
+					simulator.trace(Picker.BENCHMARK_SEED, Picker.BENCHMARK_TRACE_CAPACITY).writeTo(new File(directory, "trace.json"));
+					Log.i(Picker.TAG, "Simulated " + Picker.BENCHMARK_GAMES + " games in " + (report.wallTime / 1000000) + "ms, reports written to " + directory);
+				} catch (final InterruptedException e) {
+					return;
+				} catch (final IOException e) {
+					Log.w(Picker.TAG, "Unable to write simulation reports.", e);
+				}
+				
+				Picker.replayCrashes();
+				
+				//Starting a real game needs a looper
+				Picker.this.mHandler.post(new Runnable() {
+					public void run() {
+						final Simulator.Distribution cold = simulator.measureStartup(Picker.BENCHMARK_STARTS, true);
+						final Simulator.Distribution warm = simulator.measureStartup(Picker.BENCHMARK_STARTS, false);
+						Log.i(Picker.TAG, "Startup cold p50: " + cold.p50 + "us, p90: " + cold.p90 + "us; warm p50: " + warm.p50 + "us, p90: " + warm.p90 + "us");
+					}
+				});
+			}
+		}, Picker.TAG).start();
+	}
+	
+	/**
+	 * Play back every kept crash recording and log whether its failure reproduced.
+	 */
+	private static void replayCrashes() {
+		final File[] files = Recorder.getDirectory().listFiles();
+		if (files == null) {
+			return;
+		}
+		
+		for (final File file : files) {
+			if (!file.getName().startsWith("crash-")) {
+				continue;
+			}
+			
+			try {
+				final long ticks = Replay.play(file);
+				Log.i(Picker.TAG, "Replayed " + file + ": " + ticks + " ticks without failing.");
+			} catch (final SomethingIsCausingEntitiesToNullPointerException e) {
+				Log.i(Picker.TAG, "Replayed " + file + ": failure reproduced.", e);
+			} catch (final Replay.DivergedException e) {
+				Log.w(Picker.TAG, "Replayed " + file + ": " + e.getMessage());
+			} catch (final IOException e) {
+				Log.w(Picker.TAG, "Unable to replay " + file + ".", e);
+			}
+		}
+	}
 	
 	
 	
-	private class Bootstrapper extends View implements SharedPreferences.OnSharedPreferenceChangeListener {
+	private class Bootstrapper extends View implements Settings.Listener {
     	/**
     	 * Tag used for logging.
     	 */
@@ -102,11 +223,10 @@ public class Picker extends Activity {
         		Log.v(Bootstrapper.TAG, "> Bootstrapper()");
         	}
         	
-            this.mGame = new Game();
+            this.mGame = this.createGame();
 
-            //Load all preferences or their defaults
-            Wallpaper.PREFERENCES.registerOnSharedPreferenceChangeListener(this);
-            this.onSharedPreferenceChanged(Wallpaper.PREFERENCES, null);
+            //Load all settings (delivered immediately upon registering)
+            Wallpaper.SETTINGS.register(this);
             
         	if (Wallpaper.LOG_VERBOSE) {
         		Log.v(Bootstrapper.TAG, "< Bootstrapper()");
@@ -116,19 +236,15 @@ public class Picker extends Activity {
         
         
         /**
-         * Handle the changing of a preference.
+         * Handle the changing of one or more settings.
          */
-		public void onSharedPreferenceChanged(final SharedPreferences preferences, final String key) {
+		public void onSettingsChanged(final Settings settings, final Settings.Diff diff) {
         	if (Wallpaper.LOG_VERBOSE) {
-        		Log.v(Bootstrapper.TAG, "> onSharedPreferenceChanged()");
+        		Log.v(Bootstrapper.TAG, "> onSettingsChanged()");
         	}
         	
-			final boolean all = (key == null);
-			final Resources resources = Wallpaper.CONTEXT.getResources();
-			
-			final String fps = resources.getString(R.string.settings_display_fps_key);
-			if (all || key.equals(fps)) {
-				this.mFPS = preferences.getInt(fps, resources.getInteger(R.integer.display_fps_default));
+			if (diff.contains(Settings.DISPLAY_FPS)) {
+				this.mFPS = settings.getInt(Settings.DISPLAY_FPS);
 				
 				if (Wallpaper.LOG_DEBUG) {
 					Log.d(Bootstrapper.TAG, "FPS: " + this.mFPS);
@@ -136,7 +252,7 @@ public class Picker extends Activity {
 			}
 
         	if (Wallpaper.LOG_VERBOSE) {
-        		Log.v(Bootstrapper.TAG, "< onSharedPreferenceChanged()");
+        		Log.v(Bootstrapper.TAG, "< onSettingsChanged()");
         	}
 		}
 
@@ -171,6 +287,26 @@ public class Picker extends Activity {
 			}
 		}
         
+        /**
+         * Stop playing and destroy the game, releasing its performance overlay.
+         */
+        public void destroy() {
+        	Picker.this.mHandler.removeCallbacks(this.mDrawWakka);
+        	Wallpaper.SETTINGS.unregister(this);
+        	this.mGame.destroy();
+        }
+        
+        /**
+         * Create a new game showing the performance overlay.
+         * 
+         * @return Game.
+         */
+        private Game createGame() {
+        	final Game game = new Game();
+        	game.setOverlayEnabled(true);
+        	return game;
+        }
+        
         /**
          * Advance the game by one frame.
          */
@@ -178,7 +314,10 @@ public class Picker extends Activity {
         	try {
 				this.mGame.tick();
 			} catch (SomethingIsCausingEntitiesToNullPointerException e) {
-				this.mGame = new Game();
+				if (!this.mGame.recover()) {
+					this.mGame.destroy();
+					this.mGame = this.createGame();
+				}
 			}
 
         	if (Wallpaper.AUTO_TICK) {
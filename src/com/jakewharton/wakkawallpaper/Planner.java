@@ -0,0 +1,135 @@
+package com.jakewharton.wakkawallpaper;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import android.graphics.Point;
+
+/**
+ * Computes The Man's next AI decision ahead of time on a worker thread. When
+ * The Man enters a cell his following cell is already known, so the board is
+ * captured and searched from that cell while he is still crossing the current
+ * one. The result is picked up when he arrives, keeping the search out of the
+ * tick entirely.
+ * 
+ * @author Jake Wharton
+ */
+public final class Planner {
+	/**
+	 * Worker shared by every planner. Plans are short and one is in flight at most per planner.
+	 */
+	private static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor();
+	
+	
+	
+	/**
+	 * Search owned by the worker.
+	 */
+	private final Lookahead mLookahead;
+	
+	/**
+	 * Board capture. Only written by the game thread while no plan is in flight.
+	 */
+	private final Lookahead.Snapshot mSnapshot;
+	
+	/**
+	 * Whether a plan is currently being computed.
+	 */
+	private volatile boolean mIsBusy;
+	
+	/**
+	 * Cell index the most recent result was planned for or -1.
+	 */
+	private volatile int mResultCell;
+	
+	/**
+	 * Most recent result.
+	 */
+	private volatile Entity.Direction mResult;
+	
+	/**
+	 * Point reused to predict the next cell.
+	 */
+	private final Point mScratch;
+	
+	/**
+	 * Microseconds allowed for the plan in flight.
+	 */
+	private long mBudget;
+	
+	/**
+	 * Task run on the worker for every plan.
+	 */
+	private final Runnable mTask;
+	
+	
+	
+	/**
+	 * Create a new planner.
+	 */
+	public Planner() {
+		this.mLookahead = new Lookahead();
+		this.mSnapshot = new Lookahead.Snapshot();
+		this.mScratch = new Point();
+		this.mResultCell = -1;
+		this.mTask = new Runnable() {
+			public void run() {
+				try {
+					Planner.this.mResult = Planner.this.mLookahead.decide(Planner.this.mSnapshot, Planner.this.mBudget, true);
+					Planner.this.mResultCell = Planner.this.mSnapshot.getStart();
+				} finally {
+					Planner.this.mIsBusy = false;
+				}
+			}
+		};
+	}
+	
+	
+	
+	/**
+	 * Take the planned decision for the cell The Man has just entered.
+	 * 
+	 * @param game Game instance.
+	 * @param theMan The Man.
+	 * @return Direction or null if no plan for this cell is ready.
+	 */
+	public Entity.Direction take(final Game game, final TheMan theMan) {
+		if (this.mIsBusy) {
+			return null;
+		}
+		
+		//Read the cell first since the worker publishes the result before it
+		final boolean isForCell = (this.mResultCell == game.hashPosition(theMan.getPosition()));
+		final Entity.Direction result = this.mResult;
+		this.mResultCell = -1;
+		
+		return isForCell ? result : null;
+	}
+	
+	/**
+	 * Start planning the decision for the cell The Man will enter next.
+	 * 
+	 * @param game Game instance.
+	 * @param theMan The Man.
+	 * @param direction Direction The Man will take out of his current cell.
+	 * @param budget Microseconds allowed for the decision.
+	 */
+	public void plan(final Game game, final TheMan theMan, final Entity.Direction direction, final long budget) {
+		if (this.mIsBusy || (direction == null)) {
+			//Still working on the last one, the tick will fall back
+			return;
+		}
+		
+		final Point next = this.mScratch;
+		next.set(theMan.getPosition().x, theMan.getPosition().y);
+		Entity.step(next, direction);
+		if (!game.isValidPosition(theMan, next)) {
+			return;
+		}
+		
+		this.mSnapshot.capture(game, theMan, next, direction);
+		this.mBudget = budget;
+		
+		this.mIsBusy = true;
+		Planner.EXECUTOR.execute(this.mTask);
+	}
+}
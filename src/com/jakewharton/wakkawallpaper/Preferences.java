@@ -105,6 +105,14 @@ public class Preferences extends PreferenceActivity implements SharedPreferences
         final SharedPreferences preferences = manager.getSharedPreferences();
         final Resources resources = this.getResources();
         
+        //frame timings
+        this.findPreference(resources.getString(R.string.settings_display_performance_key)).setOnPreferenceClickListener(new OnPreferenceClickListener() {
+			public boolean onPreferenceClick(final Preference preference) {
+				Preferences.this.viewPerformance();
+				return true;
+			}
+		});
+        
         //reset display
         this.findPreference(resources.getString(R.string.settings_display_reset_key)).setOnPreferenceClickListener(new OnPreferenceClickListener() {
 			public boolean onPreferenceClick(final Preference preference) {
@@ -279,16 +287,17 @@ public class Preferences extends PreferenceActivity implements SharedPreferences
         final IconCheckBoxPreference trophyEden = (IconCheckBoxPreference)this.findPreference(resources.getString(R.string.trophy_eden_key));
         final IconCheckBoxPreference trophyGoogol = (IconCheckBoxPreference)this.findPreference(resources.getString(R.string.trophy_googol_key));
         final IconCheckBoxPreference trophyLegend = (IconCheckBoxPreference)this.findPreference(resources.getString(R.string.trophy_legend_key));
-        final boolean earnedTrophyEgo = preferences.getBoolean(resources.getString(R.string.trophy_ego_persist), resources.getBoolean(R.bool.trophy_ego_default));
-        final boolean earnedTrophyAndy = preferences.getBoolean(resources.getString(R.string.trophy_andy_persist), resources.getBoolean(R.bool.trophy_andy_default));
-        final boolean earnedTrophyTheMandroid = preferences.getBoolean(resources.getString(R.string.trophy_themandroid_persist), resources.getBoolean(R.bool.trophy_themandroid_default));
-        final boolean earnedTrophyLogos = preferences.getBoolean(resources.getString(R.string.trophy_logos_persist), resources.getBoolean(R.bool.trophy_logos_default));
-        final boolean earnedTrophyCeos = preferences.getBoolean(resources.getString(R.string.trophy_ceos_persist), resources.getBoolean(R.bool.trophy_ceos_default));
-        final boolean earnedTrophyDesserts = preferences.getBoolean(resources.getString(R.string.trophy_desserts_persist), resources.getBoolean(R.bool.trophy_desserts_default));
-        final boolean earnedTrophyAppleDots = preferences.getBoolean(resources.getString(R.string.trophy_appledots_persist), resources.getBoolean(R.bool.trophy_appledots_default));
-        final boolean earnedTrophyEden = preferences.getBoolean(resources.getString(R.string.trophy_eden_persist), resources.getBoolean(R.bool.trophy_eden_default));
-        final boolean earnedTrophyGoogol = preferences.getBoolean(resources.getString(R.string.trophy_googol_persist), resources.getBoolean(R.bool.trophy_googol_default));
-        final boolean earnedTrophyLegend= preferences.getBoolean(resources.getString(R.string.trophy_legend_persist), resources.getBoolean(R.bool.trophy_legend_default));
+        final Achievements achievements = Achievements.getInstance(this);
+        final boolean earnedTrophyEgo = achievements.isEarned(Achievements.EGO);
+        final boolean earnedTrophyAndy = achievements.isEarned(Achievements.ANDY);
+        final boolean earnedTrophyTheMandroid = achievements.isEarned(Achievements.THEMANDROID);
+        final boolean earnedTrophyLogos = achievements.isEarned(Achievements.LOGOS);
+        final boolean earnedTrophyCeos = achievements.isEarned(Achievements.CEOS);
+        final boolean earnedTrophyDesserts = achievements.isEarned(Achievements.DESSERTS);
+        final boolean earnedTrophyAppleDots = achievements.isEarned(Achievements.APPLEDOTS);
+        final boolean earnedTrophyEden = achievements.isEarned(Achievements.EDEN);
+        final boolean earnedTrophyGoogol = achievements.isEarned(Achievements.GOOGOL);
+        final boolean earnedTrophyLegend = achievements.isEarned(Achievements.LEGEND);
         
         trophyEgo.setEnabled(earnedTrophyEgo);
         if (!earnedTrophyEgo) {
@@ -508,6 +517,60 @@ public class Preferences extends PreferenceActivity implements SharedPreferences
 		this.startActivity(intent);
     }
     
+    /**
+     * Show the frame timings measured by the wallpaper on this device.
+     */
+    private void viewPerformance() {
+        final Resources resources = this.getResources();
+        final int fps = this.getPreferenceManager().getSharedPreferences().getInt(resources.getString(R.string.settings_display_fps_key), resources.getInteger(R.integer.display_fps_default));
+        final long frames = Metrics.FRAME_INTERVAL.getCount();
+        final long janked = Metrics.get(Metrics.FRAMES_JANKED);
+        
+        final StringBuilder message = new StringBuilder();
+        message.append(resources.getString(R.string.performance_target, fps, Wallpaper.MILLISECONDS_IN_SECOND / fps)).append('\n');
+        message.append(resources.getString(R.string.performance_frames, frames, janked, (frames > 0) ? ((janked * 100) / frames) : 0)).append("\n\n");
+        Preferences.appendTimings(message, resources.getString(R.string.performance_interval), Metrics.FRAME_INTERVAL);
+        Preferences.appendTimings(message, resources.getString(R.string.performance_tick), Metrics.TICK_TIME);
+        Preferences.appendTimings(message, resources.getString(R.string.performance_draw), Metrics.DRAW_TIME);
+        
+        (new AlertDialog.Builder(this))
+        	.setTitle(resources.getString(R.string.settings_display_performance))
+        	.setMessage(message.toString())
+        	.setCancelable(true)
+        	.setPositiveButton(resources.getString(android.R.string.ok), null)
+        	.setNeutralButton(resources.getString(R.string.performance_reset), new OnClickListener() {
+				public void onClick(final DialogInterface dialog, final int which) {
+					Metrics.reset();
+				}
+			})
+        	.show();
+    }
+    
+    /**
+     * Append a line of percentiles (in milliseconds) for a histogram of microseconds.
+     * 
+     * @param message Message to append to.
+     * @param label Label of the line.
+     * @param histogram Histogram.
+     */
+    private static void appendTimings(final StringBuilder message, final String label, final Metrics.Histogram histogram) {
+    	message.append(label).append('\n');
+    	message.append("  p50 ").append(Preferences.toMilliseconds(histogram.getPercentile(50)));
+    	message.append("  p90 ").append(Preferences.toMilliseconds(histogram.getPercentile(90)));
+    	message.append("  p99 ").append(Preferences.toMilliseconds(histogram.getPercentile(99)));
+    	message.append("  max ").append(Preferences.toMilliseconds(histogram.getMax())).append('\n');
+    }
+    
+    /**
+     * Format microseconds as milliseconds to one decimal place.
+     * 
+     * @param microseconds Microseconds.
+     * @return Formatted milliseconds.
+     */
+    private static String toMilliseconds(final long microseconds) {
+    	return (microseconds / 1000) + "." + ((microseconds % 1000) / 100);
+    }
+    
     /**
      * Open Facebook
      */
@@ -538,6 +601,25 @@ public class Preferences extends PreferenceActivity implements SharedPreferences
 		this.startActivity(intent);
     }
 
+    @Override
+    protected void onResume() {
+    	super.onResume();
+    	
+    	//Hold setting changes while the user edits so the game rebuilds only once
+    	if (Wallpaper.SETTINGS != null) {
+    		Wallpaper.SETTINGS.hold();
+    	}
+    }
+    
+    @Override
+    protected void onPause() {
+    	super.onPause();
+    	
+    	if (Wallpaper.SETTINGS != null) {
+    		Wallpaper.SETTINGS.release();
+    	}
+    }
+
     /**
      * Handle the changing of a preference.
      */
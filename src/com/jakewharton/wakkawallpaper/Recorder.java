@@ -0,0 +1,414 @@
+package com.jakewharton.wakkawallpaper;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import android.util.Log;
+
+/**
+ * Captures everything needed to replay a game exactly: its seed, settings,
+ * screen size, The Man's user input and planned AI decisions, and the time of
+ * every tick (including one which failed). A recording resumed after a
+ * recovered failure starts from the saved state of the game. State hashes
+ * are written at regular checkpoints so that {@link Replay} can detect where a
+ * playback diverges.
+ * 
+ * <p>The file is a compact binary stream of a header followed by events, each
+ * of which begins with a single tag byte. Tick times are written as variable
+ * length deltas so a tick usually costs two bytes.</p>
+ * 
+ * @author Jake Wharton
+ */
+public final class Recorder {
+	/**
+	 * Identifies a recording file ("WAKK").
+	 */
+	/*package*/static final int MAGIC = 0x57414B4B;
+	
+	/**
+	 * Version of the recording format. Version 2 appended the AI budget, ghost
+	 * pathfinding, ghost swarm, and sprite memory settings. Version 3 added AI
+	 * decisions. Version 4 added failed ticks and resumed game state.
+	 */
+	/*package*/static final int VERSION = 4;
+	
+	/**
+	 * Event: the game was ticked. Followed by the time delta (varint).
+	 */
+	/*package*/static final int EVENT_TICK = 1;
+	
+	/**
+	 * Event: user input. Followed by the direction ordinal (byte).
+	 */
+	/*package*/static final int EVENT_INPUT = 2;
+	
+	/**
+	 * Event: state checkpoint. Followed by the tick number (varint) and state hash (int).
+	 */
+	/*package*/static final int EVENT_CHECKPOINT = 3;
+	
+	/**
+	 * Event: the screen was resized. Followed by the width and height (varint).
+	 */
+	/*package*/static final int EVENT_RESIZE = 4;
+	
+	/**
+	 * Event: the settings changed. Followed by the full settings snapshot.
+	 */
+	/*package*/static final int EVENT_SETTINGS = 5;
+	
+	/**
+	 * Event: The Man's AI took a planned decision. Followed by the direction
+	 * ordinal or -1 if no plan was ready (byte). Written just before the tick
+	 * it was taken in.
+	 */
+	/*package*/static final int EVENT_DECISION = 6;
+	
+	/**
+	 * Event: the game continues from a saved state. Followed by the state
+	 * written by {@link Game#writeState(DataOutputStream)}.
+	 */
+	/*package*/static final int EVENT_STATE = 7;
+	
+	/**
+	 * Number of ticks between checkpoints.
+	 */
+	private static final int CHECKPOINT_INTERVAL = 100;
+	
+	/**
+	 * Initial number of decisions which can be held for a single tick.
+	 */
+	private static final int DECISIONS_INITIAL = 4;
+	
+	/**
+	 * File name of the recording of the current game.
+	 */
+	private static final String CURRENT_NAME = "current.wakka";
+	
+	/**
+	 * Directory (under the application files) where recordings are kept.
+	 */
+	private static final String DIRECTORY_NAME = "recordings";
+	
+	/**
+	 * Tag used for logging.
+	 */
+	private static final String TAG = "WakkaWallpaper.Recorder";
+	
+	
+	
+	/**
+	 * File being recorded to.
+	 */
+	private final File mFile;
+	
+	/**
+	 * Stream being recorded to. Null once closed or after a write failure.
+	 */
+	private DataOutputStream mOut;
+	
+	/**
+	 * Game time of the previous tick.
+	 */
+	private long mLastTime;
+	
+	/**
+	 * Number of ticks recorded.
+	 */
+	private long mTicks;
+	
+	/**
+	 * Decisions taken during the tick in progress.
+	 */
+	private byte[] mDecisions;
+	
+	/**
+	 * Number of decisions taken during the tick in progress.
+	 */
+	private int mDecisionCount;
+	
+	
+	
+	/**
+	 * Create a new recorder and write the header.
+	 * 
+	 * @param file File to record to.
+	 * @param game Freshly created game to record.
+	 * @throws IOException
+	 */
+	public Recorder(final File file, final Game game) throws IOException {
+		this.mFile = file;
+		this.mOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+		this.mLastTime = game.getTime();
+		this.mDecisions = new byte[Recorder.DECISIONS_INITIAL];
+		
+		this.mOut.writeInt(Recorder.MAGIC);
+		this.mOut.writeByte(Recorder.VERSION);
+		this.mOut.writeLong(game.getSeed());
+		Recorder.writeVarLong(this.mOut, this.mLastTime);
+		game.getSettings().writeTo(this.mOut);
+	}
+	
+	
+	
+	/**
+	 * Start recording a game to the current recording file, replacing the previous one.
+	 * 
+	 * @param game Freshly created game to record.
+	 * @return Recorder or null if the file could not be created.
+	 */
+	public static Recorder start(final Game game) {
+		final File directory = Recorder.getDirectory();
+		directory.mkdirs();
+		
+		try {
+			final Recorder recorder = new Recorder(new File(directory, Recorder.CURRENT_NAME), game);
+			game.setRecorder(recorder);
+			return recorder;
+		} catch (IOException e) {
+			Log.w(Recorder.TAG, "Unable to start recording.", e);
+			return null;
+		}
+	}
+	
+	/**
+	 * Start recording a game which has recovered from a failure, replacing the
+	 * previous recording (which should have been kept). Since the game is in
+	 * the middle of being played the recording begins with its full state.
+	 * 
+	 * @param game Recovered game to record.
+	 * @return Recorder or null if the file could not be created.
+	 */
+	public static Recorder resume(final Game game) {
+		final Recorder recorder = Recorder.start(game);
+		if (recorder == null) {
+			return null;
+		}
+		
+		recorder.recordResize(game.getScreenWidth(), game.getScreenHeight());
+		if (recorder.mOut != null) {
+			try {
+				recorder.mOut.writeByte(Recorder.EVENT_STATE);
+				game.writeState(recorder.mOut);
+			} catch (IOException e) {
+				recorder.fail(e);
+			}
+		}
+		return recorder;
+	}
+	
+	/**
+	 * Get the directory where recordings are kept.
+	 * 
+	 * @return Directory.
+	 */
+	public static File getDirectory() {
+		return new File(Wallpaper.CONTEXT.getFilesDir(), Recorder.DIRECTORY_NAME);
+	}
+	
+	
+	
+	/**
+	 * Record a tick after it has been applied to the game. A tick which failed
+	 * is still recorded, and flushed, but its state is not checkpointed.
+	 * 
+	 * @param game Game instance.
+	 * @param time Game time of the tick.
+	 * @param isCompleted Whether or not the tick completed without failing.
+	 */
+	public void recordTick(final Game game, final long time, final boolean isCompleted) {
+		if (this.mOut == null) {
+			return;
+		}
+		
+		try {
+			for (int i = 0; i < this.mDecisionCount; i++) {
+				this.mOut.writeByte(Recorder.EVENT_DECISION);
+				this.mOut.writeByte(this.mDecisions[i]);
+			}
+			this.mDecisionCount = 0;
+			
+			this.mOut.writeByte(Recorder.EVENT_TICK);
+			Recorder.writeVarLong(this.mOut, time - this.mLastTime);
+			this.mLastTime = time;
+			this.mTicks += 1;
+			
+			if (!isCompleted) {
+				this.mOut.flush();
+			} else if ((this.mTicks % Recorder.CHECKPOINT_INTERVAL) == 0) {
+				this.mOut.writeByte(Recorder.EVENT_CHECKPOINT);
+				Recorder.writeVarLong(this.mOut, this.mTicks);
+				this.mOut.writeInt(game.stateHash());
+				this.mOut.flush();
+			}
+		} catch (IOException e) {
+			this.fail(e);
+		}
+	}
+	
+	/**
+	 * Record user input before it is applied to the game.
+	 * 
+	 * @param direction Desired direction.
+	 */
+	public void recordInput(final Entity.Direction direction) {
+		if (this.mOut == null) {
+			return;
+		}
+		
+		try {
+			this.mOut.writeByte(Recorder.EVENT_INPUT);
+			this.mOut.writeByte(direction.ordinal());
+		} catch (IOException e) {
+			this.fail(e);
+		}
+	}
+	
+	/**
+	 * Record the decision The Man's AI planner had ready. Live decisions depend
+	 * on when the worker finished, so they cannot be searched again on playback.
+	 * They are held until the tick completes.
+	 * 
+	 * @param direction Planned direction or null if no plan was ready.
+	 */
+	public void recordDecision(final Entity.Direction direction) {
+		if (this.mDecisionCount == this.mDecisions.length) {
+			final byte[] decisions = new byte[this.mDecisions.length * 2];
+			System.arraycopy(this.mDecisions, 0, decisions, 0, this.mDecisionCount);
+			this.mDecisions = decisions;
+		}
+		this.mDecisions[this.mDecisionCount] = (byte)Checkpoint.ordinal(direction);
+		this.mDecisionCount += 1;
+	}
+	
+	/**
+	 * Forget the decisions of a tick which failed and was rolled back.
+	 */
+	public void discardDecisions() {
+		this.mDecisionCount = 0;
+	}
+	
+	/**
+	 * Record a resize before it is applied to the game.
+	 * 
+	 * @param screenWidth New width.
+	 * @param screenHeight New height.
+	 */
+	public void recordResize(final int screenWidth, final int screenHeight) {
+		if (this.mOut == null) {
+			return;
+		}
+		
+		try {
+			this.mOut.writeByte(Recorder.EVENT_RESIZE);
+			Recorder.writeVarLong(this.mOut, screenWidth);
+			Recorder.writeVarLong(this.mOut, screenHeight);
+		} catch (IOException e) {
+			this.fail(e);
+		}
+	}
+	
+	/**
+	 * Record a settings change before it is applied to the game.
+	 * 
+	 * @param settings New settings snapshot.
+	 */
+	public void recordSettings(final Settings settings) {
+		if (this.mOut == null) {
+			return;
+		}
+		
+		try {
+			this.mOut.writeByte(Recorder.EVENT_SETTINGS);
+			settings.writeTo(this.mOut);
+		} catch (IOException e) {
+			this.fail(e);
+		}
+	}
+	
+	/**
+	 * Finish the recording. It will be replaced when the next game starts.
+	 */
+	public void close() {
+		if (this.mOut == null) {
+			return;
+		}
+		
+		try {
+			this.mOut.close();
+		} catch (IOException e) {
+			Log.w(Recorder.TAG, "Unable to finish recording.", e);
+		}
+		this.mOut = null;
+	}
+	
+	/**
+	 * Finish the recording and keep it so that it will not be replaced when the
+	 * next game starts (e.g., after a crash we want to reproduce).
+	 * 
+	 * @return Kept file.
+	 */
+	public File keep() {
+		this.close();
+		
+		final File kept = new File(this.mFile.getParentFile(), "crash-" + System.currentTimeMillis() + ".wakka");
+		if (!this.mFile.renameTo(kept)) {
+			Log.w(Recorder.TAG, "Unable to keep recording " + this.mFile);
+			return this.mFile;
+		}
+		
+		if (Wallpaper.LOG_DEBUG) {
+			Log.d(Recorder.TAG, "Kept recording of " + this.mTicks + " ticks as " + kept);
+		}
+		return kept;
+	}
+	
+	/**
+	 * Stop recording after a write has failed. Recording must never break the game.
+	 * 
+	 * @param e Failure.
+	 */
+	private void fail(final IOException e) {
+		Log.w(Recorder.TAG, "Recording failed, stopping.", e);
+		this.close();
+	}
+	
+	
+	
+	/**
+	 * Write a non-negative long using seven bits per byte.
+	 * 
+	 * @param out Stream to write to.
+	 * @param value Value.
+	 * @throws IOException
+	 */
+	/*package*/static void writeVarLong(final DataOutputStream out, long value) throws IOException {
+		while ((value & ~0x7FL) != 0) {
+			out.writeByte((int)((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		out.writeByte((int)value);
+	}
+	
+	/**
+	 * Read a long written with {@link #writeVarLong(DataOutputStream, long)}.
+	 * 
+	 * @param in Stream to read from.
+	 * @return Value.
+	 * @throws IOException
+	 */
+	/*package*/static long readVarLong(final DataInputStream in) throws IOException {
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			final int b = in.readUnsignedByte();
+			value |= (long)(b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new IOException("Malformed variable length value.");
+	}
+}
@@ -0,0 +1,189 @@
+package com.jakewharton.wakkawallpaper;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.LinkedList;
+import com.jakewharton.wakkawallpaper.Entity.SomethingIsCausingEntitiesToNullPointerException;
+import android.util.Log;
+
+/**
+ * Headless playback of a file written by {@link Recorder}. The game is rebuilt
+ * from the recorded seed and settings and then ticked as fast as possible with
+ * the recorded input, AI decisions, and tick times, checking the state hash at
+ * every checkpoint. Nothing is drawn and no trophies are earned.
+ * 
+ * @author Jake Wharton
+ */
+public final class Replay {
+	/**
+	 * Thrown when a playback no longer matches its recording.
+	 * 
+	 * @author Jake Wharton
+	 */
+	public static class DivergedException extends Exception {
+		/**
+		 * Generated serial ID.
+		 */
+		private static final long serialVersionUID = 4262437880581356620L;
+		
+		/**
+		 * Tick at which the divergence was detected.
+		 */
+		private final long mTick;
+		
+		/**
+		 * Create a new exception.
+		 * 
+		 * @param tick Tick of the failed checkpoint.
+		 * @param expected Recorded hash.
+		 * @param actual Played back hash.
+		 */
+		public DivergedException(final long tick, final int expected, final int actual) {
+			super("Diverged at tick " + tick + ": expected hash " + expected + " but was " + actual + ".");
+			this.mTick = tick;
+		}
+		
+		/**
+		 * Get the tick at which the divergence was detected.
+		 * 
+		 * @return Tick.
+		 */
+		public long getTick() {
+			return this.mTick;
+		}
+	}
+	
+	
+	
+	/**
+	 * Tag used for logging.
+	 */
+	private static final String TAG = "WakkaWallpaper.Replay";
+	
+	
+	
+	/**
+	 * Non-instantiable.
+	 */
+	private Replay() {}
+	
+	
+	
+	/**
+	 * Play back a recording file.
+	 * 
+	 * @param file Recording.
+	 * @return Number of ticks played.
+	 * @throws IOException
+	 * @throws DivergedException
+	 * @throws SomethingIsCausingEntitiesToNullPointerException If the recorded crash reproduces.
+	 */
+	public static long play(final File file) throws IOException, DivergedException, SomethingIsCausingEntitiesToNullPointerException {
+		final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		try {
+			return Replay.play(in);
+		} finally {
+			in.close();
+		}
+	}
+	
+	/**
+	 * Play back a recording stream.
+	 * 
+	 * @param in Recording.
+	 * @return Number of ticks played.
+	 * @throws IOException
+	 * @throws DivergedException
+	 * @throws SomethingIsCausingEntitiesToNullPointerException If the recorded crash reproduces.
+	 */
+	public static long play(final DataInputStream in) throws IOException, DivergedException, SomethingIsCausingEntitiesToNullPointerException {
+		if (in.readInt() != Recorder.MAGIC) {
+			throw new IOException("Not a recording.");
+		}
+		final int version = in.readUnsignedByte();
+		if (version != Recorder.VERSION) {
+			throw new IOException("Unsupported recording version " + version + ".");
+		}
+		
+		final long seed = in.readLong();
+		long time = Recorder.readVarLong(in);
+		Settings settings = Settings.readFrom(in);
+		
+		final Game game = new Game(seed, settings);
+		final LinkedList<Entity.Direction> decisions = new LinkedList<Entity.Direction>();
+		game.setReplayedDecisions(decisions);
+		final long start = System.currentTimeMillis();
+		long ticks = 0;
+		
+		try {
+			while (true) {
+				final int event;
+				try {
+					event = in.readUnsignedByte();
+				} catch (EOFException e) {
+					break;
+				}
+				
+				switch (event) {
+					case Recorder.EVENT_TICK:
+						time += Recorder.readVarLong(in);
+						game.tick(time);
+						ticks += 1;
+						break;
+						
+					case Recorder.EVENT_INPUT:
+						game.setWantsToGo(Entity.Direction.values()[in.readUnsignedByte()]);
+						break;
+						
+					case Recorder.EVENT_CHECKPOINT:
+						final long tick = Recorder.readVarLong(in);
+						final int expected = in.readInt();
+						final int actual = game.stateHash();
+						if ((tick != ticks) || (expected != actual)) {
+							throw new Replay.DivergedException(tick, expected, actual);
+						}
+						break;
+						
+					case Recorder.EVENT_RESIZE:
+						final int width = (int)Recorder.readVarLong(in);
+						final int height = (int)Recorder.readVarLong(in);
+						game.performResize(width, height);
+						break;
+						
+					case Recorder.EVENT_DECISION:
+						decisions.addLast(Entity.toDirection(in.readByte()));
+						break;
+						
+					case Recorder.EVENT_STATE:
+						if (!game.readState(in)) {
+							throw new IOException("Recorded state does not fit the game after tick " + ticks + ".");
+						}
+						time = game.getTime();
+						break;
+						
+					case Recorder.EVENT_SETTINGS:
+						final Settings next = Settings.readFrom(in);
+						game.onSettingsChanged(next, next.diff(settings));
+						settings = next;
+						break;
+						
+					default:
+						throw new IOException("Unknown event " + event + " after tick " + ticks + ".");
+				}
+			}
+		} finally {
+			game.destroy();
+		}
+		
+		if (Wallpaper.LOG_DEBUG) {
+			final long elapsed = Math.max(1, System.currentTimeMillis() - start);
+			Log.d(Replay.TAG, "Played " + ticks + " ticks in " + elapsed + "ms (" + (ticks * Wallpaper.MILLISECONDS_IN_SECOND / elapsed) + " ticks/s)");
+		}
+		
+		return ticks;
+	}
+}
@@ -0,0 +1,243 @@
+package com.jakewharton.wakkawallpaper;
+
+import java.util.Arrays;
+import android.graphics.Point;
+import android.util.Log;
+
+/**
+ * Precomputed shortest routes over the board for the ghosts. The board is first
+ * compiled into a neighbor table which is then searched breadth-first from a
+ * target to produce, for every cell, the direction of the first step along a
+ * shortest path towards it. Doing this for a single target gives a flow field
+ * (e.g., towards a ghost's home) and doing it for every cell gives a table of
+ * next hops between all pairs of cells. Each step is a constant time lookup.
+ * 
+ * @author Jake Wharton
+ */
+public final class Routes {
+	/**
+	 * Direction of a cell which has no route (or is the target itself).
+	 */
+	private static final byte NONE = -1;
+	
+	/**
+	 * Largest board (in cells) for which the all-pairs table is built (4MB).
+	 */
+	private static final int MAX_CELLS = 2048;
+	
+	/**
+	 * Tag used for logging.
+	 */
+	private static final String TAG = "WakkaWallpaper.Routes";
+	
+	
+	
+	/**
+	 * Number of cells on the board.
+	 */
+	private int mCells;
+	
+	/**
+	 * Whether each cell can be occupied.
+	 */
+	private boolean[] mIsOpen;
+	
+	/**
+	 * Neighboring cell index in each direction or -1 if it cannot be entered.
+	 */
+	private int[] mNeighbors;
+	
+	/**
+	 * Direction ordinal of the first step from a cell to another, indexed by (from * cells) + to.
+	 */
+	private byte[] mNextHops;
+	
+	/**
+	 * Whether the next hops were built from the current compiled board.
+	 */
+	private boolean mHasNextHops;
+	
+	/**
+	 * Queue used while searching.
+	 */
+	private int[] mQueue;
+	
+	/**
+	 * Point reused while compiling.
+	 */
+	private final Point mScratch;
+	
+	
+	
+	/**
+	 * Create an empty set of routes.
+	 */
+	public Routes() {
+		this.mIsOpen = new boolean[0];
+		this.mNeighbors = new int[0];
+		this.mQueue = new int[0];
+		this.mScratch = new Point();
+	}
+	
+	
+	
+	/**
+	 * Get the direction stored for a cell in a flow field.
+	 * 
+	 * @param field Flow field from {@link #buildFlowField(int, byte[])}.
+	 * @param cell Cell index.
+	 * @return Direction or null if the cell has no route.
+	 */
+	public static Entity.Direction getFlow(final byte[] field, final int cell) {
+		if ((cell < 0) || (cell >= field.length) || (field[cell] == Routes.NONE)) {
+			return null;
+		}
+		return Entity.DIRECTIONS[field[cell]];
+	}
+	
+	
+	
+	/**
+	 * Compile the current board into a neighbor table. Invalidates the next hops
+	 * but keeps their buffer.
+	 * 
+	 * @param game Game instance.
+	 * @param isWrapping Whether the ghosts wrap around the edges.
+	 */
+	public void compile(final Game game, final boolean isWrapping) {
+		final Entity.Direction[] directions = Entity.DIRECTIONS;
+		final int wide = game.getCellsWide();
+		final int cells = wide * game.getCellsTall();
+		final Point scratch = this.mScratch;
+		
+		if (this.mCells != cells) {
+			this.mIsOpen = new boolean[cells];
+			this.mNeighbors = new int[cells * directions.length];
+			this.mQueue = new int[cells];
+			this.mCells = cells;
+		}
+		this.mHasNextHops = false;
+		
+		for (int cell = 0; cell < cells; cell++) {
+			scratch.set(cell % wide, cell / wide);
+			this.mIsOpen[cell] = game.isValidBoardPosition(scratch);
+			
+			for (int d = 0; d < directions.length; d++) {
+				int neighbor = -1;
+				if (this.mIsOpen[cell]) {
+					scratch.set(cell % wide, cell / wide);
+					Entity.step(scratch, directions[d]);
+					if (game.isValidPosition(isWrapping, scratch)) {
+						neighbor = game.hashPosition(scratch);
+					}
+				}
+				this.mNeighbors[(cell * directions.length) + d] = neighbor;
+			}
+		}
+	}
+	
+	/**
+	 * Build a flow field towards a single cell.
+	 * 
+	 * @param target Cell index to flow towards.
+	 * @param field Previous field to reuse, if any.
+	 * @return Field of direction ordinals indexed by cell.
+	 */
+	public byte[] buildFlowField(final int target, byte[] field) {
+		if ((field == null) || (field.length != this.mCells)) {
+			field = new byte[this.mCells];
+		}
+		
+		Arrays.fill(field, Routes.NONE);
+		if ((target >= 0) && (target < this.mCells) && this.mIsOpen[target]) {
+			this.search(target, field, 1, 0);
+		}
+		return field;
+	}
+	
+	/**
+	 * Build the next hops between every pair of cells from the compiled board.
+	 * The buffer is reused as long as the number of cells does not change.
+	 */
+	public void buildNextHops() {
+		final long start = System.nanoTime();
+		final int cells = this.mCells;
+		
+		if (cells > Routes.MAX_CELLS) {
+			Log.w(Routes.TAG, "Board of " + cells + " cells is too large for routing.");
+			this.releaseNextHops();
+			return;
+		}
+		
+		if ((this.mNextHops == null) || (this.mNextHops.length != (cells * cells))) {
+			this.mNextHops = new byte[cells * cells];
+		}
+		Arrays.fill(this.mNextHops, Routes.NONE);
+		for (int target = 0; target < cells; target++) {
+			if (this.mIsOpen[target]) {
+				this.search(target, this.mNextHops, cells, target);
+			}
+		}
+		this.mHasNextHops = true;
+		
+		if (Wallpaper.LOG_DEBUG) {
+			Log.d(Routes.TAG, "Built routes for " + cells + " cells in " + ((System.nanoTime() - start) / 1000) + "us");
+		}
+	}
+	
+	/**
+	 * Free the next hops (e.g., when shortest path routing is turned off).
+	 */
+	public void releaseNextHops() {
+		this.mNextHops = null;
+		this.mHasNextHops = false;
+	}
+	
+	/**
+	 * Get the direction of the first step along a shortest path between two cells.
+	 * 
+	 * @param from Cell index to start from.
+	 * @param to Cell index to reach.
+	 * @return Direction or null if there is no route (or the table is not built).
+	 */
+	public Entity.Direction getNextHop(final int from, final int to) {
+		if (!this.mHasNextHops || (from < 0) || (from >= this.mCells) || (to < 0) || (to >= this.mCells)) {
+			return null;
+		}
+		
+		final byte hop = this.mNextHops[(from * this.mCells) + to];
+		return (hop != Routes.NONE) ? Entity.DIRECTIONS[hop] : null;
+	}
+	
+	/**
+	 * Search outward from a target. A cell found from its parent steps back
+	 * towards the parent, so that is the direction stored for it.
+	 * 
+	 * @param target Cell index to search from.
+	 * @param hops Directions, which must be filled with {@link #NONE}.
+	 * @param stride Distance between cells in the directions.
+	 * @param offset Offset of the target's column in the directions.
+	 */
+	private void search(final int target, final byte[] hops, final int stride, final int offset) {
+		final Entity.Direction[] directions = Entity.DIRECTIONS;
+		final int[] neighbors = this.mNeighbors;
+		final int[] queue = this.mQueue;
+		int head = 0;
+		int tail = 0;
+		
+		queue[tail++] = target;
+		while (head < tail) {
+			final int parent = queue[head++];
+			for (int d = 0; d < directions.length; d++) {
+				final int cell = neighbors[(parent * directions.length) + d];
+				if ((cell < 0) || (cell == target) || (hops[(cell * stride) + offset] != Routes.NONE)) {
+					continue;
+				}
+				
+				hops[(cell * stride) + offset] = (byte)directions[d].getOpposite().ordinal();
+				queue[tail++] = cell;
+			}
+		}
+		Metrics.add(Metrics.NODES_EXPANDED, head);
+	}
+}
@@ -0,0 +1,1093 @@
+package com.jakewharton.wakkawallpaper;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import com.jakewharton.utilities.WidgetLocationsPreference;
+import android.content.SharedPreferences;
+import android.content.res.Resources;
+import android.graphics.Rect;
+import android.os.Handler;
+import android.util.Log;
+
+/**
+ * Immutable, typed snapshot of every preference used by the game. A snapshot is
+ * built once per batch of preference changes and only the fields which differ
+ * from the previous snapshot are delivered to listeners.
+ * 
+ * @author Jake Wharton
+ */
+public final class Settings {
+	/**
+	 * Interface for objects which react to changes in the settings.
+	 * 
+	 * @author Jake Wharton
+	 */
+	interface Listener {
+		/**
+		 * Handle the changing of one or more settings.
+		 * 
+		 * @param settings Current settings snapshot.
+		 * @param diff Fields which have changed since the last snapshot.
+		 */
+		void onSettingsChanged(final Settings settings, final Settings.Diff diff);
+	}
+
+
+
+	/**
+	 * Frames per second to render.
+	 */
+	/*package*/static final int DISPLAY_FPS = 0;
+
+	/**
+	 * Number of frames to hold a juggerdot blink state.
+	 */
+	/*package*/static final int DISPLAY_JUGGERDOT_BLINK = 1;
+
+	/**
+	 * Whether or not the HUD is displayed.
+	 */
+	/*package*/static final int DISPLAY_SHOW_HUD = 2;
+
+	/**
+	 * Size (in pixels) of the HUD.
+	 */
+	/*package*/static final int DISPLAY_HUD_SIZE = 3;
+
+	/**
+	 * Offset (in pixels) of the HUD from the bottom of the screen.
+	 */
+	/*package*/static final int DISPLAY_HUD_OFFSET = 4;
+
+	/**
+	 * Whether or not the icon walls are displayed.
+	 */
+	/*package*/static final int DISPLAY_SHOW_WALLS = 5;
+
+	/**
+	 * Number of icon rows on the launcher.
+	 */
+	/*package*/static final int DISPLAY_ICON_ROWS = 6;
+
+	/**
+	 * Number of icon columns on the launcher.
+	 */
+	/*package*/static final int DISPLAY_ICON_COLS = 7;
+
+	/**
+	 * Number of cells vertically between the rows.
+	 */
+	/*package*/static final int DISPLAY_ROW_SPACING = 8;
+
+	/**
+	 * Number of cells horizontally between the columns.
+	 */
+	/*package*/static final int DISPLAY_COL_SPACING = 9;
+
+	/**
+	 * Serialized locations of widgets on the launcher.
+	 */
+	/*package*/static final int DISPLAY_WIDGET_LOCATIONS = 10;
+
+	/**
+	 * Top padding (in pixels) of the grid.
+	 */
+	/*package*/static final int DISPLAY_PADDING_TOP = 11;
+
+	/**
+	 * Bottom padding (in pixels) of the grid.
+	 */
+	/*package*/static final int DISPLAY_PADDING_BOTTOM = 12;
+
+	/**
+	 * Left padding (in pixels) of the grid.
+	 */
+	/*package*/static final int DISPLAY_PADDING_LEFT = 13;
+
+	/**
+	 * Right padding (in pixels) of the grid.
+	 */
+	/*package*/static final int DISPLAY_PADDING_RIGHT = 14;
+
+	/**
+	 * Gameplay mode.
+	 */
+	/*package*/static final int GAME_MODE = 15;
+
+	/**
+	 * Percentage of dots at which to create more in endless mode.
+	 */
+	/*package*/static final int GAME_ENDLESS_DOT_REGEN = 16;
+
+	/**
+	 * Number of juggerdots at which to create more in endless mode.
+	 */
+	/*package*/static final int GAME_ENDLESS_JUGGERDOT_REGEN = 17;
+
+	/**
+	 * Whether or not the kill screen is enabled.
+	 */
+	/*package*/static final int GAME_KILL_SCREEN = 18;
+
+	/**
+	 * Edge wrapping mode.
+	 */
+	/*package*/static final int GAME_WRAPPING_MODE = 19;
+
+	/**
+	 * Whether or not The Man can wrap around the edges.
+	 */
+	/*package*/static final int GAME_WRAPPING_THEMAN = 20;
+
+	/**
+	 * Whether or not the ghosts can wrap around the edges.
+	 */
+	/*package*/static final int GAME_WRAPPING_GHOSTS = 21;
+
+	/**
+	 * The Man's AI mode.
+	 */
+	/*package*/static final int GAME_THEMAN_MODE = 22;
+
+	/**
+	 * Whether or not user input is taken into consideration.
+	 */
+	/*package*/static final int GAME_USER_CONTROL = 23;
+
+	/**
+	 * Ghost movement mode.
+	 */
+	/*package*/static final int GAME_GHOST_MODE = 24;
+
+	/**
+	 * Whether or not running into a ghost is deadly.
+	 */
+	/*package*/static final int GAME_DEADLY_GHOSTS = 25;
+
+	/**
+	 * Number of ghosts on the board.
+	 */
+	/*package*/static final int GAME_GHOST_COUNT = 26;
+
+	/**
+	 * Whether or not a bonus life is allowed.
+	 */
+	/*package*/static final int GAME_BONUS_LIFE = 27;
+
+	/**
+	 * Number of points at which the bonus life is given.
+	 */
+	/*package*/static final int GAME_BONUS_LIFE_THRESHOLD = 28;
+
+	/**
+	 * Whether or not fruits are enabled.
+	 */
+	/*package*/static final int GAME_FRUIT_ENABLED = 29;
+
+	/**
+	 * Dot threshold at which the first fruit is displayed.
+	 */
+	/*package*/static final int GAME_FRUIT_ONE_THRESHOLD = 30;
+
+	/**
+	 * Dot threshold at which the second fruit is displayed.
+	 */
+	/*package*/static final int GAME_FRUIT_TWO_THRESHOLD = 31;
+
+	/**
+	 * Lowest amount of time a fruit can be visible.
+	 */
+	/*package*/static final int GAME_FRUIT_VISIBLE_LOWER = 32;
+
+	/**
+	 * Highest amount of time a fruit can be visible.
+	 */
+	/*package*/static final int GAME_FRUIT_VISIBLE_UPPER = 33;
+
+	/**
+	 * Color of the background.
+	 */
+	/*package*/static final int COLOR_GAME_BACKGROUND = 34;
+
+	/**
+	 * Color of the walls.
+	 */
+	/*package*/static final int COLOR_GAME_WALLS = 35;
+
+	/**
+	 * Path to the user background image (if any).
+	 */
+	/*package*/static final int COLOR_GAME_BACKGROUND_IMAGE = 36;
+
+	/**
+	 * Opacity of the user background image.
+	 */
+	/*package*/static final int COLOR_GAME_BACKGROUND_OPACITY = 37;
+
+	/**
+	 * Color of the dots.
+	 */
+	/*package*/static final int COLOR_GAME_DOT = 38;
+
+	/**
+	 * Color of the juggerdots.
+	 */
+	/*package*/static final int COLOR_GAME_JUGGERDOT = 39;
+
+	/**
+	 * Foreground color of the HUD.
+	 */
+	/*package*/static final int COLOR_GAME_HUD_FOREGROUND = 40;
+
+	/**
+	 * Background color of the HUD.
+	 */
+	/*package*/static final int COLOR_GAME_HUD_BACKGROUND = 41;
+
+	/**
+	 * Color of the "Ready" text.
+	 */
+	/*package*/static final int COLOR_GAME_READY = 42;
+
+	/**
+	 * Color of the "Game Over" text.
+	 */
+	/*package*/static final int COLOR_GAME_GAME_OVER = 43;
+
+	/**
+	 * Color of The Man.
+	 */
+	/*package*/static final int COLOR_THEMAN = 44;
+
+	/**
+	 * Background color of the ghost eyes.
+	 */
+	/*package*/static final int COLOR_GHOST_EYE_BACKGROUND = 45;
+
+	/**
+	 * Foreground color of the ghost eyes.
+	 */
+	/*package*/static final int COLOR_GHOST_EYE_FOREGROUND = 46;
+
+	/**
+	 * Body color of scared ghosts.
+	 */
+	/*package*/static final int COLOR_GHOST_SCARED_BACKGROUND = 47;
+
+	/**
+	 * Face color of scared ghosts.
+	 */
+	/*package*/static final int COLOR_GHOST_SCARED_FOREGROUND = 48;
+
+	/**
+	 * Body color of blinking scared ghosts.
+	 */
+	/*package*/static final int COLOR_GHOST_SCARED_BLINK_BACKGROUND = 49;
+
+	/**
+	 * Face color of blinking scared ghosts.
+	 */
+	/*package*/static final int COLOR_GHOST_SCARED_BLINK_FOREGROUND = 50;
+
+	/**
+	 * Color of Blinky.
+	 */
+	/*package*/static final int COLOR_GHOST_BLINKY = 51;
+
+	/**
+	 * Color of Pinky.
+	 */
+	/*package*/static final int COLOR_GHOST_PINKY = 52;
+
+	/**
+	 * Color of Inky.
+	 */
+	/*package*/static final int COLOR_GHOST_INKY = 53;
+
+	/**
+	 * Color of Clyde.
+	 */
+	/*package*/static final int COLOR_GHOST_CLYDE = 54;
+
+	/**
+	 * Drawing style of the entities.
+	 */
+	/*package*/static final int COLOR_ENTITY_STYLE = 55;
+
+	/**
+	 * Drawing style of the dots.
+	 */
+	/*package*/static final int COLOR_DOT_STYLE = 56;
+
+	/**
+	 * Whether or not the Andy trophy is enabled.
+	 */
+	/*package*/static final int TROPHY_ANDY = 57;
+
+	/**
+	 * Whether or not The Mandroid trophy is enabled.
+	 */
+	/*package*/static final int TROPHY_THEMANDROID = 58;
+
+	/**
+	 * Whether or not the Logos trophy is enabled.
+	 */
+	/*package*/static final int TROPHY_LOGOS = 59;
+
+	/**
+	 * Whether or not the CEOs trophy is enabled.
+	 */
+	/*package*/static final int TROPHY_CEOS = 60;
+
+	/**
+	 * Whether or not the Desserts trophy is enabled.
+	 */
+	/*package*/static final int TROPHY_DESSERTS = 61;
+
+	/**
+	 * Whether or not the Apple Dots trophy is enabled.
+	 */
+	/*package*/static final int TROPHY_APPLEDOTS = 62;
+
+	/**
+	 * Whether or not the Eden trophy is enabled.
+	 */
+	/*package*/static final int TROPHY_EDEN = 63;
+
+	/**
+	 * Whether or not the Googol trophy is enabled.
+	 */
+	/*package*/static final int TROPHY_GOOGOL = 64;
+
+	/**
+	 * Whether or not the Legend trophy is enabled.
+	 */
+	/*package*/static final int TROPHY_LEGEND = 65;
+
+	/**
+	 * Whether or not the Ego trophy is enabled.
+	 */
+	/*package*/static final int TROPHY_EGO = 66;
+
+	/**
+	 * Time budget (in microseconds) of each of The Man's AI decisions.
+	 */
+	/*package*/static final int GAME_THEMAN_AI_BUDGET = 67;
+
+	/**
+	 * Whether or not ghosts follow the shortest path to their target.
+	 */
+	/*package*/static final int GAME_GHOST_PATHFINDING = 68;
+
+	/**
+	 * Number of swarm ghosts on the board in addition to the classic ghosts.
+	 */
+	/*package*/static final int GAME_GHOST_SWARM = 69;
+
+	/**
+	 * Megabytes of decoded sprites to keep (zero to size from the heap).
+	 */
+	/*package*/static final int DISPLAY_BITMAP_BUDGET = 70;
+
+	/**
+	 * Total number of fields in a snapshot. New fields are appended directly
+	 * above this so that existing indices, and with them the layout written by
+	 * {@link #writeTo(DataOutputStream)}, stay stable. Bump
+	 * {@link Recorder#VERSION} whenever the layout does change.
+	 */
+	/*package*/static final int COUNT = 71;
+
+	/**
+	 * Field is persisted as an integer.
+	 */
+	private static final int TYPE_INT = 0;
+
+	/**
+	 * Field is persisted as a boolean.
+	 */
+	private static final int TYPE_BOOLEAN = 1;
+
+	/**
+	 * Field is persisted as a string.
+	 */
+	private static final int TYPE_STRING = 2;
+
+	/**
+	 * Key resource, type, and default value resource for every field.
+	 */
+	private static final int[][] DEFINITIONS = new int[][] {
+		/* DISPLAY_FPS */ new int[] { R.string.settings_display_fps_key, Settings.TYPE_INT, R.integer.display_fps_default },
+		/* DISPLAY_JUGGERDOT_BLINK */ new int[] { R.string.settings_display_juggerdotblink_key, Settings.TYPE_INT, R.integer.display_juggerdotblink_default },
+		/* DISPLAY_SHOW_HUD */ new int[] { R.string.settings_display_showhud_key, Settings.TYPE_BOOLEAN, R.bool.display_showhud_default },
+		/* DISPLAY_HUD_SIZE */ new int[] { R.string.settings_display_hudsize_key, Settings.TYPE_INT, R.integer.display_hudsize_default },
+		/* DISPLAY_HUD_OFFSET */ new int[] { R.string.settings_display_hudoffset_key, Settings.TYPE_INT, R.integer.display_hudoffset_default },
+		/* DISPLAY_SHOW_WALLS */ new int[] { R.string.settings_display_showwalls_key, Settings.TYPE_BOOLEAN, R.bool.display_showwalls_default },
+		/* DISPLAY_ICON_ROWS */ new int[] { R.string.settings_display_iconrows_key, Settings.TYPE_INT, R.integer.display_iconrows_default },
+		/* DISPLAY_ICON_COLS */ new int[] { R.string.settings_display_iconcols_key, Settings.TYPE_INT, R.integer.display_iconcols_default },
+		/* DISPLAY_ROW_SPACING */ new int[] { R.string.settings_display_rowspacing_key, Settings.TYPE_INT, R.integer.display_rowspacing_default },
+		/* DISPLAY_COL_SPACING */ new int[] { R.string.settings_display_colspacing_key, Settings.TYPE_INT, R.integer.display_colspacing_default },
+		/* DISPLAY_WIDGET_LOCATIONS */ new int[] { R.string.settings_display_widgetlocations_key, Settings.TYPE_STRING, R.string.display_widgetlocations_default },
+		/* DISPLAY_PADDING_TOP */ new int[] { R.string.settings_display_padding_top_key, Settings.TYPE_INT, R.integer.display_padding_top_default },
+		/* DISPLAY_PADDING_BOTTOM */ new int[] { R.string.settings_display_padding_bottom_key, Settings.TYPE_INT, R.integer.display_padding_bottom_default },
+		/* DISPLAY_PADDING_LEFT */ new int[] { R.string.settings_display_padding_left_key, Settings.TYPE_INT, R.integer.display_padding_left_default },
+		/* DISPLAY_PADDING_RIGHT */ new int[] { R.string.settings_display_padding_right_key, Settings.TYPE_INT, R.integer.display_padding_right_default },
+		/* GAME_MODE */ new int[] { R.string.settings_game_mode_key, Settings.TYPE_INT, R.integer.game_mode_default },
+		/* GAME_ENDLESS_DOT_REGEN */ new int[] { R.string.settings_game_endlessdotregen_key, Settings.TYPE_INT, R.integer.game_endlessdotregen_default },
+		/* GAME_ENDLESS_JUGGERDOT_REGEN */ new int[] { R.string.settings_game_endlessjuggerdotregen_key, Settings.TYPE_INT, R.integer.game_endlessjuggerdotregen_default },
+		/* GAME_KILL_SCREEN */ new int[] { R.string.settings_game_killscreen_key, Settings.TYPE_BOOLEAN, R.bool.game_killscreen_default },
+		/* GAME_WRAPPING_MODE */ new int[] { R.string.settings_game_wrappingmode_key, Settings.TYPE_INT, R.integer.game_wrappingmode_default },
+		/* GAME_WRAPPING_THEMAN */ new int[] { R.string.settings_game_wrappingtheman_key, Settings.TYPE_BOOLEAN, R.bool.game_wrappingtheman_default },
+		/* GAME_WRAPPING_GHOSTS */ new int[] { R.string.settings_game_wrappingghosts_key, Settings.TYPE_BOOLEAN, R.bool.game_wrappingghosts_default },
+		/* GAME_THEMAN_MODE */ new int[] { R.string.settings_game_themanmode_key, Settings.TYPE_INT, R.integer.game_themanmode_default },
+		/* GAME_USER_CONTROL */ new int[] { R.string.settings_game_usercontrol_key, Settings.TYPE_BOOLEAN, R.bool.game_usercontrol_default },
+		/* GAME_GHOST_MODE */ new int[] { R.string.settings_game_ghostmode_key, Settings.TYPE_INT, R.integer.game_ghostmode_default },
+		/* GAME_DEADLY_GHOSTS */ new int[] { R.string.settings_game_deadlyghosts_key, Settings.TYPE_BOOLEAN, R.bool.game_deadlyghosts_default },
+		/* GAME_GHOST_COUNT */ new int[] { R.string.settings_game_ghostcount_key, Settings.TYPE_INT, R.integer.game_ghostcount_default },
+		/* GAME_BONUS_LIFE */ new int[] { R.string.settings_game_bonuslife_key, Settings.TYPE_BOOLEAN, R.bool.game_bonuslife_default },
+		/* GAME_BONUS_LIFE_THRESHOLD */ new int[] { R.string.settings_game_bonuslifethreshold_key, Settings.TYPE_INT, R.integer.game_bonuslifethreshold_default },
+		/* GAME_FRUIT_ENABLED */ new int[] { R.string.settings_game_fruitenabled_key, Settings.TYPE_BOOLEAN, R.bool.game_fruitenabled_default },
+		/* GAME_FRUIT_ONE_THRESHOLD */ new int[] { R.string.settings_game_fruitonethreshold_key, Settings.TYPE_INT, R.integer.game_fruitonethreshold_default },
+		/* GAME_FRUIT_TWO_THRESHOLD */ new int[] { R.string.settings_game_fruittwothreshold_key, Settings.TYPE_INT, R.integer.game_fruittwothreshold_default },
+		/* GAME_FRUIT_VISIBLE_LOWER */ new int[] { R.string.settings_game_fruitvisiblelower_key, Settings.TYPE_INT, R.integer.game_fruitvisiblelower_default },
+		/* GAME_FRUIT_VISIBLE_UPPER */ new int[] { R.string.settings_game_fruitvisibleupper_key, Settings.TYPE_INT, R.integer.game_fruitvisibleupper_default },
+		/* COLOR_GAME_BACKGROUND */ new int[] { R.string.settings_color_game_background_key, Settings.TYPE_INT, R.integer.color_game_background_default },
+		/* COLOR_GAME_WALLS */ new int[] { R.string.settings_color_game_walls_key, Settings.TYPE_INT, R.integer.color_game_walls_default },
+		/* COLOR_GAME_BACKGROUND_IMAGE */ new int[] { R.string.settings_color_game_bgimage_key, Settings.TYPE_STRING, 0 },
+		/* COLOR_GAME_BACKGROUND_OPACITY */ new int[] { R.string.settings_color_game_bgopacity_key, Settings.TYPE_INT, R.integer.color_game_bgopacity_default },
+		/* COLOR_GAME_DOT */ new int[] { R.string.settings_color_game_dot_key, Settings.TYPE_INT, R.integer.color_game_dot_default },
+		/* COLOR_GAME_JUGGERDOT */ new int[] { R.string.settings_color_game_juggerdot_key, Settings.TYPE_INT, R.integer.color_game_juggerdot_default },
+		/* COLOR_GAME_HUD_FOREGROUND */ new int[] { R.string.settings_color_game_hudfg_key, Settings.TYPE_INT, R.integer.color_game_hudfg_default },
+		/* COLOR_GAME_HUD_BACKGROUND */ new int[] { R.string.settings_color_game_hudbg_key, Settings.TYPE_INT, R.integer.color_game_hudbg_default },
+		/* COLOR_GAME_READY */ new int[] { R.string.settings_color_game_ready_key, Settings.TYPE_INT, R.integer.color_game_ready_default },
+		/* COLOR_GAME_GAME_OVER */ new int[] { R.string.settings_color_game_gameover_key, Settings.TYPE_INT, R.integer.color_game_gameover_default },
+		/* COLOR_THEMAN */ new int[] { R.string.settings_color_theman_key, Settings.TYPE_INT, R.integer.color_theman_default },
+		/* COLOR_GHOST_EYE_BACKGROUND */ new int[] { R.string.settings_color_ghost_eyebg_key, Settings.TYPE_INT, R.integer.color_ghost_eyebg_default },
+		/* COLOR_GHOST_EYE_FOREGROUND */ new int[] { R.string.settings_color_ghost_eyefg_key, Settings.TYPE_INT, R.integer.color_ghost_eyefg_default },
+		/* COLOR_GHOST_SCARED_BACKGROUND */ new int[] { R.string.settings_color_ghost_scaredbg_key, Settings.TYPE_INT, R.integer.color_ghost_scaredbg_default },
+		/* COLOR_GHOST_SCARED_FOREGROUND */ new int[] { R.string.settings_color_ghost_scaredfg_key, Settings.TYPE_INT, R.integer.color_ghost_scaredfg_default },
+		/* COLOR_GHOST_SCARED_BLINK_BACKGROUND */ new int[] { R.string.settings_color_ghost_scaredblinkbg_key, Settings.TYPE_INT, R.integer.color_ghost_scaredblinkbg_default },
+		/* COLOR_GHOST_SCARED_BLINK_FOREGROUND */ new int[] { R.string.settings_color_ghost_scaredblinkfg_key, Settings.TYPE_INT, R.integer.color_ghost_scaredblinkfg_default },
+		/* COLOR_GHOST_BLINKY */ new int[] { R.string.settings_color_ghost_blinky_key, Settings.TYPE_INT, R.integer.color_ghost_blinky_default },
+		/* COLOR_GHOST_PINKY */ new int[] { R.string.settings_color_ghost_pinky_key, Settings.TYPE_INT, R.integer.color_ghost_pinky_default },
+		/* COLOR_GHOST_INKY */ new int[] { R.string.settings_color_ghost_inky_key, Settings.TYPE_INT, R.integer.color_ghost_inky_default },
+		/* COLOR_GHOST_CLYDE */ new int[] { R.string.settings_color_ghost_clyde_key, Settings.TYPE_INT, R.integer.color_ghost_clyde_default },
+		/* COLOR_ENTITY_STYLE */ new int[] { R.string.settings_color_entitystyle_key, Settings.TYPE_INT, R.integer.color_entitystyle_default },
+		/* COLOR_DOT_STYLE */ new int[] { R.string.settings_color_dotstyle_key, Settings.TYPE_INT, R.integer.color_dotstyle_default },
+		/* TROPHY_ANDY */ new int[] { R.string.trophy_andy_key, Settings.TYPE_BOOLEAN, R.bool.trophy_andy_default },
+		/* TROPHY_THEMANDROID */ new int[] { R.string.trophy_themandroid_key, Settings.TYPE_BOOLEAN, R.bool.trophy_themandroid_default },
+		/* TROPHY_LOGOS */ new int[] { R.string.trophy_logos_key, Settings.TYPE_BOOLEAN, R.bool.trophy_logos_default },
+		/* TROPHY_CEOS */ new int[] { R.string.trophy_ceos_key, Settings.TYPE_BOOLEAN, R.bool.trophy_ceos_default },
+		/* TROPHY_DESSERTS */ new int[] { R.string.trophy_desserts_key, Settings.TYPE_BOOLEAN, R.bool.trophy_desserts_default },
+		/* TROPHY_APPLEDOTS */ new int[] { R.string.trophy_appledots_key, Settings.TYPE_BOOLEAN, R.bool.trophy_appledots_default },
+		/* TROPHY_EDEN */ new int[] { R.string.trophy_eden_key, Settings.TYPE_BOOLEAN, R.bool.trophy_eden_default },
+		/* TROPHY_GOOGOL */ new int[] { R.string.trophy_googol_key, Settings.TYPE_BOOLEAN, R.bool.trophy_googol_default },
+		/* TROPHY_LEGEND */ new int[] { R.string.trophy_legend_key, Settings.TYPE_BOOLEAN, R.bool.trophy_legend_default },
+		/* TROPHY_EGO */ new int[] { R.string.trophy_ego_key, Settings.TYPE_BOOLEAN, R.bool.trophy_ego_default },
+		/* GAME_THEMAN_AI_BUDGET */ new int[] { R.string.settings_game_themanaibudget_key, Settings.TYPE_INT, R.integer.game_themanaibudget_default },
+		/* GAME_GHOST_PATHFINDING */ new int[] { R.string.settings_game_ghostpathfinding_key, Settings.TYPE_BOOLEAN, R.bool.game_ghostpathfinding_default },
+		/* GAME_GHOST_SWARM */ new int[] { R.string.settings_game_ghostswarm_key, Settings.TYPE_INT, R.integer.game_ghostswarm_default },
+		/* DISPLAY_BITMAP_BUDGET */ new int[] { R.string.settings_display_bitmapbudget_key, Settings.TYPE_INT, R.integer.display_bitmapbudget_default }
+	};
+
+	/**
+	 * Tag used for logging.
+	 */
+	private static final String TAG = "WakkaWallpaper.Settings";
+
+	/**
+	 * Preference keys for every field, resolved once.
+	 */
+	private static String[] KEYS;
+
+	/**
+	 * Lookup of preference keys to their field.
+	 */
+	private static HashMap<String, Integer> FIELDS;
+
+	/**
+	 * Default values for integer and boolean fields, resolved once.
+	 */
+	private static int[] DEFAULT_INTS;
+
+	/**
+	 * Default values for string fields, resolved once.
+	 */
+	private static String[] DEFAULT_STRINGS;
+
+
+
+	/**
+	 * Values of integer and boolean fields.
+	 */
+	private final int[] mInts;
+
+	/**
+	 * Values of string fields.
+	 */
+	private final String[] mStrings;
+
+	/**
+	 * Gameplay mode.
+	 */
+	private final Game.Mode mGameMode;
+
+	/**
+	 * Edge wrapping mode.
+	 */
+	private final Game.Wrapping mWrapping;
+
+	/**
+	 * The Man's AI mode.
+	 */
+	private final TheMan.Mode mTheManMode;
+
+	/**
+	 * Ghost movement mode.
+	 */
+	private final Ghost.Mode mGhostMode;
+
+	/**
+	 * Drawing style of the entities.
+	 */
+	private final Entity.Style mEntityStyle;
+
+	/**
+	 * Drawing style of the dots.
+	 */
+	private final Entity.Style mDotStyle;
+
+	/**
+	 * Locations of widgets on the launcher.
+	 */
+	private final List<Rect> mWidgetLocations;
+
+
+
+	/**
+	 * Create a new snapshot from raw field values.
+	 * 
+	 * @param ints Integer and boolean values.
+	 * @param strings String values.
+	 */
+	private Settings(final int[] ints, final String[] strings) {
+		this.mInts = ints;
+		this.mStrings = strings;
+
+		this.mGameMode = Game.Mode.parseInt(ints[Settings.GAME_MODE]);
+		this.mWrapping = Game.Wrapping.parseInt(ints[Settings.GAME_WRAPPING_MODE]);
+		this.mTheManMode = TheMan.Mode.parseInt(ints[Settings.GAME_THEMAN_MODE]);
+		this.mGhostMode = Ghost.Mode.parseInt(ints[Settings.GAME_GHOST_MODE]);
+		this.mEntityStyle = Entity.Style.parseInt(ints[Settings.COLOR_ENTITY_STYLE]);
+		this.mDotStyle = Entity.Style.parseInt(ints[Settings.COLOR_DOT_STYLE]);
+		this.mWidgetLocations = WidgetLocationsPreference.convertStringToWidgetList(strings[Settings.DISPLAY_WIDGET_LOCATIONS]);
+	}
+
+
+
+	/**
+	 * Resolve the preference keys and default values of every field.
+	 * 
+	 * @param resources Resources to resolve from.
+	 */
+	/*package*/static synchronized void initialize(final Resources resources) {
+		if (Settings.KEYS != null) {
+			return;
+		}
+
+		final String[] keys = new String[Settings.COUNT];
+		final HashMap<String, Integer> fields = new HashMap<String, Integer>();
+		final int[] defaultInts = new int[Settings.COUNT];
+		final String[] defaultStrings = new String[Settings.COUNT];
+
+		for (int field = 0; field < Settings.COUNT; field++) {
+			final int[] definition = Settings.DEFINITIONS[field];
+			keys[field] = resources.getString(definition[0]);
+			fields.put(keys[field], field);
+
+			switch (definition[1]) {
+				case Settings.TYPE_INT:
+					defaultInts[field] = resources.getInteger(definition[2]);
+					break;
+
+				case Settings.TYPE_BOOLEAN:
+					defaultInts[field] = resources.getBoolean(definition[2]) ? 1 : 0;
+					break;
+
+				case Settings.TYPE_STRING:
+					defaultStrings[field] = (definition[2] != 0) ? resources.getString(definition[2]) : null;
+					break;
+			}
+		}
+
+		Settings.FIELDS = fields;
+		Settings.DEFAULT_INTS = defaultInts;
+		Settings.DEFAULT_STRINGS = defaultStrings;
+		Settings.KEYS = keys;
+	}
+
+	/**
+	 * Build a snapshot of the current preferences.
+	 * 
+	 * @param preferences Preferences to read.
+	 * @return New snapshot.
+	 */
+	public static Settings load(final SharedPreferences preferences) {
+		Settings.initialize(Wallpaper.CONTEXT.getResources());
+
+		final int[] ints = new int[Settings.COUNT];
+		final String[] strings = new String[Settings.COUNT];
+
+		for (int field = 0; field < Settings.COUNT; field++) {
+			final String key = Settings.KEYS[field];
+			switch (Settings.DEFINITIONS[field][1]) {
+				case Settings.TYPE_INT:
+					ints[field] = preferences.getInt(key, Settings.DEFAULT_INTS[field]);
+					break;
+
+				case Settings.TYPE_BOOLEAN:
+					ints[field] = preferences.getBoolean(key, Settings.DEFAULT_INTS[field] != 0) ? 1 : 0;
+					break;
+
+				case Settings.TYPE_STRING:
+					strings[field] = preferences.getString(key, Settings.DEFAULT_STRINGS[field]);
+					break;
+			}
+		}
+
+		return new Settings(ints, strings);
+	}
+
+	/**
+	 * Test whether a preference key corresponds to a settings field.
+	 * 
+	 * @param key Preference key.
+	 * @return Boolean.
+	 */
+	public static boolean isKey(final String key) {
+		return Settings.FIELDS.containsKey(key);
+	}
+
+
+
+	/**
+	 * Get the value of an integer field.
+	 * 
+	 * @param field Field.
+	 * @return Value.
+	 */
+	public int getInt(final int field) {
+		return this.mInts[field];
+	}
+
+	/**
+	 * Get the value of a boolean field.
+	 * 
+	 * @param field Field.
+	 * @return Value.
+	 */
+	public boolean getBoolean(final int field) {
+		return (this.mInts[field] != 0);
+	}
+
+	/**
+	 * Get the value of a string field.
+	 * 
+	 * @param field Field.
+	 * @return Value.
+	 */
+	public String getString(final int field) {
+		return this.mStrings[field];
+	}
+
+	/**
+	 * Get the gameplay mode.
+	 * 
+	 * @return Game.Mode
+	 */
+	public Game.Mode getGameMode() {
+		return this.mGameMode;
+	}
+
+	/**
+	 * Get the edge wrapping mode.
+	 * 
+	 * @return Game.Wrapping
+	 */
+	public Game.Wrapping getWrapping() {
+		return this.mWrapping;
+	}
+
+	/**
+	 * Get The Man's AI mode.
+	 * 
+	 * @return TheMan.Mode
+	 */
+	public TheMan.Mode getTheManMode() {
+		return this.mTheManMode;
+	}
+
+	/**
+	 * Get the ghost movement mode.
+	 * 
+	 * @return Ghost.Mode
+	 */
+	public Ghost.Mode getGhostMode() {
+		return this.mGhostMode;
+	}
+
+	/**
+	 * Get the drawing style of the entities.
+	 * 
+	 * @return Entity.Style
+	 */
+	public Entity.Style getEntityStyle() {
+		return this.mEntityStyle;
+	}
+
+	/**
+	 * Get the drawing style of the dots.
+	 * 
+	 * @return Entity.Style
+	 */
+	public Entity.Style getDotStyle() {
+		return this.mDotStyle;
+	}
+
+	/**
+	 * Get the locations of widgets on the launcher.
+	 * 
+	 * @return List of widget rectangles.
+	 */
+	public List<Rect> getWidgetLocations() {
+		return this.mWidgetLocations;
+	}
+
+	/**
+	 * Compare this snapshot against a previous one.
+	 * 
+	 * @param previous Previous snapshot or null.
+	 * @return Fields which differ.
+	 */
+	public Settings.Diff diff(final Settings previous) {
+		if (previous == null) {
+			return Settings.Diff.ALL;
+		}
+
+		final boolean[] changed = new boolean[Settings.COUNT];
+		for (int field = 0; field < Settings.COUNT; field++) {
+			if (Settings.DEFINITIONS[field][1] == Settings.TYPE_STRING) {
+				final String mine = this.mStrings[field];
+				final String theirs = previous.mStrings[field];
+				changed[field] = (mine == null) ? (theirs != null) : !mine.equals(theirs);
+			} else {
+				changed[field] = (this.mInts[field] != previous.mInts[field]);
+			}
+		}
+
+		return new Settings.Diff(changed);
+	}
+
+	/**
+	 * Write the raw values of this snapshot to a stream.
+	 * 
+	 * @param out Stream to write to.
+	 * @throws IOException
+	 */
+	public void writeTo(final DataOutputStream out) throws IOException {
+		out.writeShort(Settings.COUNT);
+		for (int field = 0; field < Settings.COUNT; field++) {
+			final String value = this.mStrings[field];
+			out.writeInt(this.mInts[field]);
+			out.writeBoolean(value != null);
+			if (value != null) {
+				out.writeUTF(value);
+			}
+		}
+	}
+
+	/**
+	 * Read a snapshot previously written with {@link #writeTo(DataOutputStream)}.
+	 * 
+	 * @param in Stream to read from.
+	 * @return New snapshot.
+	 * @throws IOException
+	 */
+	public static Settings readFrom(final DataInputStream in) throws IOException {
+		final int count = in.readShort();
+		if (count != Settings.COUNT) {
+			throw new IOException("Expected " + Settings.COUNT + " settings but found " + count + ".");
+		}
+
+		final int[] ints = new int[Settings.COUNT];
+		final String[] strings = new String[Settings.COUNT];
+		for (int field = 0; field < Settings.COUNT; field++) {
+			ints[field] = in.readInt();
+			if (in.readBoolean()) {
+				strings[field] = in.readUTF();
+			}
+		}
+
+		return new Settings(ints, strings);
+	}
+
+
+
+	/**
+	 * Set of fields which have changed between two snapshots.
+	 * 
+	 * @author Jake Wharton
+	 */
+	static final class Diff {
+		/**
+		 * Diff in which every field has changed. Used for initial loads.
+		 */
+		/*package*/static final Settings.Diff ALL;
+		static {
+			final boolean[] changed = new boolean[Settings.COUNT];
+			for (int field = 0; field < Settings.COUNT; field++) {
+				changed[field] = true;
+			}
+			ALL = new Settings.Diff(changed);
+		}
+
+
+
+		/**
+		 * Whether or not each field has changed.
+		 */
+		private final boolean[] mChanged;
+
+		/**
+		 * Number of changed fields.
+		 */
+		private final int mCount;
+
+
+
+		/**
+		 * Create a new diff.
+		 * 
+		 * @param changed Whether or not each field has changed.
+		 */
+		private Diff(final boolean[] changed) {
+			this.mChanged = changed;
+
+			int count = 0;
+			for (final boolean field : changed) {
+				if (field) {
+					count += 1;
+				}
+			}
+			this.mCount = count;
+		}
+
+
+
+		/**
+		 * Test whether a field has changed.
+		 * 
+		 * @param field Field.
+		 * @return Boolean.
+		 */
+		public boolean contains(final int field) {
+			return this.mChanged[field];
+		}
+
+		/**
+		 * Test whether no field has changed.
+		 * 
+		 * @return Boolean.
+		 */
+		public boolean isEmpty() {
+			return (this.mCount == 0);
+		}
+
+		/**
+		 * Get the number of fields which have changed.
+		 * 
+		 * @return Number of fields.
+		 */
+		public int size() {
+			return this.mCount;
+		}
+	}
+
+
+
+	/**
+	 * Owns the current settings snapshot and delivers changes to registered listeners.
+	 * This is the only object which listens to the SharedPreferences directly.
+	 * 
+	 * @author Jake Wharton
+	 */
+	static final class Manager implements SharedPreferences.OnSharedPreferenceChangeListener {
+		/**
+		 * Time (in milliseconds) to wait for further changes before rebuilding.
+		 */
+		private static final long BATCH_DELAY = 100;
+
+
+
+		/**
+		 * Preferences backing the settings.
+		 */
+		private final SharedPreferences mPreferences;
+
+		/**
+		 * Handler used to defer rebuilds.
+		 */
+		private final Handler mHandler;
+
+		/**
+		 * Number of outstanding holds on delivering changes.
+		 */
+		private int mHolds;
+
+		/**
+		 * Whether or not preferences have changed since the last rebuild.
+		 */
+		private boolean mIsPending;
+
+		/**
+		 * A runnable which rebuilds the snapshot once a batch of changes has settled.
+		 */
+		private final Runnable mRebuild = new Runnable() {
+			public void run() {
+				Manager.this.rebuild();
+			}
+		};
+
+		/**
+		 * Objects listening for changes.
+		 */
+		private final List<Settings.Listener> mListeners;
+
+		/**
+		 * The current settings snapshot.
+		 */
+		private Settings mSettings;
+
+
+
+		/**
+		 * Create a new manager and load the initial snapshot.
+		 * 
+		 * @param preferences Preferences backing the settings.
+		 */
+		public Manager(final SharedPreferences preferences) {
+			this.mPreferences = preferences;
+			this.mListeners = new LinkedList<Settings.Listener>();
+			this.mHandler = new Handler();
+			this.mSettings = Settings.load(preferences);
+
+			preferences.registerOnSharedPreferenceChangeListener(this);
+		}
+
+
+
+		/**
+		 * Get the current settings snapshot.
+		 * 
+		 * @return Settings.
+		 */
+		public Settings getSettings() {
+			return this.mSettings;
+		}
+
+		/**
+		 * Register a listener and immediately deliver the full current snapshot to it.
+		 * 
+		 * @param listener Listener.
+		 */
+		public void register(final Settings.Listener listener) {
+			this.mListeners.add(listener);
+			listener.onSettingsChanged(this.mSettings, Settings.Diff.ALL);
+		}
+
+		/**
+		 * Stop delivering changes to a listener.
+		 * 
+		 * @param listener Listener.
+		 */
+		public void unregister(final Settings.Listener listener) {
+			this.mListeners.remove(listener);
+		}
+
+		/**
+		 * Hold the delivery of changes until a matching call to {@link #release()}.
+		 * Used while the user is editing settings so the game rebuilds only once.
+		 */
+		public void hold() {
+			this.mHolds += 1;
+		}
+
+		/**
+		 * Release a hold on the delivery of changes, delivering any which are pending.
+		 */
+		public void release() {
+			if (this.mHolds > 0) {
+				this.mHolds -= 1;
+			}
+			if ((this.mHolds == 0) && this.mIsPending) {
+				this.schedule();
+			}
+		}
+
+		/**
+		 * Handle the changing of a preference.
+		 */
+		public void onSharedPreferenceChanged(final SharedPreferences preferences, final String key) {
+			if ((key != null) && !Settings.isKey(key)) {
+				//Not a setting (e.g., earned trophies or version code)
+				return;
+			}
+
+			this.mIsPending = true;
+			if (this.mHolds == 0) {
+				this.schedule();
+			}
+		}
+
+		/**
+		 * Defer a rebuild so that every key written in the same commit (or in quick
+		 * succession) is coalesced into a single snapshot.
+		 */
+		private void schedule() {
+			this.mHandler.removeCallbacks(this.mRebuild);
+			this.mHandler.postDelayed(this.mRebuild, Manager.BATCH_DELAY);
+		}
+
+		/**
+		 * Build a new snapshot and deliver its differences to every listener.
+		 */
+		private void rebuild() {
+			if (this.mHolds > 0) {
+				//Delivered upon release
+				return;
+			}
+			this.mIsPending = false;
+
+			final Settings settings = Settings.load(this.mPreferences);
+			Metrics.increment(Metrics.SETTINGS_REBUILDS);
+			final Settings.Diff diff = settings.diff(this.mSettings);
+			if (diff.isEmpty()) {
+				return;
+			}
+
+			this.mSettings = settings;
+
+			if (Wallpaper.LOG_DEBUG) {
+				Log.d(Settings.TAG, "Delivering " + diff.size() + " changed setting(s) to " + this.mListeners.size() + " listener(s).");
+			}
+
+			//Copy since listeners may register or unregister others while handling the change
+			for (final Settings.Listener listener : this.mListeners.toArray(new Settings.Listener[this.mListeners.size()])) {
+				listener.onSettingsChanged(settings, diff);
+			}
+		}
+	}
+}
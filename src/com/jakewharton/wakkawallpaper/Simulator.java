@@ -0,0 +1,564 @@
+package com.jakewharton.wakkawallpaper;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.json.JSONException;
+import org.json.JSONObject;
+import com.jakewharton.wakkawallpaper.Entity.SomethingIsCausingEntitiesToNullPointerException;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.util.Log;
+
+/**
+ * Batch simulator which plays many independent, seeded, headless games across
+ * every core on a synthetic clock so that changes to the AI can be measured
+ * rather than guessed at. Games run until they are over or a tick limit is hit.
+ * 
+ * @author Jake Wharton
+ */
+public final class Simulator {
+	/**
+	 * Outcome of a single simulated game.
+	 * 
+	 * @author Jake Wharton
+	 */
+	public static final class Result {
+		/**
+		 * Seed of the game.
+		 */
+		public final long seed;
+		
+		/**
+		 * Final score.
+		 */
+		public final int score;
+		
+		/**
+		 * Level reached.
+		 */
+		public final int level;
+		
+		/**
+		 * Number of lives lost.
+		 */
+		public final int deaths;
+		
+		/**
+		 * Number of dots and juggerdots eaten.
+		 */
+		public final int dots;
+		
+		/**
+		 * Number of ticks played.
+		 */
+		public final long ticks;
+		
+		/**
+		 * Milliseconds elapsed on the game clock.
+		 */
+		public final long gameTime;
+		
+		/**
+		 * Nanoseconds of real time spent simulating.
+		 */
+		public final long wallTime;
+		
+		/**
+		 * Whether the game reached its game over state (rather than the tick limit).
+		 */
+		public final boolean isGameOver;
+		
+		/**
+		 * Whether the game failed with an entity error.
+		 */
+		public final boolean isCrashed;
+		
+		
+		
+		/**
+		 * Create a new result.
+		 */
+		private Result(final long seed, final int score, final int level, final int deaths, final int dots, final long ticks, final long gameTime, final long wallTime, final boolean isGameOver, final boolean isCrashed) {
+			this.seed = seed;
+			this.score = score;
+			this.level = level;
+			this.deaths = deaths;
+			this.dots = dots;
+			this.ticks = ticks;
+			this.gameTime = gameTime;
+			this.wallTime = wallTime;
+			this.isGameOver = isGameOver;
+			this.isCrashed = isCrashed;
+		}
+		
+		
+		
+		/**
+		 * Dots eaten per second of game time.
+		 * 
+		 * @return Rate.
+		 */
+		public double getDotsPerSecond() {
+			return (this.gameTime > 0) ? (this.dots * 1000.0 / this.gameTime) : 0;
+		}
+		
+		/**
+		 * Ticks simulated per second of real time.
+		 * 
+		 * @return Rate.
+		 */
+		public double getTicksPerSecond() {
+			return (this.wallTime > 0) ? (this.ticks * 1000000000.0 / this.wallTime) : 0;
+		}
+	}
+	
+	/**
+	 * Summary statistics of a set of samples.
+	 * 
+	 * @author Jake Wharton
+	 */
+	public static final class Distribution {
+		/**
+		 * Smallest sample.
+		 */
+		public final double min;
+		
+		/**
+		 * Largest sample.
+		 */
+		public final double max;
+		
+		/**
+		 * Arithmetic mean.
+		 */
+		public final double mean;
+		
+		/**
+		 * Standard deviation.
+		 */
+		public final double stddev;
+		
+		/**
+		 * Median.
+		 */
+		public final double p50;
+		
+		/**
+		 * 90th percentile.
+		 */
+		public final double p90;
+		
+		/**
+		 * 99th percentile.
+		 */
+		public final double p99;
+		
+		
+		
+		/**
+		 * Summarize samples.
+		 * 
+		 * @param samples Samples. Sorted in place.
+		 */
+		public Distribution(final double[] samples) {
+			Arrays.sort(samples);
+			
+			double sum = 0;
+			for (final double sample : samples) {
+				sum += sample;
+			}
+			final int count = samples.length;
+			this.mean = (count > 0) ? (sum / count) : 0;
+			
+			double squares = 0;
+			for (final double sample : samples) {
+				squares += (sample - this.mean) * (sample - this.mean);
+			}
+			this.stddev = (count > 1) ? Math.sqrt(squares / (count - 1)) : 0;
+			
+			this.min = (count > 0) ? samples[0] : 0;
+			this.max = (count > 0) ? samples[count - 1] : 0;
+			this.p50 = Distribution.percentile(samples, 50);
+			this.p90 = Distribution.percentile(samples, 90);
+			this.p99 = Distribution.percentile(samples, 99);
+		}
+		
+		
+		
+		/**
+		 * Nearest-rank percentile of sorted samples.
+		 * 
+		 * @param sorted Sorted samples.
+		 * @param percent Percentile.
+		 * @return Value.
+		 */
+		private static double percentile(final double[] sorted, final int percent) {
+			if (sorted.length == 0) {
+				return 0;
+			}
+			final int rank = (int)Math.ceil(percent / 100.0 * sorted.length);
+			return sorted[Math.max(0, Math.min(sorted.length, rank) - 1)];
+		}
+		
+		/**
+		 * Convert to JSON.
+		 * 
+		 * @return JSONObject.
+		 * @throws JSONException
+		 */
+		public JSONObject toJson() throws JSONException {
+			final JSONObject json = new JSONObject();
+			json.put("min", this.min);
+			json.put("max", this.max);
+			json.put("mean", this.mean);
+			json.put("stddev", this.stddev);
+			json.put("p50", this.p50);
+			json.put("p90", this.p90);
+			json.put("p99", this.p99);
+			return json;
+		}
+	}
+	
+	/**
+	 * Results of a batch of simulated games.
+	 * 
+	 * @author Jake Wharton
+	 */
+	public static final class Report {
+		/**
+		 * Result of every game, in seed order.
+		 */
+		public final List<Simulator.Result> results;
+		
+		/**
+		 * Nanoseconds of real time spent on the whole batch.
+		 */
+		public final long wallTime;
+		
+		
+		
+		/**
+		 * Create a new report.
+		 * 
+		 * @param results Results.
+		 * @param wallTime Batch duration.
+		 */
+		private Report(final List<Simulator.Result> results, final long wallTime) {
+			this.results = results;
+			this.wallTime = wallTime;
+		}
+		
+		
+		
+		/**
+		 * Write one CSV row per game.
+		 * 
+		 * @param file Destination.
+		 * @throws IOException
+		 */
+		public void writeCsv(final File file) throws IOException {
+			final Writer out = new FileWriter(file);
+			try {
+				out.write("seed,score,level,deaths,dots,ticks,game_ms,wall_ns,dots_per_second,ticks_per_second,game_over,crashed\n");
+				for (final Simulator.Result result : this.results) {
+					out.write(result.seed + "," + result.score + "," + result.level + "," + result.deaths + "," + result.dots + "," + result.ticks + "," + result.gameTime + "," + result.wallTime + "," + result.getDotsPerSecond() + "," + result.getTicksPerSecond() + "," + result.isGameOver + "," + result.isCrashed + "\n");
+				}
+			} finally {
+				out.close();
+			}
+		}
+		
+		/**
+		 * Write the aggregated distributions as JSON.
+		 * 
+		 * @param file Destination.
+		 * @throws IOException
+		 */
+		public void writeJson(final File file) throws IOException {
+			final Writer out = new FileWriter(file);
+			try {
+				out.write(this.toJson().toString(2));
+			} catch (JSONException e) {
+				throw new IOException(e.getMessage());
+			} finally {
+				out.close();
+			}
+		}
+		
+		/**
+		 * Aggregate the results as JSON.
+		 * 
+		 * @return JSONObject.
+		 * @throws JSONException
+		 */
+		public JSONObject toJson() throws JSONException {
+			final int count = this.results.size();
+			final double[] scores = new double[count];
+			final double[] levels = new double[count];
+			final double[] deaths = new double[count];
+			final double[] dotRates = new double[count];
+			final double[] tickRates = new double[count];
+			long ticks = 0;
+			int gameOvers = 0;
+			int crashes = 0;
+			
+			for (int i = 0; i < count; i++) {
+				final Simulator.Result result = this.results.get(i);
+				scores[i] = result.score;
+				levels[i] = result.level;
+				deaths[i] = result.deaths;
+				dotRates[i] = result.getDotsPerSecond();
+				tickRates[i] = result.getTicksPerSecond();
+				ticks += result.ticks;
+				if (result.isGameOver) {
+					gameOvers += 1;
+				}
+				if (result.isCrashed) {
+					crashes += 1;
+				}
+			}
+			
+			final JSONObject json = new JSONObject();
+			json.put("games", count);
+			json.put("game_overs", gameOvers);
+			json.put("crashes", crashes);
+			json.put("ticks", ticks);
+			json.put("wall_ms", this.wallTime / 1000000);
+			json.put("batch_ticks_per_second", (this.wallTime > 0) ? (ticks * 1000000000.0 / this.wallTime) : 0);
+			json.put("score", new Simulator.Distribution(scores).toJson());
+			json.put("level", new Simulator.Distribution(levels).toJson());
+			json.put("deaths", new Simulator.Distribution(deaths).toJson());
+			json.put("dots_per_second", new Simulator.Distribution(dotRates).toJson());
+			json.put("ticks_per_second", new Simulator.Distribution(tickRates).toJson());
+			return json;
+		}
+	}
+	
+	
+	
+	/**
+	 * Tag used for logging.
+	 */
+	private static final String TAG = "WakkaWallpaper.Simulator";
+	
+	
+	
+	/**
+	 * Settings every game is played with.
+	 */
+	private final Settings mSettings;
+	
+	/**
+	 * Screen width the games are sized to.
+	 */
+	private final int mScreenWidth;
+	
+	/**
+	 * Screen height the games are sized to.
+	 */
+	private final int mScreenHeight;
+	
+	/**
+	 * Maximum number of ticks to play of a single game.
+	 */
+	private final long mMaxTicks;
+	
+	/**
+	 * Milliseconds the synthetic clock advances per tick.
+	 */
+	private final long mTickLength;
+	
+	
+	
+	/**
+	 * Create a new simulator.
+	 * 
+	 * @param settings Settings every game is played with.
+	 * @param screenWidth Screen width the games are sized to.
+	 * @param screenHeight Screen height the games are sized to.
+	 * @param maxTicks Maximum number of ticks to play of a single game.
+	 */
+	public Simulator(final Settings settings, final int screenWidth, final int screenHeight, final long maxTicks) {
+		this.mSettings = settings;
+		this.mScreenWidth = screenWidth;
+		this.mScreenHeight = screenHeight;
+		this.mMaxTicks = maxTicks;
+		this.mTickLength = Wallpaper.MILLISECONDS_IN_SECOND / Math.max(1, settings.getInt(Settings.DISPLAY_FPS));
+	}
+	
+	
+	
+	/**
+	 * Simulate a batch of games on a thread per core.
+	 * 
+	 * @param firstSeed Seed of the first game. Each subsequent game uses the next seed.
+	 * @param games Number of games.
+	 * @return Report.
+	 * @throws InterruptedException
+	 */
+	public Simulator.Report run(final long firstSeed, final int games) throws InterruptedException {
+		final long start = System.nanoTime();
+		final ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+		
+		try {
+			final List<Future<Simulator.Result>> futures = new ArrayList<Future<Simulator.Result>>(games);
+			for (int i = 0; i < games; i++) {
+				final long seed = firstSeed + i;
+				futures.add(executor.submit(new Callable<Simulator.Result>() {
+					public Simulator.Result call() {
+						return Simulator.this.play(seed);
+					}
+				}));
+			}
+			
+			final List<Simulator.Result> results = new ArrayList<Simulator.Result>(games);
+			for (final Future<Simulator.Result> future : futures) {
+				try {
+					results.add(future.get());
+				} catch (ExecutionException e) {
+					throw new RuntimeException(e.getCause());
+				}
+			}
+			
+			final Simulator.Report report = new Simulator.Report(results, System.nanoTime() - start);
+			if (Wallpaper.LOG_DEBUG) {
+				Log.d(Simulator.TAG, "Simulated " + games + " games in " + (report.wallTime / 1000000) + "ms");
+			}
+			return report;
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+	
+	/**
+	 * Measure the start of a game as the wallpaper sees it: creation with the
+	 * user's settings, sizing, and the first frame. Unlike the games this
+	 * simulator plays these are not headless, so each run decodes and crops the
+	 * background image anew. A cold start also decodes every sprite sheet since
+	 * they are all evicted before each run, while a warm start finds them
+	 * already held from an untimed first run. Must be called on a thread with a
+	 * looper (e.g., that of the Picker activity) since a failed background
+	 * shows a toast.
+	 * 
+	 * @param runs Number of times to start a game.
+	 * @param isCold Whether or not to evict the sprite sheets before each run.
+	 * @return Distribution of start times in microseconds.
+	 */
+	public Simulator.Distribution measureStartup(final int runs, final boolean isCold) {
+		final Bitmap frame = Bitmap.createBitmap(this.mScreenWidth, this.mScreenHeight, Bitmap.Config.RGB_565);
+		final Canvas c = new Canvas(frame);
+		final double[] samples = new double[runs];
+		
+		try {
+			if (!isCold) {
+				this.startGame(c);
+			}
+			for (int i = 0; i < runs; i++) {
+				if (isCold) {
+					Wallpaper.BITMAPS.onLowMemory();
+				}
+				samples[i] = this.startGame(c);
+			}
+		} finally {
+			frame.recycle();
+		}
+		
+		final Simulator.Distribution startup = new Simulator.Distribution(samples);
+		if (Wallpaper.LOG_DEBUG) {
+			Log.d(Simulator.TAG, (isCold ? "Cold" : "Warm") + " startup p50: " + startup.p50 + "us, p90: " + startup.p90 + "us");
+		}
+		return startup;
+	}
+	
+	/**
+	 * Create, size, and draw the first frame of a game and then destroy it.
+	 * 
+	 * @param c Canvas to draw on.
+	 * @return Microseconds until the first frame was drawn.
+	 */
+	private double startGame(final Canvas c) {
+		final long start = System.nanoTime();
+		final Game game = new Game();
+		game.performResize(this.mScreenWidth, this.mScreenHeight);
+		game.draw(c);
+		final double elapsed = (System.nanoTime() - start) / 1000.0;
+		
+		game.destroy();
+		return elapsed;
+	}
+	
+	/**
+	 * Play a single game with its trace sections captured in memory. Sections
+	 * are only emitted when {@link Wallpaper#TRACE_DEBUG} is enabled. The sink
+	 * is installed for the calling thread alone so sections from a live
+	 * wallpaper in the same process are not captured.
+	 * 
+	 * @param seed Seed.
+	 * @param capacity Maximum number of trace events to capture.
+	 * @return Sink holding the captured events, ready to be written as Chrome trace JSON.
+	 */
+	public Trace.ChromeSink trace(final long seed, final int capacity) {
+		final Trace.ChromeSink sink = new Trace.ChromeSink(capacity);
+		final Trace.Sink previous = Trace.setThreadSink(sink);
+		try {
+			this.play(seed);
+		} finally {
+			Trace.setThreadSink(previous);
+		}
+		return sink;
+	}
+	
+	/**
+	 * Play a single game to completion (or the tick limit).
+	 * 
+	 * @param seed Seed.
+	 * @return Result.
+	 */
+	public Simulator.Result play(final long seed) {
+		final long start = System.nanoTime();
+		final Game game = new Game(seed, this.mSettings);
+		game.performResize(this.mScreenWidth, this.mScreenHeight);
+		
+		long time = 0;
+		long ticks = 0;
+		int deaths = 0;
+		boolean isGameOver = false;
+		boolean isCrashed = false;
+		Game.State previous = game.getState();
+		
+		try {
+			while (ticks < this.mMaxTicks) {
+				time += this.mTickLength;
+				game.tick(time);
+				ticks += 1;
+				
+				final Game.State state = game.getState();
+				if (state != previous) {
+					if (state == Game.State.DYING) {
+						deaths += 1;
+					} else if (state == Game.State.GAME_OVER) {
+						isGameOver = true;
+						break;
+					}
+					previous = state;
+				}
+			}
+		} catch (SomethingIsCausingEntitiesToNullPointerException e) {
+			isCrashed = true;
+		} finally {
+			game.destroy();
+		}
+		
+		return new Simulator.Result(seed, game.getScore(), game.getLevel(), deaths, game.getDotsEatenTotal(), ticks, time, System.nanoTime() - start, isGameOver, isCrashed);
+	}
+}
@@ -0,0 +1,638 @@
+package com.jakewharton.wakkawallpaper;
+
+import java.util.Arrays;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Point;
+import android.util.Log;
+
+/**
+ * A swarm of simple ghosts which roam the board in addition to the classic
+ * four. Every ghost is a row across primitive arrays rather than an object so
+ * that hundreds of them cost no more than a few arrays, and the number of
+ * ghosts in each state is counted per cell so that colliding with The Man is a
+ * single lookup regardless of how many there are.
+ * 
+ * <p>Swarm ghosts move at the same fixed-point speeds as the classic ghosts. They follow
+ * corridors without deciding anything and at junctions usually step along a
+ * shared flow field towards The Man, otherwise wandering at random. Eaten swarm
+ * ghosts vanish and respawn at their spawn cell after a delay.</p>
+ * 
+ * @author Jake Wharton
+ */
+public final class Swarm implements Settings.Listener {
+	/**
+	 * State of a ghost which is hunting The Man.
+	 */
+	private static final byte STATE_HUNTING = 0;
+	
+	/**
+	 * State of a ghost which is frightened.
+	 */
+	private static final byte STATE_FRIGHTENED = 1;
+	
+	/**
+	 * State of a ghost which has been eaten and is waiting to respawn.
+	 */
+	private static final byte STATE_EATEN = 2;
+	
+	/**
+	 * Direction of a ghost which has not moved yet.
+	 */
+	private static final byte DIRECTION_NONE = -1;
+	
+	/**
+	 * One in this many decisions of a hunting ghost at a junction is random.
+	 */
+	private static final int WANDER_CHANCE = 4;
+	
+	/**
+	 * Milliseconds before an eaten ghost respawns.
+	 */
+	private static final int RESPAWN_LENGTH = 5000;
+	
+	/**
+	 * Fewest cells (horizontally plus vertically) between a spawn and The Man's start.
+	 */
+	private static final int SPAWN_DISTANCE = 6;
+	
+	/**
+	 * Random cells to try when picking each spawn.
+	 */
+	private static final int SPAWN_ATTEMPTS = 32;
+	
+	/**
+	 * Size of a ghost relative to a cell.
+	 */
+	private static final float RADIUS_PERCENTAGE = 0.4f;
+	
+	/**
+	 * Tag used for logging.
+	 */
+	private static final String TAG = "WakkaWallpaper.Swarm";
+	
+	
+	
+	/**
+	 * Number of ghosts.
+	 */
+	private int mCount;
+	
+	/**
+	 * Cell index of each ghost.
+	 */
+	private int[] mCells;
+	
+	/**
+	 * Ordinal of the direction each ghost last moved in or {@link #DIRECTION_NONE}.
+	 */
+	private byte[] mDirections;
+	
+	/**
+	 * State of each ghost.
+	 */
+	private byte[] mStates;
+	
+	/**
+	 * How far along the step towards its next cell each ghost is, in 16.16 fixed-point cells.
+	 */
+	private int[] mProgress;
+	
+	/**
+	 * Game time at which each eaten ghost respawns.
+	 */
+	private long[] mRespawnTimes;
+	
+	/**
+	 * Cell index at which each ghost spawns.
+	 */
+	private int[] mSpawns;
+	
+	/**
+	 * Number of hunting ghosts in each cell.
+	 */
+	private int[] mHuntingAt;
+	
+	/**
+	 * Number of frightened ghosts in each cell.
+	 */
+	private int[] mFrightenedAt;
+	
+	/**
+	 * Game time at which frightened ghosts go back to hunting.
+	 */
+	private long mFrightenedUntil;
+	
+	/**
+	 * Flow field towards The Man, rebuilt each tick.
+	 */
+	private byte[] mChase;
+	
+	/**
+	 * Paint for hunting ghosts.
+	 */
+	private final Paint mBody;
+	
+	/**
+	 * Paint for frightened ghosts.
+	 */
+	private final Paint mScared;
+	
+	/**
+	 * Point reused for board queries.
+	 */
+	private final Point mScratch;
+	
+	/**
+	 * Width of a cell.
+	 */
+	private float mCellWidth;
+	
+	/**
+	 * Height of a cell.
+	 */
+	private float mCellHeight;
+	
+	/**
+	 * Radius of a drawn ghost.
+	 */
+	private float mRadius;
+	
+	
+	
+	/**
+	 * Create an empty swarm.
+	 */
+	public Swarm() {
+		this.mBody = new Paint(Paint.ANTI_ALIAS_FLAG);
+		this.mScared = new Paint(Paint.ANTI_ALIAS_FLAG);
+		this.mScratch = new Point();
+		this.mHuntingAt = new int[0];
+		this.mFrightenedAt = new int[0];
+		this.setCount(0);
+	}
+	
+	
+	
+	/**
+	 * Handle the changing of a preference.
+	 */
+	public void onSettingsChanged(final Settings settings, final Settings.Diff diff) {
+		if (Wallpaper.LOG_VERBOSE) {
+			Log.v(Swarm.TAG, "> onSettingsChanged()");
+		}
+		
+		if (diff.contains(Settings.COLOR_GHOST_BLINKY)) {
+			this.mBody.setColor(settings.getInt(Settings.COLOR_GHOST_BLINKY));
+		}
+		
+		if (diff.contains(Settings.COLOR_GHOST_SCARED_BACKGROUND)) {
+			this.mScared.setColor(settings.getInt(Settings.COLOR_GHOST_SCARED_BACKGROUND));
+		}
+		
+		if (diff.contains(Settings.COLOR_ENTITY_STYLE)) {
+			final Entity.Style style = settings.getEntityStyle();
+			this.mBody.setStyle(style.style);
+			this.mScared.setStyle(style.style);
+		}
+		
+		if (diff.contains(Settings.GAME_GHOST_SWARM)) {
+			this.setCount(settings.getInt(Settings.GAME_GHOST_SWARM));
+			
+			if (Wallpaper.LOG_DEBUG) {
+				Log.d(Swarm.TAG, "Swarm Size: " + this.mCount);
+			}
+		}
+		
+		if (Wallpaper.LOG_VERBOSE) {
+			Log.v(Swarm.TAG, "< onSettingsChanged()");
+		}
+	}
+	
+	/**
+	 * Resize the storage for a new number of ghosts. They are not placed until
+	 * the next level or life.
+	 * 
+	 * @param count Number of ghosts.
+	 */
+	private void setCount(final int count) {
+		this.mCount = count;
+		this.mCells = new int[count];
+		this.mDirections = new byte[count];
+		this.mStates = new byte[count];
+		this.mProgress = new int[count];
+		this.mRespawnTimes = new long[count];
+		this.mSpawns = new int[count];
+		
+		Arrays.fill(this.mStates, Swarm.STATE_EATEN);
+		Arrays.fill(this.mRespawnTimes, Long.MAX_VALUE);
+		Arrays.fill(this.mHuntingAt, 0);
+		Arrays.fill(this.mFrightenedAt, 0);
+	}
+	
+	/**
+	 * Get the number of ghosts.
+	 * 
+	 * @return Number.
+	 */
+	public int getCount() {
+		return this.mCount;
+	}
+	
+	/**
+	 * Get the cell index of a ghost.
+	 * 
+	 * @param index Ghost index.
+	 * @return Cell index.
+	 */
+	public int getCell(final int index) {
+		return this.mCells[index];
+	}
+	
+	/**
+	 * Test whether a ghost is hunting.
+	 * 
+	 * @param index Ghost index.
+	 * @return Boolean.
+	 */
+	public boolean isHunting(final int index) {
+		return (this.mStates[index] == Swarm.STATE_HUNTING);
+	}
+	
+	/**
+	 * Test whether a ghost is frightened.
+	 * 
+	 * @param index Ghost index.
+	 * @return Boolean.
+	 */
+	public boolean isFrightened(final int index) {
+		return (this.mStates[index] == Swarm.STATE_FRIGHTENED);
+	}
+	
+	/**
+	 * Test whether any ghost is frightened.
+	 * 
+	 * @return Boolean.
+	 */
+	public boolean hasFrightened() {
+		for (int i = 0; i < this.mCount; i++) {
+			if (this.mStates[i] == Swarm.STATE_FRIGHTENED) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Get the number of hunting ghosts in a cell.
+	 * 
+	 * @param cell Cell index.
+	 * @return Number.
+	 */
+	public int getHuntingAt(final int cell) {
+		return ((cell >= 0) && (cell < this.mHuntingAt.length)) ? this.mHuntingAt[cell] : 0;
+	}
+	
+	/**
+	 * Get the number of frightened ghosts in a cell.
+	 * 
+	 * @param cell Cell index.
+	 * @return Number.
+	 */
+	public int getFrightenedAt(final int cell) {
+		return ((cell >= 0) && (cell < this.mFrightenedAt.length)) ? this.mFrightenedAt[cell] : 0;
+	}
+	
+	/**
+	 * Resize to the current cell dimensions.
+	 * 
+	 * @param game Game instance.
+	 */
+	public void performResize(final Game game) {
+		this.mCellWidth = game.getCellWidth();
+		this.mCellHeight = game.getCellHeight();
+		this.mRadius = Math.min(this.mCellWidth, this.mCellHeight) * Swarm.RADIUS_PERCENTAGE;
+	}
+	
+	/**
+	 * Pick new spawns for the board of a new level and place every ghost there.
+	 * 
+	 * @param game Game instance.
+	 */
+	public void newLevel(final Game game) {
+		final int wide = game.getCellsWide();
+		final int tall = game.getCellsTall();
+		final int cells = wide * tall;
+		final Point scratch = this.mScratch;
+		final Point theMan = game.getTheMan().getInitialPosition(game);
+		
+		if (this.mHuntingAt.length != cells) {
+			this.mHuntingAt = new int[cells];
+			this.mFrightenedAt = new int[cells];
+		}
+		
+		for (int i = 0; i < this.mCount; i++) {
+			int spawn = game.hashPosition(theMan);
+			for (int attempt = 0; attempt < Swarm.SPAWN_ATTEMPTS; attempt++) {
+				scratch.set(game.getRandom().nextInt(wide), game.getRandom().nextInt(tall));
+				if (game.isValidBoardPosition(scratch)) {
+					spawn = game.hashPosition(scratch);
+					if ((Math.abs(scratch.x - theMan.x) + Math.abs(scratch.y - theMan.y)) >= Swarm.SPAWN_DISTANCE) {
+						break;
+					}
+				}
+			}
+			this.mSpawns[i] = spawn;
+		}
+		
+		this.newLife(game);
+	}
+	
+	/**
+	 * Place every ghost back at its spawn.
+	 * 
+	 * @param game Game instance.
+	 */
+	public void newLife(final Game game) {
+		Arrays.fill(this.mHuntingAt, 0);
+		Arrays.fill(this.mFrightenedAt, 0);
+		this.mFrightenedUntil = 0;
+		
+		for (int i = 0; i < this.mCount; i++) {
+			this.spawn(i);
+		}
+	}
+	
+	/**
+	 * Frighten every ghost which has not been eaten.
+	 * 
+	 * @param game Game instance.
+	 */
+	public void frighten(final Game game) {
+		this.mFrightenedUntil = game.getTime() + Ghost.getFrightenedLength(game.getLevel());
+		
+		for (int i = 0; i < this.mCount; i++) {
+			if (this.mStates[i] == Swarm.STATE_HUNTING) {
+				this.setState(i, Swarm.STATE_FRIGHTENED);
+				
+				//Reverse direction immediately if frightened
+				if (this.mDirections[i] != Swarm.DIRECTION_NONE) {
+					this.mDirections[i] = (byte)Entity.DIRECTIONS[this.mDirections[i]].getOpposite().ordinal();
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Eat every frightened ghost in a cell.
+	 * 
+	 * @param game Game instance.
+	 * @param cell Cell index.
+	 * @return Number of ghosts eaten.
+	 */
+	public int eat(final Game game, final int cell) {
+		if (this.getFrightenedAt(cell) == 0) {
+			return 0;
+		}
+		
+		int eaten = 0;
+		for (int i = 0; i < this.mCount; i++) {
+			if ((this.mCells[i] == cell) && (this.mStates[i] == Swarm.STATE_FRIGHTENED)) {
+				this.setState(i, Swarm.STATE_EATEN);
+				this.mRespawnTimes[i] = game.getTime() + Swarm.RESPAWN_LENGTH;
+				eaten += 1;
+			}
+		}
+		return eaten;
+	}
+	
+	/**
+	 * Advance every ghost by its speed, moving those which reach their next cell.
+	 * 
+	 * @param game Game instance.
+	 */
+	public void tick(final Game game) {
+		if (this.mCount == 0) {
+			return;
+		}
+		
+		final long time = game.getTime();
+		final int huntingSpeed = Entity.getLevelSpeed(game.getLevel(), Entity.SPEED_GHOST);
+		final int frightenedSpeed = Entity.getLevelSpeed(game.getLevel(), Entity.SPEED_GHOST_FRIGHTENED);
+		final Junctions junctions = game.getGhostJunctions();
+		final boolean isFrightenedOver = (time >= this.mFrightenedUntil);
+		
+		//Every hunting ghost shares the one route to The Man
+		this.mChase = game.getRoutes().buildFlowField(game.hashPosition(game.getTheMan().getPosition()), this.mChase);
+		
+		for (int i = 0; i < this.mCount; i++) {
+			final byte state = this.mStates[i];
+			if (state == Swarm.STATE_EATEN) {
+				if (time >= this.mRespawnTimes[i]) {
+					this.spawn(i);
+				}
+				continue;
+			}
+			if ((state == Swarm.STATE_FRIGHTENED) && isFrightenedOver) {
+				this.setState(i, Swarm.STATE_HUNTING);
+			}
+			
+			this.mProgress[i] += (this.mStates[i] == Swarm.STATE_FRIGHTENED) ? frightenedSpeed : huntingSpeed;
+			while (this.mProgress[i] >= Entity.FIXED_ONE) {
+				this.mProgress[i] -= Entity.FIXED_ONE;
+				
+				final int direction = this.determineNextDirection(game, junctions, i);
+				if (direction == Swarm.DIRECTION_NONE) {
+					continue;
+				}
+				
+				final int next = junctions.getNeighbor(this.mCells[i], direction);
+				this.setCell(i, next);
+				this.mDirections[i] = (byte)direction;
+			}
+		}
+	}
+	
+	/**
+	 * Render every ghost which has not been eaten.
+	 * 
+	 * @param game Game instance.
+	 * @param c Canvas to draw on.
+	 */
+	public void draw(final Game game, final Canvas c) {
+		final int wide = game.getCellsWide();
+		
+		for (int i = 0; i < this.mCount; i++) {
+			final byte state = this.mStates[i];
+			if (state == Swarm.STATE_EATEN) {
+				continue;
+			}
+			
+			final int cell = this.mCells[i];
+			final float x = ((cell % wide) + 0.5f) * this.mCellWidth;
+			final float y = ((cell / wide) + 0.5f) * this.mCellHeight;
+			c.drawCircle(x, y, this.mRadius, (state == Swarm.STATE_FRIGHTENED) ? this.mScared : this.mBody);
+		}
+	}
+	
+	/**
+	 * Fold the state of every ghost into a hash.
+	 * 
+	 * @param hash Hash so far.
+	 * @return New hash.
+	 */
+	public int hash(int hash) {
+		for (int i = 0; i < this.mCount; i++) {
+			hash = 31 * hash + this.mCells[i];
+			hash = 31 * hash + this.mDirections[i];
+			hash = 31 * hash + this.mStates[i];
+			hash = 31 * hash + this.mProgress[i];
+		}
+		return hash;
+	}
+	
+	/**
+	 * Put the state of every ghost in to a checkpoint.
+	 * 
+	 * @param checkpoint Checkpoint being taken.
+	 */
+	public void save(final Checkpoint checkpoint) {
+		checkpoint.putInt(this.mCount);
+		checkpoint.putLong(this.mFrightenedUntil);
+		for (int i = 0; i < this.mCount; i++) {
+			checkpoint.putInt(this.mCells[i]);
+			checkpoint.putInt(this.mDirections[i]);
+			checkpoint.putInt(this.mStates[i]);
+			checkpoint.putInt(this.mProgress[i]);
+			checkpoint.putInt(this.mSpawns[i]);
+			checkpoint.putLong(this.mRespawnTimes[i]);
+		}
+	}
+	
+	/**
+	 * Get back the state put by {@link #save(Checkpoint)} and recount the cells.
+	 * 
+	 * @param checkpoint Checkpoint being restored.
+	 */
+	public void restore(final Checkpoint checkpoint) {
+		final int count = checkpoint.getInt();
+		if (count != this.mCount) {
+			this.setCount(count);
+		}
+		this.mFrightenedUntil = checkpoint.getLong();
+		
+		Arrays.fill(this.mHuntingAt, 0);
+		Arrays.fill(this.mFrightenedAt, 0);
+		for (int i = 0; i < count; i++) {
+			this.mCells[i] = checkpoint.getInt();
+			this.mDirections[i] = (byte)checkpoint.getInt();
+			this.mStates[i] = (byte)checkpoint.getInt();
+			this.mProgress[i] = checkpoint.getInt();
+			this.mSpawns[i] = checkpoint.getInt();
+			this.mRespawnTimes[i] = checkpoint.getLong();
+			this.count(i, 1);
+		}
+	}
+	
+	/**
+	 * Determine the direction a ghost moves in from its cell.
+	 * 
+	 * @param game Game instance.
+	 * @param junctions Junction graph of the board for the ghosts.
+	 * @param index Ghost index.
+	 * @return Direction ordinal or {@link #DIRECTION_NONE} if it cannot move.
+	 */
+	private int determineNextDirection(final Game game, final Junctions junctions, final int index) {
+		final Entity.Direction[] directions = Entity.DIRECTIONS;
+		final int cell = this.mCells[index];
+		final int current = this.mDirections[index];
+		
+		//Only junctions need a decision
+		if (current != Swarm.DIRECTION_NONE) {
+			final Entity.Direction corridor = junctions.getCorridorExit(cell, directions[current]);
+			if (corridor != null) {
+				return corridor.ordinal();
+			}
+		}
+		
+		final FastRandom random = game.getRandom();
+		if ((this.mStates[index] == Swarm.STATE_HUNTING) && (random.nextInt(Swarm.WANDER_CHANCE) != 0)) {
+			final Entity.Direction chase = Routes.getFlow(this.mChase, cell);
+			if (chase != null) {
+				return chase.ordinal();
+			}
+		}
+		
+		//Wander, avoiding turning back unless it is the only way out
+		final int reverse = (current != Swarm.DIRECTION_NONE) ? directions[current].getOpposite().ordinal() : Swarm.DIRECTION_NONE;
+		final int start = random.nextInt(directions.length);
+		for (int i = 0; i < directions.length; i++) {
+			final int direction = (start + i) % directions.length;
+			if ((direction != reverse) && (junctions.getNeighbor(cell, direction) >= 0)) {
+				return direction;
+			}
+		}
+		return ((reverse != Swarm.DIRECTION_NONE) && (junctions.getNeighbor(cell, reverse) >= 0)) ? reverse : Swarm.DIRECTION_NONE;
+	}
+	
+	/**
+	 * Place a ghost at its spawn, hunting.
+	 * 
+	 * @param index Ghost index.
+	 */
+	private void spawn(final int index) {
+		this.mStates[index] = Swarm.STATE_EATEN;
+		this.mCells[index] = this.mSpawns[index];
+		this.mDirections[index] = Swarm.DIRECTION_NONE;
+		this.mProgress[index] = 0;
+		this.mRespawnTimes[index] = Long.MAX_VALUE;
+		this.setState(index, Swarm.STATE_HUNTING);
+	}
+	
+	/**
+	 * Change the state of a ghost, keeping the cell counts up to date.
+	 * 
+	 * @param index Ghost index.
+	 * @param state New state.
+	 */
+	private void setState(final int index, final byte state) {
+		this.count(index, -1);
+		this.mStates[index] = state;
+		this.count(index, 1);
+	}
+	
+	/**
+	 * Move a ghost to a cell, keeping the cell counts up to date.
+	 * 
+	 * @param index Ghost index.
+	 * @param cell Cell index.
+	 */
+	private void setCell(final int index, final int cell) {
+		this.count(index, -1);
+		this.mCells[index] = cell;
+		this.count(index, 1);
+	}
+	
+	/**
+	 * Add to the count of a ghost's state in its cell.
+	 * 
+	 * @param index Ghost index.
+	 * @param amount Amount to add.
+	 */
+	private void count(final int index, final int amount) {
+		final int cell = this.mCells[index];
+		if ((cell < 0) || (cell >= this.mHuntingAt.length)) {
+			return;
+		}
+		
+		switch (this.mStates[index]) {
+			case Swarm.STATE_HUNTING:
+				this.mHuntingAt[cell] += amount;
+				break;
+				
+			case Swarm.STATE_FRIGHTENED:
+				this.mFrightenedAt[cell] += amount;
+				break;
+		}
+	}
+}
@@ -1,12 +1,6 @@
 package com.jakewharton.wakkawallpaper;
 
-import java.util.HashSet;
 import java.util.LinkedList;
-import java.util.Queue;
-import android.content.SharedPreferences;
-import android.content.res.Resources;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.graphics.Canvas;
 import android.graphics.Paint;
 import android.graphics.Point;
@@ -18,7 +12,7 @@ import android.util.Log;
  * 
  * @author Jake Wharton
  */
-public class TheMan extends Entity implements SharedPreferences.OnSharedPreferenceChangeListener {
+public class TheMan extends Entity implements Settings.Listener {
 	/**
 	 * Living state of The Man.
 	 * 
@@ -39,7 +33,7 @@ public class TheMan extends Entity implements SharedPreferences.OnSharedPreferen
 	 * @author Jake Wharton
 	 */
 	enum Mode {
-		/*AI(0),*/ NEAREST_DOT(1), RANDOM(2);
+		AI(0), NEAREST_DOT(1), RANDOM(2);
 		
 		/**
 		 * Persisted unique value.
@@ -157,7 +151,22 @@ public class TheMan extends Entity implements SharedPreferences.OnSharedPreferen
     /**
      * The image of sprites for the current character (if any).1
      */
-	private Bitmap mSprite;
+	private LazyBitmap mSprite;
+	
+	/**
+	 * Search used by the intelligent AI mode.
+	 */
+	private final Lookahead mLookahead;
+	
+	/**
+	 * Time budget (in microseconds) of each AI decision.
+	 */
+	private long mAIBudget;
+	
+	/**
+	 * Computes AI decisions ahead of time (created on first use).
+	 */
+	private Planner mPlanner;
     
 	
 	
@@ -168,48 +177,47 @@ public class TheMan extends Entity implements SharedPreferences.OnSharedPreferen
 		super();
         
         this.mForeground = new Paint(Paint.ANTI_ALIAS_FLAG);
+        this.mLookahead = new Lookahead();
 
-        //Load all preferences or their defaults
-        Wallpaper.PREFERENCES.registerOnSharedPreferenceChangeListener(this);
-        this.onSharedPreferenceChanged(Wallpaper.PREFERENCES, null);
-    	
     	this.mWantsToGo = null;
 	}
 
 	
 	
     /**
-     * Handle the changing of a preference.
+     * Handle the changing of one or more settings.
      */
-	public void onSharedPreferenceChanged(final SharedPreferences preferences, final String key) {
+	public void onSettingsChanged(final Settings settings, final Settings.Diff diff) {
 		if (Wallpaper.LOG_VERBOSE) {
-			Log.v(TheMan.TAG, "> onSharedPreferenceChanged()");
+			Log.v(TheMan.TAG, "> onSettingsChanged()");
 		}
 		
-		final boolean all = (key == null);
-		final Resources resources = Wallpaper.CONTEXT.getResources();
-		
-		final String foregroundColor = Wallpaper.CONTEXT.getString(R.string.settings_color_theman_key);
-		if (all || key.equals(foregroundColor)) {
-			this.mForeground.setColor(preferences.getInt(foregroundColor, resources.getInteger(R.integer.color_theman_default)));
+		if (diff.contains(Settings.COLOR_THEMAN)) {
+			this.mForeground.setColor(settings.getInt(Settings.COLOR_THEMAN));
 			
 			if (Wallpaper.LOG_DEBUG) {
 				Log.d(TheMan.TAG, "Foreground Color: #" + Integer.toHexString(this.mForeground.getColor()));
 			}
 		}
 		
-		final String mode = Wallpaper.CONTEXT.getString(R.string.settings_game_themanmode_key);
-		if (all || key.equals(mode)) {
-			this.mMode = TheMan.Mode.parseInt(preferences.getInt(mode, resources.getInteger(R.integer.game_themanmode_default)));
+		if (diff.contains(Settings.GAME_THEMAN_MODE)) {
+			this.mMode = settings.getTheManMode();
 			
 			if (Wallpaper.LOG_DEBUG) {
 				Log.d(TheMan.TAG, "Mode: " + this.mMode);
 			}
 		}
 		
-		final String color_style = Wallpaper.CONTEXT.getString(R.string.settings_color_entitystyle_key);
-		if (all || key.equals(color_style)) {
-			final Entity.Style style = Entity.Style.parseInt(preferences.getInt(color_style, resources.getInteger(R.integer.color_entitystyle_default)));
+		if (diff.contains(Settings.GAME_THEMAN_AI_BUDGET)) {
+			this.mAIBudget = settings.getInt(Settings.GAME_THEMAN_AI_BUDGET);
+			
+			if (Wallpaper.LOG_DEBUG) {
+				Log.d(TheMan.TAG, "AI Budget: " + this.mAIBudget + "us");
+			}
+		}
+		
+		if (diff.contains(Settings.COLOR_ENTITY_STYLE)) {
+			final Entity.Style style = settings.getEntityStyle();
 			this.mForeground.setStyle(style.style);
 			
 			if (Wallpaper.LOG_DEBUG) {
@@ -217,30 +225,26 @@ public class TheMan extends Entity implements SharedPreferences.OnSharedPreferen
 			}
 		}
 		
-		final String wrapping = resources.getString(R.string.settings_game_wrappingtheman_key);
-		if (all || key.equals(wrapping)) {
-			this.mIsWrapping = preferences.getBoolean(wrapping, resources.getBoolean(R.bool.game_wrappingtheman_default));
+		if (diff.contains(Settings.GAME_WRAPPING_THEMAN)) {
+			this.mIsWrapping = settings.getBoolean(Settings.GAME_WRAPPING_THEMAN);
 			
 			if (Wallpaper.LOG_DEBUG) {
 				Log.d(TheMan.TAG, "Is Wrapping: " + this.mIsWrapping);
 			}
 		}
 		
-		final String trophyAndy = resources.getString(R.string.trophy_andy_key);
-		if (all || key.equals(trophyAndy)) {
-			this.mIsTrophyAndyEnabled = preferences.getBoolean(trophyAndy, resources.getBoolean(R.bool.trophy_andy_default));
+		if (diff.contains(Settings.TROPHY_ANDY)) {
+			this.mIsTrophyAndyEnabled = settings.getBoolean(Settings.TROPHY_ANDY);
 			
 			if (this.mIsTrophyAndyEnabled) {
 				this.mCharacter = TheMan.Character.ANDY;
 
 				//Load the Andy sprites
-				final BitmapFactory.Options options = new BitmapFactory.Options();
-				options.inScaled = false;
-				this.mSprite = BitmapFactory.decodeResource(Wallpaper.CONTEXT.getResources(), R.drawable.andy, options);
+				this.mSprite = new LazyBitmap(R.drawable.andy);
 			} else if (!this.mIsTrophyGoogolEnabled && !this.mIsTrophyTheMandroidEnabled) {
 				//TODO: parseValue of character when the Mrs. is implemented
 				this.mCharacter = TheMan.Character.THEMAN;
-				this.mForeground.setColor(preferences.getInt(resources.getString(R.string.settings_color_theman_key), resources.getInteger(R.integer.color_theman_default)));
+				this.mForeground.setColor(settings.getInt(Settings.COLOR_THEMAN));
 				
 				this.mSprite = null;
 			}
@@ -250,21 +254,18 @@ public class TheMan extends Entity implements SharedPreferences.OnSharedPreferen
 			}
 		}
 		
-		final String trophyGoogol = resources.getString(R.string.trophy_googol_key);
-		if (all || key.equals(trophyGoogol)) {
-			this.mIsTrophyGoogolEnabled = preferences.getBoolean(trophyGoogol, resources.getBoolean(R.bool.trophy_googol_default));
+		if (diff.contains(Settings.TROPHY_GOOGOL)) {
+			this.mIsTrophyGoogolEnabled = settings.getBoolean(Settings.TROPHY_GOOGOL);
 			
 			if (this.mIsTrophyGoogolEnabled) {
 				this.mCharacter = TheMan.Character.GOOGOL;
 
 				//Load the Andy sprites
-				final BitmapFactory.Options options = new BitmapFactory.Options();
-				options.inScaled = false;
-				this.mSprite = BitmapFactory.decodeResource(Wallpaper.CONTEXT.getResources(), R.drawable.googol_theman, options);
+				this.mSprite = new LazyBitmap(R.drawable.googol_theman);
 			} else if (!this.mIsTrophyAndyEnabled && !this.mIsTrophyTheMandroidEnabled) {
 				//TODO: parseValue of character when the Mrs. is implemented
 				this.mCharacter = TheMan.Character.THEMAN;
-				this.mForeground.setColor(preferences.getInt(resources.getString(R.string.settings_color_theman_key), resources.getInteger(R.integer.color_theman_default)));
+				this.mForeground.setColor(settings.getInt(Settings.COLOR_THEMAN));
 				
 				this.mSprite = null;
 			}
@@ -274,9 +275,8 @@ public class TheMan extends Entity implements SharedPreferences.OnSharedPreferen
 			}
 		}
 		
-		final String trophyTheMandroid = resources.getString(R.string.trophy_themandroid_key);
-		if (all || key.equals(trophyTheMandroid)) {
-			this.mIsTrophyTheMandroidEnabled = preferences.getBoolean(trophyTheMandroid, resources.getBoolean(R.bool.trophy_themandroid_default));
+		if (diff.contains(Settings.TROPHY_THEMANDROID)) {
+			this.mIsTrophyTheMandroidEnabled = settings.getBoolean(Settings.TROPHY_THEMANDROID);
 			
 			if (this.mIsTrophyTheMandroidEnabled) {
 				this.mCharacter = TheMan.Character.THEMANDROID;
@@ -284,7 +284,7 @@ public class TheMan extends Entity implements SharedPreferences.OnSharedPreferen
 			} else if (!this.mIsTrophyAndyEnabled && !this.mIsTrophyGoogolEnabled) {
 				//TODO: parseValue of character when the Mrs. is implemented
 				this.mCharacter = TheMan.Character.THEMAN;
-				this.mForeground.setColor(preferences.getInt(resources.getString(R.string.settings_color_theman_key), resources.getInteger(R.integer.color_theman_default)));
+				this.mForeground.setColor(settings.getInt(Settings.COLOR_THEMAN));
 				
 				this.mSprite = null;
 			}
@@ -294,24 +294,29 @@ public class TheMan extends Entity implements SharedPreferences.OnSharedPreferen
 			}
 		}
 		
-		final String trophyEgo = resources.getString(R.string.trophy_ego_key);
-		if (all || key.equals(trophyEgo)) {
-			this.mIsTrophyEgoEnabled = preferences.getBoolean(trophyEgo, resources.getBoolean(R.bool.trophy_ego_default));
+		if (diff.contains(Settings.TROPHY_EGO)) {
+			this.mIsTrophyEgoEnabled = settings.getBoolean(Settings.TROPHY_EGO);
 		}
 
 		if (Wallpaper.LOG_VERBOSE) {
-			Log.v(TheMan.TAG, "< onSharedPreferenceChanged()");
+			Log.v(TheMan.TAG, "< onSettingsChanged()");
 		}
 	}
 
     /**
      * Specify a direction you would like "The Man" to travel in next (if possible).
      * 
+     * @param game Game instance.
      * @param direction Desired direction.
      */
-    public void setWantsToGo(final Entity.Direction direction) {
+    public void setWantsToGo(final Game game, final Entity.Direction direction) {
     	this.mWantsToGo = direction;
-    	this.mWantsToGoTimer = System.currentTimeMillis();
+    	this.mWantsToGoTimer = game.getTime();
+    	
+    	//Turning back part of the way through a step does not need to wait for the next cell
+    	if ((this.mState == TheMan.State.ALIVE) && this.isMidStep() && (direction == this.mDirectionNext.getOpposite())) {
+    		this.reverse(game);
+    	}
     	
     	if (Wallpaper.LOG_DEBUG) {
     		Log.d(TheMan.TAG, "Wants To Go: " + direction.toString());
@@ -329,13 +334,45 @@ public class TheMan extends Entity implements SharedPreferences.OnSharedPreferen
 		}
 	}
 
+	@Override
+	/*package*/void save(final Checkpoint checkpoint) {
+		super.save(checkpoint);
+		checkpoint.putInt(this.mState.ordinal());
+		checkpoint.putInt(this.mStateTicker);
+		checkpoint.putInt(Checkpoint.ordinal(this.mWantsToGo));
+		checkpoint.putLong(this.mWantsToGoTimer);
+	}
+	
+	@Override
+	/*package*/void restore(final Checkpoint checkpoint) {
+		super.restore(checkpoint);
+		this.mState = TheMan.State.values()[checkpoint.getInt()];
+		this.mStateTicker = checkpoint.getInt();
+		this.mWantsToGo = Entity.toDirection(checkpoint.getInt());
+		this.mWantsToGoTimer = checkpoint.getLong();
+	}
+	
+	@Override
+	protected int getSpeed(final Game game) {
+		return Entity.getLevelSpeed(game.getLevel(), game.hasFrightenedGhosts() ? Entity.SPEED_THE_MAN_FRIGHTENED : Entity.SPEED_THE_MAN);
+	}
+
 	@Override
     protected void moved(final Game game) {
 		game.checkDots();
 		game.checkFruit();
 		game.checkGhosts();
 		
-		this.determineNextDirection(game);
+		if (Wallpaper.TRACE_DEBUG) {
+			Trace.begin(Trace.THEMAN_DECIDE);
+		}
+		try {
+			this.determineNextDirection(game);
+		} finally {
+			if (Wallpaper.TRACE_DEBUG) {
+				Trace.end();
+			}
+		}
     }
 	
 	/**
@@ -373,7 +410,7 @@ public class TheMan extends Entity implements SharedPreferences.OnSharedPreferen
 	private void determineNextDirection(final Game game) {
 		//Try the user direction first
 		if ((this.mWantsToGo != null) && game.isValidPosition(this, Entity.move(this.mPosition, this.mWantsToGo))) {
-			if (this.mIsWrapping && ((System.currentTimeMillis() - this.mWantsToGoTimer) > TheMan.WANTS_TO_GO_MAX_LENGTH)) {
+			if (this.mIsWrapping && ((game.getTime() - this.mWantsToGoTimer) > TheMan.WANTS_TO_GO_MAX_LENGTH)) {
 				//When wrapping, only allow The Man to follow the user direction for a maximum amount of time
 				this.mWantsToGo = null;
 			} else {
@@ -385,9 +422,9 @@ public class TheMan extends Entity implements SharedPreferences.OnSharedPreferen
 		
 		//Use logic based on mode
 		switch (this.mMode) {
-			/*case AI:
+			case AI:
 				this.determineNextDirectionByAI(game);
-				break;*/
+				break;
 				
 			case NEAREST_DOT:
 				this.determineNextDirectionByNearestDot(game);
@@ -410,65 +447,21 @@ public class TheMan extends Entity implements SharedPreferences.OnSharedPreferen
 	}
 	
 	/**
-	 * Determine our next direction based on a breadth-first search.
+	 * Determine our next direction based on a shortest path search of the junction graph.
 	 * 
 	 * @param game Game instance.
 	 */
 	private void determineNextDirectionByNearestDot(final Game game) {
-		//Breadth-first search for new next direction
-		final Queue<Vector> queue = new LinkedList<Vector>();
-		final HashSet<Integer> seen = new HashSet<Integer>();
-		queue.add(new Vector(this.mPosition, this.mDirectionCurrent));
-		Vector current;
-		
-		while (!queue.isEmpty()) {
-			current = queue.remove();
-			seen.add(game.hashPosition(current.position));
-			
-			if (Wallpaper.LOG_VERBOSE) {
-				Log.v(TheMan.TAG, "With Current: (" + current.position.x + "," + current.position.y + ") " + current.direction);
-			}
-			
-			for (final Vector next : current.getPossibleMoves()) {
-				if (Wallpaper.LOG_VERBOSE) {
-					Log.v(TheMan.TAG, "- Checking: (" + next.position.x + "," + next.position.y + ") " + next.direction);
-				}
-				
-				if (game.isValidPosition(this, next.position) && !seen.contains(game.hashPosition(next.position))) {
-					if (Wallpaper.LOG_VERBOSE) {
-						Log.v(TheMan.TAG, "-- Valid");
-					}
-					
-					final Ghost ghostA = game.getGhostAtPosition(next.position);
-					final Ghost ghostB = game.getGhostAtPosition(Entity.move(next.position, next.direction));
-					if (((ghostA != null) && (ghostA.getState() == Ghost.State.HUNTING)) || ((ghostB != null) && (ghostB.getState() == Ghost.State.HUNTING))) {
-						//If there's a hunting ghost in the next position or the one after, immediately disgard
-						continue;
-					}
-					
-					if ((game.getCell(next.position) != Game.Cell.BLANK) || (game.getFruitAtPosition(next.position) != null)) {
-						if (Wallpaper.LOG_VERBOSE) {
-							Log.v(TheMan.TAG, "-- Has Dot");
-						}
-						
-						this.mDirectionNext = next.initialDirection;
-						queue.clear(); //break out of while
-						break; //break out of for
-					} else {
-						if (Wallpaper.LOG_VERBOSE) {
-							Log.v(TheMan.TAG, "-- Empty, Queued");
-						}
-						
-						queue.add(next);
-					}
-				}
-			}
+		this.mDirectionNext = game.getTheManJunctions().findNearestDot(game, this.mPosition, this.mDirectionCurrent);
+		
+		if (Wallpaper.LOG_VERBOSE) {
+			Log.v(TheMan.TAG, "Nearest dot is " + this.mDirectionNext);
 		}
 		
 		//Temporary last ditch effort: pick a random direction
 		if (this.mDirectionNext == null) {
 			while (true) {
-				final Entity.Direction direction = Entity.Direction.values()[Game.RANDOM.nextInt(Entity.Direction.values().length)];
+				final Entity.Direction direction = Entity.Direction.values()[game.getRandom().nextInt(Entity.Direction.values().length)];
 				if (game.isValidPosition(this, Entity.move(this.mPosition, direction))) {
 					this.mDirectionNext = direction;
 					break;
@@ -483,9 +476,13 @@ public class TheMan extends Entity implements SharedPreferences.OnSharedPreferen
 	 * @param game Game instance.
 	 */
 	private void determineNextDirectionByRandom(final Game game) {
-		if (game.isIntersection(this.mPosition)) {
+		final Entity.Direction corridor = game.getTheManJunctions().getCorridorExit(game.hashPosition(this.mPosition), this.mDirectionCurrent);
+		if (corridor != null) {
+			//Inside of a corridor, follow it
+			this.mDirectionNext = corridor;
+		} else if (game.isIntersection(this.mPosition)) {
 			while (true) {
-				this.mDirectionNext = Entity.Direction.values()[Game.RANDOM.nextInt(Entity.Direction.values().length)];
+				this.mDirectionNext = Entity.Direction.values()[game.getRandom().nextInt(Entity.Direction.values().length)];
 				
 				if (game.isValidPosition(this, Entity.move(this.mPosition, this.mDirectionNext)) && ((this.mDirectionCurrent == null) || (this.mDirectionNext != this.mDirectionCurrent.getOpposite()))) {
 					break;
@@ -497,87 +494,65 @@ public class TheMan extends Entity implements SharedPreferences.OnSharedPreferen
 		}
 	}
 	
-	/*private void determineNextDirectionByAI(final Game game) {
-		final HashSet<Integer> seen = new HashSet<Integer>();
-		final Queue<Vector> queue = new LinkedList<Vector>();
-		queue.add(new Vector(this.mPosition, this.mDirectionCurrent));
-		final Map<Entity.Direction, Integer> weights = new HashMap<Entity.Direction, Integer>();
-		Vector current;
-		
-		//Initialize direction scores
-		weights.put(Entity.Direction.NORTH, 0);
-		weights.put(Entity.Direction.SOUTH, 0);
-		weights.put(Entity.Direction.EAST, 0);
-		weights.put(Entity.Direction.WEST, 0);
-		
-		//BFS to a max depth of 10
-		while (!queue.isEmpty()) {
-			current = queue.remove();
-			seen.add(game.hashPosition(current.position));
+	/**
+	 * Determine next direction based on a weighted lookahead of the board which is
+	 * limited to the configured time budget. The lookahead is planned a cell ahead
+	 * on a worker thread and falls back to the nearest dot when the plan is not
+	 * ready or there is nothing of value within reach. Headless games search
+	 * synchronously with the budget turned into a fixed expansion count, except
+	 * for playbacks which take the recorded plans.
+	 * 
+	 * @param game Game instance.
+	 */
+	private void determineNextDirectionByAI(final Game game) {
+		final LinkedList<Entity.Direction> replayed = game.getReplayedDecisions();
+		if ((replayed == null) && game.isHeadless()) {
+			//Decide synchronously against an expansion limit so that simulations and playback are repeatable
+			final Entity.Direction direction = this.mLookahead.decide(game, this, this.mAIBudget, false);
 			
 			if (Wallpaper.LOG_VERBOSE) {
-				Log.v(TheMan.TAG, "With Current: (" + current.position.x + "," + current.position.y + ") " + current.direction);
+				Log.v(TheMan.TAG, "AI chose " + direction + " at depth " + this.mLookahead.getDepth());
 			}
 			
-			//Do not go past 10 steps into the future.
-			if (current.step == 10) {
-				continue;
-			}
-			
-			for (final Vector next : current.getPossibleMoves()) {
-				if (Wallpaper.LOG_VERBOSE) {
-					Log.v(TheMan.TAG, "- Checking: (" + next.position.x + "," + next.position.y + ") " + next.direction);
-				}
-				
-				if (game.isValidPosition(next.position) && !seen.contains(game.hashPosition(next.position))) {
-					if (Wallpaper.LOG_VERBOSE) {
-						Log.v(TheMan.TAG, "-- Valid");
-					}
-					
-					int weight = weights.get(next.initialDirection);
-					
-					final Game.Cell cell = game.getCell(next.position);
-					if (cell != Game.Cell.BLANK) {
-						weight += cell.value;
-					}
-					
-					final Ghost ghost = game.getGhostAtPosition(next.position); 
-					if (ghost != null) {
-						if (ghost.getState() == Ghost.State.HUNTING) {
-							weight -= 500; //Fear ghosts
-						} else if (ghost.getState() == Ghost.State.FRIGHTENED) {
-							weight += 200;
-						}
-					}
-					
-					final Fruit fruit = game.getFruitAtPosition(next.position);
-					if (fruit != null) {
-						weight += fruit.getValue();
-					}
-					
-					weights.put(next.initialDirection, weight);
-					queue.add(next);
-				}
+			if (direction != null) {
+				this.mDirectionNext = direction;
+			} else {
+				this.determineNextDirectionByNearestDot(game);
 			}
+			return;
 		}
 		
-		this.mDirectionNext = null;
-		while (this.mDirectionNext == null) {
-			int best = Integer.MIN_VALUE;
-			Entity.Direction direction = null;
-			for (Map.Entry<Entity.Direction, Integer> entry : weights.entrySet()) {
-				if (entry.getValue() > best) {
-					direction = entry.getKey();
-				}
+		final Entity.Direction planned;
+		if (replayed != null) {
+			//Take whatever the planner had ready when this was recorded
+			planned = replayed.isEmpty() ? null : replayed.removeFirst();
+		} else {
+			if (this.mPlanner == null) {
+				this.mPlanner = new Planner();
 			}
 			
-			if (game.isValidPosition(Entity.move(this.mPosition, direction))) {
-				this.mDirectionNext = direction;
-			} else {
-				weights.remove(direction);
+			planned = this.mPlanner.take(game, this);
+			if (game.getRecorder() != null) {
+				game.getRecorder().recordDecision(planned);
 			}
 		}
-	}*/
+		
+		//Use the decision planned while we crossed the last cell, otherwise fall back to the greedy search
+		if (planned != null) {
+			this.mDirectionNext = planned;
+		} else {
+			this.determineNextDirectionByNearestDot(game);
+		}
+		
+		if (Wallpaper.LOG_VERBOSE) {
+			Log.v(TheMan.TAG, "AI " + ((planned != null) ? "planned " : "fell back to ") + this.mDirectionNext);
+		}
+		
+		//Start on the decision for the cell we are about to enter
+		if (replayed == null) {
+			this.mPlanner.plan(game, this, this.mDirectionNext, this.mAIBudget);
+		}
+	}
 	
     @Override
 	public void draw(final Game game, final Canvas c) {
@@ -602,6 +577,12 @@ public class TheMan extends Entity implements SharedPreferences.OnSharedPreferen
 				
 			case ANDY:
 			case GOOGOL:
+				if (this.mSprite.get() == null) {
+					//Sprite could not be decoded, fall back to the vector man
+					this.drawTheMan(game, c);
+					break;
+				}
+				
 		        c.setDrawFilter(Game.FILTER_SET);
 				this.drawStaticSprite(game, c);
 		    	c.setDrawFilter(Game.FILTER_REMOVE);
@@ -653,7 +634,7 @@ public class TheMan extends Entity implements SharedPreferences.OnSharedPreferen
      * @param isLandscape Whether or not the display is in landscape mode.
      */
     private void drawStaticSprite(final Game game, final Canvas c) {
-    	c.drawBitmap(this.mSprite, null, game.getCellSize(), Entity.SPRITE_PAINT);
+    	c.drawBitmap(this.mSprite.get(), null, game.getCellSize(), Entity.SPRITE_PAINT);
     }
     
 	@Override
@@ -678,7 +659,7 @@ public class TheMan extends Entity implements SharedPreferences.OnSharedPreferen
 		//Randomize next direction
 		boolean valid = false;
 		while (!valid) {
-			this.mDirectionNext = Entity.Direction.values()[Game.RANDOM.nextInt(Entity.Direction.values().length)];
+			this.mDirectionNext = Entity.Direction.values()[game.getRandom().nextInt(Entity.Direction.values().length)];
 			valid = game.isValidPosition(this, Entity.move(this.mPosition, this.mDirectionNext));
 		}
 	}
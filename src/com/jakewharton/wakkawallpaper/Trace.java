@@ -0,0 +1,359 @@
+package com.jakewharton.wakkawallpaper;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.reflect.Method;
+import org.json.JSONObject;
+import android.util.Log;
+
+/**
+ * Named begin/end sections around the expensive parts of a frame so that a
+ * slow one can be broken down without adding logging. Every call site is
+ * guarded by {@link Wallpaper#TRACE_DEBUG} so sections compile to nothing
+ * unless tracing is enabled.
+ * 
+ * <p>Sections go to a {@link Trace.Sink}. On a device the default sink maps
+ * them to platform trace sections (shown by systrace) when the platform has
+ * them. Headless games, such as those played by {@link Simulator}, can install
+ * a {@link Trace.ChromeSink} for just the thread they are played on instead
+ * and write what it captured as Chrome trace JSON. A thread sink keeps
+ * sections from the live wallpaper and planner threads out of the capture.</p>
+ * 
+ * @author Jake Wharton
+ */
+public final class Trace {
+	/**
+	 * Receiver of trace sections.
+	 * 
+	 * @author Jake Wharton
+	 */
+	public interface Sink {
+		/**
+		 * Begin a section on the calling thread.
+		 * 
+		 * @param name Section name.
+		 */
+		void begin(String name);
+		
+		/**
+		 * End the most recently begun section on the calling thread.
+		 */
+		void end();
+	}
+	
+	/**
+	 * Sink which forwards sections to android.os.Trace. It is looked up by
+	 * reflection since it is only available on newer versions than we target.
+	 * 
+	 * @author Jake Wharton
+	 */
+	public static final class PlatformSink implements Trace.Sink {
+		/**
+		 * android.os.Trace.beginSection(String).
+		 */
+		private final Method mBeginSection;
+		
+		/**
+		 * android.os.Trace.endSection().
+		 */
+		private final Method mEndSection;
+		
+		
+		
+		/**
+		 * Create a sink from the platform methods.
+		 * 
+		 * @param beginSection Begin method.
+		 * @param endSection End method.
+		 */
+		private PlatformSink(final Method beginSection, final Method endSection) {
+			this.mBeginSection = beginSection;
+			this.mEndSection = endSection;
+		}
+		
+		
+		
+		public void begin(final String name) {
+			try {
+				this.mBeginSection.invoke(null, name);
+			} catch (final Exception e) {
+				//Tracing must never break the game
+			}
+		}
+		
+		public void end() {
+			try {
+				this.mEndSection.invoke(null);
+			} catch (final Exception e) {
+				//Tracing must never break the game
+			}
+		}
+		
+		/**
+		 * Create a sink if the platform supports trace sections.
+		 * 
+		 * @return Sink or null if unsupported.
+		 */
+		public static Trace.PlatformSink create() {
+			try {
+				final Class<?> trace = Class.forName("android.os.Trace");
+				return new Trace.PlatformSink(trace.getMethod("beginSection", String.class), trace.getMethod("endSection"));
+			} catch (final Exception e) {
+				return null;
+			}
+		}
+	}
+	
+	/**
+	 * Sink which keeps sections in memory, in preallocated arrays, so that they
+	 * can be written as Chrome trace JSON (chrome://tracing) afterwards. Events
+	 * past its capacity are dropped.
+	 * 
+	 * @author Jake Wharton
+	 */
+	public static final class ChromeSink implements Trace.Sink {
+		/**
+		 * Name of each event or null for an end event.
+		 */
+		private final String[] mNames;
+		
+		/**
+		 * System nanoseconds of each event.
+		 */
+		private final long[] mTimes;
+		
+		/**
+		 * Thread ID of each event.
+		 */
+		private final long[] mThreads;
+		
+		/**
+		 * Number of events captured.
+		 */
+		private int mCount;
+		
+		/**
+		 * Number of events dropped once full.
+		 */
+		private int mDropped;
+		
+		/**
+		 * System nanoseconds the sink was created at, used as time zero.
+		 */
+		private final long mStart;
+		
+		
+		
+		/**
+		 * Create a new sink.
+		 * 
+		 * @param capacity Maximum number of events to capture.
+		 */
+		public ChromeSink(final int capacity) {
+			this.mNames = new String[capacity];
+			this.mTimes = new long[capacity];
+			this.mThreads = new long[capacity];
+			this.mStart = System.nanoTime();
+		}
+		
+		
+		
+		public void begin(final String name) {
+			this.add(name);
+		}
+		
+		public void end() {
+			this.add(null);
+		}
+		
+		/**
+		 * Capture an event.
+		 * 
+		 * @param name Section name or null for an end event.
+		 */
+		private synchronized void add(final String name) {
+			if (this.mCount == this.mNames.length) {
+				this.mDropped += 1;
+				return;
+			}
+			
+			this.mNames[this.mCount] = name;
+			this.mTimes[this.mCount] = System.nanoTime();
+			this.mThreads[this.mCount] = Thread.currentThread().getId();
+			this.mCount += 1;
+		}
+		
+		/**
+		 * Write the captured events as Chrome trace JSON.
+		 * 
+		 * @param out Writer.
+		 * @throws IOException
+		 */
+		public synchronized void writeTo(final Writer out) throws IOException {
+			out.write("{\"traceEvents\":[");
+			for (int i = 0; i < this.mCount; i++) {
+				if (i > 0) {
+					out.write(",\n");
+				}
+				out.write("{\"ph\":\"");
+				out.write((this.mNames[i] != null) ? "B" : "E");
+				out.write("\",\"pid\":1,\"tid\":");
+				out.write(String.valueOf(this.mThreads[i]));
+				out.write(",\"ts\":");
+				out.write(String.valueOf((this.mTimes[i] - this.mStart) / 1000.0));
+				if (this.mNames[i] != null) {
+					out.write(",\"name\":");
+					out.write(JSONObject.quote(this.mNames[i]));
+				}
+				out.write("}");
+			}
+			out.write("],\"otherData\":{\"dropped\":");
+			out.write(String.valueOf(this.mDropped));
+			out.write("}}");
+		}
+		
+		/**
+		 * Write the captured events to a file.
+		 * 
+		 * @param file Destination.
+		 * @throws IOException
+		 */
+		public void writeTo(final File file) throws IOException {
+			final Writer out = new FileWriter(file);
+			try {
+				this.writeTo(out);
+			} finally {
+				out.close();
+			}
+		}
+	}
+	
+	
+	
+	/**
+	 * Game tick.
+	 */
+	/*package*/static final String TICK = "Game.tick";
+	
+	/**
+	 * The Man's direction decision.
+	 */
+	/*package*/static final String THEMAN_DECIDE = "TheMan.determineNextDirection";
+	
+	/**
+	 * A ghost's direction decision.
+	 */
+	/*package*/static final String GHOST_DECIDE = "Ghost.determineNextDirection";
+	
+	/**
+	 * Whole frame draw.
+	 */
+	/*package*/static final String DRAW = "Game.draw";
+	
+	/**
+	 * Dots and walls draw.
+	 */
+	/*package*/static final String DRAW_BOARD = "Game.drawGameBoard";
+	
+	/**
+	 * HUD draw.
+	 */
+	/*package*/static final String DRAW_HUD = "Game.drawHud";
+	
+	/**
+	 * Fruit, The Man, ghost and swarm draws.
+	 */
+	/*package*/static final String DRAW_ENTITIES = "Entity.draw";
+	
+	/**
+	 * Tag used for logging.
+	 */
+	private static final String TAG = "WakkaWallpaper.Trace";
+	
+	/**
+	 * Current sink or null to discard sections.
+	 */
+	private static volatile Trace.Sink SINK = Trace.PlatformSink.create();
+	
+	/**
+	 * Sink which replaces {@link #SINK} on the thread which installed it.
+	 */
+	private static final ThreadLocal<Trace.Sink> THREAD_SINK = new ThreadLocal<Trace.Sink>();
+	
+	
+	
+	/**
+	 * Non-instantiable.
+	 */
+	private Trace() {}
+	
+	
+	
+	/**
+	 * Get the sink sections are sent to.
+	 * 
+	 * @return Sink or null if sections are discarded.
+	 */
+	public static Trace.Sink getSink() {
+		return Trace.SINK;
+	}
+	
+	/**
+	 * Replace the sink sections are sent to from every thread without a thread sink.
+	 * 
+	 * @param sink Sink or null to discard sections.
+	 */
+	public static void setSink(final Trace.Sink sink) {
+		Trace.SINK = sink;
+		
+		if (Wallpaper.LOG_DEBUG) {
+			Log.d(Trace.TAG, "Sink: " + sink);
+		}
+	}
+	
+	/**
+	 * Replace the sink sections are sent to from the calling thread only.
+	 * 
+	 * @param sink Sink or null to go back to the shared sink.
+	 * @return Previous thread sink or null if there was none.
+	 */
+	public static Trace.Sink setThreadSink(final Trace.Sink sink) {
+		final Trace.Sink previous = Trace.THREAD_SINK.get();
+		Trace.THREAD_SINK.set(sink);
+		return previous;
+	}
+	
+	/**
+	 * Get the sink for the calling thread.
+	 * 
+	 * @return Sink or null if sections are discarded.
+	 */
+	private static Trace.Sink getCurrentSink() {
+		final Trace.Sink sink = Trace.THREAD_SINK.get();
+		return (sink != null) ? sink : Trace.SINK;
+	}
+	
+	/**
+	 * Begin a section on the calling thread.
+	 * 
+	 * @param name Section name.
+	 */
+	public static void begin(final String name) {
+		final Trace.Sink sink = Trace.getCurrentSink();
+		if (sink != null) {
+			sink.begin(name);
+		}
+	}
+	
+	/**
+	 * End the most recently begun section on the calling thread.
+	 */
+	public static void end() {
+		final Trace.Sink sink = Trace.getCurrentSink();
+		if (sink != null) {
+			sink.end();
+		}
+	}
+}
@@ -1,6 +1,16 @@
 package com.jakewharton.wakkawallpaper;
 
 import com.jakewharton.wakkawallpaper.Entity.SomethingIsCausingEntitiesToNullPointerException;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
 import android.content.Context;
 import android.content.SharedPreferences;
 import android.content.res.Resources;
@@ -22,10 +32,20 @@ public class Wallpaper extends WallpaperService {
 	 */
 	/*package*/static SharedPreferences PREFERENCES;
 	
+	/**
+	 * Compiled settings snapshot shared across the package.
+	 */
+	/*package*/static Settings.Manager SETTINGS;
+	
 	/**
 	 * Wallpaper Context instance.
 	 */
 	/*package*/static Context CONTEXT;
+	
+	/**
+	 * Decoded sprite sheets shared across the package.
+	 */
+	/*package*/static final BitmapManager BITMAPS = new BitmapManager();
     
 	/**
 	 * Whether or not we are logging in debug mode.
@@ -47,6 +67,21 @@ public class Wallpaper extends WallpaperService {
      */
     /*package*/static final boolean PLAY_DEBUG = false;
     
+    /**
+     * Whether or not the Picker activity (with {@link #PLAY_DEBUG}) runs the simulator and replays kept crash recordings instead of playing.
+     */
+    /*package*/static final boolean BENCHMARK_DEBUG = false;
+    
+    /**
+     * Whether or not to record every game so that a crash can be replayed offline.
+     */
+    /*package*/static final boolean RECORD_DEBUG = false;
+    
+    /**
+     * Whether or not to emit trace sections around ticks, decisions, and draws.
+     */
+    /*package*/static final boolean TRACE_DEBUG = false;
+    
     /**
      * Height (in DIP) of the status bar. Usually.
      */
@@ -67,15 +102,55 @@ public class Wallpaper extends WallpaperService {
 	 */
 	/*package*/static final int MILLISECONDS_IN_SECOND = 1000;
 	
+	/**
+	 * Number of microseconds in a second.
+	 */
+	/*package*/static final long MICROSECONDS_IN_SECOND = 1000000;
+	
 	/**
 	 * Maximum time between taps that will reset the game.
 	 */
 	/*pacakge*/static final long RESET_THRESHOLD = 100;
+	
+	/**
+	 * File name of the game saved when the wallpaper is hidden or destroyed.
+	 */
+	private static final String STATE_FILE = "state.wakka";
+	
+	/**
+	 * Tag used for logging.
+	 */
+	private static final String TAG = "WakkaWallpaper.Wallpaper";
     
     /**
      * The timed callback handler.
      */
     private final Handler mHandler = new Handler();
+    
+    /**
+     * Game instance shared by all of the engines.
+     */
+    private Game mGame;
+    
+    /**
+     * Number of engines currently holding a reference to the shared game.
+     */
+    private int mGameReferences;
+    
+    /**
+     * Game instance which was last saved.
+     */
+    private Game mSavedGame;
+    
+    /**
+     * Tick count of {@link #mSavedGame} when it was saved.
+     */
+    private long mSavedTickCount;
+    
+    /**
+     * The engine which is responsible for advancing the shared game.
+     */
+    private WakkaEngine mTickingEngine;
 
     
     
@@ -86,9 +161,214 @@ public class Wallpaper extends WallpaperService {
     	
     	this.performFirstRunCheckAndSetup();
     	
+    	if (Wallpaper.SETTINGS == null) {
+    		Wallpaper.SETTINGS = new Settings.Manager(Wallpaper.PREFERENCES);
+    		Wallpaper.SETTINGS.register(Wallpaper.BITMAPS);
+    	}
+    	
         return new WakkaEngine();
     }
     
+    @Override
+    public void onLowMemory() {
+    	super.onLowMemory();
+    	
+    	if (Wallpaper.LOG_DEBUG) {
+    		Log.d(Wallpaper.TAG, "Low memory, holding " + Wallpaper.BITMAPS.getBytes() + " bytes of bitmaps");
+    	}
+    	Wallpaper.BITMAPS.onLowMemory();
+    }
+    
+    @Override
+    protected void dump(final FileDescriptor fd, final PrintWriter out, final String[] args) {
+    	if ((args != null) && (args.length > 0) && "reset".equals(args[0])) {
+    		Metrics.reset();
+    		out.println("Metrics reset.");
+    		return;
+    	}
+    	
+    	out.println("WakkaWallpaper metrics:");
+    	Metrics.dump(out);
+    	out.print("engines: ");
+    	out.println(this.mGameReferences);
+    }
+    
+    /**
+     * Release memory when asked to by the system. Only called on versions
+     * which support it so there is nothing to override on older ones.
+     * 
+     * @param level Trim level.
+     */
+    public void onTrimMemory(final int level) {
+    	if (Wallpaper.LOG_DEBUG) {
+    		Log.d(Wallpaper.TAG, "Trim memory (" + level + "), holding " + Wallpaper.BITMAPS.getBytes() + " bytes of bitmaps");
+    	}
+    	Wallpaper.BITMAPS.onTrimMemory(level);
+    }
+    
+    /**
+     * Take a reference to the shared game, creating it if it does not exist.
+     */
+    private void acquireGame() {
+    	if (this.mGame == null) {
+    		this.mGame = this.createGame(true);
+    	}
+    	this.mGameReferences += 1;
+    	
+    	if (Wallpaper.LOG_DEBUG) {
+    		Log.d(Wallpaper.TAG, "Game References: " + this.mGameReferences);
+    	}
+    }
+    
+    /**
+     * Release a reference to the shared game, destroying it when the last engine is done with it.
+     */
+    private void releaseGame() {
+    	this.mGameReferences -= 1;
+    	
+    	if (Wallpaper.LOG_DEBUG) {
+    		Log.d(Wallpaper.TAG, "Game References: " + this.mGameReferences);
+    	}
+    	
+    	if ((this.mGameReferences <= 0) && (this.mGame != null)) {
+    		this.saveGame();
+    		this.mGame.destroy();
+    		this.mGame = null;
+    		this.mGameReferences = 0;
+    	}
+    }
+    
+    /**
+     * Create a new game, recording it if enabled.
+     * 
+     * @param isRestoring Whether or not to continue the game saved by the last service instance.
+     * @return Game.
+     */
+    private Game createGame(final boolean isRestoring) {
+    	if (isRestoring) {
+    		final Game game = this.loadGame();
+    		if (game != null) {
+    			//A recording could not replay from the middle of a game
+    			return game;
+    		}
+    	}
+    	
+    	final Game game = new Game();
+    	if (Wallpaper.RECORD_DEBUG) {
+    		Recorder.start(game);
+    	}
+    	return game;
+    }
+    
+    /**
+     * Save the shared game so that it can be continued after the service is restarted.
+     */
+    private void saveGame() {
+    	if (this.mGame == null) {
+    		return;
+    	}
+    	
+    	final File file = new File(this.getFilesDir(), Wallpaper.STATE_FILE);
+    	final long tickCount = this.mGame.getTickCount();
+    	if ((this.mSavedGame == this.mGame) && (this.mSavedTickCount == tickCount) && file.exists()) {
+    		//Nothing has happened since the last save
+    		return;
+    	}
+    	
+    	//Write beside the saved game and swap it in only once complete so that being killed mid-write keeps the old one
+    	final long start = System.nanoTime();
+    	final File temp = new File(this.getFilesDir(), Wallpaper.STATE_FILE + ".tmp");
+    	DataOutputStream out = null;
+    	try {
+    		out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+    		this.mGame.writeState(out);
+    		out.close();
+    		out = null;
+    		
+    		if (!temp.renameTo(file)) {
+    			throw new IOException("Unable to replace " + file);
+    		}
+    		this.mSavedGame = this.mGame;
+    		this.mSavedTickCount = tickCount;
+    		
+    		if (Wallpaper.LOG_DEBUG) {
+    			Log.d(Wallpaper.TAG, "Saved " + file.length() + " bytes in " + ((System.nanoTime() - start) / 1000) + "us");
+    		}
+    	} catch (final IOException e) {
+    		Log.w(Wallpaper.TAG, "Unable to save game.", e);
+    		temp.delete();
+    	} finally {
+    		if (out != null) {
+    			try {
+    				out.close();
+    			} catch (final IOException e) {
+    				//Already failed
+    			}
+    			temp.delete();
+    		}
+    	}
+    }
+    
+    /**
+     * Continue the game saved by the last service instance, if any.
+     * 
+     * @return Restored game or null if there was none or it could not be restored.
+     */
+    private Game loadGame() {
+    	final File file = new File(this.getFilesDir(), Wallpaper.STATE_FILE);
+    	if (!file.exists()) {
+    		return null;
+    	}
+    	
+    	final long start = System.nanoTime();
+    	final Game game = new Game();
+    	boolean isRestored = false;
+    	DataInputStream in = null;
+    	try {
+    		in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), (int)file.length()));
+    		isRestored = game.readState(in);
+    		
+    		if (Wallpaper.LOG_DEBUG) {
+    			Log.d(Wallpaper.TAG, "Restored: " + isRestored + " in " + ((System.nanoTime() - start) / 1000) + "us");
+    		}
+    	} catch (final IOException e) {
+    		Log.w(Wallpaper.TAG, "Unable to restore game.", e);
+    	} catch (final RuntimeException e) {
+    		//Corrupt beyond what the format can detect
+    		Log.w(Wallpaper.TAG, "Unable to restore game.", e);
+    	} finally {
+    		if (in != null) {
+    			try {
+    				in.close();
+    			} catch (final IOException e) {
+    				//Nothing read depends on this
+    			}
+    		}
+    		//Only ever continue a saved game once
+    		file.delete();
+    	}
+    	
+    	if (!isRestored) {
+    		//Never keep a partially restored game
+    		game.destroy();
+    		return null;
+    	}
+    	return game;
+    }
+    
+    /**
+     * Replace the shared game with a new instance sized to match the old one.
+     */
+    private void resetGame() {
+    	final Game old = this.mGame;
+    	old.destroy();
+    	
+    	this.mGame = this.createGame(false);
+    	if ((old.getScreenWidth() > 0) && (old.getScreenHeight() > 0)) {
+    		this.mGame.performResize(old.getScreenWidth(), old.getScreenHeight());
+    	}
+    }
+    
     /**
      * Sets up some preferences based on screen size on the first run only.
      */
@@ -122,7 +402,7 @@ public class Wallpaper extends WallpaperService {
      * 
      * @author Jake Wharton
      */
-    private class WakkaEngine extends Engine implements SharedPreferences.OnSharedPreferenceChangeListener {
+    private class WakkaEngine extends Engine implements Settings.Listener {
     	/**
     	 * Tag used for logging.
     	 */
@@ -130,11 +410,6 @@ public class Wallpaper extends WallpaperService {
     	
     	
     	
-    	/**
-    	 * Instance of the game.
-    	 */
-    	private Game mGame;
-    	
     	/**
     	 * Whether or not the wallpaper is currently visible on screen.
     	 */
@@ -160,16 +435,32 @@ public class Wallpaper extends WallpaperService {
          */
         private float mScreenCenterY;
         
+        /**
+         * Width (in pixels) of this engine's surface.
+         */
+        private int mScreenWidth;
+        
+        /**
+         * Height (in pixels) of this engine's surface.
+         */
+        private int mScreenHeight;
+        
         /**
          * The system milliseconds of the last user touch.
          */
         private long mLastTouch;
+        
+        /**
+         * The system nanoseconds at which the last timed frame started or zero if none.
+         */
+        private long mLastFrame;
 
         /**
          * A runnable which automates the frame rendering.
          */
         private final Runnable mDrawWakka = new Runnable() {
             public void run() {
+            	WakkaEngine.this.recordFrame();
             	WakkaEngine.this.tick();
                 WakkaEngine.this.draw();
             }
@@ -185,12 +476,11 @@ public class Wallpaper extends WallpaperService {
         		Log.v(WakkaEngine.TAG, "> WakkaEngine()");
         	}
         	
-            this.mGame = new Game();
+            Wallpaper.this.acquireGame();
             this.mLastTouch = 0;
 
-            //Load all preferences or their defaults
-            Wallpaper.PREFERENCES.registerOnSharedPreferenceChangeListener(this);
-            this.onSharedPreferenceChanged(Wallpaper.PREFERENCES, null);
+            //Load all settings (delivered immediately upon registering)
+            Wallpaper.SETTINGS.register(this);
             
         	if (Wallpaper.LOG_VERBOSE) {
         		Log.v(WakkaEngine.TAG, "< WakkaEngine()");
@@ -200,28 +490,23 @@ public class Wallpaper extends WallpaperService {
         
         
         /**
-         * Handle the changing of a preference.
+         * Handle the changing of one or more settings.
          */
-		public void onSharedPreferenceChanged(final SharedPreferences preferences, final String key) {
+		public void onSettingsChanged(final Settings settings, final Settings.Diff diff) {
         	if (Wallpaper.LOG_VERBOSE) {
-        		Log.v(WakkaEngine.TAG, "> onSharedPreferenceChanged()");
+        		Log.v(WakkaEngine.TAG, "> onSettingsChanged()");
         	}
         	
-			final boolean all = (key == null);
-			final Resources resources = Wallpaper.CONTEXT.getResources();
-			
-			final String fps = resources.getString(R.string.settings_display_fps_key);
-			if (all || key.equals(fps)) {
-				this.mFPS = preferences.getInt(fps, resources.getInteger(R.integer.display_fps_default));
+			if (diff.contains(Settings.DISPLAY_FPS)) {
+				this.mFPS = settings.getInt(Settings.DISPLAY_FPS);
 				
 				if (Wallpaper.LOG_DEBUG) {
 					Log.d(WakkaEngine.TAG, "FPS: " + this.mFPS);
 				}
 			}
 			
-			final String userControl = resources.getString(R.string.settings_game_usercontrol_key);
-			if (all || key.equals(userControl)) {
-				this.mIsControllable = preferences.getBoolean(userControl, resources.getBoolean(R.bool.game_usercontrol_default));
+			if (diff.contains(Settings.GAME_USER_CONTROL)) {
+				this.mIsControllable = settings.getBoolean(Settings.GAME_USER_CONTROL);
 				
 				if (Wallpaper.LOG_DEBUG) {
 					Log.d(WakkaEngine.TAG, "Is User Controllable: " + this.mIsControllable);
@@ -229,7 +514,7 @@ public class Wallpaper extends WallpaperService {
 			}
 
         	if (Wallpaper.LOG_VERBOSE) {
-        		Log.v(WakkaEngine.TAG, "< onSharedPreferenceChanged()");
+        		Log.v(WakkaEngine.TAG, "< onSettingsChanged()");
         	}
 		}
 
@@ -237,6 +522,10 @@ public class Wallpaper extends WallpaperService {
         public void onVisibilityChanged(final boolean visible) {
             this.mIsVisible = visible;
             if (visible) {
+            	if (Wallpaper.this.mTickingEngine == null) {
+            		Wallpaper.this.mTickingEngine = this;
+            	}
+            	
                 this.draw();
                 
                 if (Wallpaper.AUTO_TICK) {
@@ -244,6 +533,13 @@ public class Wallpaper extends WallpaperService {
                 }
             } else {
                 Wallpaper.this.mHandler.removeCallbacks(this.mDrawWakka);
+                this.relinquishTicking();
+                
+                //Time spent hidden is not a late frame
+                this.mLastFrame = 0;
+                
+                //We may be killed at any point while hidden
+                Wallpaper.this.saveGame();
             }
         }
         
@@ -259,6 +555,10 @@ public class Wallpaper extends WallpaperService {
         public void onDestroy() {
             super.onDestroy();
             Wallpaper.this.mHandler.removeCallbacks(mDrawWakka);
+            
+            this.relinquishTicking();
+            Wallpaper.SETTINGS.unregister(this);
+            Wallpaper.this.releaseGame();
         }
         
         @Override
@@ -266,7 +566,7 @@ public class Wallpaper extends WallpaperService {
         	if ((event.getAction() == MotionEvent.ACTION_DOWN) && this.mIsControllable) {
         		final long touch = System.currentTimeMillis();
         		if (touch - this.mLastTouch < Wallpaper.RESET_THRESHOLD) {
-        			this.mGame.newGame();
+        			Wallpaper.this.mGame.newGame();
         			this.mLastTouch = 0;
         		} else {
 	        		this.mLastTouch = touch;
@@ -275,9 +575,9 @@ public class Wallpaper extends WallpaperService {
 	        		final float deltaY = this.mScreenCenterY - event.getY();
 	        		
 	        		if (Math.abs(deltaX) > Math.abs(deltaY)) {
-	        			this.mGame.getTheMan().setWantsToGo((deltaX > 0) ? Entity.Direction.WEST : Entity.Direction.EAST);
+	        			Wallpaper.this.mGame.setWantsToGo((deltaX > 0) ? Entity.Direction.WEST : Entity.Direction.EAST);
 	        		} else {
-	        			this.mGame.getTheMan().setWantsToGo((deltaY > 0) ? Entity.Direction.NORTH : Entity.Direction.SOUTH);
+	        			Wallpaper.this.mGame.setWantsToGo((deltaY > 0) ? Entity.Direction.NORTH : Entity.Direction.SOUTH);
 	        		}
         		}
         		
@@ -296,6 +596,8 @@ public class Wallpaper extends WallpaperService {
         	
             super.onSurfaceChanged(holder, format, width, height);
             
+            this.mScreenWidth = width;
+            this.mScreenHeight = height;
             this.mScreenCenterX = width / 2.0f;
             this.mScreenCenterY = height / 2.0f;
             
@@ -304,8 +606,11 @@ public class Wallpaper extends WallpaperService {
             	Log.d(WakkaEngine.TAG, "Center Y: " + this.mScreenCenterY);
             }
             
-            //Trickle down
-            this.mGame.performResize(width, height);
+            //Trickle down, the preview only scales the game unless nothing else has sized it
+            final Game game = Wallpaper.this.mGame;
+            if (!this.isPreview() || (game.getScreenWidth() == 0) || (game.getScreenHeight() == 0)) {
+            	game.performResize(width, height);
+            }
             
             //Redraw with new settings
             this.draw();
@@ -320,17 +625,64 @@ public class Wallpaper extends WallpaperService {
             super.onSurfaceDestroyed(holder);
             this.mIsVisible = false;
             Wallpaper.this.mHandler.removeCallbacks(this.mDrawWakka);
+            this.relinquishTicking();
+        }
+        
+        /**
+         * Stop being the engine responsible for advancing the shared game.
+         */
+        private void relinquishTicking() {
+        	if (Wallpaper.this.mTickingEngine == this) {
+        		Wallpaper.this.mTickingEngine = null;
+        	}
+        }
+        
+        /**
+         * Record the time since the last frame, counting it as janky if it missed
+         * the target frame rate by more than a whole period.
+         */
+        private void recordFrame() {
+        	final long now = System.nanoTime();
+        	if (this.mLastFrame != 0) {
+        		final long interval = (now - this.mLastFrame) / 1000;
+        		Metrics.FRAME_INTERVAL.record(interval);
+        		if (interval > (2 * Wallpaper.MICROSECONDS_IN_SECOND / this.mFPS)) {
+        			Metrics.increment(Metrics.FRAMES_JANKED);
+        		}
+        	}
+        	this.mLastFrame = now;
         }
         
         /**
          * Advance the game by one step.
          */
         private void tick() {
-        	try {
-				this.mGame.tick();
-			} catch (SomethingIsCausingEntitiesToNullPointerException e) {
-				this.mGame = new Game();
-			}
+        	//Only one visible engine advances the shared game, the rest just render it
+        	if (this.mIsVisible && (Wallpaper.this.mTickingEngine == null)) {
+        		Wallpaper.this.mTickingEngine = this;
+        	}
+        	
+        	if (!Wallpaper.AUTO_TICK || (Wallpaper.this.mTickingEngine == this)) {
+        		final long start = System.nanoTime();
+	        	try {
+					Wallpaper.this.mGame.tick();
+				} catch (SomethingIsCausingEntitiesToNullPointerException e) {
+					final Recorder recorder = Wallpaper.this.mGame.getRecorder();
+					if (recorder != null) {
+						Log.w(Wallpaper.TAG, "Recovering from entity failure, recording kept as " + recorder.keep());
+					}
+					
+					//Roll back in place, only starting over when that fails
+					if (!Wallpaper.this.mGame.recover()) {
+						Wallpaper.this.resetGame();
+					} else if (recorder != null) {
+						//Keep recording from the recovered state
+						Recorder.resume(Wallpaper.this.mGame);
+					}
+				}
+	        	Metrics.increment(Metrics.TICKS);
+	        	Metrics.TICK_TIME.record((System.nanoTime() - start) / 1000);
+        	}
 
         	if (Wallpaper.AUTO_TICK) {
         		if (this.mIsVisible) {
@@ -344,18 +696,38 @@ public class Wallpaper extends WallpaperService {
          */
         private void draw() {
             final SurfaceHolder holder = this.getSurfaceHolder();
+            final long start = System.nanoTime();
 
             Canvas c = null;
             try {
                 c = holder.lockCanvas();
                 if (c != null) {
-                    this.mGame.draw(c);
+                	final Game game = Wallpaper.this.mGame;
+                	final int gameWidth = game.getScreenWidth();
+                	final int gameHeight = game.getScreenHeight();
+                	
+                	if ((gameWidth > 0) && (gameHeight > 0) && ((gameWidth != this.mScreenWidth) || (gameHeight != this.mScreenHeight))) {
+                		//Render the shared game scaled to our own surface
+                		c.save();
+                		c.scale(this.mScreenWidth / (gameWidth * 1.0f), this.mScreenHeight / (gameHeight * 1.0f));
+                		game.draw(c);
+                		c.restore();
+                	} else {
+                		game.draw(c);
+                	}
                 }
             } finally {
                 if (c != null) {
                 	holder.unlockCanvasAndPost(c);
                 }
             }
+            
+            if (c != null) {
+            	Metrics.increment(Metrics.FRAMES_DRAWN);
+            	Metrics.DRAW_TIME.record((System.nanoTime() - start) / 1000);
+            } else {
+            	Metrics.increment(Metrics.FRAMES_SKIPPED);
+            }
         }
     }
 }